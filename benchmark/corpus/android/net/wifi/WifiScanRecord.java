@@ -0,0 +1,291 @@
+/*
+ * Benchmark corpus file, written in the style of the Android wifi framework.
+ */
+
+package android.net.wifi;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Describes one access point seen by a scan.
+ */
+public class WifiScanRecord implements Parcelable {
+
+    public static final int UNSPECIFIED = -1;
+
+    public static final int CHANNEL_WIDTH_20MHZ = 0;
+    public static final int CHANNEL_WIDTH_40MHZ = 1;
+    public static final int CHANNEL_WIDTH_80MHZ = 2;
+    public static final int CHANNEL_WIDTH_160MHZ = 3;
+
+    private static final int FLAG_PASSPOINT = 0x1;
+    private static final int FLAG_80211MC = 0x2;
+
+    public String SSID;
+    public String BSSID;
+    public String capabilities;
+    public int level;
+    public int frequency;
+    public int channelWidth;
+    public int centerFreq0;
+    public int centerFreq1;
+    public long timestamp;
+    public long seen;
+    public int distanceCm;
+    public int distanceSdCm;
+    public int flags;
+    public boolean untrusted;
+    public int numConnection;
+    public int numUsage;
+    public byte[] informationElements;
+    public List<String> anqpLines;
+
+    public WifiScanRecord() {
+        level = UNSPECIFIED;
+        frequency = UNSPECIFIED;
+        channelWidth = UNSPECIFIED;
+        distanceCm = UNSPECIFIED;
+        distanceSdCm = UNSPECIFIED;
+    }
+
+    public WifiScanRecord(String ssid, String bssid, String caps, int level, int frequency,
+            long tsf) {
+        this();
+        this.SSID = ssid;
+        this.BSSID = bssid;
+        this.capabilities = caps;
+        this.level = level;
+        this.frequency = frequency;
+        this.timestamp = tsf;
+    }
+
+    public WifiScanRecord(WifiScanRecord source) {
+        if (source != null) {
+            SSID = source.SSID;
+            BSSID = source.BSSID;
+            capabilities = source.capabilities;
+            level = source.level;
+            frequency = source.frequency;
+            channelWidth = source.channelWidth;
+            centerFreq0 = source.centerFreq0;
+            centerFreq1 = source.centerFreq1;
+            timestamp = source.timestamp;
+            seen = source.seen;
+            distanceCm = source.distanceCm;
+            distanceSdCm = source.distanceSdCm;
+            flags = source.flags;
+            untrusted = source.untrusted;
+            numConnection = source.numConnection;
+            numUsage = source.numUsage;
+            if (source.informationElements != null) {
+                informationElements = new byte[source.informationElements.length];
+                System.arraycopy(source.informationElements, 0, informationElements, 0,
+                        informationElements.length);
+            }
+            if (source.anqpLines != null) {
+                anqpLines = new ArrayList<String>(source.anqpLines);
+            }
+        }
+    }
+
+    public boolean is24GHz() {
+        return frequency > 2400 && frequency < 2500;
+    }
+
+    public boolean is5GHz() {
+        return frequency > 4900 && frequency < 5900;
+    }
+
+    public boolean isPasspointNetwork() {
+        return (flags & FLAG_PASSPOINT) != 0;
+    }
+
+    public boolean is80211mcResponder() {
+        return (flags & FLAG_80211MC) != 0;
+    }
+
+    public void setFlag(int flag, boolean enabled) {
+        if (enabled) {
+            flags |= flag;
+        } else {
+            flags &= ~flag;
+        }
+    }
+
+    public int getChannel() {
+        if (is24GHz()) {
+            if (frequency == 2484) {
+                return 14;
+            }
+            return (frequency - 2407) / 5;
+        } else if (is5GHz()) {
+            return (frequency - 5000) / 5;
+        }
+        return UNSPECIFIED;
+    }
+
+    public int getSignalBars(int numLevels) {
+        if (level <= -100) {
+            return 0;
+        } else if (level >= -55) {
+            return numLevels - 1;
+        } else {
+            float inputRange = -55 - (-100);
+            float outputRange = numLevels - 1;
+            return (int) ((float) (level - (-100)) * outputRange / inputRange);
+        }
+    }
+
+    public void averageRssi(int previousRssi, long previousSeen, int maxAge) {
+        if (seen == 0) {
+            seen = System.currentTimeMillis();
+        }
+        long age = seen - previousSeen;
+        if (previousSeen > 0 && age > 0 && age < maxAge / 2) {
+            double alpha = 0.5 - (double) age / (double) maxAge;
+            level = (int) ((double) level * (1 - alpha) + (double) previousRssi * alpha);
+        }
+    }
+
+    public boolean hasSameNetwork(WifiScanRecord other) {
+        if (other == null) {
+            return false;
+        }
+        if (SSID == null || other.SSID == null) {
+            return false;
+        }
+        return SSID.equals(other.SSID) && capabilities != null
+                && capabilities.equals(other.capabilities);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof WifiScanRecord)) {
+            return false;
+        }
+        WifiScanRecord other = (WifiScanRecord) obj;
+        if (BSSID == null) {
+            return other.BSSID == null && frequency == other.frequency;
+        }
+        return BSSID.equals(other.BSSID) && frequency == other.frequency;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = BSSID != null ? BSSID.hashCode() : 0;
+        result = 31 * result + frequency;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        StringBuffer sb = new StringBuffer();
+        String none = "<none>";
+
+        sb.append("SSID: ").append(SSID == null ? none : SSID).append(", BSSID: ")
+                .append(BSSID == null ? none : BSSID).append(", capabilities: ")
+                .append(capabilities == null ? none : capabilities).append(", level: ")
+                .append(level).append(", frequency: ").append(frequency)
+                .append(", timestamp: ").append(timestamp);
+        sb.append(", distance: ").append(distanceCm != UNSPECIFIED ? distanceCm : "?")
+                .append("(cm)");
+        sb.append(", distanceSd: ").append(distanceSdCm != UNSPECIFIED ? distanceSdCm : "?")
+                .append("(cm)");
+        sb.append(", passpoint: ").append(isPasspointNetwork() ? "yes" : "no");
+        if (untrusted) {
+            sb.append(", untrusted");
+        }
+        if (anqpLines != null) {
+            for (int i = 0; i < anqpLines.size(); i++) {
+                sb.append(", anqp: ").append(anqpLines.get(i));
+            }
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeString(SSID);
+        dest.writeString(BSSID);
+        dest.writeString(capabilities);
+        dest.writeInt(level);
+        dest.writeInt(frequency);
+        dest.writeInt(channelWidth);
+        dest.writeInt(centerFreq0);
+        dest.writeInt(centerFreq1);
+        dest.writeLong(timestamp);
+        dest.writeLong(seen);
+        dest.writeInt(distanceCm);
+        dest.writeInt(distanceSdCm);
+        dest.writeInt(this.flags);
+        dest.writeInt(untrusted ? 1 : 0);
+        dest.writeInt(numConnection);
+        dest.writeInt(numUsage);
+        if (informationElements != null) {
+            dest.writeInt(informationElements.length);
+            dest.writeByteArray(informationElements);
+        } else {
+            dest.writeInt(0);
+        }
+        if (anqpLines != null) {
+            dest.writeInt(anqpLines.size());
+            for (int i = 0; i < anqpLines.size(); i++) {
+                dest.writeString(anqpLines.get(i));
+            }
+        } else {
+            dest.writeInt(0);
+        }
+    }
+
+    public static final Creator<WifiScanRecord> CREATOR =
+            new Creator<WifiScanRecord>() {
+                public WifiScanRecord createFromParcel(Parcel in) {
+                    WifiScanRecord sr = new WifiScanRecord();
+                    sr.SSID = in.readString();
+                    sr.BSSID = in.readString();
+                    sr.capabilities = in.readString();
+                    sr.level = in.readInt();
+                    sr.frequency = in.readInt();
+                    sr.channelWidth = in.readInt();
+                    sr.centerFreq0 = in.readInt();
+                    sr.centerFreq1 = in.readInt();
+                    sr.timestamp = in.readLong();
+                    sr.seen = in.readLong();
+                    sr.distanceCm = in.readInt();
+                    sr.distanceSdCm = in.readInt();
+                    sr.flags = in.readInt();
+                    sr.untrusted = in.readInt() != 0;
+                    sr.numConnection = in.readInt();
+                    sr.numUsage = in.readInt();
+                    int n = in.readInt();
+                    if (n != 0) {
+                        sr.informationElements = new byte[n];
+                        in.readByteArray(sr.informationElements);
+                    }
+                    n = in.readInt();
+                    if (n != 0) {
+                        sr.anqpLines = new ArrayList<String>();
+                        for (int i = 0; i < n; i++) {
+                            sr.anqpLines.add(in.readString());
+                        }
+                    }
+                    return sr;
+                }
+
+                public WifiScanRecord[] newArray(int size) {
+                    return new WifiScanRecord[size];
+                }
+            };
+}
@@ -0,0 +1,144 @@
+/*
+ * Benchmark corpus file, written in the style of the Android wifi framework.
+ */
+
+package com.android.server.wifi;
+
+import android.net.wifi.WifiScanRecord;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Formats the link statistics of the station interface for dumpsys. Long append chains,
+ * nested brackets and generic types are what the statement parser spends its time on.
+ */
+public class WifiLinkReport {
+
+    private static final String TAG = "WifiLinkReport";
+    private static final int CHANNEL_COUNT = 14;
+    private static final int HISTORY_SIZE = 32;
+
+    private final int[][] mChannelHits = new int[CHANNEL_COUNT][HISTORY_SIZE];
+    private final long[] mTxBytes = new long[HISTORY_SIZE];
+    private final long[] mRxBytes = new long[HISTORY_SIZE];
+    private final HashMap<String, ArrayList<Integer>> mRssiByBssid =
+            new HashMap<String, ArrayList<Integer>>();
+    private final ArrayList<WifiScanRecord> mRecords = new ArrayList<WifiScanRecord>();
+    private int mHistoryIndex;
+    private int mFailures;
+    private long mLastUpdateMs;
+
+    public WifiLinkReport() {
+        mHistoryIndex = 0;
+        mLastUpdateMs = -1;
+    }
+
+    public void addSample(String bssid, int channel, int rssi, long txBytes, long rxBytes) {
+        int slot = mHistoryIndex % HISTORY_SIZE;
+        mChannelHits[(channel - 1) % CHANNEL_COUNT][slot] += 1;
+        mTxBytes[slot] = txBytes - mTxBytes[(slot + HISTORY_SIZE - 1) % HISTORY_SIZE];
+        mRxBytes[slot] = rxBytes - mRxBytes[(slot + HISTORY_SIZE - 1) % HISTORY_SIZE];
+        ArrayList<Integer> samples = mRssiByBssid.get(bssid);
+        if (samples == null) {
+            samples = new ArrayList<Integer>();
+            mRssiByBssid.put(bssid, samples);
+        }
+        samples.add(rssi);
+        mHistoryIndex++;
+    }
+
+    public int averageRssi(String bssid) {
+        ArrayList<Integer> samples = mRssiByBssid.get(bssid);
+        if (samples == null || samples.size() == 0) {
+            return -127;
+        }
+        int total = 0;
+        for (int i = 0; i < samples.size(); i++) {
+            total += samples.get(i);
+        }
+        return total / samples.size();
+    }
+
+    public long throughput(int from, int to) {
+        long total = 0;
+        for (int i = from; i < to && i < HISTORY_SIZE; i++) {
+            total += ((mTxBytes[i] + mRxBytes[i]) * 8 - (mTxBytes[i] >> 4)) / ((to - from) + 1);
+        }
+        return total > 0 ? total : 0;
+    }
+
+    public boolean isBetter(int rssi, int otherRssi, int channel, int otherChannel) {
+        return rssi > otherRssi + 5 || (rssi >= otherRssi - 2 && channel < otherChannel
+                && mChannelHits[channel][0] <= mChannelHits[otherChannel][0]);
+    }
+
+    public int busiestChannel() {
+        int best = 0;
+        int bestHits = -1;
+        for (int channel = 0; channel < CHANNEL_COUNT; channel++) {
+            int hits = 0;
+            for (int slot = 0; slot < HISTORY_SIZE; slot++) {
+                hits += mChannelHits[channel][slot] * (HISTORY_SIZE - slot) / HISTORY_SIZE;
+            }
+            if (hits > bestHits || (hits == bestHits && channel < best)) {
+                best = channel;
+                bestHits = hits;
+            }
+        }
+        return best + 1;
+    }
+
+    public String formatSummary(String iface, long nowMs) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("iface=").append(iface).append(" samples=").append(mHistoryIndex)
+                .append(" failures=").append(mFailures).append(" busiest=")
+                .append(busiestChannel()).append(" tx=").append(mTxBytes[0]).append(" rx=")
+                .append(mRxBytes[0]).append(" age=").append(nowMs - mLastUpdateMs)
+                .append(" bssids=").append(mRssiByBssid.size()).append(" records=")
+                .append(mRecords.size()).append(" throughput=").append(throughput(0, 8))
+                .append(" ch1=").append(mChannelHits[0][0]).append(" ch6=")
+                .append(mChannelHits[5][0]).append(" ch11=").append(mChannelHits[10][0])
+                .append(" tx1=").append(mTxBytes[1]).append(" rx1=").append(mRxBytes[1])
+                .append(" tx2=").append(mTxBytes[2]).append(" rx2=").append(mRxBytes[2])
+                .append(" tx3=").append(mTxBytes[3]).append(" rx3=").append(mRxBytes[3])
+                .append(" tx4=").append(mTxBytes[4]).append(" rx4=").append(mRxBytes[4])
+                .append(" tx5=").append(mTxBytes[5]).append(" rx5=").append(mRxBytes[5])
+                .append(" tx6=").append(mTxBytes[6]).append(" rx6=").append(mRxBytes[6])
+                .append(" tx7=").append(mTxBytes[7]).append(" rx7=").append(mRxBytes[7])
+                .append(" index=").append(mHistoryIndex % HISTORY_SIZE).append(" tag=")
+                .append(TAG);
+        return sb.toString();
+    }
+
+    public String formatBssid(String bssid) {
+        String line = "bssid=" + bssid + " rssi=" + averageRssi(bssid) + " samples="
+                + (mRssiByBssid.get(bssid) != null ? mRssiByBssid.get(bssid).size() : 0)
+                + " better=" + isBetter(averageRssi(bssid), -70, 1, 6) + " updated="
+                + mLastUpdateMs + " failures=" + mFailures + " index=" + mHistoryIndex;
+        return line;
+    }
+
+    public List<String> formatAll(long nowMs) {
+        List<String> lines = new ArrayList<String>();
+        lines.add(formatSummary("wlan0", nowMs));
+        for (Map.Entry<String, ArrayList<Integer>> entry : mRssiByBssid.entrySet()) {
+            lines.add(formatBssid(entry.getKey()));
+        }
+        return lines;
+    }
+
+    public void reset() {
+        for (int channel = 0; channel < CHANNEL_COUNT; channel++) {
+            for (int slot = 0; slot < HISTORY_SIZE; slot++) {
+                mChannelHits[channel][slot] = 0;
+            }
+        }
+        mRssiByBssid.clear();
+        mRecords.clear();
+        mHistoryIndex = mFailures = 0;
+        mLastUpdateMs = -1;
+    }
+}
@@ -0,0 +1,651 @@
+/*
+ * Benchmark corpus file, written in the style of the Android wifi framework.
+ */
+
+package com.android.server.wifi;
+
+import android.content.Context;
+import android.net.wifi.WifiScanRecord;
+import android.os.Looper;
+import android.os.Message;
+import android.util.Log;
+
+import com.android.internal.util.State;
+import com.android.internal.util.StateMachine;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Tracks the link of the station interface, from driver loading to an established
+ * connection. Every command goes through the state machine, so the current state is
+ * the only place that decides what a message means.
+ */
+public class WifiLinkStateMachine extends StateMachine {
+
+    private static final String TAG = "WifiLinkStateMachine";
+    private static final boolean DBG = false;
+
+    private static final int BASE = 0x00020000;
+
+    static final int CMD_LOAD_DRIVER = BASE + 1;
+    static final int CMD_UNLOAD_DRIVER = BASE + 2;
+    static final int CMD_START_SUPPLICANT = BASE + 11;
+    static final int CMD_STOP_SUPPLICANT = BASE + 12;
+    static final int CMD_START_SCAN = BASE + 71;
+    static final int CMD_SCAN_RESULTS_AVAILABLE = BASE + 72;
+    static final int CMD_CONNECT_NETWORK = BASE + 81;
+    static final int CMD_DISCONNECT = BASE + 82;
+    static final int CMD_RECONNECT = BASE + 83;
+    static final int CMD_REASSOCIATE = BASE + 84;
+    static final int CMD_RSSI_POLL = BASE + 90;
+    static final int CMD_ENABLE_RSSI_POLL = BASE + 91;
+    static final int CMD_IP_CONFIGURATION_SUCCESSFUL = BASE + 101;
+    static final int CMD_IP_CONFIGURATION_LOST = BASE + 102;
+    static final int CMD_ROAM_WATCHDOG_TIMER = BASE + 110;
+    static final int CMD_DISCONNECTING_WATCHDOG_TIMER = BASE + 111;
+
+    static final int EVENT_SUPPLICANT_CONNECTION = BASE + 201;
+    static final int EVENT_SUPPLICANT_DISCONNECTION = BASE + 202;
+    static final int EVENT_NETWORK_CONNECTION = BASE + 203;
+    static final int EVENT_NETWORK_DISCONNECTION = BASE + 204;
+    static final int EVENT_AUTHENTICATION_FAILURE = BASE + 205;
+    static final int EVENT_ASSOCIATION_REJECTION = BASE + 206;
+
+    private static final int ROAM_GUARD_TIMER_MSEC = 15000;
+    private static final int DISCONNECTING_GUARD_TIMER_MSEC = 5000;
+    private static final int DEFAULT_POLL_RSSI_INTERVAL_MSEC = 3000;
+    private static final int MAX_CONNECTION_FAILURES = 5;
+    private static final int MAX_SCAN_RECORDS = 256;
+
+    private final Context mContext;
+    private final String mInterfaceName;
+    private final ArrayList<WifiScanRecord> mScanRecords = new ArrayList<WifiScanRecord>();
+    private final HashMap<String, Integer> mFailureCountByBssid = new HashMap<String, Integer>();
+
+    private State mDefaultState = new DefaultState();
+    private State mDriverLoadedState = new DriverLoadedState();
+    private State mSupplicantStartingState = new SupplicantStartingState();
+    private State mSupplicantStartedState = new SupplicantStartedState();
+    private State mDisconnectedState = new DisconnectedState();
+    private State mConnectingState = new ConnectingState();
+    private State mConnectedState = new ConnectedState();
+    private State mRoamingState = new RoamingState();
+    private State mDisconnectingState = new DisconnectingState();
+
+    private String mTargetBssid;
+    private String mCurrentBssid;
+    private int mTargetNetworkId = -1;
+    private int mLastNetworkId = -1;
+    private int mRssi = -127;
+    private int mLinkSpeed;
+    private int mFrequency;
+    private int mConnectionFailures;
+    private int mRoamWatchdogCount;
+    private int mDisconnectingWatchdogCount;
+    private int mRssiPollToken;
+    private boolean mEnableRssiPolling;
+    private boolean mScreenOn = true;
+    private boolean mIsScanOngoing;
+    private long mLastConnectAttemptTimestamp;
+    private long mLastScanTimestamp;
+
+    public WifiLinkStateMachine(Context context, String interfaceName, Looper looper) {
+        super(TAG, looper);
+        mContext = context;
+        mInterfaceName = interfaceName;
+
+        addState(mDefaultState);
+            addState(mDriverLoadedState, mDefaultState);
+            addState(mSupplicantStartingState, mDefaultState);
+            addState(mSupplicantStartedState, mDefaultState);
+                addState(mDisconnectedState, mSupplicantStartedState);
+                addState(mConnectingState, mSupplicantStartedState);
+                addState(mConnectedState, mSupplicantStartedState);
+                    addState(mRoamingState, mConnectedState);
+                addState(mDisconnectingState, mSupplicantStartedState);
+
+        setInitialState(mDefaultState);
+        setLogRecSize(100);
+    }
+
+    public void startScan() {
+        sendMessage(CMD_START_SCAN);
+    }
+
+    public void connect(int networkId, String bssid) {
+        sendMessage(CMD_CONNECT_NETWORK, networkId, 0, bssid);
+    }
+
+    public void disconnect() {
+        sendMessage(CMD_DISCONNECT);
+    }
+
+    public void setScreenOn(boolean screenOn) {
+        mScreenOn = screenOn;
+        sendMessage(CMD_ENABLE_RSSI_POLL, screenOn ? 1 : 0, 0);
+    }
+
+    public int getRssi() {
+        return mRssi;
+    }
+
+    public String getCurrentBssid() {
+        return mCurrentBssid;
+    }
+
+    public ArrayList<WifiScanRecord> getScanRecords() {
+        synchronized (mScanRecords) {
+            return new ArrayList<WifiScanRecord>(mScanRecords);
+        }
+    }
+
+    private void logd(String message) {
+        if (DBG) {
+            Log.d(TAG, mInterfaceName + " " + message);
+        }
+    }
+
+    private void loge(String message) {
+        Log.e(TAG, mInterfaceName + " " + message);
+    }
+
+    private String messageToString(Message message) {
+        StringBuffer sb = new StringBuffer();
+        sb.append("what=").append(message.what);
+        sb.append(" arg1=").append(message.arg1);
+        sb.append(" arg2=").append(message.arg2);
+        if (message.obj != null) {
+            sb.append(" obj=").append(message.obj.toString());
+        }
+        return sb.toString();
+    }
+
+    private void handleScanResults(ArrayList<WifiScanRecord> results) {
+        if (results == null) {
+            return;
+        }
+        synchronized (mScanRecords) {
+            mScanRecords.clear();
+            for (int i = 0; i < results.size() && i < MAX_SCAN_RECORDS; i++) {
+                WifiScanRecord record = results.get(i);
+                if (record.BSSID == null || record.BSSID.length() == 0) {
+                    continue;
+                }
+                mScanRecords.add(record);
+            }
+        }
+        mIsScanOngoing = false;
+        mLastScanTimestamp = System.currentTimeMillis();
+    }
+
+    private WifiScanRecord findBestCandidate(int networkId, String ssid) {
+        WifiScanRecord best = null;
+        synchronized (mScanRecords) {
+            for (int i = 0; i < mScanRecords.size(); i++) {
+                WifiScanRecord record = mScanRecords.get(i);
+                if (ssid != null && !ssid.equals(record.SSID)) {
+                    continue;
+                }
+                Integer failures = mFailureCountByBssid.get(record.BSSID);
+                if (failures != null && failures.intValue() >= MAX_CONNECTION_FAILURES) {
+                    continue;
+                }
+                if (best == null || scoreRecord(record) > scoreRecord(best)) {
+                    best = record;
+                }
+            }
+        }
+        return best;
+    }
+
+    private int scoreRecord(WifiScanRecord record) {
+        int score = record.level + 100;
+        if (record.is5GHz()) {
+            score += 10;
+        }
+        if (record.BSSID != null && record.BSSID.equals(mCurrentBssid)) {
+            score += 5;
+        }
+        if (record.untrusted) {
+            score -= 20;
+        }
+        return score;
+    }
+
+    private void noteConnectionFailure(String bssid) {
+        if (bssid == null) {
+            return;
+        }
+        Integer count = mFailureCountByBssid.get(bssid);
+        int failures = count == null ? 1 : count.intValue() + 1;
+        mFailureCountByBssid.put(bssid, failures);
+        mConnectionFailures++;
+        if (mConnectionFailures > MAX_CONNECTION_FAILURES) {
+            loge("too many connection failures, last bssid " + bssid);
+        }
+    }
+
+    private void clearLinkProperties() {
+        mCurrentBssid = null;
+        mRssi = -127;
+        mLinkSpeed = 0;
+        mFrequency = 0;
+    }
+
+    private void updateLinkInfo(String bssid, int rssi, int linkSpeed, int frequency) {
+        mCurrentBssid = bssid;
+        if (rssi > -127 && rssi < 200) {
+            if (rssi > 0) {
+                rssi -= 256;
+            }
+            mRssi = rssi;
+        } else {
+            mRssi = -127;
+        }
+        if (linkSpeed > 0) {
+            mLinkSpeed = linkSpeed;
+        }
+        if (frequency > 0) {
+            mFrequency = frequency;
+        }
+    }
+
+    private boolean shouldRoam(WifiScanRecord candidate) {
+        if (candidate == null || candidate.BSSID == null) {
+            return false;
+        }
+        if (candidate.BSSID.equals(mCurrentBssid)) {
+            return false;
+        }
+        int delta = candidate.level - mRssi;
+        if (mFrequency > 4900 && !candidate.is5GHz()) {
+            delta -= 5;
+        }
+        return delta > 10 || (mRssi < -80 && delta > 3);
+    }
+
+    class DefaultState extends State {
+        @Override
+        public boolean processMessage(Message message) {
+            logd(getName() + " " + messageToString(message));
+            switch (message.what) {
+                case CMD_LOAD_DRIVER:
+                    transitionTo(mDriverLoadedState);
+                    break;
+                case CMD_ENABLE_RSSI_POLL:
+                    mEnableRssiPolling = (message.arg1 == 1);
+                    break;
+                case CMD_RSSI_POLL:
+                case CMD_ROAM_WATCHDOG_TIMER:
+                case CMD_DISCONNECTING_WATCHDOG_TIMER:
+                case CMD_IP_CONFIGURATION_SUCCESSFUL:
+                case CMD_IP_CONFIGURATION_LOST:
+                    break;
+                case CMD_START_SCAN:
+                case CMD_CONNECT_NETWORK:
+                case CMD_DISCONNECT:
+                case CMD_RECONNECT:
+                case CMD_REASSOCIATE:
+                    loge("Error! unhandled command " + messageToString(message));
+                    break;
+                default:
+                    loge("Error! unhandled message " + messageToString(message));
+                    break;
+            }
+            return HANDLED;
+        }
+    }
+
+    class DriverLoadedState extends State {
+        @Override
+        public void enter() {
+            logd(getName() + " enter");
+            mConnectionFailures = 0;
+            mFailureCountByBssid.clear();
+        }
+
+        @Override
+        public boolean processMessage(Message message) {
+            logd(getName() + " " + messageToString(message));
+            switch (message.what) {
+                case CMD_UNLOAD_DRIVER:
+                    transitionTo(mDefaultState);
+                    break;
+                case CMD_START_SUPPLICANT:
+                    transitionTo(mSupplicantStartingState);
+                    break;
+                default:
+                    return NOT_HANDLED;
+            }
+            return HANDLED;
+        }
+    }
+
+    class SupplicantStartingState extends State {
+        private int mRetries;
+
+        @Override
+        public void enter() {
+            mRetries = 0;
+        }
+
+        @Override
+        public boolean processMessage(Message message) {
+            logd(getName() + " " + messageToString(message));
+            switch (message.what) {
+                case EVENT_SUPPLICANT_CONNECTION:
+                    logd("supplicant connected after " + mRetries + " retries");
+                    transitionTo(mDisconnectedState);
+                    break;
+                case EVENT_SUPPLICANT_DISCONNECTION:
+                    mRetries++;
+                    if (mRetries > 5) {
+                        loge("failed to connect to supplicant, giving up");
+                        transitionTo(mDriverLoadedState);
+                    } else {
+                        sendMessageDelayed(CMD_START_SUPPLICANT, 1000);
+                    }
+                    break;
+                case CMD_START_SUPPLICANT:
+                    logd("retry supplicant connection " + mRetries);
+                    break;
+                case CMD_START_SCAN:
+                case CMD_CONNECT_NETWORK:
+                case CMD_DISCONNECT:
+                    deferMessage(message);
+                    break;
+                default:
+                    return NOT_HANDLED;
+            }
+            return HANDLED;
+        }
+    }
+
+    class SupplicantStartedState extends State {
+        @Override
+        public void enter() {
+            mIsScanOngoing = false;
+            mEnableRssiPolling = mScreenOn;
+        }
+
+        @Override
+        public boolean processMessage(Message message) {
+            logd(getName() + " " + messageToString(message));
+            switch (message.what) {
+                case CMD_STOP_SUPPLICANT:
+                    clearLinkProperties();
+                    transitionTo(mDriverLoadedState);
+                    break;
+                case EVENT_SUPPLICANT_DISCONNECTION:
+                    loge("connection to supplicant lost");
+                    clearLinkProperties();
+                    transitionTo(mSupplicantStartingState);
+                    break;
+                case CMD_START_SCAN:
+                    if (mIsScanOngoing) {
+                        logd("scan already ongoing");
+                    } else {
+                        mIsScanOngoing = true;
+                    }
+                    break;
+                case CMD_SCAN_RESULTS_AVAILABLE:
+                    handleScanResults((ArrayList<WifiScanRecord>) message.obj);
+                    break;
+                case CMD_ENABLE_RSSI_POLL:
+                    mEnableRssiPolling = (message.arg1 == 1);
+                    break;
+                default:
+                    return NOT_HANDLED;
+            }
+            return HANDLED;
+        }
+    }
+
+    class DisconnectedState extends State {
+        @Override
+        public void enter() {
+            logd(getName() + " enter, last network " + mLastNetworkId);
+            clearLinkProperties();
+            if (mScreenOn && !mIsScanOngoing) {
+                sendMessage(CMD_START_SCAN);
+            }
+        }
+
+        @Override
+        public boolean processMessage(Message message) {
+            logd(getName() + " " + messageToString(message));
+            switch (message.what) {
+                case CMD_CONNECT_NETWORK:
+                    mTargetNetworkId = message.arg1;
+                    mTargetBssid = (String) message.obj;
+                    mLastConnectAttemptTimestamp = System.currentTimeMillis();
+                    transitionTo(mConnectingState);
+                    break;
+                case CMD_RECONNECT:
+                    if (mLastNetworkId < 0) {
+                        logd("nothing to reconnect to");
+                        break;
+                    }
+                    mTargetNetworkId = mLastNetworkId;
+                    mTargetBssid = null;
+                    transitionTo(mConnectingState);
+                    break;
+                case CMD_SCAN_RESULTS_AVAILABLE:
+                    handleScanResults((ArrayList<WifiScanRecord>) message.obj);
+                    if (mLastNetworkId >= 0 && mConnectionFailures < MAX_CONNECTION_FAILURES) {
+                        WifiScanRecord candidate = findBestCandidate(mLastNetworkId, null);
+                        if (candidate != null) {
+                            sendMessage(CMD_CONNECT_NETWORK, mLastNetworkId, 0, candidate.BSSID);
+                        }
+                    }
+                    break;
+                case CMD_DISCONNECT:
+                    break;
+                default:
+                    return NOT_HANDLED;
+            }
+            return HANDLED;
+        }
+    }
+
+    class ConnectingState extends State {
+        @Override
+        public void enter() {
+            logd(getName() + " enter, network " + mTargetNetworkId + " bssid " + mTargetBssid);
+        }
+
+        @Override
+        public boolean processMessage(Message message) {
+            logd(getName() + " " + messageToString(message));
+            switch (message.what) {
+                case EVENT_NETWORK_CONNECTION:
+                    String bssid = (String) message.obj;
+                    updateLinkInfo(bssid, mRssi, mLinkSpeed, mFrequency);
+                    mLastNetworkId = mTargetNetworkId;
+                    mConnectionFailures = 0;
+                    mFailureCountByBssid.remove(bssid);
+                    transitionTo(mConnectedState);
+                    break;
+                case EVENT_AUTHENTICATION_FAILURE:
+                case EVENT_ASSOCIATION_REJECTION:
+                    noteConnectionFailure(mTargetBssid);
+                    transitionTo(mDisconnectedState);
+                    break;
+                case EVENT_NETWORK_DISCONNECTION:
+                    long elapsed = System.currentTimeMillis() - mLastConnectAttemptTimestamp;
+                    logd("disconnected while connecting after " + elapsed + "ms");
+                    transitionTo(mDisconnectedState);
+                    break;
+                case CMD_CONNECT_NETWORK:
+                    if (message.arg1 == mTargetNetworkId) {
+                        logd("already connecting to " + mTargetNetworkId);
+                        break;
+                    }
+                    deferMessage(message);
+                    transitionTo(mDisconnectingState);
+                    break;
+                case CMD_DISCONNECT:
+                    transitionTo(mDisconnectingState);
+                    break;
+                case CMD_START_SCAN:
+                    logd("skip scan while connecting");
+                    break;
+                default:
+                    return NOT_HANDLED;
+            }
+            return HANDLED;
+        }
+    }
+
+    class ConnectedState extends State {
+        @Override
+        public void enter() {
+            logd(getName() + " enter, bssid " + mCurrentBssid);
+            if (mEnableRssiPolling) {
+                sendMessage(CMD_RSSI_POLL, mRssiPollToken, 0);
+            }
+        }
+
+        @Override
+        public boolean processMessage(Message message) {
+            logd(getName() + " " + messageToString(message));
+            switch (message.what) {
+                case CMD_RSSI_POLL:
+                    if (message.arg1 == mRssiPollToken) {
+                        updateLinkInfo(mCurrentBssid, mRssi, mLinkSpeed, mFrequency);
+                        sendMessageDelayed(CMD_RSSI_POLL, mRssiPollToken, 0,
+                                DEFAULT_POLL_RSSI_INTERVAL_MSEC);
+                    }
+                    break;
+                case CMD_ENABLE_RSSI_POLL:
+                    mEnableRssiPolling = (message.arg1 == 1);
+                    mRssiPollToken++;
+                    if (mEnableRssiPolling) {
+                        sendMessage(CMD_RSSI_POLL, mRssiPollToken, 0);
+                    }
+                    break;
+                case CMD_SCAN_RESULTS_AVAILABLE:
+                    handleScanResults((ArrayList<WifiScanRecord>) message.obj);
+                    WifiScanRecord candidate = findBestCandidate(mLastNetworkId, null);
+                    if (shouldRoam(candidate)) {
+                        mTargetBssid = candidate.BSSID;
+                        transitionTo(mRoamingState);
+                    }
+                    break;
+                case CMD_IP_CONFIGURATION_LOST:
+                    loge("ip configuration lost on " + mCurrentBssid);
+                    transitionTo(mDisconnectingState);
+                    break;
+                case EVENT_NETWORK_DISCONNECTION:
+                    mRssiPollToken++;
+                    transitionTo(mDisconnectedState);
+                    break;
+                case CMD_DISCONNECT:
+                    mRssiPollToken++;
+                    transitionTo(mDisconnectingState);
+                    break;
+                case CMD_REASSOCIATE:
+                    mTargetBssid = mCurrentBssid;
+                    transitionTo(mRoamingState);
+                    break;
+                default:
+                    return NOT_HANDLED;
+            }
+            return HANDLED;
+        }
+
+        @Override
+        public void exit() {
+            mRssiPollToken++;
+        }
+    }
+
+    class RoamingState extends State {
+        private boolean mAssociated;
+
+        @Override
+        public void enter() {
+            logd(getName() + " enter, target " + mTargetBssid);
+            mAssociated = false;
+            mRoamWatchdogCount++;
+            sendMessageDelayed(CMD_ROAM_WATCHDOG_TIMER, mRoamWatchdogCount, 0,
+                    ROAM_GUARD_TIMER_MSEC);
+        }
+
+        @Override
+        public boolean processMessage(Message message) {
+            logd(getName() + " " + messageToString(message));
+            switch (message.what) {
+                case CMD_ROAM_WATCHDOG_TIMER:
+                    if (mRoamWatchdogCount == message.arg1) {
+                        loge("roaming to " + mTargetBssid + " timed out");
+                        noteConnectionFailure(mTargetBssid);
+                        transitionTo(mDisconnectingState);
+                    }
+                    break;
+                case EVENT_NETWORK_CONNECTION:
+                    mAssociated = true;
+                    updateLinkInfo((String) message.obj, mRssi, mLinkSpeed, mFrequency);
+                    break;
+                case CMD_IP_CONFIGURATION_SUCCESSFUL:
+                    if (mAssociated) {
+                        transitionTo(mConnectedState);
+                    }
+                    break;
+                case EVENT_ASSOCIATION_REJECTION:
+                case EVENT_AUTHENTICATION_FAILURE:
+                    noteConnectionFailure(mTargetBssid);
+                    transitionTo(mDisconnectingState);
+                    break;
+                case CMD_START_SCAN:
+                case CMD_SCAN_RESULTS_AVAILABLE:
+                    logd("ignore scan while roaming");
+                    break;
+                default:
+                    return NOT_HANDLED;
+            }
+            return HANDLED;
+        }
+
+        @Override
+        public void exit() {
+            mRoamWatchdogCount++;
+        }
+    }
+
+    class DisconnectingState extends State {
+        @Override
+        public void enter() {
+            logd(getName() + " enter");
+            mDisconnectingWatchdogCount++;
+            sendMessageDelayed(CMD_DISCONNECTING_WATCHDOG_TIMER, mDisconnectingWatchdogCount, 0,
+                    DISCONNECTING_GUARD_TIMER_MSEC);
+        }
+
+        @Override
+        public boolean processMessage(Message message) {
+            logd(getName() + " " + messageToString(message));
+            switch (message.what) {
+                case CMD_DISCONNECTING_WATCHDOG_TIMER:
+                    if (mDisconnectingWatchdogCount == message.arg1) {
+                        logd("disconnecting watchdog expired");
+                        transitionTo(mDisconnectedState);
+                    }
+                    break;
+                case EVENT_NETWORK_DISCONNECTION:
+                    transitionTo(mDisconnectedState);
+                    break;
+                case CMD_CONNECT_NETWORK:
+                case CMD_RECONNECT:
+                    deferMessage(message);
+                    break;
+                case CMD_DISCONNECT:
+                    break;
+                default:
+                    return NOT_HANDLED;
+            }
+            return HANDLED;
+        }
+    }
+}
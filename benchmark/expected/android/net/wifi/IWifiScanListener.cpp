@@ -0,0 +1,142 @@
+#include <net/wifi/WifiScanRecord.h>
+#include "IWifiScanListener.h"
+
+using net::wifi::WifiScanRecord;
+
+namespace net {
+namespace wifi {
+const char IWifiScanListener::Stub::DESCRIPTOR[] = "android.net.wifi.IWifiScanListener";
+
+IWifiScanListener::Stub::Stub()
+{
+    attachInterface(this, DESCRIPTOR);
+}
+
+IWifiScanListener* IWifiScanListener::Stub::asInterface(const sp<IBinder>& obj)
+{
+    if (obj == nullptr) {
+        return nullptr;
+    }
+    IWifiScanListener* iin = obj->queryLocalInterface(DESCRIPTOR);
+    if (iin != nullptr && ptrIsType(iin, IWifiScanListener)) {
+        return static_cast<IWifiScanListener*>(iin);
+    }
+    return new Proxy(obj);
+}
+
+IBinder* IWifiScanListener::Stub::asBinder()
+{
+    return this;
+}
+
+bool IWifiScanListener::Stub::onTransact(int code, Parcel& _data, Parcel* _reply, int flags)
+{
+    switch(code) {
+    case INTERFACE_TRANSACTION: {
+        _reply->writeString(DESCRIPTOR);
+        return true;
+    }
+    case TRANSACTION_onScanStarted: {
+        _data.enforceInterface(DESCRIPTOR);
+        int requestId = _data.readInt();
+        onScanStarted(requestId);
+        return true;
+    }
+    case TRANSACTION_onPartialResults: {
+        _data.enforceInterface(DESCRIPTOR);
+        int requestId = _data.readInt();
+        ArrayList<sp<WifiScanRecord>>& results = _data.createTypedArrayList(WifiScanRecord::CREATOR);
+        onPartialResults(requestId, results);
+        return true;
+    }
+    case TRANSACTION_onScanFinished: {
+        _data.enforceInterface(DESCRIPTOR);
+        int requestId = _data.readInt();
+        sp<WifiScanRecord> results;
+        if (0 != _data.readInt()) {
+            results = WifiScanRecord::CREATOR.createFromParcel(_data);
+        }
+        onScanFinished(requestId, results);
+        return true;
+    }
+    case TRANSACTION_onScanFailed: {
+        _data.enforceInterface(DESCRIPTOR);
+        int requestId = _data.readInt();
+        int reason = _data.readInt();
+        String description = _data.readString();
+        onScanFailed(requestId, reason, description);
+        return true;
+    }
+    }
+    return Binder::onTransact(code, _data, _reply, flags);
+}
+
+IWifiScanListener::Stub::Proxy::Proxy(const sp<IBinder>& remote)
+{
+    mRemote = remote;
+}
+
+IBinder* IWifiScanListener::Stub::Proxy::asBinder()
+{
+    return mRemote.get();
+}
+
+String IWifiScanListener::Stub::Proxy::getInterfaceDescriptor()
+{
+    return DESCRIPTOR;
+}
+
+void IWifiScanListener::Stub::Proxy::onScanStarted(int requestId)
+{
+    Parcel& _data = Parcel::obtain();
+    defer {
+        _data.recycle();
+    };
+    _data.writeInterfaceToken(DESCRIPTOR);
+    _data.writeInt(requestId);
+    mRemote->transact(Stub::TRANSACTION_onScanStarted, _data, nullptr, 0);
+}
+
+void IWifiScanListener::Stub::Proxy::onPartialResults(int requestId, ArrayList<sp<WifiScanRecord>>& results)
+{
+    Parcel& _data = Parcel::obtain();
+    defer {
+        _data.recycle();
+    };
+    _data.writeInterfaceToken(DESCRIPTOR);
+    _data.writeInt(requestId);
+    _data.writeTypedList(results);
+    mRemote->transact(Stub::TRANSACTION_onPartialResults, _data, nullptr, 0);
+}
+
+void IWifiScanListener::Stub::Proxy::onScanFinished(int requestId, Array<sp<WifiScanRecord>>& results)
+{
+    Parcel& _data = Parcel::obtain();
+    defer {
+        _data.recycle();
+    };
+    _data.writeInterfaceToken(DESCRIPTOR);
+    _data.writeInt(requestId);
+    if (results != nullptr) {
+        _data.writeInt(1);
+        results->writeToParcel(_data, 0);
+    } else {
+        _data.writeInt(0);
+    }
+    mRemote->transact(Stub::TRANSACTION_onScanFinished, _data, nullptr, 0);
+}
+
+void IWifiScanListener::Stub::Proxy::onScanFailed(int requestId, int reason, const String& description)
+{
+    Parcel& _data = Parcel::obtain();
+    defer {
+        _data.recycle();
+    };
+    _data.writeInterfaceToken(DESCRIPTOR);
+    _data.writeInt(requestId);
+    _data.writeInt(reason);
+    _data.writeString(description);
+    mRemote->transact(Stub::TRANSACTION_onScanFailed, _data, nullptr, 0);
+}
+}
+}
@@ -0,0 +1,67 @@
+#pragma once
+
+#include <net/wifi/WifiScanRecord.h>
+
+using net::wifi::WifiScanRecord;
+
+namespace net {
+namespace wifi {
+
+class IWifiScanListener : public IInterface {
+  public:
+    class Stub;
+
+    virtual void onScanStarted(int requestId) = 0;
+
+    virtual void onPartialResults(int requestId, ArrayList<sp<WifiScanRecord>>& results) = 0;
+
+    virtual void onScanFinished(int requestId, Array<sp<WifiScanRecord>>& results) = 0;
+
+    virtual void onScanFailed(int requestId, int reason, const String& description) = 0;
+};
+
+class IWifiScanListener::Stub : public Binder,
+    public IWifiScanListener {
+  private:
+    static const char DESCRIPTOR[];
+
+  public:
+    Stub();
+
+    static IWifiScanListener* asInterface(const sp<IBinder>& obj);
+
+    IBinder* asBinder() override;
+
+    bool onTransact(int code, Parcel& _data, Parcel* _reply, int flags) override;
+
+  private:
+    class Proxy;
+    friend class Proxy;
+
+    static const int TRANSACTION_onScanStarted = IBinder::FIRST_CALL_TRANSACTION + 0;
+    static const int TRANSACTION_onPartialResults = IBinder::FIRST_CALL_TRANSACTION + 1;
+    static const int TRANSACTION_onScanFinished = IBinder::FIRST_CALL_TRANSACTION + 2;
+    static const int TRANSACTION_onScanFailed = IBinder::FIRST_CALL_TRANSACTION + 3;
+};
+
+class IWifiScanListener::Stub::Proxy : public IWifiScanListener {
+  private:
+    sp<IBinder> mRemote;
+
+  public:
+    Proxy(const sp<IBinder>& remote);
+
+    IBinder* asBinder() override;
+
+    String getInterfaceDescriptor();
+
+    void onScanStarted(int requestId) override;
+
+    void onPartialResults(int requestId, ArrayList<sp<WifiScanRecord>>& results) override;
+
+    void onScanFinished(int requestId, Array<sp<WifiScanRecord>>& results) override;
+
+    void onScanFailed(int requestId, int reason, const String& description) override;
+};
+}
+}
@@ -0,0 +1,309 @@
+#include <net/wifi/IWifiScanListener.h>
+#include <net/wifi/WifiScanRecord.h>
+#include <os/Bundle.h> // FIXME: this header is missing
+#include "IWifiScanService.h"
+
+using net::wifi::IWifiScanListener;
+using net::wifi::WifiScanRecord;
+using os::Bundle;
+
+namespace net {
+namespace wifi {
+const char IWifiScanService::Stub::DESCRIPTOR[] = "android.net.wifi.IWifiScanService";
+
+IWifiScanService::Stub::Stub()
+{
+    attachInterface(this, DESCRIPTOR);
+}
+
+IWifiScanService* IWifiScanService::Stub::asInterface(const sp<IBinder>& obj)
+{
+    if (obj == nullptr) {
+        return nullptr;
+    }
+    IWifiScanService* iin = obj->queryLocalInterface(DESCRIPTOR);
+    if (iin != nullptr && ptrIsType(iin, IWifiScanService)) {
+        return static_cast<IWifiScanService*>(iin);
+    }
+    return new Proxy(obj);
+}
+
+IBinder* IWifiScanService::Stub::asBinder()
+{
+    return this;
+}
+
+bool IWifiScanService::Stub::onTransact(int code, Parcel& _data, Parcel* _reply, int flags)
+{
+    switch(code) {
+    case INTERFACE_TRANSACTION: {
+        _reply->writeString(DESCRIPTOR);
+        return true;
+    }
+    case TRANSACTION_startScan: {
+        _data.enforceInterface(DESCRIPTOR);
+        sp<Bundle> settings;
+        if (0 != _data.readInt()) {
+            settings = Bundle::CREATOR.createFromParcel(_data);
+        }
+        sp<IWifiScanListener> listener = IWifiScanListener::Stub::asInterface(_data.readStrongBinder());
+        int _res = startScan(settings.get(), listener.get());
+        _reply->writeNoException();
+        _reply->writeInt(_res);
+        return true;
+    }
+    case TRANSACTION_stopScan: {
+        _data.enforceInterface(DESCRIPTOR);
+        int requestId = _data.readInt();
+        bool _res = stopScan(requestId);
+        _reply->writeNoException();
+        _reply->writeInt(_res ? 1 : 0);
+        return true;
+    }
+    case TRANSACTION_getScanResults: {
+        _data.enforceInterface(DESCRIPTOR);
+        String callingPackage = _data.readString();
+        ArrayList<sp<WifiScanRecord>> _res = getScanResults(callingPackage);
+        _reply->writeNoException();
+        _reply->writeTypedList(_res);
+        return true;
+    }
+    case TRANSACTION_getBestRecord: {
+        _data.enforceInterface(DESCRIPTOR);
+        String ssid = _data.readString();
+        int minimumLevel = _data.readInt();
+        sp<WifiScanRecord> _res = getBestRecord(ssid, minimumLevel);
+        _reply->writeNoException();
+        if (_res != nullptr) {
+            _reply->writeInt(1);
+            _res->writeToParcel(*_reply, 0);
+        } else {
+            _reply->writeInt(0);
+        }
+        return true;
+    }
+    case TRANSACTION_getAvailableChannels: {
+        _data.enforceInterface(DESCRIPTOR);
+        int band = _data.readInt();
+        Array<int> _res = getAvailableChannels(band);
+        _reply->writeNoException();
+        _reply->writeInt(_res);
+        return true;
+    }
+    case TRANSACTION_setScanInterval: {
+        _data.enforceInterface(DESCRIPTOR);
+        int intervalMillis = _data.readInt();
+        bool persist = (_data.readInt() != 0);
+        setScanInterval(intervalMillis, persist);
+        return true;
+    }
+    case TRANSACTION_isScanAlwaysAvailable: {
+        _data.enforceInterface(DESCRIPTOR);
+        bool _res = isScanAlwaysAvailable();
+        _reply->writeNoException();
+        _reply->writeInt(_res ? 1 : 0);
+        return true;
+    }
+    case TRANSACTION_registerListener: {
+        _data.enforceInterface(DESCRIPTOR);
+        sp<IWifiScanListener> listener = IWifiScanListener::Stub::asInterface(_data.readStrongBinder());
+        registerListener(listener.get());
+        return true;
+    }
+    case TRANSACTION_unregisterListener: {
+        _data.enforceInterface(DESCRIPTOR);
+        sp<IWifiScanListener> listener = IWifiScanListener::Stub::asInterface(_data.readStrongBinder());
+        unregisterListener(listener.get());
+        return true;
+    }
+    case TRANSACTION_getScanStatistics: {
+        _data.enforceInterface(DESCRIPTOR);
+        Bundle details;
+        String _res = getScanStatistics(details.get());
+        if (details != nullptr) {
+            _reply->writeInt(1);
+            details->writeToParcel(*_reply, 0);
+        } else {
+            _reply->writeInt(0);
+        }
+        _reply->writeNoException();
+        _reply->writeString(_res);
+        return true;
+    }
+    }
+    return Binder::onTransact(code, _data, _reply, flags);
+}
+
+IWifiScanService::Stub::Proxy::Proxy(const sp<IBinder>& remote)
+{
+    mRemote = remote;
+}
+
+IBinder* IWifiScanService::Stub::Proxy::asBinder()
+{
+    return mRemote.get();
+}
+
+String IWifiScanService::Stub::Proxy::getInterfaceDescriptor()
+{
+    return DESCRIPTOR;
+}
+
+int IWifiScanService::Stub::Proxy::startScan(Bundle* settings, IWifiScanListener* listener)
+{
+    Parcel& _data = Parcel::obtain();
+    Parcel& _reply = Parcel::obtain();
+    defer {
+        _data.recycle();
+        _reply.recycle();
+    };
+    _data.writeInterfaceToken(DESCRIPTOR);
+    if (settings != nullptr) {
+        _data.writeInt(1);
+        settings->writeToParcel(_data, 0);
+    } else {
+        _data.writeInt(0);
+    }
+    _data.writeStrongBinder((listener != nullptr) ? listener->asBinder() : nullptr);
+    mRemote->transact(Stub::TRANSACTION_startScan, _data, &_reply, 0);
+    _reply.readException();
+    int _res = _reply.readInt();
+    return _res;
+}
+
+bool IWifiScanService::Stub::Proxy::stopScan(int requestId)
+{
+    Parcel& _data = Parcel::obtain();
+    Parcel& _reply = Parcel::obtain();
+    defer {
+        _data.recycle();
+        _reply.recycle();
+    };
+    _data.writeInterfaceToken(DESCRIPTOR);
+    _data.writeInt(requestId);
+    mRemote->transact(Stub::TRANSACTION_stopScan, _data, &_reply, 0);
+    _reply.readException();
+    bool _res = (_reply.readInt() != 0);
+    return _res;
+}
+
+ArrayList<sp<WifiScanRecord>> IWifiScanService::Stub::Proxy::getScanResults(const String& callingPackage)
+{
+    Parcel& _data = Parcel::obtain();
+    Parcel& _reply = Parcel::obtain();
+    defer {
+        _data.recycle();
+        _reply.recycle();
+    };
+    _data.writeInterfaceToken(DESCRIPTOR);
+    _data.writeString(callingPackage);
+    mRemote->transact(Stub::TRANSACTION_getScanResults, _data, &_reply, 0);
+    _reply.readException();
+    ArrayList<sp<WifiScanRecord>> _res = _reply.createTypedArrayList(WifiScanRecord::CREATOR);
+    return _res;
+}
+
+sp<WifiScanRecord> IWifiScanService::Stub::Proxy::getBestRecord(const String& ssid, int minimumLevel)
+{
+    Parcel& _data = Parcel::obtain();
+    Parcel& _reply = Parcel::obtain();
+    defer {
+        _data.recycle();
+        _reply.recycle();
+    };
+    _data.writeInterfaceToken(DESCRIPTOR);
+    _data.writeString(ssid);
+    _data.writeInt(minimumLevel);
+    mRemote->transact(Stub::TRANSACTION_getBestRecord, _data, &_reply, 0);
+    _reply.readException();
+    sp<WifiScanRecord> _res;
+    if (0 != _data.readInt()) {
+        _res = WifiScanRecord::CREATOR.createFromParcel(_data);
+    }
+    return _res;
+}
+
+Array<int> IWifiScanService::Stub::Proxy::getAvailableChannels(int band)
+{
+    Parcel& _data = Parcel::obtain();
+    Parcel& _reply = Parcel::obtain();
+    defer {
+        _data.recycle();
+        _reply.recycle();
+    };
+    _data.writeInterfaceToken(DESCRIPTOR);
+    _data.writeInt(band);
+    mRemote->transact(Stub::TRANSACTION_getAvailableChannels, _data, &_reply, 0);
+    _reply.readException();
+    int _res = _reply.readInt();
+    return _res;
+}
+
+void IWifiScanService::Stub::Proxy::setScanInterval(int intervalMillis, bool persist)
+{
+    Parcel& _data = Parcel::obtain();
+    defer {
+        _data.recycle();
+    };
+    _data.writeInterfaceToken(DESCRIPTOR);
+    _data.writeInt(intervalMillis);
+    _data.writeInt(persist ? 1 : 0);
+    mRemote->transact(Stub::TRANSACTION_setScanInterval, _data, nullptr, 0);
+}
+
+bool IWifiScanService::Stub::Proxy::isScanAlwaysAvailable()
+{
+    Parcel& _data = Parcel::obtain();
+    Parcel& _reply = Parcel::obtain();
+    defer {
+        _data.recycle();
+        _reply.recycle();
+    };
+    _data.writeInterfaceToken(DESCRIPTOR);
+    mRemote->transact(Stub::TRANSACTION_isScanAlwaysAvailable, _data, &_reply, 0);
+    _reply.readException();
+    bool _res = (_reply.readInt() != 0);
+    return _res;
+}
+
+void IWifiScanService::Stub::Proxy::registerListener(IWifiScanListener* listener)
+{
+    Parcel& _data = Parcel::obtain();
+    defer {
+        _data.recycle();
+    };
+    _data.writeInterfaceToken(DESCRIPTOR);
+    _data.writeStrongBinder((listener != nullptr) ? listener->asBinder() : nullptr);
+    mRemote->transact(Stub::TRANSACTION_registerListener, _data, nullptr, 0);
+}
+
+void IWifiScanService::Stub::Proxy::unregisterListener(IWifiScanListener* listener)
+{
+    Parcel& _data = Parcel::obtain();
+    defer {
+        _data.recycle();
+    };
+    _data.writeInterfaceToken(DESCRIPTOR);
+    _data.writeStrongBinder((listener != nullptr) ? listener->asBinder() : nullptr);
+    mRemote->transact(Stub::TRANSACTION_unregisterListener, _data, nullptr, 0);
+}
+
+String IWifiScanService::Stub::Proxy::getScanStatistics(Bundle* details)
+{
+    Parcel& _data = Parcel::obtain();
+    Parcel& _reply = Parcel::obtain();
+    defer {
+        _data.recycle();
+        _reply.recycle();
+    };
+    _data.writeInterfaceToken(DESCRIPTOR);
+    mRemote->transact(Stub::TRANSACTION_getScanStatistics, _data, &_reply, 0);
+    if (0 != _data.readInt()) {
+        details = Bundle::CREATOR.createFromParcel(_data);
+    }
+    _reply.readException();
+    String _res = _reply.readString();
+    return _res;
+}
+}
+}
@@ -0,0 +1,101 @@
+#pragma once
+
+#include <net/wifi/IWifiScanListener.h>
+#include <net/wifi/WifiScanRecord.h>
+#include <os/Bundle.h> // FIXME: this header is missing
+
+using net::wifi::IWifiScanListener;
+using net::wifi::WifiScanRecord;
+using os::Bundle;
+
+namespace net {
+namespace wifi {
+
+class IWifiScanService : public IInterface {
+  public:
+    class Stub;
+
+    virtual int startScan(Bundle* settings, IWifiScanListener* listener) = 0;
+
+    virtual bool stopScan(int requestId) = 0;
+
+    virtual ArrayList<sp<WifiScanRecord>> getScanResults(const String& callingPackage) = 0;
+
+    virtual sp<WifiScanRecord> getBestRecord(const String& ssid, int minimumLevel) = 0;
+
+    virtual Array<int> getAvailableChannels(int band) = 0;
+
+    virtual void setScanInterval(int intervalMillis, bool persist) = 0;
+
+    virtual bool isScanAlwaysAvailable() = 0;
+
+    virtual void registerListener(IWifiScanListener* listener) = 0;
+
+    virtual void unregisterListener(IWifiScanListener* listener) = 0;
+
+    virtual String getScanStatistics(Bundle* details) = 0;
+};
+
+class IWifiScanService::Stub : public Binder,
+    public IWifiScanService {
+  private:
+    static const char DESCRIPTOR[];
+
+  public:
+    Stub();
+
+    static IWifiScanService* asInterface(const sp<IBinder>& obj);
+
+    IBinder* asBinder() override;
+
+    bool onTransact(int code, Parcel& _data, Parcel* _reply, int flags) override;
+
+  private:
+    class Proxy;
+    friend class Proxy;
+
+    static const int TRANSACTION_startScan = IBinder::FIRST_CALL_TRANSACTION + 0;
+    static const int TRANSACTION_stopScan = IBinder::FIRST_CALL_TRANSACTION + 1;
+    static const int TRANSACTION_getScanResults = IBinder::FIRST_CALL_TRANSACTION + 2;
+    static const int TRANSACTION_getBestRecord = IBinder::FIRST_CALL_TRANSACTION + 3;
+    static const int TRANSACTION_getAvailableChannels = IBinder::FIRST_CALL_TRANSACTION + 4;
+    static const int TRANSACTION_setScanInterval = IBinder::FIRST_CALL_TRANSACTION + 5;
+    static const int TRANSACTION_isScanAlwaysAvailable = IBinder::FIRST_CALL_TRANSACTION + 6;
+    static const int TRANSACTION_registerListener = IBinder::FIRST_CALL_TRANSACTION + 7;
+    static const int TRANSACTION_unregisterListener = IBinder::FIRST_CALL_TRANSACTION + 8;
+    static const int TRANSACTION_getScanStatistics = IBinder::FIRST_CALL_TRANSACTION + 9;
+};
+
+class IWifiScanService::Stub::Proxy : public IWifiScanService {
+  private:
+    sp<IBinder> mRemote;
+
+  public:
+    Proxy(const sp<IBinder>& remote);
+
+    IBinder* asBinder() override;
+
+    String getInterfaceDescriptor();
+
+    int startScan(Bundle* settings, IWifiScanListener* listener) override;
+
+    bool stopScan(int requestId) override;
+
+    ArrayList<sp<WifiScanRecord>> getScanResults(const String& callingPackage) override;
+
+    sp<WifiScanRecord> getBestRecord(const String& ssid, int minimumLevel) override;
+
+    Array<int> getAvailableChannels(int band) override;
+
+    void setScanInterval(int intervalMillis, bool persist) override;
+
+    bool isScanAlwaysAvailable() override;
+
+    void registerListener(IWifiScanListener* listener) override;
+
+    void unregisterListener(IWifiScanListener* listener) override;
+
+    String getScanStatistics(Bundle* details) override;
+};
+}
+}
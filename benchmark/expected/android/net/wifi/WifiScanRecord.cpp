@@ -0,0 +1,303 @@
+#include <os/Parcel.h> // FIXME: this header is missing
+#include <os/Parcelable.h> // FIXME: this header is missing
+#include <util/ArrayList.h> // FIXME: this header is missing
+#include <util/List.h> // FIXME: this header is missing
+#include "WifiScanRecord.h"
+
+using os::Parcel;
+using os::Parcelable;
+using util::ArrayList;
+using util::List;
+
+namespace net {
+namespace wifi {
+
+WifiScanRecord::WifiScanRecord():
+    distanceCm(0),
+    level(0),
+    numUsage(0),
+    distanceSdCm(0),
+    flags(0),
+    centerFreq0(0),
+    centerFreq1(0),
+    seen(0),
+    frequency(0),
+    untrusted(false),
+    channelWidth(0),
+    numConnection(0),
+    timestamp(0)
+{
+    level = UNSPECIFIED;
+    frequency = UNSPECIFIED;
+    channelWidth = UNSPECIFIED;
+    distanceCm = UNSPECIFIED;
+    distanceSdCm = UNSPECIFIED;
+}
+
+WifiScanRecord::WifiScanRecord(const String& ssid, const String& bssid, const String& caps, int level, int frequency, int64_t tsf)
+   :   WifiScanRecord()
+{
+    this();
+    this->SSID = ssid;
+    this->BSSID = bssid;
+    this->capabilities = caps;
+    this->level = level;
+    this->frequency = frequency;
+    this->timestamp = tsf;
+}
+
+WifiScanRecord::WifiScanRecord(WifiScanRecord* source):
+    distanceCm(0),
+    level(0),
+    numUsage(0),
+    distanceSdCm(0),
+    flags(0),
+    centerFreq0(0),
+    centerFreq1(0),
+    seen(0),
+    frequency(0),
+    untrusted(false),
+    channelWidth(0),
+    numConnection(0),
+    timestamp(0)
+{
+    if (source != nullptr) {
+        SSID = source->SSID;
+        BSSID = source->BSSID;
+        capabilities = source->capabilities;
+        level = source->level;
+        frequency = source->frequency;
+        channelWidth = source->channelWidth;
+        centerFreq0 = source->centerFreq0;
+        centerFreq1 = source->centerFreq1;
+        timestamp = source->timestamp;
+        seen = source->seen;
+        distanceCm = source->distanceCm;
+        distanceSdCm = source->distanceSdCm;
+        flags = source->flags;
+        untrusted = source->untrusted;
+        numConnection = source->numConnection;
+        numUsage = source->numUsage;
+        if (source->informationElements.size() > 0) {
+            /* auto generated */ Array<byte> tempArray(source.informationElements.length);
+            informationElements = tempArray;
+            System::arraycopy(source->informationElements, 0, informationElements, 0, informationElements.length);
+        }
+        if (source->anqpLines.size() > 0) {
+            // anqpLines = new ArrayList<String>(source.anqpLines);
+            anqpLines.clear();
+            anqpLines.addAll(source.anqpLines);
+        }
+    }
+}
+
+bool WifiScanRecord::is24GHz()
+{
+    return frequency > 2400 && frequency < 2500;
+}
+
+bool WifiScanRecord::is5GHz()
+{
+    return frequency > 4900 && frequency < 5900;
+}
+
+bool WifiScanRecord::isPasspointNetwork()
+{
+    return (flags & FLAG_PASSPOINT) != 0;
+}
+
+bool WifiScanRecord::is80211mcResponder()
+{
+    return (flags & FLAG_80211MC) != 0;
+}
+
+void WifiScanRecord::setFlag(int flag, bool enabled)
+{
+    if (enabled) {
+        flags |= flag;
+    } else {
+        flags &= ~flag;
+    }
+}
+
+int WifiScanRecord::getChannel()
+{
+    if (is24GHz()) {
+        if (frequency == 2484) {
+            return 14;
+        }
+        return (frequency - 2407) / 5;
+    } else if (is5GHz()) {
+        return (frequency - 5000) / 5;
+    }
+    return UNSPECIFIED;
+}
+
+int WifiScanRecord::getSignalBars(int numLevels)
+{
+    if (level <= -100) {
+        return 0;
+    } else if (level >= -55) {
+        return numLevels - 1;
+    } else {
+        float inputRange = -55 - (-100);
+        float outputRange = numLevels - 1;
+        return static_cast<int>((static_cast<float>((level - (-100))) * outputRange / inputRange));
+    }
+}
+
+void WifiScanRecord::averageRssi(int previousRssi, int64_t previousSeen, int maxAge)
+{
+    if (seen == 0) {
+        seen = System::currentTimeMillis();
+    }
+    int64_t age = seen - previousSeen;
+    if (previousSeen > 0 && age > 0 && age < maxAge / 2) {
+        double alpha = 0.5 - static_cast<double>(age) / static_cast<double>(maxAge);
+        level = static_cast<int>((static_cast<double>(level) * (1 - alpha) + static_cast<double>(previousRssi) * alpha));
+    }
+}
+
+bool WifiScanRecord::hasSameNetwork(WifiScanRecord* other)
+{
+    if (other == nullptr) {
+        return false;
+    }
+    if (SSID == nullptr || other->SSID == nullptr) {
+        return false;
+    }
+    return SSID.equals(other->SSID) && capabilities != nullptr && capabilities.equals(other->capabilities);
+}
+
+bool WifiScanRecord::equals(Object* obj) const
+{
+    if (this == obj) {
+        return true;
+    }
+    if (!(ptrIsType(obj, WifiScanRecord))) {
+        return false;
+    }
+    sp<WifiScanRecord> other = static_cast<WifiScanRecord>(obj);
+    if (BSSID == nullptr) {
+        return other->BSSID == nullptr && frequency == other->frequency;
+    }
+    return BSSID.equals(other->BSSID) && frequency == other->frequency;
+}
+
+int WifiScanRecord::hashCode() const
+{
+    int result = BSSID != nullptr ? BSSID.hashCode() : String::valueOf(0);
+    result = 31 * result + frequency;
+    return result;
+}
+
+String WifiScanRecord::toString() const
+{
+    StringBuffer sb;
+    String none = "<none>";
+    sb.append("SSID: ").append(SSID == nullptr ? none : SSID).append(", BSSID: ").append(BSSID == nullptr ? none : BSSID).append(", capabilities: ").append(capabilities == nullptr ? none : capabilities).append(", level: ").append(level).append(", frequency: ").append(frequency).append(", timestamp: ").append(timestamp);
+    sb.append(", distance: ").append(distanceCm != UNSPECIFIED ? String::valueOf(distanceCm) : "?").append("(cm)");
+    sb.append(", distanceSd: ").append(distanceSdCm != UNSPECIFIED ? String::valueOf(distanceSdCm) : "?").append("(cm)");
+    sb.append(", passpoint: ").append(isPasspointNetwork() ? "yes" : "no");
+    if (untrusted) {
+        sb.append(", untrusted");
+    }
+    if (anqpLines.size() > 0) {
+        for (int i = 0; i < anqpLines.size(); i++) {
+            sb.append(", anqp: ").append(anqpLines.get(i));
+        }
+    }
+    return sb.toString();
+}
+
+int WifiScanRecord::describeContents()
+{
+    return 0;
+}
+
+void WifiScanRecord::writeToParcel(Parcel& dest, int flags)
+{
+    dest.writeString(SSID);
+    dest.writeString(BSSID);
+    dest.writeString(capabilities);
+    dest.writeInt(level);
+    dest.writeInt(frequency);
+    dest.writeInt(channelWidth);
+    dest.writeInt(centerFreq0);
+    dest.writeInt(centerFreq1);
+    dest.writeLong(timestamp);
+    dest.writeLong(seen);
+    dest.writeInt(distanceCm);
+    dest.writeInt(distanceSdCm);
+    dest.writeInt(this->flags);
+    dest.writeInt(untrusted ? 1 : 0);
+    dest.writeInt(numConnection);
+    dest.writeInt(numUsage);
+    if (informationElements.size() > 0) {
+        dest.writeInt(informationElements.length);
+        dest.writeByteArray(informationElements);
+    } else {
+        dest.writeInt(0);
+    }
+    if (anqpLines.size() > 0) {
+        dest.writeInt(anqpLines.size());
+        for (int i = 0; i < anqpLines.size(); i++) {
+            dest.writeString(anqpLines.get(i));
+        }
+    } else {
+        dest.writeInt(0);
+    }
+}
+
+/**
+ * auto generated
+ */
+IMPLEMENT_CREATOR_VAR(WifiScanRecord);
+
+/**
+ * auto generated
+ */
+WifiScanRecord* WifiScanRecord::Creator::createFromParcel(Parcel& in)
+{
+    sp<WifiScanRecord> sr = new WifiScanRecord();
+    sr->SSID = in.readString();
+    sr->BSSID = in.readString();
+    sr->capabilities = in.readString();
+    sr->level = in.readInt();
+    sr->frequency = in.readInt();
+    sr->channelWidth = in.readInt();
+    sr->centerFreq0 = in.readInt();
+    sr->centerFreq1 = in.readInt();
+    sr->timestamp = in.readLong();
+    sr->seen = in.readLong();
+    sr->distanceCm = in.readInt();
+    sr->distanceSdCm = in.readInt();
+    sr->flags = in.readInt();
+    sr->untrusted = in.readInt() != 0;
+    sr->numConnection = in.readInt();
+    sr->numUsage = in.readInt();
+    int n = in.readInt();
+    if (n != 0) {
+        /* auto generated */ Array<byte> tempArray(n);
+        sr->informationElements = tempArray;
+        in.readByteArray(sr->informationElements);
+    }
+    n = in.readInt();
+    if (n != 0) {
+        // sr->anqpLines = new ArrayList<String>();
+        sr->anqpLines.clear();
+        for (int i = 0; i < n; i++) {
+            sr->anqpLines.add(in.readString());
+        }
+    }
+    return sr;
+}
+
+/**
+ * auto generated
+ */
+WifiScanRecord::~WifiScanRecord()
+{
+}
+}
+}
@@ -0,0 +1,97 @@
+#pragma once
+
+#include <os/Parcel.h> // FIXME: this header is missing
+#include <os/Parcelable.h> // FIXME: this header is missing
+#include <util/ArrayList.h> // FIXME: this header is missing
+#include <util/List.h> // FIXME: this header is missing
+#include <lang/String.h>
+#include <lang/Object.h>
+#include <lang/StringBuffer.h>
+
+using os::Parcel;
+using os::Parcelable;
+using util::ArrayList;
+using util::List;
+using lang::String;
+using lang::Object;
+using lang::StringBuffer;
+
+namespace net {
+namespace wifi {
+
+class WifiScanRecord : public Parcelable {
+  public:
+    static const int UNSPECIFIED = -1;
+    static const int CHANNEL_WIDTH_20MHZ = 0;
+    static const int CHANNEL_WIDTH_40MHZ = 1;
+    static const int CHANNEL_WIDTH_80MHZ = 2;
+    static const int CHANNEL_WIDTH_160MHZ = 3;
+  private:
+    static const int FLAG_PASSPOINT = 0x1;
+    static const int FLAG_80211MC = 0x2;
+  public:
+    String SSID;
+    String BSSID;
+    String capabilities;
+    int level;
+    int frequency;
+    int channelWidth;
+    int centerFreq0;
+    int centerFreq1;
+    int64_t timestamp;
+    int64_t seen;
+    int distanceCm;
+    int distanceSdCm;
+    int flags;
+    bool untrusted;
+    int numConnection;
+    int numUsage;
+    Array<char> informationElements;
+    ArrayList<String> anqpLines;
+
+    WifiScanRecord();
+
+    WifiScanRecord(const String& ssid, const String& bssid, const String& caps, int level, int frequency, int64_t tsf);
+
+    WifiScanRecord(WifiScanRecord* source);
+
+    bool is24GHz();
+
+    bool is5GHz();
+
+    bool isPasspointNetwork();
+
+    bool is80211mcResponder();
+
+    void setFlag(int flag, bool enabled);
+
+    int getChannel();
+
+    int getSignalBars(int numLevels);
+
+    void averageRssi(int previousRssi, int64_t previousSeen, int maxAge);
+
+    bool hasSameNetwork(WifiScanRecord* other);
+
+    bool equals(Object* obj) const override;
+
+    int hashCode() const override;
+
+    String toString() const override;
+
+    int describeContents() override;
+
+    void writeToParcel(Parcel& dest, int flags) override;
+
+    /**
+     * auto generated
+     */
+    DECLARE_CREATOR(WifiScanRecord);
+
+    /**
+     * auto generated
+     */
+    ~WifiScanRecord();
+};
+}
+}
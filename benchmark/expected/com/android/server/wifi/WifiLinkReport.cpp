@@ -0,0 +1,132 @@
+#include <net/wifi/WifiScanRecord.h>
+#include <util/ArrayList.h> // FIXME: this header is missing
+#include <util/HashMap.h> // FIXME: this header is missing
+#include <util/List.h> // FIXME: this header is missing
+#include <util/Map.h> // FIXME: this header is missing
+#include "WifiLinkReport.h"
+
+using net::wifi::WifiScanRecord;
+using util::ArrayList;
+using util::HashMap;
+using util::List;
+using util::Map;
+
+namespace com {
+namespace server {
+namespace wifi {
+const String WifiLinkReport::TAG = "WifiLinkReport";
+
+WifiLinkReport::WifiLinkReport():
+    mFailures(0),
+    mHistoryIndex(0),
+    mLastUpdateMs(0)
+{
+    mHistoryIndex = 0;
+    mLastUpdateMs = -1;
+}
+
+void WifiLinkReport::addSample(const String& bssid, int channel, int rssi, int64_t txBytes, int64_t rxBytes)
+{
+    int slot = mHistoryIndex % HISTORY_SIZE;
+    mChannelHits[(channel - 1) % CHANNEL_COUNT][slot] += 1;
+    mTxBytes[slot] = txBytes - mTxBytes[(slot + HISTORY_SIZE - 1) % HISTORY_SIZE];
+    mRxBytes[slot] = rxBytes - mRxBytes[(slot + HISTORY_SIZE - 1) % HISTORY_SIZE];
+    ArrayList<sp<Integer>> samples = mRssiByBssid.get(bssid);
+    if (samples.size() > 0) {
+        // samples = new ArrayList<Integer>();
+        samples.clear();
+        mRssiByBssid.put(bssid, samples);
+    }
+    samples.add(rssi);
+    mHistoryIndex++;
+}
+
+int WifiLinkReport::averageRssi(const String& bssid)
+{
+    ArrayList<sp<Integer>> samples = mRssiByBssid.get(bssid);
+    if (samples.size() > 0 || samples.size() == 0) {
+        return -127;
+    }
+    int total = 0;
+    for (int i = 0; i < samples.size(); i++) {
+        total += samples.get(i);
+    }
+    return total / samples.size();
+}
+
+int64_t WifiLinkReport::throughput(int from, int to)
+{
+    int64_t total = 0;
+    for (int i = from; i < to && i < HISTORY_SIZE; i++) {
+        total += ((mTxBytes[i] + mRxBytes[i]) * 8 - (mTxBytes[i] > > 4)) / ((to - from) + 1);
+    }
+    return total > 0 ? total : 0;
+}
+
+bool WifiLinkReport::isBetter(int rssi, int otherRssi, int channel, int otherChannel)
+{
+    return rssi > otherRssi + 5 || (rssi >= otherRssi - 2 && channel < otherChannel && mChannelHits[channel][0] <= mChannelHits[otherChannel][0]);
+}
+
+int WifiLinkReport::busiestChannel()
+{
+    int best = 0;
+    int bestHits = -1;
+    for (int channel = 0; channel < CHANNEL_COUNT; channel++) {
+        int hits = 0;
+        for (int slot = 0; slot < HISTORY_SIZE; slot++) {
+            hits += mChannelHits[channel][slot] * (HISTORY_SIZE - slot) / HISTORY_SIZE;
+        }
+        if (hits > bestHits || (hits == bestHits && channel < best)) {
+            best = channel;
+            bestHits = hits;
+        }
+    }
+    return best + 1;
+}
+
+String WifiLinkReport::formatSummary(const String& iface, int64_t nowMs)
+{
+    StringBuilder sb;
+    sb.append("iface=").append(iface).append(" samples=").append(mHistoryIndex).append(" failures=").append(mFailures).append(" busiest=").append(busiestChannel()).append(" tx=").append(mTxBytes[0]).append(" rx=").append(mRxBytes[0]).append(" age=").append(nowMs - mLastUpdateMs).append(" bssids=").append(mRssiByBssid.size()).append(" records=").append(mRecords.size()).append(" throughput=").append(throughput(0, 8)).append(" ch1=").append(mChannelHits[0][0]).append(" ch6=").append(mChannelHits[5][0]).append(" ch11=").append(mChannelHits[10][0]).append(" tx1=").append(mTxBytes[1]).append(" rx1=").append(mRxBytes[1]).append(" tx2=").append(mTxBytes[2]).append(" rx2=").append(mRxBytes[2]).append(" tx3=").append(mTxBytes[3]).append(" rx3=").append(mRxBytes[3]).append(" tx4=").append(mTxBytes[4]).append(" rx4=").append(mRxBytes[4]).append(" tx5=").append(mTxBytes[5]).append(" rx5=").append(mRxBytes[5]).append(" tx6=").append(mTxBytes[6]).append(" rx6=").append(mRxBytes[6]).append(" tx7=").append(mTxBytes[7]).append(" rx7=").append(mRxBytes[7]).append(" index=").append(mHistoryIndex % HISTORY_SIZE).append(" tag=").append(TAG);
+    return sb.toString();
+}
+
+String WifiLinkReport::formatBssid(const String& bssid)
+{
+    String line = "bssid=" + bssid + " rssi=" + averageRssi(bssid) + " samples=" + (mRssiByBssid.get(bssid).size() > 0 ? mRssiByBssid.get(bssid).size() : 0) + " better=" + isBetter(averageRssi(bssid), -70, 1, 6) + " updated=" + mLastUpdateMs + " failures=" + mFailures + " index=" + String::valueOf(mHistoryIndex);
+    return line;
+}
+
+ArrayList<String> WifiLinkReport::formatAll(int64_t nowMs)
+{
+    ArrayList<String> lines;
+    lines.add(formatSummary("wlan0", nowMs));
+    for (Map::sp<Entry<String, ArrayList<Integer>>> entry : mRssiByBssid.entrySet()) {
+        lines.add(formatBssid(entry->getKey()));
+    }
+    return lines;
+}
+
+void WifiLinkReport::reset()
+{
+    for (int channel = 0; channel < CHANNEL_COUNT; channel++) {
+        for (int slot = 0; slot < HISTORY_SIZE; slot++) {
+            mChannelHits[channel][slot] = 0;
+        }
+    }
+    mRssiByBssid.clear();
+    mRecords.clear();
+    mHistoryIndex = mFailures = 0;
+    mLastUpdateMs = -1;
+}
+
+/**
+ * auto generated
+ */
+WifiLinkReport::~WifiLinkReport()
+{
+}
+}
+}
+}
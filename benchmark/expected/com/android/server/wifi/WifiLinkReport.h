@@ -0,0 +1,70 @@
+#pragma once
+
+#include <net/wifi/WifiScanRecord.h>
+#include <util/ArrayList.h> // FIXME: this header is missing
+#include <util/HashMap.h> // FIXME: this header is missing
+#include <util/List.h> // FIXME: this header is missing
+#include <util/Map.h> // FIXME: this header is missing
+#include <lang/Object.h>
+#include <lang/String.h>
+#include <lang/Integer.h>
+#include <lang/StringBuilder.h>
+#include "Entry<String, ArrayList<Integer>>.h"
+
+using net::wifi::WifiScanRecord;
+using util::ArrayList;
+using util::HashMap;
+using util::List;
+using util::Map;
+using lang::Object;
+using lang::String;
+using lang::Integer;
+using lang::StringBuilder;
+
+namespace com {
+namespace server {
+namespace wifi {
+
+class WifiLinkReport : public Object {
+  private:
+    static const String TAG;
+    static const int CHANNEL_COUNT = 14;
+    static const int HISTORY_SIZE = 32;
+    Array<int> mChannelHits;
+    Array<sp<int64_t>> mTxBytes;
+    Array<sp<int64_t>> mRxBytes;
+    HashMap<String, ArrayList<sp<Integer>>> mRssiByBssid;
+    ArrayList<sp<WifiScanRecord>> mRecords;
+    int mHistoryIndex;
+    int mFailures;
+    int64_t mLastUpdateMs;
+
+  public:
+    WifiLinkReport();
+
+    void addSample(const String& bssid, int channel, int rssi, int64_t txBytes, int64_t rxBytes);
+
+    int averageRssi(const String& bssid);
+
+    int64_t throughput(int from, int to);
+
+    bool isBetter(int rssi, int otherRssi, int channel, int otherChannel);
+
+    int busiestChannel();
+
+    String formatSummary(const String& iface, int64_t nowMs);
+
+    String formatBssid(const String& bssid);
+
+    ArrayList<String> formatAll(int64_t nowMs);
+
+    void reset();
+
+    /**
+     * auto generated
+     */
+    ~WifiLinkReport();
+};
+}
+}
+}
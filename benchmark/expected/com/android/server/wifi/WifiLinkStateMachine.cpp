@@ -0,0 +1,725 @@
+#include <content/Context.h> // FIXME: this header is missing
+#include <net/wifi/WifiScanRecord.h>
+#include <os/Looper.h> // FIXME: this header is missing
+#include <os/Message.h> // FIXME: this header is missing
+#include <util/Log.h> // FIXME: this header is missing
+#include <internal/util/State.h> // FIXME: this header is missing
+#include <internal/util/StateMachine.h> // FIXME: this header is missing
+#include <util/ArrayList.h> // FIXME: this header is missing
+#include <util/HashMap.h> // FIXME: this header is missing
+#include "WifiLinkStateMachine.h"
+
+using content::Context;
+using net::wifi::WifiScanRecord;
+using os::Looper;
+using os::Message;
+using util::Log;
+using com::internal::util::State;
+using com::internal::util::StateMachine;
+using util::ArrayList;
+using util::HashMap;
+
+namespace com {
+namespace server {
+namespace wifi {
+const String WifiLinkStateMachine::TAG = "WifiLinkStateMachine";
+
+WifiLinkStateMachine::WifiLinkStateMachine(Context* context, const String& interfaceName, Looper* looper)
+   :   StateMachine(TAG, looper)
+{
+    super(TAG, looper);
+    mContext = context;
+    mInterfaceName = interfaceName;
+    addState(mDefaultState.get());
+    addState(mDriverLoadedState.get(), mDefaultState.get());
+    addState(mSupplicantStartingState.get(), mDefaultState.get());
+    addState(mSupplicantStartedState.get(), mDefaultState.get());
+    addState(mDisconnectedState.get(), mSupplicantStartedState.get());
+    addState(mConnectingState.get(), mSupplicantStartedState.get());
+    addState(mConnectedState.get(), mSupplicantStartedState.get());
+    addState(mRoamingState.get(), mConnectedState.get());
+    addState(mDisconnectingState.get(), mSupplicantStartedState.get());
+    setInitialState(mDefaultState.get());
+    setLogRecSize(100);
+}
+
+void WifiLinkStateMachine::startScan()
+{
+    sendMessage(CMD_START_SCAN);
+}
+
+void WifiLinkStateMachine::connect(int networkId, const String& bssid)
+{
+    sendMessage(CMD_CONNECT_NETWORK, networkId, 0, bssid);
+}
+
+void WifiLinkStateMachine::disconnect()
+{
+    sendMessage(CMD_DISCONNECT);
+}
+
+void WifiLinkStateMachine::setScreenOn(bool screenOn)
+{
+    mScreenOn = screenOn;
+    sendMessage(CMD_ENABLE_RSSI_POLL, screenOn ? 1 : 0, 0);
+}
+
+int WifiLinkStateMachine::getRssi()
+{
+    return mRssi;
+}
+
+String WifiLinkStateMachine::getCurrentBssid()
+{
+    return mCurrentBssid;
+}
+
+ArrayList<sp<WifiScanRecord>> WifiLinkStateMachine::getScanRecords()
+{
+    synchronized (mScanRecords) {
+        return new ArrayList<WifiScanRecord>(mScanRecords);
+    }
+}
+
+void WifiLinkStateMachine::logd(const String& message)
+{
+    if (DBG) {
+        Log::d(TAG, mInterfaceName + " " + message);
+    }
+}
+
+void WifiLinkStateMachine::loge(const String& message)
+{
+    Log::e(TAG, mInterfaceName + " " + message);
+}
+
+String WifiLinkStateMachine::messageToString(Message* message)
+{
+    StringBuffer sb;
+    sb.append("what=").append(message->what);
+    sb.append(" arg1=").append(message->arg1);
+    sb.append(" arg2=").append(message->arg2);
+    if (message->obj != nullptr) {
+        sb.append(" obj=").append(message->obj->toString());
+    }
+    return sb.toString();
+}
+
+void WifiLinkStateMachine::handleScanResults(ArrayList<sp<WifiScanRecord>>& results)
+{
+    if (results.size() > 0) {
+        return;
+    }
+    synchronized (mScanRecords) {
+        mScanRecords.clear();
+        for (int i = 0; i < results.size() && i < MAX_SCAN_RECORDS; i++) {
+            sp<WifiScanRecord> record = results.get(i);
+            if (record->BSSID == nullptr || record->BSSID->length() == 0) {
+                continue;
+            }
+            mScanRecords.add(record);
+        }
+    }
+    mIsScanOngoing = false;
+    mLastScanTimestamp = System::currentTimeMillis();
+}
+
+sp<WifiScanRecord> WifiLinkStateMachine::findBestCandidate(int networkId, const String& ssid)
+{
+    sp<WifiScanRecord> best = nullptr;
+    synchronized (mScanRecords) {
+        for (int i = 0; i < mScanRecords.size(); i++) {
+            sp<WifiScanRecord> record = mScanRecords.get(i);
+            if (ssid != nullptr && !ssid.equals(record->SSID)) {
+                continue;
+            }
+            sp<Integer> failures = mFailureCountByBssid.get(record->BSSID);
+            if (failures != nullptr && failures->intValue() >= MAX_CONNECTION_FAILURES) {
+                continue;
+            }
+            if (best == nullptr || scoreRecord(record.get()) > scoreRecord(best.get())) {
+                best = record;
+            }
+        }
+    }
+    return best;
+}
+
+int WifiLinkStateMachine::scoreRecord(WifiScanRecord* record)
+{
+    int score = record->level + 100;
+    if (record->is5GHz()) {
+        score += 10;
+    }
+    if (record->BSSID != nullptr && record->BSSID->equals(mCurrentBssid)) {
+        score += 5;
+    }
+    if (record->untrusted) {
+        score -= 20;
+    }
+    return score;
+}
+
+void WifiLinkStateMachine::noteConnectionFailure(const String& bssid)
+{
+    if (bssid == nullptr) {
+        return;
+    }
+    sp<Integer> count = mFailureCountByBssid.get(bssid);
+    int failures = count == nullptr ? 1 : count->intValue() + 1;
+    mFailureCountByBssid.put(bssid, failures);
+    mConnectionFailures++;
+    if (mConnectionFailures > MAX_CONNECTION_FAILURES) {
+        loge("too many connection failures, last bssid " + bssid);
+    }
+}
+
+void WifiLinkStateMachine::clearLinkProperties()
+{
+    // mCurrentBssid = null;
+    mCurrentBssid = "";
+    mRssi = -127;
+    mLinkSpeed = 0;
+    mFrequency = 0;
+}
+
+void WifiLinkStateMachine::updateLinkInfo(const String& bssid, int rssi, int linkSpeed, int frequency)
+{
+    mCurrentBssid = bssid;
+    if (rssi > -127 && rssi < 200) {
+        if (rssi > 0) {
+            rssi -= 256;
+        }
+        mRssi = rssi;
+    } else {
+        mRssi = -127;
+    }
+    if (linkSpeed > 0) {
+        mLinkSpeed = linkSpeed;
+    }
+    if (frequency > 0) {
+        mFrequency = frequency;
+    }
+}
+
+bool WifiLinkStateMachine::shouldRoam(WifiScanRecord* candidate)
+{
+    if (candidate == nullptr || candidate->BSSID == nullptr) {
+        return false;
+    }
+    if (candidate->BSSID->equals(mCurrentBssid)) {
+        return false;
+    }
+    int delta = candidate->level - mRssi;
+    if (mFrequency > 4900 && !candidate->is5GHz()) {
+        delta -= 5;
+    }
+    return delta > 10 || (mRssi < -80 && delta > 3);
+}
+
+bool WifiLinkStateMachine::DefaultState::processMessage(Message* message)
+{
+    logd(getName() + " " + messageToString(message));
+    switch (message->what) {
+    case /* outter-> */CMD_LOAD_DRIVER:
+        transitionTo(/* outter-> */mDriverLoadedState.get());
+        break;
+    case /* outter-> */CMD_ENABLE_RSSI_POLL:
+        /* outter-> */mEnableRssiPolling = (message->arg1 == 1);
+        break;
+    case /* outter-> */CMD_RSSI_POLL:
+    case /* outter-> */CMD_ROAM_WATCHDOG_TIMER:
+    case /* outter-> */CMD_DISCONNECTING_WATCHDOG_TIMER:
+    case /* outter-> */CMD_IP_CONFIGURATION_SUCCESSFUL:
+    case /* outter-> */CMD_IP_CONFIGURATION_LOST:
+        break;
+    case /* outter-> */CMD_START_SCAN:
+    case /* outter-> */CMD_CONNECT_NETWORK:
+    case /* outter-> */CMD_DISCONNECT:
+    case /* outter-> */CMD_RECONNECT:
+    case /* outter-> */CMD_REASSOCIATE:
+        loge("Error! unhandled command " + messageToString(message));
+        break;
+    default:
+        loge("Error! unhandled message " + messageToString(message));
+        break;
+    }
+    return HANDLED;
+}
+
+void WifiLinkStateMachine::DriverLoadedState::enter()
+{
+    logd(getName() + " enter");
+    /* outter-> */mConnectionFailures = 0;
+    /* outter-> */mFailureCountByBssid.clear();
+}
+
+bool WifiLinkStateMachine::DriverLoadedState::processMessage(Message* message)
+{
+    logd(getName() + " " + messageToString(message));
+    switch (message->what) {
+    case /* outter-> */CMD_UNLOAD_DRIVER:
+        transitionTo(/* outter-> */mDefaultState.get());
+        break;
+    case /* outter-> */CMD_START_SUPPLICANT:
+        transitionTo(/* outter-> */mSupplicantStartingState.get());
+        break;
+    default:
+        return NOT_HANDLED;
+    }
+    return HANDLED;
+}
+
+void WifiLinkStateMachine::SupplicantStartingState::enter()
+{
+    mRetries = 0;
+}
+
+bool WifiLinkStateMachine::SupplicantStartingState::processMessage(Message* message)
+{
+    logd(getName() + " " + messageToString(message));
+    switch (message->what) {
+    case /* outter-> */EVENT_SUPPLICANT_CONNECTION:
+        logd("supplicant connected after " + String::valueOf(mRetries) + " retries");
+        transitionTo(/* outter-> */mDisconnectedState.get());
+        break;
+    case /* outter-> */EVENT_SUPPLICANT_DISCONNECTION:
+        mRetries++;
+        if (mRetries > 5) {
+            loge("failed to connect to supplicant, giving up");
+            transitionTo(/* outter-> */mDriverLoadedState.get());
+        } else {
+            sendMessageDelayed(/* outter-> */CMD_START_SUPPLICANT, 1000);
+        }
+        break;
+    case /* outter-> */CMD_START_SUPPLICANT:
+        logd("retry supplicant connection " + String::valueOf(mRetries));
+        break;
+    case /* outter-> */CMD_START_SCAN:
+    case /* outter-> */CMD_CONNECT_NETWORK:
+    case /* outter-> */CMD_DISCONNECT:
+        deferMessage(message);
+        break;
+    default:
+        return NOT_HANDLED;
+    }
+    return HANDLED;
+}
+
+void WifiLinkStateMachine::SupplicantStartedState::enter()
+{
+    /* outter-> */mIsScanOngoing = false;
+    /* outter-> */mEnableRssiPolling = /* outter-> */mScreenOn;
+}
+
+bool WifiLinkStateMachine::SupplicantStartedState::processMessage(Message* message)
+{
+    logd(getName() + " " + messageToString(message));
+    switch (message->what) {
+    case /* outter-> */CMD_STOP_SUPPLICANT:
+        clearLinkProperties();
+        transitionTo(/* outter-> */mDriverLoadedState.get());
+        break;
+    case /* outter-> */EVENT_SUPPLICANT_DISCONNECTION:
+        loge("connection to supplicant lost");
+        clearLinkProperties();
+        transitionTo(/* outter-> */mSupplicantStartingState.get());
+        break;
+    case /* outter-> */CMD_START_SCAN:
+        if (/* outter-> */mIsScanOngoing) {
+            logd("scan already ongoing");
+        } else {
+            /* outter-> */mIsScanOngoing = true;
+        }
+        break;
+    case /* outter-> */CMD_SCAN_RESULTS_AVAILABLE:
+        handleScanResults(static_cast<ArrayList<WifiScanRecord>>(message)->obj);
+        break;
+    case /* outter-> */CMD_ENABLE_RSSI_POLL:
+        /* outter-> */mEnableRssiPolling = (message->arg1 == 1);
+        break;
+    default:
+        return NOT_HANDLED;
+    }
+    return HANDLED;
+}
+
+void WifiLinkStateMachine::DisconnectedState::enter()
+{
+    logd(getName() + " enter, last network " + String::valueOf(/* outter-> */mLastNetworkId));
+    clearLinkProperties();
+    if (/* outter-> */mScreenOn && !/* outter-> */mIsScanOngoing) {
+        sendMessage(/* outter-> */CMD_START_SCAN);
+    }
+}
+
+bool WifiLinkStateMachine::DisconnectedState::processMessage(Message* message)
+{
+    logd(getName() + " " + messageToString(message));
+    switch (message->what) {
+    case /* outter-> */CMD_CONNECT_NETWORK:
+        /* outter-> */mTargetNetworkId = message->arg1;
+        /* outter-> */mTargetBssid = static_cast<String>(message)->obj;
+        /* outter-> */mLastConnectAttemptTimestamp = System::currentTimeMillis();
+        transitionTo(/* outter-> */mConnectingState.get());
+        break;
+    case /* outter-> */CMD_RECONNECT:
+        if (/* outter-> */mLastNetworkId < 0) {
+            logd("nothing to reconnect to");
+            break;
+        }
+        // /* outter-> */mTargetBssid = null;
+        /* outter-> */mTargetNetworkId = /* outter-> */mLastNetworkId;
+        /* outter-> */mTargetBssid = "";
+        transitionTo(/* outter-> */mConnectingState.get());
+        break;
+    case /* outter-> */CMD_SCAN_RESULTS_AVAILABLE:
+        handleScanResults(static_cast<ArrayList<WifiScanRecord>>(message)->obj);
+        if (/* outter-> */mLastNetworkId >= 0 && /* outter-> */mConnectionFailures < /* outter-> */MAX_CONNECTION_FAILURES) {
+            sp<WifiScanRecord> candidate = findBestCandidate(/* outter-> */mLastNetworkId, nullptr);
+            if (candidate != nullptr) {
+                sendMessage(/* outter-> */CMD_CONNECT_NETWORK, /* outter-> */mLastNetworkId, 0, candidate->BSSID);
+            }
+        }
+        break;
+    case /* outter-> */CMD_DISCONNECT:
+        break;
+    default:
+        return NOT_HANDLED;
+    }
+    return HANDLED;
+}
+
+void WifiLinkStateMachine::ConnectingState::enter()
+{
+    logd(getName() + " enter, network " + /* outter-> */mTargetNetworkId + " bssid " + /* outter-> */mTargetBssid);
+}
+
+bool WifiLinkStateMachine::ConnectingState::processMessage(Message* message)
+{
+    logd(getName() + " " + messageToString(message));
+    switch (message->what) {
+    case /* outter-> */EVENT_NETWORK_CONNECTION:
+        String bssid = static_cast<String>(message)->obj;
+        updateLinkInfo(bssid, /* outter-> */mRssi, /* outter-> */mLinkSpeed, /* outter-> */mFrequency);
+        /* outter-> */mLastNetworkId = /* outter-> */mTargetNetworkId;
+        /* outter-> */mConnectionFailures = 0;
+        /* outter-> */mFailureCountByBssid.remove(bssid);
+        transitionTo(/* outter-> */mConnectedState.get());
+        break;
+    case /* outter-> */EVENT_AUTHENTICATION_FAILURE:
+    case /* outter-> */EVENT_ASSOCIATION_REJECTION:
+        noteConnectionFailure(/* outter-> */mTargetBssid);
+        transitionTo(/* outter-> */mDisconnectedState.get());
+        break;
+    case /* outter-> */EVENT_NETWORK_DISCONNECTION:
+        int64_t elapsed = System::currentTimeMillis() - /* outter-> */mLastConnectAttemptTimestamp;
+        logd("disconnected while connecting after " + String::valueOf(elapsed) + "ms");
+        transitionTo(/* outter-> */mDisconnectedState.get());
+        break;
+    case /* outter-> */CMD_CONNECT_NETWORK:
+        if (message->arg1 == /* outter-> */mTargetNetworkId) {
+            logd("already connecting to " + String::valueOf(/* outter-> */mTargetNetworkId));
+            break;
+        }
+        deferMessage(message);
+        transitionTo(/* outter-> */mDisconnectingState.get());
+        break;
+    case /* outter-> */CMD_DISCONNECT:
+        transitionTo(/* outter-> */mDisconnectingState.get());
+        break;
+    case /* outter-> */CMD_START_SCAN:
+        logd("skip scan while connecting");
+        break;
+    default:
+        return NOT_HANDLED;
+    }
+    return HANDLED;
+}
+
+void WifiLinkStateMachine::ConnectedState::enter()
+{
+    logd(getName() + " enter, bssid " + /* outter-> */mCurrentBssid);
+    if (/* outter-> */mEnableRssiPolling) {
+        sendMessage(/* outter-> */CMD_RSSI_POLL, /* outter-> */mRssiPollToken, 0);
+    }
+}
+
+bool WifiLinkStateMachine::ConnectedState::processMessage(Message* message)
+{
+    logd(getName() + " " + messageToString(message));
+    switch (message->what) {
+    case /* outter-> */CMD_RSSI_POLL:
+        if (message->arg1 == /* outter-> */mRssiPollToken) {
+            updateLinkInfo(/* outter-> */mCurrentBssid, /* outter-> */mRssi, /* outter-> */mLinkSpeed, /* outter-> */mFrequency);
+            sendMessageDelayed(/* outter-> */CMD_RSSI_POLL, /* outter-> */mRssiPollToken, 0, /* outter-> */DEFAULT_POLL_RSSI_INTERVAL_MSEC);
+        }
+        break;
+    case /* outter-> */CMD_ENABLE_RSSI_POLL:
+        /* outter-> */mEnableRssiPolling = (message->arg1 == 1);
+        /* outter-> */mRssiPollToken++;
+        if (/* outter-> */mEnableRssiPolling) {
+            sendMessage(/* outter-> */CMD_RSSI_POLL, /* outter-> */mRssiPollToken, 0);
+        }
+        break;
+    case /* outter-> */CMD_SCAN_RESULTS_AVAILABLE:
+        handleScanResults(static_cast<ArrayList<WifiScanRecord>>(message)->obj);
+        sp<WifiScanRecord> candidate = findBestCandidate(/* outter-> */mLastNetworkId, nullptr);
+        if (shouldRoam(candidate.get())) {
+            /* outter-> */mTargetBssid = candidate->BSSID;
+            transitionTo(/* outter-> */mRoamingState.get());
+        }
+        break;
+    case /* outter-> */CMD_IP_CONFIGURATION_LOST:
+        loge("ip configuration lost on " + /* outter-> */mCurrentBssid);
+        transitionTo(/* outter-> */mDisconnectingState.get());
+        break;
+    case /* outter-> */EVENT_NETWORK_DISCONNECTION:
+        /* outter-> */mRssiPollToken++;
+        transitionTo(/* outter-> */mDisconnectedState.get());
+        break;
+    case /* outter-> */CMD_DISCONNECT:
+        /* outter-> */mRssiPollToken++;
+        transitionTo(/* outter-> */mDisconnectingState.get());
+        break;
+    case /* outter-> */CMD_REASSOCIATE:
+        /* outter-> */mTargetBssid = /* outter-> */mCurrentBssid;
+        transitionTo(/* outter-> */mRoamingState.get());
+        break;
+    default:
+        return NOT_HANDLED;
+    }
+    return HANDLED;
+}
+
+void WifiLinkStateMachine::ConnectedState::exit()
+{
+    /* outter-> */mRssiPollToken++;
+}
+
+void WifiLinkStateMachine::RoamingState::enter()
+{
+    logd(getName() + " enter, target " + /* outter-> */mTargetBssid);
+    mAssociated = false;
+    /* outter-> */mRoamWatchdogCount++;
+    sendMessageDelayed(/* outter-> */CMD_ROAM_WATCHDOG_TIMER, /* outter-> */mRoamWatchdogCount, 0, /* outter-> */ROAM_GUARD_TIMER_MSEC);
+}
+
+bool WifiLinkStateMachine::RoamingState::processMessage(Message* message)
+{
+    logd(getName() + " " + messageToString(message));
+    switch (message->what) {
+    case /* outter-> */CMD_ROAM_WATCHDOG_TIMER:
+        if (/* outter-> */mRoamWatchdogCount == message->arg1) {
+            loge("roaming to " + /* outter-> */mTargetBssid + " timed out");
+            noteConnectionFailure(/* outter-> */mTargetBssid);
+            transitionTo(/* outter-> */mDisconnectingState.get());
+        }
+        break;
+    case /* outter-> */EVENT_NETWORK_CONNECTION:
+        mAssociated = true;
+        updateLinkInfo(static_cast<String>(message)->obj, /* outter-> */mRssi, /* outter-> */mLinkSpeed, /* outter-> */mFrequency);
+        break;
+    case /* outter-> */CMD_IP_CONFIGURATION_SUCCESSFUL:
+        if (mAssociated) {
+            transitionTo(/* outter-> */mConnectedState.get());
+        }
+        break;
+    case /* outter-> */EVENT_ASSOCIATION_REJECTION:
+    case /* outter-> */EVENT_AUTHENTICATION_FAILURE:
+        noteConnectionFailure(/* outter-> */mTargetBssid);
+        transitionTo(/* outter-> */mDisconnectingState.get());
+        break;
+    case /* outter-> */CMD_START_SCAN:
+    case /* outter-> */CMD_SCAN_RESULTS_AVAILABLE:
+        logd("ignore scan while roaming");
+        break;
+    default:
+        return NOT_HANDLED;
+    }
+    return HANDLED;
+}
+
+void WifiLinkStateMachine::RoamingState::exit()
+{
+    /* outter-> */mRoamWatchdogCount++;
+}
+
+void WifiLinkStateMachine::DisconnectingState::enter()
+{
+    logd(getName() + " enter");
+    /* outter-> */mDisconnectingWatchdogCount++;
+    sendMessageDelayed(/* outter-> */CMD_DISCONNECTING_WATCHDOG_TIMER, /* outter-> */mDisconnectingWatchdogCount, 0, /* outter-> */DISCONNECTING_GUARD_TIMER_MSEC);
+}
+
+bool WifiLinkStateMachine::DisconnectingState::processMessage(Message* message)
+{
+    logd(getName() + " " + messageToString(message));
+    switch (message->what) {
+    case /* outter-> */CMD_DISCONNECTING_WATCHDOG_TIMER:
+        if (/* outter-> */mDisconnectingWatchdogCount == message->arg1) {
+            logd("disconnecting watchdog expired");
+            transitionTo(/* outter-> */mDisconnectedState.get());
+        }
+        break;
+    case /* outter-> */EVENT_NETWORK_DISCONNECTION:
+        transitionTo(/* outter-> */mDisconnectedState.get());
+        break;
+    case /* outter-> */CMD_CONNECT_NETWORK:
+    case /* outter-> */CMD_RECONNECT:
+        deferMessage(message);
+        break;
+    case /* outter-> */CMD_DISCONNECT:
+        break;
+    default:
+        return NOT_HANDLED;
+    }
+    return HANDLED;
+}
+
+/**
+ * auto generated
+ */
+WifiLinkStateMachine::~WifiLinkStateMachine()
+{
+}
+
+/**
+ * auto generated
+ */
+WifiLinkStateMachine::DefaultState::DefaultState(WifiLinkStateMachine* outterInstance):
+    outter(outterInstance)
+{
+}
+
+/**
+ * auto generated
+ */
+WifiLinkStateMachine::DefaultState::~DefaultState()
+{
+}
+
+/**
+ * auto generated
+ */
+WifiLinkStateMachine::DriverLoadedState::DriverLoadedState(WifiLinkStateMachine* outterInstance):
+    outter(outterInstance)
+{
+}
+
+/**
+ * auto generated
+ */
+WifiLinkStateMachine::DriverLoadedState::~DriverLoadedState()
+{
+}
+
+/**
+ * auto generated
+ */
+WifiLinkStateMachine::SupplicantStartingState::SupplicantStartingState(WifiLinkStateMachine* outterInstance):
+    outter(outterInstance),
+    mRetries(0)
+{
+}
+
+/**
+ * auto generated
+ */
+WifiLinkStateMachine::SupplicantStartingState::~SupplicantStartingState()
+{
+}
+
+/**
+ * auto generated
+ */
+WifiLinkStateMachine::SupplicantStartedState::SupplicantStartedState(WifiLinkStateMachine* outterInstance):
+    outter(outterInstance)
+{
+}
+
+/**
+ * auto generated
+ */
+WifiLinkStateMachine::SupplicantStartedState::~SupplicantStartedState()
+{
+}
+
+/**
+ * auto generated
+ */
+WifiLinkStateMachine::DisconnectedState::DisconnectedState(WifiLinkStateMachine* outterInstance):
+    outter(outterInstance)
+{
+}
+
+/**
+ * auto generated
+ */
+WifiLinkStateMachine::DisconnectedState::~DisconnectedState()
+{
+}
+
+/**
+ * auto generated
+ */
+WifiLinkStateMachine::ConnectingState::ConnectingState(WifiLinkStateMachine* outterInstance):
+    outter(outterInstance)
+{
+}
+
+/**
+ * auto generated
+ */
+WifiLinkStateMachine::ConnectingState::~ConnectingState()
+{
+}
+
+/**
+ * auto generated
+ */
+WifiLinkStateMachine::ConnectedState::ConnectedState(WifiLinkStateMachine* outterInstance):
+    outter(outterInstance)
+{
+}
+
+/**
+ * auto generated
+ */
+WifiLinkStateMachine::ConnectedState::~ConnectedState()
+{
+}
+
+/**
+ * auto generated
+ */
+WifiLinkStateMachine::RoamingState::RoamingState(WifiLinkStateMachine* outterInstance):
+    mAssociated(false),
+    outter(outterInstance)
+{
+}
+
+/**
+ * auto generated
+ */
+WifiLinkStateMachine::RoamingState::~RoamingState()
+{
+}
+
+/**
+ * auto generated
+ */
+WifiLinkStateMachine::DisconnectingState::DisconnectingState(WifiLinkStateMachine* outterInstance):
+    outter(outterInstance)
+{
+}
+
+/**
+ * auto generated
+ */
+WifiLinkStateMachine::DisconnectingState::~DisconnectingState()
+{
+}
+}
+}
+}
@@ -0,0 +1,374 @@
+#pragma once
+
+#include <content/Context.h> // FIXME: this header is missing
+#include <net/wifi/WifiScanRecord.h>
+#include <os/Looper.h> // FIXME: this header is missing
+#include <os/Message.h> // FIXME: this header is missing
+#include <util/Log.h> // FIXME: this header is missing
+#include <internal/util/State.h> // FIXME: this header is missing
+#include <internal/util/StateMachine.h> // FIXME: this header is missing
+#include <util/ArrayList.h> // FIXME: this header is missing
+#include <util/HashMap.h> // FIXME: this header is missing
+#include <lang/String.h>
+#include <lang/Integer.h>
+#include <lang/StringBuffer.h>
+
+using content::Context;
+using net::wifi::WifiScanRecord;
+using os::Looper;
+using os::Message;
+using util::Log;
+using com::internal::util::State;
+using com::internal::util::StateMachine;
+using util::ArrayList;
+using util::HashMap;
+using lang::String;
+using lang::Integer;
+using lang::StringBuffer;
+
+namespace com {
+namespace server {
+namespace wifi {
+
+class WifiLinkStateMachine : public StateMachine {
+  private:
+    static const String TAG;
+    static const bool DBG = false;
+    static const int BASE = 0x00020000;
+  public:
+    static const int CMD_LOAD_DRIVER = BASE + 1;
+    static const int CMD_UNLOAD_DRIVER = BASE + 2;
+    static const int CMD_START_SUPPLICANT = BASE + 11;
+    static const int CMD_STOP_SUPPLICANT = BASE + 12;
+    static const int CMD_START_SCAN = BASE + 71;
+    static const int CMD_SCAN_RESULTS_AVAILABLE = BASE + 72;
+    static const int CMD_CONNECT_NETWORK = BASE + 81;
+    static const int CMD_DISCONNECT = BASE + 82;
+    static const int CMD_RECONNECT = BASE + 83;
+    static const int CMD_REASSOCIATE = BASE + 84;
+    static const int CMD_RSSI_POLL = BASE + 90;
+    static const int CMD_ENABLE_RSSI_POLL = BASE + 91;
+    static const int CMD_IP_CONFIGURATION_SUCCESSFUL = BASE + 101;
+    static const int CMD_IP_CONFIGURATION_LOST = BASE + 102;
+    static const int CMD_ROAM_WATCHDOG_TIMER = BASE + 110;
+    static const int CMD_DISCONNECTING_WATCHDOG_TIMER = BASE + 111;
+    static const int EVENT_SUPPLICANT_CONNECTION = BASE + 201;
+    static const int EVENT_SUPPLICANT_DISCONNECTION = BASE + 202;
+    static const int EVENT_NETWORK_CONNECTION = BASE + 203;
+    static const int EVENT_NETWORK_DISCONNECTION = BASE + 204;
+    static const int EVENT_AUTHENTICATION_FAILURE = BASE + 205;
+    static const int EVENT_ASSOCIATION_REJECTION = BASE + 206;
+  private:
+    static const int ROAM_GUARD_TIMER_MSEC = 15000;
+    static const int DISCONNECTING_GUARD_TIMER_MSEC = 5000;
+    static const int DEFAULT_POLL_RSSI_INTERVAL_MSEC = 3000;
+    static const int MAX_CONNECTION_FAILURES = 5;
+    static const int MAX_SCAN_RECORDS = 256;
+    sp<Context> mContext;
+    String mInterfaceName;
+    ArrayList<sp<WifiScanRecord>> mScanRecords;
+    HashMap<String, sp<Integer>> mFailureCountByBssid;
+    sp<State> mDefaultState;
+    sp<State> mDriverLoadedState;
+    sp<State> mSupplicantStartingState;
+    sp<State> mSupplicantStartedState;
+    sp<State> mDisconnectedState;
+    sp<State> mConnectingState;
+    sp<State> mConnectedState;
+    sp<State> mRoamingState;
+    sp<State> mDisconnectingState;
+    String mTargetBssid;
+    String mCurrentBssid;
+    int mTargetNetworkId;
+    int mLastNetworkId;
+    int mRssi;
+    int mLinkSpeed;
+    int mFrequency;
+    int mConnectionFailures;
+    int mRoamWatchdogCount;
+    int mDisconnectingWatchdogCount;
+    int mRssiPollToken;
+    bool mEnableRssiPolling;
+    bool mScreenOn;
+    bool mIsScanOngoing;
+    int64_t mLastConnectAttemptTimestamp;
+    int64_t mLastScanTimestamp;
+
+  public:
+    WifiLinkStateMachine(Context* context, const String& interfaceName, Looper* looper);
+
+    void startScan();
+
+    void connect(int networkId, const String& bssid);
+
+    void disconnect();
+
+    void setScreenOn(bool screenOn);
+
+    int getRssi();
+
+    String getCurrentBssid();
+
+    ArrayList<sp<WifiScanRecord>> getScanRecords();
+
+  private:
+    void logd(const String& message);
+
+    void loge(const String& message);
+
+    String messageToString(Message* message);
+
+    void handleScanResults(ArrayList<sp<WifiScanRecord>>& results);
+
+    sp<WifiScanRecord> findBestCandidate(int networkId, const String& ssid);
+
+    int scoreRecord(WifiScanRecord* record);
+
+    void noteConnectionFailure(const String& bssid);
+
+    void clearLinkProperties();
+
+    void updateLinkInfo(const String& bssid, int rssi, int linkSpeed, int frequency);
+
+    bool shouldRoam(WifiScanRecord* candidate);
+
+  public:
+    class DefaultState : public State {
+
+      public:
+        bool processMessage(Message* message) override;
+
+        friend class WifiLinkStateMachine;
+
+        /**
+         * auto generated
+         */
+        sp<WifiLinkStateMachine> outter;
+
+        /**
+         * auto generated
+         */
+        DefaultState(WifiLinkStateMachine* outterInstance);
+
+        /**
+         * auto generated
+         */
+        ~DefaultState();
+    };
+
+    class DriverLoadedState : public State {
+
+      public:
+        void enter() override;
+
+        bool processMessage(Message* message) override;
+
+        friend class WifiLinkStateMachine;
+
+        /**
+         * auto generated
+         */
+        sp<WifiLinkStateMachine> outter;
+
+        /**
+         * auto generated
+         */
+        DriverLoadedState(WifiLinkStateMachine* outterInstance);
+
+        /**
+         * auto generated
+         */
+        ~DriverLoadedState();
+    };
+
+    class SupplicantStartingState : public State {
+      private:
+        int mRetries;
+
+      public:
+        void enter() override;
+
+        bool processMessage(Message* message) override;
+
+        friend class WifiLinkStateMachine;
+
+        /**
+         * auto generated
+         */
+        sp<WifiLinkStateMachine> outter;
+
+        /**
+         * auto generated
+         */
+        SupplicantStartingState(WifiLinkStateMachine* outterInstance);
+
+        /**
+         * auto generated
+         */
+        ~SupplicantStartingState();
+    };
+
+    class SupplicantStartedState : public State {
+
+      public:
+        void enter() override;
+
+        bool processMessage(Message* message) override;
+
+        friend class WifiLinkStateMachine;
+
+        /**
+         * auto generated
+         */
+        sp<WifiLinkStateMachine> outter;
+
+        /**
+         * auto generated
+         */
+        SupplicantStartedState(WifiLinkStateMachine* outterInstance);
+
+        /**
+         * auto generated
+         */
+        ~SupplicantStartedState();
+    };
+
+    class DisconnectedState : public State {
+
+      public:
+        void enter() override;
+
+        bool processMessage(Message* message) override;
+
+        friend class WifiLinkStateMachine;
+
+        /**
+         * auto generated
+         */
+        sp<WifiLinkStateMachine> outter;
+
+        /**
+         * auto generated
+         */
+        DisconnectedState(WifiLinkStateMachine* outterInstance);
+
+        /**
+         * auto generated
+         */
+        ~DisconnectedState();
+    };
+
+    class ConnectingState : public State {
+
+      public:
+        void enter() override;
+
+        bool processMessage(Message* message) override;
+
+        friend class WifiLinkStateMachine;
+
+        /**
+         * auto generated
+         */
+        sp<WifiLinkStateMachine> outter;
+
+        /**
+         * auto generated
+         */
+        ConnectingState(WifiLinkStateMachine* outterInstance);
+
+        /**
+         * auto generated
+         */
+        ~ConnectingState();
+    };
+
+    class ConnectedState : public State {
+
+      public:
+        void enter() override;
+
+        bool processMessage(Message* message) override;
+
+        void exit() override;
+
+        friend class WifiLinkStateMachine;
+
+        /**
+         * auto generated
+         */
+        sp<WifiLinkStateMachine> outter;
+
+        /**
+         * auto generated
+         */
+        ConnectedState(WifiLinkStateMachine* outterInstance);
+
+        /**
+         * auto generated
+         */
+        ~ConnectedState();
+    };
+
+    class RoamingState : public State {
+      private:
+        bool mAssociated;
+
+      public:
+        void enter() override;
+
+        bool processMessage(Message* message) override;
+
+        void exit() override;
+
+        friend class WifiLinkStateMachine;
+
+        /**
+         * auto generated
+         */
+        sp<WifiLinkStateMachine> outter;
+
+        /**
+         * auto generated
+         */
+        RoamingState(WifiLinkStateMachine* outterInstance);
+
+        /**
+         * auto generated
+         */
+        ~RoamingState();
+    };
+
+    class DisconnectingState : public State {
+
+      public:
+        void enter() override;
+
+        bool processMessage(Message* message) override;
+
+        friend class WifiLinkStateMachine;
+
+        /**
+         * auto generated
+         */
+        sp<WifiLinkStateMachine> outter;
+
+        /**
+         * auto generated
+         */
+        DisconnectingState(WifiLinkStateMachine* outterInstance);
+
+        /**
+         * auto generated
+         */
+        ~DisconnectingState();
+    };
+
+    /**
+     * auto generated
+     */
+    ~WifiLinkStateMachine();
+};
+}
+}
+}
@@ -0,0 +1,579 @@
+package com.android.cplusplus;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.android.cplusplus.JavaCodeReader.CodeParser;
+import com.android.cplusplus.JavaReader.ClassParagraph;
+import com.android.cplusplus.JavaReader.Clazz;
+import com.android.cplusplus.JavaReader.JavaCodeParagraph;
+import com.android.cplusplus.JavaReader.JavaFile;
+import com.android.cplusplus.JavaReader.JavaStatement;
+
+/**
+ * Small benchmark driver for the translator, so a change to a hot path can be judged
+ * by numbers instead of by feeling.
+ * <p>
+ * Usage: Benchmark [-warmup rounds] [-rounds rounds] [-headers dir] workload|all path...
+ * <br>
+ * Every path is a java/aidl file or a directory searched recursively, benchmark/corpus
+ * holds a set of typical framework files. Each round runs the workload once over all
+ * files, warm up rounds are not reported. Besides the throughput the bytes allocated by
+ * the measured rounds and the garbage collections they caused are printed.
+ */
+public class Benchmark {
+
+    abstract static class Workload {
+        final String name;
+        final String unit;
+
+        Workload(String name, String unit) {
+            this.name = name;
+            this.unit = unit;
+        }
+
+        /**
+         * Returns the files the workload runs over, all of them by default.
+         */
+        ArrayList<File> select(ArrayList<File> files) {
+            return files;
+        }
+
+        /**
+         * Called once before the first round, nothing done here is measured.
+         */
+        void setUp(ArrayList<File> files) {
+        }
+
+        /**
+         * Called before every round, nothing done here is measured.
+         */
+        void prepareRound(ArrayList<File> files) {
+        }
+
+        /**
+         * Runs one round over files and returns how many units were processed.
+         */
+        abstract long run(ArrayList<File> files);
+    }
+
+    /**
+     * Method bodies read once, then only fed to the statement parser.
+     */
+    abstract static class CodeWorkload extends Workload {
+        final ArrayList<JavaCodeParagraph> paragraphs = new ArrayList<>();
+        long lineCount;
+
+        CodeWorkload(String name) {
+            super(name, "lines");
+        }
+
+        @Override
+        void setUp(ArrayList<File> files) {
+            ArrayList<JavaFile> javaFiles = readAll(files);
+            for (int i = 0; i < javaFiles.size(); i++) {
+                JavaFile javaFile = javaFiles.get(i);
+                collectCodeParagraphs(javaFile.primeClass, paragraphs);
+                if (javaFile.otherClass != null) {
+                    for (int j = 0; j < javaFile.otherClass.size(); j++) {
+                        collectCodeParagraphs(javaFile.otherClass.get(j), paragraphs);
+                    }
+                }
+            }
+            for (int i = 0; i < paragraphs.size(); i++) {
+                lineCount += paragraphs.get(i).codeByOrder.size();
+            }
+        }
+
+        @Override
+        long run(ArrayList<File> files) {
+            // anonymous classes are installed into their outer class once more
+            // every round, that is part of the work of the parser
+            JavaCodeReader codeReader = new JavaCodeReader();
+            for (int i = 0; i < paragraphs.size(); i++) {
+                JavaCodeParagraph paragraph = paragraphs.get(i);
+                codeReader.start(paragraph);
+                for (int j = 0; j < paragraph.codeByOrder.size(); j++) {
+                    codeReader.processCodeLine(paragraph.codeByOrder.get(j));
+                }
+                codeReader.finish();
+            }
+            return lineCount;
+        }
+    }
+
+    // outputs of the writer when they do not go to the console
+    private static String sOutPath;
+    private static ArrayList<File> sTranslatable;
+    // files the workloads make up, deleted at the end
+    private static File sScratchDir;
+
+    private static final PrintStream sNullStream = new PrintStream(new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    });
+
+    static final Workload[] sWorkloads = {
+        new Workload("lines", "lines") {
+            @Override
+            long run(ArrayList<File> files) {
+                JavaReader reader = TranslationContext.get().reader;
+                long count = 0;
+                for (int i = 0; i < files.size(); i++) {
+                    count += reader.scanLines(files.get(i));
+                }
+                return count;
+            }
+        },
+        new Workload("ops", "lines") {
+            // long source lines, run through the operator scan of the code parser
+            final ArrayList<String> lines = new ArrayList<>();
+
+            @Override
+            void setUp(ArrayList<File> files) {
+                for (int i = 0; i < files.size(); i++) {
+                    collectLongLines(files.get(i), 60, lines);
+                }
+            }
+
+            @Override
+            long run(ArrayList<File> files) {
+                TranslationContext context = TranslationContext.get();
+                for (int i = 0; i < lines.size(); i++) {
+                    CodeParser parser = CodeParser.obtain(context, null, lines.get(i));
+                    parser.prepareStatementProcessing();
+                    parser.recycle(context);
+                }
+                return lines.size();
+            }
+        },
+        new Workload("read", "files") {
+            // JavaReader.read() as a whole, method bodies included
+            @Override
+            ArrayList<File> select(ArrayList<File> files) {
+                return getTranslatable(files);
+            }
+
+            @Override
+            long run(ArrayList<File> files) {
+                JavaReader reader = TranslationContext.get().reader;
+                for (int i = 0; i < files.size(); i++) {
+                    reader.read(files.get(i));
+                }
+                return files.size();
+            }
+        },
+        new Workload("declarations", "files") {
+            // JavaReader.read() with lazy method bodies, which are never parsed
+            @Override
+            ArrayList<File> select(ArrayList<File> files) {
+                return getTranslatable(files);
+            }
+
+            @Override
+            long run(ArrayList<File> files) {
+                JavaReader reader = TranslationContext.get().reader;
+                reader.setLazyCodeParsing(true);
+                try {
+                    for (int i = 0; i < files.size(); i++) {
+                        reader.read(files.get(i));
+                    }
+                } finally {
+                    reader.setLazyCodeParsing(false);
+                }
+                return files.size();
+            }
+        },
+        new Workload("models", "files") {
+            // the models of the read workload loaded from a ModelCache instead
+            ModelCache models;
+            final ArrayList<String> hashes = new ArrayList<>();
+
+            @Override
+            ArrayList<File> select(ArrayList<File> files) {
+                return getTranslatable(files);
+            }
+
+            @Override
+            void setUp(ArrayList<File> files) {
+                models = new ModelCache(getScratchDir());
+                JavaReader reader = TranslationContext.get().reader;
+                for (int i = 0; i < files.size(); i++) {
+                    String hash = ModelCache.hash(files.get(i), false);
+                    models.save(files.get(i), hash, reader.read(files.get(i)));
+                    hashes.add(hash);
+                }
+            }
+
+            @Override
+            long run(ArrayList<File> files) {
+                for (int i = 0; i < files.size(); i++) {
+                    if (models.load(files.get(i), hashes.get(i)) == null) {
+                        throw new RuntimeException("Logic crash, no model of:" + files.get(i));
+                    }
+                }
+                return files.size();
+            }
+        },
+        new CodeWorkload("code") {
+            @Override
+            ArrayList<File> select(ArrayList<File> files) {
+                return getTranslatable(files);
+            }
+        },
+        new CodeWorkload("chains") {
+            // made up StringBuilder append chains of 8 to 512 calls, the paths are ignored
+            @Override
+            ArrayList<File> select(ArrayList<File> files) {
+                File file = new File(getScratchDir(), "Chains.java");
+                StringBuilder source = new StringBuilder("package bench;\n\npublic class Chains {\n"
+                        + "    private String mName;\n\n"
+                        + "    public String describe(int value, String label) {\n"
+                        + "        StringBuilder sb = new StringBuilder();\n");
+                for (int count = 8; count <= 512; count *= 4) {
+                    source.append("        sb");
+                    for (int i = 0; i < count; i++) {
+                        switch (i % 4) {
+                        case 0:
+                            source.append(".append(\"key").append(i).append("=\")");
+                            break;
+                        case 1:
+                            source.append(".append(value + ").append(i).append(')');
+                            break;
+                        case 2:
+                            source.append(".append(label.length())");
+                            break;
+                        default:
+                            source.append(".append(mName)");
+                            break;
+                        }
+                    }
+                    source.append(";\n");
+                }
+                source.append("        return sb.toString();\n    }\n}\n");
+                try {
+                    Files.write(file.toPath(), source.toString().getBytes(StandardCharsets.UTF_8));
+                } catch (IOException e) {
+                    throw new RuntimeException("Can not write:" + file, e);
+                }
+                return new ArrayList<>(Arrays.asList(file));
+            }
+        },
+        new Workload("write", "files") {
+            // the writer changes the model it translates, so every round gets fresh ones
+            ArrayList<JavaFile> javaFiles;
+
+            @Override
+            ArrayList<File> select(ArrayList<File> files) {
+                return getTranslatable(files);
+            }
+
+            @Override
+            void prepareRound(ArrayList<File> files) {
+                javaFiles = readAll(files);
+            }
+
+            @Override
+            long run(ArrayList<File> files) {
+                CppWriter writer = TranslationContext.get().writer;
+                for (int i = 0; i < javaFiles.size(); i++) {
+                    writer.write(javaFiles.get(i), sOutPath);
+                }
+                return javaFiles.size();
+            }
+        },
+    };
+
+    public static void main(String[] args) {
+        int warmupRounds = 5;
+        int rounds = 10;
+        ArrayList<Workload> workloads = new ArrayList<>();
+        ArrayList<File> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if ("-warmup".equals(args[i]) && i + 1 < args.length) {
+                warmupRounds = Integer.parseInt(args[++i]);
+            } else if ("-rounds".equals(args[i]) && i + 1 < args.length) {
+                rounds = Math.max(1, Integer.parseInt(args[++i]));
+            } else if ("-headers".equals(args[i]) && i + 1 < args.length) {
+                Core.sHeaderRoot = args[++i];
+            } else if (workloads.isEmpty()) {
+                if ("all".equals(args[i])) {
+                    workloads.addAll(Arrays.asList(sWorkloads));
+                } else {
+                    workloads.add(findWorkload(args[i]));
+                }
+            } else {
+                collectFiles(new File(args[i]), files);
+            }
+        }
+        if (workloads.isEmpty() || files.isEmpty()) {
+            System.out.println("Usage: Benchmark [-warmup rounds] [-rounds rounds] [-headers dir]"
+                    + " workload|all path...");
+            System.out.print("workloads:");
+            for (int i = 0; i < sWorkloads.length; i++) {
+                System.out.print(" " + sWorkloads[i].name);
+            }
+            System.out.println();
+            return;
+        }
+
+        File headerRoot = null;
+        File outDir = null;
+        try {
+            if (!new File(Core.sHeaderRoot).isDirectory()) {
+                // nothing to look up, every header is reported as missing
+                headerRoot = Files.createTempDirectory("java2cpp-headers").toFile();
+                Core.sHeaderRoot = headerRoot.getAbsolutePath();
+            }
+            if (!Core.DEBUG_MODE) {
+                outDir = Files.createTempDirectory("java2cpp-bench").toFile();
+                sOutPath = outDir.getAbsolutePath();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Can not create temporary directory", e);
+        }
+        TranslationContext.get().setLogStream(sNullStream);
+        for (int i = 0; i < workloads.size(); i++) {
+            measure(workloads.get(i), files, warmupRounds, rounds);
+        }
+        deleteTree(outDir);
+        deleteTree(headerRoot);
+        deleteTree(sScratchDir);
+    }
+
+    /**
+     * Translates every file once and keeps the ones the translator gets through, so
+     * that all translating workloads see the same files and a failing file does not
+     * stop a run.
+     */
+    private static ArrayList<File> getTranslatable(ArrayList<File> files) {
+        if (sTranslatable != null) {
+            return sTranslatable;
+        }
+        TranslationContext context = TranslationContext.get();
+        ArrayList<File> result = new ArrayList<>(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            try {
+                JavaFile javaFile = context.reader.read(files.get(i));
+                if (javaFile != null) {
+                    context.writer.write(javaFile, sOutPath);
+                    result.add(files.get(i));
+                }
+            } catch (RuntimeException e) {
+                System.out.println("skip " + files.get(i) + ": " + e);
+            }
+        }
+        return sTranslatable = result;
+    }
+
+    private static File getScratchDir() {
+        if (sScratchDir == null) {
+            try {
+                sScratchDir = Files.createTempDirectory("java2cpp-scratch").toFile();
+            } catch (IOException e) {
+                throw new RuntimeException("Can not create temporary directory", e);
+            }
+        }
+        return sScratchDir;
+    }
+
+    private static void deleteTree(File target) {
+        if (target == null) {
+            return;
+        }
+        File[] children = target.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteTree(child);
+            }
+        }
+        target.delete();
+    }
+
+    private static void measure(Workload workload, ArrayList<File> files, int warmupRounds,
+            int rounds) {
+        files = workload.select(files);
+        workload.setUp(files);
+        for (int i = 0; i < warmupRounds; i++) {
+            workload.prepareRound(files);
+            workload.run(files);
+        }
+        long units = 0;
+        long totalNanos = 0;
+        long bestNanos = Long.MAX_VALUE;
+        boolean allocationKnown = Metrics.getAllocatedBytes() >= 0;
+        long allocatedBytes = 0;
+        long gcCount = 0;
+        long gcMillis = 0;
+        for (int i = 0; i < rounds; i++) {
+            workload.prepareRound(files);
+            // the gc beans allocate, keep them out of the allocated bytes
+            long gcCountBefore = getGcCount();
+            long gcMillisBefore = getGcMillis();
+            long allocatedBefore = Metrics.getAllocatedBytes();
+            long start = System.nanoTime();
+            units = workload.run(files);
+            long cost = System.nanoTime() - start;
+            allocatedBytes += Metrics.getAllocatedBytes() - allocatedBefore;
+            gcCount += getGcCount() - gcCountBefore;
+            gcMillis += getGcMillis() - gcMillisBefore;
+            totalNanos += cost;
+            bestNanos = Math.min(bestNanos, cost);
+        }
+
+        System.out.println(workload.name + ": " + files.size() + " files, " + units + " "
+                + workload.unit + " per round");
+        System.out.println("    average " + perSecond(units * rounds, totalNanos) + " "
+                + workload.unit + "/s, best round " + perSecond(units, bestNanos) + " "
+                + workload.unit + "/s");
+        if (allocationKnown && units > 0) {
+            System.out.println("    allocated " + allocatedBytes / (units * rounds) + " bytes/"
+                    + workload.unit.substring(0, workload.unit.length() - 1) + ", "
+                    + perSecond(allocatedBytes, totalNanos) / (1024 * 1024) + " MB/s, gc "
+                    + gcCount + " times " + gcMillis + " ms");
+        }
+    }
+
+    private static long getGcCount() {
+        long count = 0;
+        List<GarbageCollectorMXBean> beans = ManagementFactory.getGarbageCollectorMXBeans();
+        for (int i = 0; i < beans.size(); i++) {
+            count += Math.max(0, beans.get(i).getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long getGcMillis() {
+        long millis = 0;
+        List<GarbageCollectorMXBean> beans = ManagementFactory.getGarbageCollectorMXBeans();
+        for (int i = 0; i < beans.size(); i++) {
+            millis += Math.max(0, beans.get(i).getCollectionTime());
+        }
+        return millis;
+    }
+
+    private static Workload findWorkload(String name) {
+        for (int i = 0; i < sWorkloads.length; i++) {
+            if (sWorkloads[i].name.equals(name)) {
+                return sWorkloads[i];
+            }
+        }
+        throw new RuntimeException("Unknown workload:" + name);
+    }
+
+    private static long perSecond(long units, long nanos) {
+        return nanos > 0 ? units * 1000000000L / nanos : 0;
+    }
+
+    /**
+     * Adds every trimmed line of file which is not a comment and has at least
+     * minimumLength characters to lines.
+     */
+    static void collectLongLines(File file, int minimumLength, ArrayList<String> lines) {
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(file));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.length() >= minimumLength && !line.startsWith("//")
+                        && !line.startsWith("*") && !line.startsWith("/*")) {
+                    lines.add(line);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+    }
+
+    static ArrayList<JavaFile> readAll(ArrayList<File> files) {
+        JavaReader reader = TranslationContext.get().reader;
+        ArrayList<JavaFile> javaFiles = new ArrayList<>(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            JavaFile javaFile = reader.read(files.get(i));
+            if (javaFile.primeClass != null) {
+                javaFiles.add(javaFile);
+            }
+        }
+        return javaFiles;
+    }
+
+    /**
+     * Adds the parsed body of every method and code block of clazz and of its inner
+     * classes to paragraphs. Classes generated for anonymous classes are left out, the
+     * body they appear in creates them again.
+     */
+    static void collectCodeParagraphs(Clazz clazz, ArrayList<JavaCodeParagraph> paragraphs) {
+        if (clazz == null || clazz.isAutoGenerated) {
+            return;
+        }
+        ClassParagraph classParagraph = (ClassParagraph) clazz.paragraph;
+        collectCodeParagraphs(classParagraph.staticMethods, paragraphs);
+        collectCodeParagraphs(classParagraph.constructionMethods, paragraphs);
+        collectCodeParagraphs(classParagraph.methods, paragraphs);
+        collectCodeParagraphs(classParagraph.staticCodeBlocks, paragraphs);
+        collectCodeParagraphs(classParagraph.codeBlocks, paragraphs);
+        if (classParagraph.staticInnerClazzes != null) {
+            for (int i = 0; i < classParagraph.staticInnerClazzes.size(); i++) {
+                collectCodeParagraphs(classParagraph.staticInnerClazzes.get(i), paragraphs);
+            }
+        }
+        if (classParagraph.innerClazzes != null) {
+            for (int i = 0; i < classParagraph.innerClazzes.size(); i++) {
+                collectCodeParagraphs(classParagraph.innerClazzes.get(i), paragraphs);
+            }
+        }
+    }
+
+    private static void collectCodeParagraphs(ArrayList<? extends JavaStatement> statements,
+            ArrayList<JavaCodeParagraph> paragraphs) {
+        if (statements == null) {
+            return;
+        }
+        for (int i = 0; i < statements.size(); i++) {
+            JavaStatement statement = statements.get(i);
+            if (statement.isAutoGenerated || !(statement.paragraph instanceof JavaCodeParagraph)) {
+                continue;
+            }
+            JavaCodeParagraph paragraph = (JavaCodeParagraph) statement.paragraph;
+            if (paragraph.innerCodeParagraph != null && paragraph.codeByOrder != null) {
+                paragraphs.add(paragraph);
+            }
+        }
+    }
+
+    private static void collectFiles(File target, ArrayList<File> files) {
+        if (target.isDirectory()) {
+            File[] children = target.listFiles();
+            Arrays.sort(children);
+            for (File child : children) {
+                collectFiles(child, files);
+            }
+        } else if (target.getName().endsWith(".java") || target.getName().endsWith(".aidl")) {
+            files.add(target);
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package com.android.cplusplus;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers what every source file was translated into, so that a file whose content,
+ * translator version, registered types and looked up headers did not change since the
+ * last run is not translated again and its previous outputs are kept.
+ * <p>
+ * One cache file exists per output root, it lives in the cache directory of the
+ * translator. All methods may be called from any worker.
+ */
+final class BuildCache {
+
+    private static final String MAGIC = "java2cpp-build-cache 1";
+
+    static class HeaderLookup {
+        final String from;
+        final String name;
+        final String fullName;
+        final boolean existed;
+
+        HeaderLookup(String from, String name, String fullName, boolean existed) {
+            this.from = from;
+            this.name = name;
+            this.fullName = fullName;
+            this.existed = existed;
+        }
+    }
+
+    static class Record {
+        final String hash;
+        final ArrayList<String> outputs;
+        final ArrayList<HeaderLookup> headers;
+
+        Record(String hash, ArrayList<String> outputs, ArrayList<HeaderLookup> headers) {
+            this.hash = hash;
+            this.outputs = outputs;
+            this.headers = headers;
+        }
+    }
+
+    private final File mFile;
+    private final ConcurrentHashMap<String, Record> mRecords = new ConcurrentHashMap<>();
+    private volatile boolean mDirty;
+
+    private BuildCache(File file) {
+        mFile = file;
+    }
+
+    static BuildCache open(File cacheDir, String dstPath) {
+        String root = new File(dstPath).getAbsolutePath();
+        BuildCache cache = new BuildCache(new File(cacheDir, "build-"
+                + Integer.toHexString(root.hashCode()) + ".cache"));
+        cache.load();
+        return cache;
+    }
+
+    /**
+     * Hash of the content of source together with the translator version, the header only
+     * and streaming modes, the types added to the TypeRegistry and the class index, or null
+     * if the file can not be read.
+     */
+    static String hash(File source) {
+        ClassIndex index = Core.getClassIndex();
+        return hash(source, "java2cpp:" + Core.TRANSLATOR_VERSION + ":"
+                + (Core.sHeaderOnly ? "header-only:" : "") + (Core.sStreaming ? "stream:" : "")
+                + TypeRegistry.get().getExtraTypes()
+                + (index != null ? ":index:" + index.getSignature() : ""));
+    }
+    
+    /**
+     * SHA-1 of key followed by the content of source, or null if the file can not be read.
+     */
+    static String hash(File source, String key) {
+        InputStream in = null;
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(key.getBytes(StandardCharsets.UTF_8));
+            in = new FileInputStream(source);
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, count);
+            }
+            return toHex(digest.digest());
+        } catch (IOException | NoSuchAlgorithmException e) {
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (int i = 0; i < bytes.length; i++) {
+            hex.append(Character.forDigit((bytes[i] >> 4) & 0xf, 16));
+            hex.append(Character.forDigit(bytes[i] & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Returns the record of source if the outputs it lists can be reused, null if the
+     * file has to be translated again.
+     */
+    Record lookUp(File source, String hash) {
+        Record record = mRecords.get(source.getAbsolutePath());
+        if (record == null || hash == null || !record.hash.equals(hash)) {
+            return null;
+        }
+        for (int i = 0; i < record.outputs.size(); i++) {
+            if (!new File(record.outputs.get(i)).isFile()) {
+                return null;
+            }
+        }
+        // a header which showed up or went away since changes the includes
+        for (int i = 0; i < record.headers.size(); i++) {
+            HeaderLookup lookup = record.headers.get(i);
+            if (Core.isHeaderFileExisted(lookup.from, lookup.name, lookup.fullName) != lookup.existed) {
+                return null;
+            }
+        }
+        return record;
+    }
+
+    void put(File source, Record record) {
+        mRecords.put(source.getAbsolutePath(), record);
+        mDirty = true;
+    }
+
+    /**
+     * Forgets source, returns what was recorded for it or null.
+     */
+    Record remove(File source) {
+        Record record = mRecords.remove(source.getAbsolutePath());
+        if (record != null) {
+            mDirty = true;
+        }
+        return record;
+    }
+
+    private void load() {
+        if (!mFile.isFile()) {
+            return;
+        }
+        BufferedReader in = null;
+        try {
+            in = new BufferedReader(new InputStreamReader(new FileInputStream(mFile),
+                    StandardCharsets.UTF_8));
+            if (!MAGIC.equals(in.readLine())) {
+                return;
+            }
+            String line;
+            String source = null;
+            Record record = null;
+            while ((line = in.readLine()) != null) {
+                if (line.length() < 2) {
+                    continue;
+                }
+                String value = line.substring(2);
+                switch (line.charAt(0)) {
+                case 'S':
+                    int split = value.indexOf('\t');
+                    source = value.substring(split + 1);
+                    record = new Record(value.substring(0, split), new ArrayList<String>(),
+                            new ArrayList<HeaderLookup>());
+                    mRecords.put(source, record);
+                    break;
+                case 'O':
+                    record.outputs.add(value);
+                    break;
+                case 'H':
+                    String[] parts = value.split("\t");
+                    record.headers.add(new HeaderLookup(parts[1], parts[2], parts[3],
+                            "1".equals(parts[0])));
+                    break;
+                default:
+                    throw new IOException("Unknown record:" + line);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // a broken cache only costs a full translation
+            mRecords.clear();
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+    }
+
+    void save() {
+        if (!mDirty) {
+            return;
+        }
+        File parent = mFile.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            return;
+        }
+        File tmpFile = new File(mFile.getPath() + ".tmp");
+        PrintWriter out = null;
+        try {
+            out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(tmpFile),
+                    StandardCharsets.UTF_8));
+            out.println(MAGIC);
+            for (Entry<String, Record> entry : new TreeMap<>(mRecords).entrySet()) {
+                Record record = entry.getValue();
+                out.println("S " + record.hash + "\t" + entry.getKey());
+                for (int i = 0; i < record.outputs.size(); i++) {
+                    out.println("O " + record.outputs.get(i));
+                }
+                for (int i = 0; i < record.headers.size(); i++) {
+                    HeaderLookup lookup = record.headers.get(i);
+                    out.println("H " + (lookup.existed ? "1" : "0") + "\t" + lookup.from
+                            + "\t" + lookup.name + "\t" + lookup.fullName);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        } finally {
+            if (out != null) {
+                out.close();
+            }
+        }
+        if (mFile.exists()) {
+            mFile.delete();
+        }
+        if (tmpFile.renameTo(mFile)) {
+            mDirty = false;
+        }
+    }
+}
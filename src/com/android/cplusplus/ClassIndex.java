@@ -0,0 +1,481 @@
+package com.android.cplusplus;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import com.android.cplusplus.JavaReader.ClassParagraph;
+import com.android.cplusplus.JavaReader.Clazz;
+import com.android.cplusplus.JavaReader.Enumeration;
+import com.android.cplusplus.JavaReader.JavaField;
+import com.android.cplusplus.JavaReader.JavaFile;
+import com.android.cplusplus.JavaReader.JavaMethod;
+import com.android.cplusplus.JavaReader.JavaStatement;
+
+/**
+ * Every class declared by the translated sources, nested ones included, with the types
+ * of its fields and the return types of its methods. Built with "-index" by a pre-pass
+ * which reads the declarations of all sources on the workers before anything is
+ * translated, the method bodies are not parsed.
+ * <p>
+ * The writer includes a nested class through the header of its top level class and
+ * takes the header of every indexed class as existing, it is written by the same run.
+ * The code parser looks up the members a class inherits and the members of variables
+ * whose class is indexed. The index is not changed while files are translated, only
+ * before, so workers read it without locking.
+ */
+final class ClassIndex {
+
+    private static final int MAX_SUPER_DEPTH = 32;
+
+    private static final PrintStream sNullStream = new PrintStream(new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    });
+
+    static final class ClassInfo {
+        final String qualifiedName;
+        final String name;
+        final String packageName;
+        final ClassInfo outer;
+        // the super class first, then the interfaces, as written but without type arguments
+        final ArrayList<String> superNames = new ArrayList<>();
+        // the imports of the declaring source, shared by all its classes
+        final ArrayList<String> imports;
+        private final HashMap<String, String> mFieldTypes = new HashMap<>();
+        // name + "/" + parameter count -> return type
+        private final HashMap<String, String> mReturnTypes = new HashMap<>();
+
+        ClassInfo(String packageName, String name, ClassInfo outer, ArrayList<String> imports) {
+            this.packageName = packageName;
+            this.name = name;
+            this.outer = outer;
+            this.imports = imports;
+            if (outer != null) {
+                qualifiedName = outer.qualifiedName + "." + name;
+            } else {
+                qualifiedName = packageName.length() > 0 ? packageName + "." + name : name;
+            }
+        }
+
+        ClassInfo getTopLevel() {
+            ClassInfo info = this;
+            while (info.outer != null) {
+                info = info.outer;
+            }
+            return info;
+        }
+    }
+
+    private final HashMap<String, ClassInfo> mByQualifiedName = new HashMap<>();
+    private final HashMap<String, ArrayList<ClassInfo>> mBySimpleName = new HashMap<>();
+    private final HashMap<File, ArrayList<ClassInfo>> mBySource = new HashMap<>();
+    // include paths of the top level classes, see getIncludePath()
+    private final HashSet<String> mHeaders = new HashSet<>();
+    private String mSignature = "0";
+
+    /**
+     * Reads the declarations of every source below root on the workers of pool. A
+     * source which can not be read is left out, its translation reports the error.
+     */
+    static ClassIndex build(File root, ForkJoinPool pool) {
+        ArrayList<File> sources = new ArrayList<>();
+        collectSources(root, sources);
+        ArrayList<Future<ArrayList<ClassInfo>>> results = new ArrayList<>(sources.size());
+        for (int i = 0; i < sources.size(); i++) {
+            final File source = sources.get(i);
+            results.add(pool.submit(new Callable<ArrayList<ClassInfo>>() {
+                @Override
+                public ArrayList<ClassInfo> call() {
+                    return scan(source);
+                }
+            }));
+        }
+        // merged in the order of the sources, so a duplicate name always resolves the same
+        ClassIndex index = new ClassIndex();
+        for (int i = 0; i < results.size(); i++) {
+            try {
+                index.put(sources.get(i), results.get(i).get());
+            } catch (InterruptedException | ExecutionException e) {
+                throw new RuntimeException("Logic crash", e);
+            }
+        }
+        index.updateSignature();
+        return index;
+    }
+
+    /**
+     * Reads source again, for a source which was added or changed since the index was
+     * built. Must not be called while files are translated.
+     */
+    void update(File source) {
+        removeSource(source);
+        put(source, scan(source));
+        updateSignature();
+    }
+
+    void remove(File source) {
+        if (removeSource(source)) {
+            updateSignature();
+        }
+    }
+
+    private boolean removeSource(File source) {
+        ArrayList<ClassInfo> classes = mBySource.remove(source);
+        if (classes == null) {
+            return false;
+        }
+        for (int i = 0; i < classes.size(); i++) {
+            ClassInfo info = classes.get(i);
+            if (mByQualifiedName.get(info.qualifiedName) == info) {
+                mByQualifiedName.remove(info.qualifiedName);
+                if (info.outer == null) {
+                    mHeaders.remove(getIncludePath(info.qualifiedName));
+                }
+            }
+            ArrayList<ClassInfo> sameName = mBySimpleName.get(info.name);
+            if (sameName != null) {
+                sameName.remove(info);
+                if (sameName.isEmpty()) {
+                    mBySimpleName.remove(info.name);
+                }
+            }
+        }
+        return true;
+    }
+
+    int size() {
+        return mByQualifiedName.size();
+    }
+
+    /**
+     * Hash of every declaration in the index. A translated file may depend on the
+     * declarations of any other source, so the build cache keeps its outputs only while
+     * this stays the same, which is as long as just method bodies are edited.
+     */
+    String getSignature() {
+        return mSignature;
+    }
+
+    // SHA-1 like BuildCache.hash(), computed after every change, the workers only read it
+    private void updateSignature() {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("Logic crash", e);
+        }
+        TreeMap<String, ClassInfo> sorted = new TreeMap<>(mByQualifiedName);
+        for (ClassInfo info : sorted.values()) {
+            String declaration = info.qualifiedName + info.superNames
+                    + new TreeMap<>(info.mFieldTypes) + new TreeMap<>(info.mReturnTypes) + "\n";
+            digest.update(declaration.getBytes(StandardCharsets.UTF_8));
+        }
+        mSignature = BuildCache.toHex(digest.digest());
+    }
+
+    ClassInfo get(String qualifiedName) {
+        return mByQualifiedName.get(qualifiedName);
+    }
+
+    /**
+     * Whether the include path, as the writer makes it from an import, is the header of
+     * an indexed top level class.
+     */
+    boolean containsHeader(String includePath) {
+        return mHeaders.contains(includePath);
+    }
+
+    /**
+     * The class name refers to inside of from: a class nested in from or in a class
+     * around it, a class of the same package, an imported one or else the only indexed
+     * class of that name. Null if there is none.
+     */
+    ClassInfo resolve(ClassInfo from, String name) {
+        name = stripTypeArguments(name);
+        if (name.indexOf('.') >= 0) {
+            ClassInfo info = mByQualifiedName.get(name);
+            if (info != null || from == null) {
+                return info;
+            }
+        }
+        if (from != null) {
+            for (ClassInfo outer = from; outer != null; outer = outer.outer) {
+                ClassInfo info = mByQualifiedName.get(outer.qualifiedName + "." + name);
+                if (info != null) {
+                    return info;
+                }
+            }
+            ClassInfo info = mByQualifiedName.get(from.packageName.length() > 0
+                    ? from.packageName + "." + name : name);
+            if (info != null) {
+                return info;
+            }
+            if (from.imports != null) {
+                int dotIndex = name.indexOf('.');
+                String first = dotIndex >= 0 ? name.substring(0, dotIndex) : name;
+                for (int i = 0; i < from.imports.size(); i++) {
+                    String imported = from.imports.get(i);
+                    if (imported.endsWith("." + first)) {
+                        info = mByQualifiedName.get(imported + name.substring(first.length()));
+                        if (info != null) {
+                            return info;
+                        }
+                    }
+                }
+            }
+        }
+        ArrayList<ClassInfo> sameName = mBySimpleName.get(name);
+        return sameName != null && sameName.size() == 1 ? sameName.get(0) : null;
+    }
+
+    /**
+     * Return type of the method of info, or of a class it extends or implements, named
+     * name and taking argsCount parameters. Null if there is none.
+     */
+    String findReturnType(ClassInfo info, String name, int argsCount) {
+        return findMember(info, name + "/" + argsCount, true);
+    }
+
+    /**
+     * Type of the field of info, or of a class it extends or implements. Null if there
+     * is none.
+     */
+    String findFieldType(ClassInfo info, String name) {
+        return findMember(info, name, false);
+    }
+
+    private String findMember(ClassInfo info, String key, boolean method) {
+        ArrayList<ClassInfo> pending = new ArrayList<>();
+        HashSet<ClassInfo> seen = new HashSet<>();
+        if (info != null) {
+            pending.add(info);
+        }
+        for (int i = 0; i < pending.size() && i < MAX_SUPER_DEPTH; i++) {
+            ClassInfo current = pending.get(i);
+            String type = method ? current.mReturnTypes.get(key) : current.mFieldTypes.get(key);
+            if (type != null) {
+                return type;
+            }
+            for (int j = 0; j < current.superNames.size(); j++) {
+                ClassInfo superInfo = resolve(current, current.superNames.get(j));
+                if (superInfo != null && seen.add(superInfo)) {
+                    pending.add(superInfo);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Qualified name of a class read by the JavaReader, only the top level class of a
+     * source knows its package.
+     */
+    static String getQualifiedName(Clazz clazz) {
+        StringBuilder name = new StringBuilder(clazz.name);
+        JavaStatement current = clazz;
+        while (current.parentStatement != null
+                && current.parentStatement.type == JavaStatement.TYPE_CLASS) {
+            current = current.parentStatement;
+            name.insert(0, '.').insert(0, current.name);
+        }
+        String packageName = ((Clazz) current).packageName;
+        if (packageName != null && packageName.length() > 0) {
+            name.insert(0, '.').insert(0, packageName);
+        }
+        return name.toString();
+    }
+
+    /**
+     * The header path the writer includes a class by, "io/File" for java.io.File, or null
+     * for a class the writer includes no header for.
+     */
+    static String getIncludePath(String qualifiedName) {
+        String afterPrefix;
+        if (qualifiedName.startsWith("android.")) {
+            afterPrefix = qualifiedName.substring(8);
+        } else if (qualifiedName.startsWith("java.")) {
+            afterPrefix = qualifiedName.substring(5);
+        } else if (qualifiedName.startsWith("com.android.")) {
+            afterPrefix = qualifiedName.substring(12);
+        } else {
+            return null;
+        }
+        if (afterPrefix.startsWith("annotation")) {
+            return null;
+        }
+        return afterPrefix.replace('.', '/');
+    }
+
+    private static String stripTypeArguments(String type) {
+        int index = type.indexOf('<');
+        if (index >= 0) {
+            type = type.substring(0, index);
+        }
+        index = type.indexOf('[');
+        if (index >= 0) {
+            type = type.substring(0, index);
+        }
+        return type.trim();
+    }
+
+    private void put(File source, ArrayList<ClassInfo> classes) {
+        mBySource.put(source, classes);
+        for (int i = 0; i < classes.size(); i++) {
+            ClassInfo info = classes.get(i);
+            if (mByQualifiedName.containsKey(info.qualifiedName)) {
+                continue;
+            }
+            mByQualifiedName.put(info.qualifiedName, info);
+            ArrayList<ClassInfo> sameName = mBySimpleName.get(info.name);
+            if (sameName == null) {
+                sameName = new ArrayList<>(1);
+                mBySimpleName.put(info.name, sameName);
+            }
+            sameName.add(info);
+            if (info.outer == null) {
+                String includePath = getIncludePath(info.qualifiedName);
+                if (includePath != null) {
+                    mHeaders.add(includePath);
+                }
+            }
+        }
+    }
+
+    private static void collectSources(File target, ArrayList<File> out) {
+        File[] children = target.isDirectory() ? target.listFiles() : new File[]{target};
+        if (children == null) {
+            return;
+        }
+        Arrays.sort(children);
+        for (File file : children) {
+            if (file.isDirectory()) {
+                collectSources(file, out);
+            } else if (file.getName().endsWith(".java") || file.getName().endsWith(".aidl")) {
+                out.add(file);
+            }
+        }
+    }
+
+    // runs on a worker, with the reader of its context
+    private static ArrayList<ClassInfo> scan(File source) {
+        ArrayList<ClassInfo> out = new ArrayList<>();
+        TranslationContext context = TranslationContext.get();
+        context.setLogStream(sNullStream);
+        context.reader.setLazyCodeParsing(true);
+        context.reader.setDeclaringCodeParsing(false);
+        try {
+            JavaFile javaFile = context.reader.read(source);
+            if (javaFile == null) {
+                return out;
+            }
+            String packageName = javaFile.packageName != null ? javaFile.packageName.trim() : "";
+            ArrayList<String> imports = new ArrayList<>();
+            if (javaFile.importStatements != null) {
+                for (int i = 0; i < javaFile.importStatements.size(); i++) {
+                    if (!javaFile.isImportStatic.get(i)) {
+                        imports.add(javaFile.importStatements.get(i).trim());
+                    }
+                }
+            }
+            if (javaFile.primeClass != null) {
+                addClass(javaFile.primeClass, packageName, null, imports, out);
+            }
+            if (javaFile.otherClass != null) {
+                for (int i = 0; i < javaFile.otherClass.size(); i++) {
+                    addClass(javaFile.otherClass.get(i), packageName, null, imports, out);
+                }
+            }
+        } catch (RuntimeException e) {
+            out.clear();
+        } finally {
+            context.setLogStream(null);
+        }
+        return out;
+    }
+
+    private static void addClass(Clazz clazz, String packageName, ClassInfo outer,
+            ArrayList<String> imports, ArrayList<ClassInfo> out) {
+        if (clazz.name == null) {
+            return;
+        }
+        ClassInfo info = new ClassInfo(packageName, clazz.name, outer, imports);
+        out.add(info);
+        if (clazz.extendedClazz != null) {
+            info.superNames.add(stripTypeArguments(clazz.extendedClazz));
+        }
+        if (clazz.extendedInterface != null) {
+            for (int i = 0; i < clazz.extendedInterface.size(); i++) {
+                info.superNames.add(stripTypeArguments(clazz.extendedInterface.get(i)));
+            }
+        }
+        ClassParagraph paragraph = (ClassParagraph) clazz.paragraph;
+        addFields(info, paragraph.fields);
+        addFields(info, paragraph.staticFields);
+        addMethods(info, paragraph.methods);
+        addMethods(info, paragraph.staticMethods);
+        if (paragraph.staticInnerClazzes != null) {
+            for (int i = 0; i < paragraph.staticInnerClazzes.size(); i++) {
+                addClass(paragraph.staticInnerClazzes.get(i), packageName, info, imports, out);
+            }
+        }
+        if (paragraph.innerClazzes != null) {
+            for (int i = 0; i < paragraph.innerClazzes.size(); i++) {
+                addClass(paragraph.innerClazzes.get(i), packageName, info, imports, out);
+            }
+        }
+        if (paragraph.enumerations != null) {
+            for (int i = 0; i < paragraph.enumerations.size(); i++) {
+                Enumeration enumeration = paragraph.enumerations.get(i);
+                if (enumeration.name != null) {
+                    out.add(new ClassInfo(packageName, enumeration.name, info, imports));
+                }
+            }
+        }
+    }
+
+    private static void addFields(ClassInfo info, ArrayList<JavaField> fields) {
+        if (fields == null) {
+            return;
+        }
+        for (int i = 0; i < fields.size(); i++) {
+            JavaField field = fields.get(i);
+            if (!info.mFieldTypes.containsKey(field.name)) {
+                info.mFieldTypes.put(field.name, field.feildType);
+            }
+        }
+    }
+
+    private static void addMethods(ClassInfo info, ArrayList<JavaMethod> methods) {
+        if (methods == null) {
+            return;
+        }
+        for (int i = 0; i < methods.size(); i++) {
+            JavaMethod method = methods.get(i);
+            if (method.returnType == null) {
+                continue;
+            }
+            String key = method.name + "/" + (method.parameters != null ? method.parameters.size() : 0);
+            if (!info.mReturnTypes.containsKey(key)) {
+                info.mReturnTypes.put(key, method.returnType);
+            }
+        }
+    }
+}
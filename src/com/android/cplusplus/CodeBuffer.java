@@ -0,0 +1,202 @@
+package com.android.cplusplus;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Unsynchronized char buffer the generated c++ is written to. A line is started at the
+ * current indentation, filled by the append methods and ended, so neither the prefix
+ * of a line nor the line itself needs a String of its own. The buffer of a writer is
+ * kept from file to file and encoded as UTF-8 into the output once a file is done.
+ * <p>
+ * A buffer which is never indented also serves to print a code statement into a
+ * single String, see JavaCodeReader.CodeStatement.print().
+ */
+final class CodeBuffer {
+
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private char[] mChars;
+    private int mCount;
+    // indentation in columns of every level, the current one is mIndents[mDepth - 1]
+    private int[] mIndents = new int[16];
+    private int mDepth;
+    private byte[] mBytes;
+
+    CodeBuffer() {
+        this(32);
+    }
+
+    CodeBuffer(int capacity) {
+        mChars = new char[capacity];
+    }
+
+    /**
+     * Indents the following lines by columns more than the current ones.
+     */
+    void indent(int columns) {
+        if (mDepth == mIndents.length) {
+            mIndents = Arrays.copyOf(mIndents, mDepth * 2);
+        }
+        mIndents[mDepth] = getIndent() + columns;
+        mDepth++;
+    }
+
+    void unindent() {
+        if (mDepth == 0) {
+            throw new RuntimeException("Logic crash. Unbalanced indentation");
+        }
+        mDepth--;
+    }
+
+    int getIndent() {
+        return mDepth > 0 ? mIndents[mDepth - 1] : 0;
+    }
+
+    /**
+     * Starts a line with the current indentation.
+     */
+    CodeBuffer startLine() {
+        int indent = getIndent();
+        ensureCapacity(mCount + indent);
+        Arrays.fill(mChars, mCount, mCount + indent, ' ');
+        mCount += indent;
+        return this;
+    }
+
+    void endLine() {
+        append(LINE_SEPARATOR);
+    }
+
+    /**
+     * Writes text as a line of its own at the current indentation.
+     */
+    void line(String text) {
+        startLine();
+        append(text);
+        endLine();
+    }
+
+    /**
+     * Writes an empty line, which is never indented.
+     */
+    void line() {
+        endLine();
+    }
+
+    /**
+     * Writes every line of text, as printed by a buffer never indented, at the current
+     * indentation. Empty lines stay empty.
+     */
+    void lines(String text) {
+        int start = 0;
+        int length = text.length();
+        while (start < length) {
+            int end = text.indexOf(LINE_SEPARATOR, start);
+            if (end < 0) {
+                end = length;
+            }
+            if (end == start) {
+                line();
+            } else {
+                startLine();
+                ensureCapacity(mCount + end - start);
+                text.getChars(start, end, mChars, mCount);
+                mCount += end - start;
+                endLine();
+            }
+            start = end + LINE_SEPARATOR.length();
+        }
+    }
+
+    CodeBuffer append(String text) {
+        if (text == null) {
+            text = "null";
+        }
+        int length = text.length();
+        ensureCapacity(mCount + length);
+        text.getChars(0, length, mChars, mCount);
+        mCount += length;
+        return this;
+    }
+
+    CodeBuffer append(char c) {
+        ensureCapacity(mCount + 1);
+        mChars[mCount++] = c;
+        return this;
+    }
+
+    CodeBuffer append(char[] chars) {
+        ensureCapacity(mCount + chars.length);
+        System.arraycopy(chars, 0, mChars, mCount, chars.length);
+        mCount += chars.length;
+        return this;
+    }
+
+    CodeBuffer append(Object value) {
+        return append(String.valueOf(value));
+    }
+
+    int length() {
+        return mCount;
+    }
+
+    /**
+     * Drops the content and the indentation, the buffer itself is kept.
+     */
+    void reset() {
+        mCount = 0;
+        mDepth = 0;
+    }
+
+    /**
+     * Encodes the content as UTF-8 into out.
+     */
+    void writeTo(OutputStream out) throws IOException {
+        if (mBytes == null) {
+            mBytes = new byte[8192];
+        }
+        byte[] bytes = mBytes;
+        int position = 0;
+        for (int i = 0; i < mCount; i++) {
+            if (position > bytes.length - 4) {
+                out.write(bytes, 0, position);
+                position = 0;
+            }
+            char c = mChars[i];
+            if (c < 0x80) {
+                bytes[position++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[position++] = (byte) (0xc0 | (c >> 6));
+                bytes[position++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < mCount
+                    && Character.isLowSurrogate(mChars[i + 1])) {
+                int codePoint = Character.toCodePoint(c, mChars[++i]);
+                bytes[position++] = (byte) (0xf0 | (codePoint >> 18));
+                bytes[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                bytes[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                bytes[position++] = (byte) (0x80 | (codePoint & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                // a lone surrogate, written as '?' like the String encoder does
+                bytes[position++] = '?';
+            } else {
+                bytes[position++] = (byte) (0xe0 | (c >> 12));
+                bytes[position++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                bytes[position++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        out.write(bytes, 0, position);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > mChars.length) {
+            mChars = Arrays.copyOf(mChars, Math.max(capacity, mChars.length * 2));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return new String(mChars, 0, mCount);
+    }
+}
@@ -1,14 +1,26 @@
 package com.android.cplusplus;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
+import com.android.cplusplus.JavaReader.Clazz;
 import com.android.cplusplus.JavaReader.JavaFile;
 
 /**
@@ -20,6 +32,12 @@ public class Core {
     
     static final boolean DEBUG_MODE = true;
     
+    /**
+     * Bump it whenever a change of the translator changes the generated code, so that
+     * outputs cached by an older translator are not reused.
+     */
+    static final int TRANSLATOR_VERSION = 1;
+    
     static final ArrayList<String> sTranslatedFiles = new ArrayList<>();
     static {
         sTranslatedFiles.add("BatchedScanResult.java");
@@ -67,10 +85,67 @@ public class Core {
 //          
 //        String dstPath = "/work/wifi2c++/cetc_os/tool/wifiservice_cpp/java/com/android/server/wifi";
         
-        String missingPath = dstPath + "/MissingHeader.txt";
-
+        ArrayList<String> paths = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (isValueOption(args[i]) && i + 1 >= args.length) {
+                exitWithUsage("Missing value of " + args[i]);
+            }
+            if ("-j".equals(args[i])) {
+                String workers = args[++i];
+                try {
+                    sWorkerCount = Integer.parseInt(workers);
+                } catch (NumberFormatException e) {
+                    sWorkerCount = 0;
+                }
+                if (sWorkerCount < 1) {
+                    exitWithUsage("Bad worker count:" + workers);
+                }
+            } else if ("-headers".equals(args[i])) {
+                sHeaderRoot = args[++i];
+            } else if ("-cache".equals(args[i])) {
+                sCacheDir = new File(args[++i]);
+            } else if ("-force".equals(args[i])) {
+                sForceTranslation = true;
+            } else if ("-metrics".equals(args[i])) {
+                sMetricsFile = new File(args[++i]);
+                Metrics.sEnabled = true;
+            } else if ("-header-only".equals(args[i])) {
+                sHeaderOnly = true;
+            } else if ("-stream".equals(args[i])) {
+                sStreaming = true;
+            } else if ("-models".equals(args[i])) {
+                sUseModelCache = true;
+            } else if ("-daemon".equals(args[i])) {
+                sDaemon = true;
+            } else if ("-watch".equals(args[i])) {
+                sWatching = true;
+            } else if ("-index".equals(args[i])) {
+                sUseClassIndex = true;
+            } else if ("-waves".equals(args[i])) {
+                sScheduleWaves = true;
+            } else if ("-types".equals(args[i])) {
+                File typesFile = new File(args[++i]);
+                try {
+                    TypeRegistry.load(typesFile);
+                } catch (IOException e) {
+                    throw new RuntimeException("Can not load types from:" + typesFile, e);
+                }
+            } else if (args[i].startsWith("-")) {
+                exitWithUsage("Unknown option:" + args[i]);
+            } else {
+                paths.add(args[i]);
+            }
+        }
+        if (paths.size() == 2) {
+            srcPath = paths.get(0);
+            dstPath = paths.get(1);
+        } else if (!paths.isEmpty()) {
+            exitWithUsage("Expects a source and a destination, got:" + paths);
+        }
+        
         if (DEBUG_MODE) {
-            JavaFile file = sReader.
+            TranslationContext context = TranslationContext.get();
+            JavaFile file = context.reader.
 //                    read("/home/archermind/workspace/java2c++/src/com/android/cplusplus/IAccessibilityServiceConnection.aidl");
 //                    read(srcPath);
 //          read("/home/archermind/workspace/frameworks/base/core/java/android/app/Activity.java");
@@ -80,35 +155,213 @@ public class Core {
 //          read("/home/archermind/workspace/frameworks/base/core/java/android/app/job/JobInfo.aidl");
 //          read("/home/archermind/workspace/frameworks/base/core/java/android/app/IActivityContainer.aidl");
   
-            sWriter.write(file);
+            context.writer.write(file);
+        } else if (sDaemon) {
+            // stdout carries the answers to the jobs, the log goes to stderr
+            PrintStream answers = System.out;
+            System.setOut(System.err);
+            new Daemon(System.in, answers).run();
+        } else if (sWatching) {
+            new Watcher(new File(srcPath), dstPath).run();
         } else {
+            String missingPath = dstPath + "/MissingHeader.txt";
             long startMillis = System.currentTimeMillis();
             System.out.println("Translation start");
-            int[] out = new int[3];
+            System.out.println("Header index:" + getHeaderIndex().size() + " files");
+            if (sUseClassIndex) {
+                buildClassIndex(srcPath);
+            }
+            int[] out = new int[4];
             processDirectory(srcPath, dstPath, out);
             
             printMissingHeadersIfNecessary(missingPath);
+            if (sMetricsFile != null) {
+                Metrics.writeReport(sMetricsFile);
+                System.out.println("Metrics written to " + sMetricsFile.getAbsolutePath());
+            }
             
             System.out.println("Translation done, total cost:" +
                     (System.currentTimeMillis() - startMillis) + "ms. " + out[0] + " files processed, "
-                    + out[1] + " files generated, " + out[2] + " errors occurs.");
+                    + out[1] + " files generated, " + out[2] + " errors occurs, "
+                    + out[3] + " files up to date.");
+        }
+    }
+    
+    /**
+     * Number of files translated side by side. Can be changed with "-j <count>".
+     */
+    static int sWorkerCount = Runtime.getRuntime().availableProcessors();
+    
+    /**
+     * Translate every file even if the build cache says its outputs are up to date,
+     * set by "-force".
+     */
+    static boolean sForceTranslation;
+    
+    /**
+     * Where the per file metrics report goes, set by "-metrics <file>", see Metrics.
+     */
+    static File sMetricsFile;
+    
+    /**
+     * Write every top level class as soon as it is read instead of reading the whole file
+     * first, set by "-stream". Only one top level class of a file is held at a time and
+     * its bodies are parsed one by one, see CppWriter.setStreaming().
+     */
+    static boolean sStreaming;
+    
+    /**
+     * Only write the c++ headers, from the declarations alone, set by "-header-only".
+     * See CppWriter.setHeaderOnly().
+     */
+    static boolean sHeaderOnly;
+    
+    /**
+     * Load the models of unchanged sources from the cache directory instead of reading
+     * them again, set by "-models". Not used while streaming. See ModelCache.
+     */
+    static boolean sUseModelCache;
+    
+    /**
+     * Run jobs read from stdin until told to quit instead of a single translation, set by
+     * "-daemon". See Daemon.
+     */
+    static boolean sDaemon;
+    
+    /**
+     * Translate the whole directory once and then every source again as soon as it or a
+     * source it imports is saved, set by "-watch". See Watcher.
+     */
+    static boolean sWatching;
+    
+    /**
+     * Scan every source before translating any and look classes up in what was found,
+     * set by "-index". See ClassIndex.
+     */
+    static boolean sUseClassIndex;
+    
+    /**
+     * Translate a source only after the sources it imports or extends, set by "-waves".
+     * See WaveScheduler.
+     */
+    static boolean sScheduleWaves;
+    
+    /**
+     * Workers kept from one translation to the next by the daemon, null otherwise.
+     */
+    static volatile ForkJoinPool sWorkerPool;
+    
+    private static volatile ClassIndex sClassIndex;
+    
+    /**
+     * The classes of the sources being translated, null unless "-index" is given.
+     */
+    static ClassIndex getClassIndex() {
+        return sClassIndex;
+    }
+    
+    /**
+     * Indexes every source below srcPath on the workers, replacing the index of an
+     * earlier translation. Must not run while files are translated.
+     */
+    static ClassIndex buildClassIndex(String srcPath) {
+        long startMillis = System.currentTimeMillis();
+        ForkJoinPool pool = sWorkerPool;
+        boolean ownPool = pool == null;
+        if (ownPool) {
+            pool = new ForkJoinPool(sWorkerCount);
+        }
+        try {
+            sClassIndex = ClassIndex.build(new File(srcPath), pool);
+        } finally {
+            if (ownPool) {
+                pool.shutdown();
+            }
         }
+        System.out.println("Class index:" + sClassIndex.size() + " classes, cost:"
+                + (System.currentTimeMillis() - startMillis) + "ms");
+        return sClassIndex;
     }
     
-    static final JavaReader sReader = new JavaReader();
-    static final CppWriter sWriter = new CppWriter();
+    private static volatile ModelCache sModelCache;
+    
+    static ModelCache getModelCache() {
+        ModelCache cache = sModelCache;
+        if (cache == null) {
+            synchronized (Core.class) {
+                cache = sModelCache;
+                if (cache == null) {
+                    sModelCache = cache = new ModelCache(sCacheDir);
+                }
+            }
+        }
+        return cache;
+    }
     
     private static int[] processDirectory(String srcPath, String dstPath, int[] out) {
+        if (out == null) {
+            out = new int[4];
+        }
+        // nothing is written to files in debug mode, so there is nothing to reuse
+        BuildCache cache = DEBUG_MODE ? null : BuildCache.open(sCacheDir, dstPath);
+        return processDirectory(srcPath, dstPath, cache, out);
+    }
+    
+    static int[] processDirectory(String srcPath, String dstPath, BuildCache cache, int[] out) {
         File target = new File(srcPath);
         
         if (!target.exists()) {
             throw new RuntimeException("Path doesn't exist:" + srcPath);
         }
         
-        if (out == null) {
-            out = new int[3];
+        ArrayList<TranslateTask> tasks = new ArrayList<>();
+        collectTasks(target, dstPath, cache, tasks);
+        // every header is written again, or found up to date, by this run
+        sGeneratedHeaders.clear();
+        CostHistory history = DEBUG_MODE ? null : CostHistory.open(sCacheDir, srcPath);
+        runTasks(tasks, history, out);
+        if (cache != null) {
+            cache.save();
+        }
+        if (history != null) {
+            history.save();
         }
+        return out;
+    }
+    
+    /**
+     * Translates files, all of them found below srcRoot, into the same directories below
+     * dstPath processDirectory() would put them in.
+     */
+    static int[] processFiles(File srcRoot, Collection<File> files, String dstPath,
+            BuildCache cache, int[] out) {
+        Path root = srcRoot.toPath();
+        ArrayList<TranslateTask> tasks = new ArrayList<>();
+        for (File file : files) {
+            Path parent = root.relativize(file.getParentFile().toPath());
+            File dstDirectory = new File(dstPath, parent.toString());
+            if (!dstDirectory.exists() && !dstDirectory.mkdirs()) {
+                continue;
+            }
+            tasks.add(new TranslateTask(file, dstDirectory.getAbsolutePath(), cache,
+                    sTranslatedFiles.contains(file.getName())));
+        }
+        CostHistory history = DEBUG_MODE ? null : CostHistory.open(sCacheDir, srcRoot.getPath());
+        runTasks(tasks, history, out);
+        if (cache != null) {
+            cache.save();
+        }
+        if (history != null) {
+            history.save();
+        }
+        return out;
+    }
+    
+    private static void collectTasks(File target, String dstPath, BuildCache cache,
+            ArrayList<TranslateTask> tasks) {
         File[] childrenFile = target.isDirectory() ? target.listFiles() : new File[]{target};
+        // keep the same order on every file system so that the log is reproducible
+        Arrays.sort(childrenFile);
         for (File file : childrenFile) {
             if (file.isDirectory()) {
                 File dstDirectory = new File(dstPath + "/" + file.getName());
@@ -117,41 +370,218 @@ public class Core {
                     success = dstDirectory.mkdirs();
                 }
                 if (success) {
-                    processDirectory(file.getAbsolutePath(), dstDirectory.getAbsolutePath(), out);
+                    collectTasks(file, dstDirectory.getAbsolutePath(), cache, tasks);
                 }
             } else {
-                if (sTranslatedFiles.contains(file.getName())) {
-                    System.out.println("skip file:" + file.getName());
-                    continue;
+                tasks.add(new TranslateTask(file, dstPath, cache,
+                        sTranslatedFiles.contains(file.getName())));
+            }
+        }
+    }
+    
+    /**
+     * Runs tasks on the workers, the ones history expects to take longest first, and
+     * records their times into history if not null.
+     */
+    private static void runTasks(ArrayList<TranslateTask> tasks, CostHistory history,
+            int[] out) {
+        ForkJoinPool sharedPool = sWorkerPool;
+        ForkJoinPool pool = sharedPool != null ? sharedPool : new ForkJoinPool(sWorkerCount);
+        long startNanos = System.nanoTime();
+        try {
+            if (sScheduleWaves) {
+                WaveScheduler scheduler = new WaveScheduler(tasks,
+                        history != null ? history.estimate(tasks) : null, pool);
+                System.out.println("Waves:" + scheduler.getWaveCount() + ", widest:"
+                        + scheduler.getWidestWave() + " files");
+                scheduler.run(pool, pool.getParallelism(), out);
+            } else {
+                // The workers steal from the queue front, so the slow files start first
+                // and the short ones fill the gaps at the end.
+                ArrayList<Future<TranslateTask>> results = new ArrayList<>(
+                        Collections.<Future<TranslateTask>>nCopies(tasks.size(), null));
+                if (history != null) {
+                    Integer[] order = history.sortLargestFirst(tasks);
+                    for (int i = 0; i < order.length; i++) {
+                        results.set(order[i], pool.submit(tasks.get(order[i])));
+                    }
+                } else {
+                    for (int i = 0; i < tasks.size(); i++) {
+                        results.set(i, pool.submit(tasks.get(i)));
+                    }
                 }
-                long millis = System.currentTimeMillis();
-                System.out.println("...processing file:" + file.getName());
-                out[0]++;
-                
-                try {
-                    out[1] += sWriter.write(sReader.read(file), dstPath);
-                } catch (Exception e) {
-                    out[2]++;
-                    System.err.println("err:" + file.getAbsolutePath());
-                    e.printStackTrace();
+                // Results are reported in the order of the tasks no matter which worker
+                // finished first, so the log is the same for any worker count.
+                for (int i = 0; i < results.size(); i++) {
+                    TranslateTask task;
+                    try {
+                        task = results.get(i).get();
+                    } catch (InterruptedException | ExecutionException e) {
+                        throw new RuntimeException("Logic crash", e);
+                    }
+                    task.report(out);
                 }
-                JavaCodeReader.printAndClearCodeParserRecord();
-                
-                long cost = System.currentTimeMillis() - millis;
-                System.out.println("done. processing cost:" + cost + "ms");
-                System.out.println();
-                
-                try {
-                    Thread.sleep(cost < 50 ? 50 - cost : 10);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
+            }
+            if (history != null) {
+                history.record(tasks);
+                CostHistory.printSchedule(tasks, startNanos, System.nanoTime() - startNanos,
+                        pool.getParallelism());
+            }
+        } finally {
+            if (pool != sharedPool) {
+                pool.shutdown();
+            }
+        }
+    }
+    
+    static class TranslateTask implements Callable<TranslateTask> {
+        final File file;
+        final String dstPath;
+        final BuildCache cache;
+        final boolean skipped;
+        
+        boolean upToDate;
+        int generated;
+        Exception error;
+        long cost;
+        // when a worker started and finished the task, 0 if it did not run
+        long startNanos;
+        long endNanos;
+        private ByteArrayOutputStream log;
+        
+        TranslateTask(File file, String dstPath, BuildCache cache, boolean skipped) {
+            this.file = file;
+            this.dstPath = dstPath;
+            this.cache = cache;
+            this.skipped = skipped;
+        }
+        
+        @Override
+        public TranslateTask call() {
+            if (skipped) {
+                return this;
+            }
+            startNanos = System.nanoTime();
+            String hash = null;
+            if (cache != null) {
+                hash = BuildCache.hash(file);
+                if (!sForceTranslation && cache.lookUp(file, hash) != null) {
+                    upToDate = true;
+                    endNanos = System.nanoTime();
+                    return this;
+                }
+            }
+            long millis = System.currentTimeMillis();
+            log = new ByteArrayOutputStream();
+            PrintStream logStream = new PrintStream(log, true);
+            TranslationContext context = TranslationContext.get();
+            context.setLogStream(logStream);
+            // a streamed body is parsed when it is written, see CppWriter.setStreaming()
+            context.reader.setLazyCodeParsing(sHeaderOnly || sStreaming);
+            context.reader.setDeclaringCodeParsing(sHeaderOnly || sStreaming);
+            context.writer.setHeaderOnly(sHeaderOnly);
+            context.writer.setStreaming(sStreaming);
+            ArrayList<String> outputs = new ArrayList<>();
+            context.headerLookups = cache != null ? new ArrayList<BuildCache.HeaderLookup>() : null;
+            Metrics.begin(file);
+            try {
+                generated = translate(context, outputs);
+            } catch (Exception e) {
+                error = e;
+            } finally {
+                Metrics.end(error != null);
+                context.setLogStream(null);
+            }
+            if (cache != null) {
+                if (error == null && hash != null) {
+                    cache.put(file, new BuildCache.Record(hash, outputs, context.headerLookups));
+                } else {
+                    cache.remove(file);
                 }
+                context.headerLookups = null;
             }
+            JavaCodeReader.printAndClearCodeParserRecord(logStream);
+            cost = System.currentTimeMillis() - millis;
+            endNanos = System.nanoTime();
+            return this;
         }
-        return out;
+        
+        private int translate(final TranslationContext context, final ArrayList<String> outputs) {
+            if (!sStreaming) {
+                return context.writer.write(read(context), dstPath, outputs);
+            }
+            final int[] generated = new int[1];
+            JavaFile javaFile = context.reader.read(file, new JavaReader.ClassListener() {
+                @Override
+                public void onClassRead(JavaFile javaFile, Clazz clazz) {
+                    generated[0] += context.writer.writeClass(javaFile, clazz, dstPath, outputs);
+                }
+            });
+            // aidl files are never streamed
+            if (javaFile != null && javaFile.isAidl) {
+                generated[0] += context.writer.write(javaFile, dstPath, outputs);
+            }
+            return generated[0];
+        }
+        
+        private JavaFile read(TranslationContext context) {
+            if (!sUseModelCache) {
+                return context.reader.read(file);
+            }
+            ModelCache models = getModelCache();
+            String modelHash = ModelCache.hash(file, sHeaderOnly);
+            int previousPhase = Metrics.enter(Metrics.PHASE_READ);
+            JavaFile javaFile = models.load(file, modelHash);
+            Metrics.exit(previousPhase);
+            if (javaFile == null) {
+                javaFile = context.reader.read(file);
+                if (javaFile != null) {
+                    // the writer changes the model, save it as read
+                    models.save(file, modelHash, javaFile);
+                }
+            }
+            return javaFile;
+        }
+        
+        void report(int[] out) {
+            if (skipped) {
+                System.out.println("skip file:" + file.getName());
+                return;
+            }
+            if (upToDate) {
+                System.out.println("up to date:" + file.getName());
+                out[3]++;
+                return;
+            }
+            System.out.println("...processing file:" + file.getName());
+            System.out.print(log.toString());
+            out[0]++;
+            out[1] += generated;
+            if (error != null) {
+                out[2]++;
+                System.err.println("err:" + file.getAbsolutePath());
+                error.printStackTrace();
+            }
+            System.out.println("done. processing cost:" + cost + "ms");
+            System.out.println();
+        }
+    }
+    
+    private static boolean isValueOption(String arg) {
+        return "-j".equals(arg) || "-headers".equals(arg) || "-cache".equals(arg)
+                || "-metrics".equals(arg) || "-types".equals(arg);
     }
     
-    private static void printMissingHeadersIfNecessary(String path) {
+    private static void exitWithUsage(String error) {
+        System.err.println(error);
+        System.err.println("Usage: Core [options] <srcDir> <dstDir>");
+        System.err.println("       Core -daemon [options]");
+        System.err.println("options: -j <workers> -headers <dir> -cache <dir> -force -metrics <file>"
+                + " -types <file> -header-only -stream -models -watch -index -waves");
+        System.exit(2);
+    }
+    
+    static void printMissingHeadersIfNecessary(String path) {
         File outFile = new File(path);
         if (outFile.exists()) {
             outFile.delete();
@@ -167,17 +597,18 @@ public class Core {
             out = new PrintStream(new FileOutputStream(outFile), true);
             boolean noMissing = true;
             int index = 0;
-            for (Entry<String, ExistenceRecord> entry : sHeaderExistence.entrySet()) {
+            for (Entry<String, ExistenceRecord> entry : new TreeMap<>(sHeaderExistence).entrySet()) {
                 String headerFullName = entry.getKey();
                 ExistenceRecord record = entry.getValue();
                 if (!record.existed) {
                     noMissing = false;
                     
                     out.println(++index + ". Missing file:" + record.briefName + " fullname:" + headerFullName);
-                    int size = record.touchedFiles.size();
+                    ArrayList<String> touchedFiles = record.getTouchedFiles();
+                    int size = touchedFiles.size();
                     out.println("Required by " + size + " files.");
                     for (int i = 0; i < size; i++) {
-                        out.println("    " + (i + 1) + ". file:" + record.touchedFiles.get(i));
+                        out.println("    " + (i + 1) + ". file:" + touchedFiles.get(i));
                     }
                     out.println();
                 }
@@ -195,20 +626,27 @@ public class Core {
         }
     }
     
-    static final HashMap<String, ExistenceRecord> sHeaderExistence = new HashMap<>();
+    /**
+     * Include paths of the headers the sources translated so far in this run were written
+     * to, filled by the WaveScheduler only.
+     */
+    static final Set<String> sGeneratedHeaders =
+            Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    
+    // shared by all workers, every header is only looked up once per run
+    static final ConcurrentHashMap<String, ExistenceRecord> sHeaderExistence = new ConcurrentHashMap<>();
     
     static class ExistenceRecord {
-        String briefName;
-        boolean existed;
-        ArrayList<String> touchedFiles = new ArrayList<>();
+        final String briefName;
+        final boolean existed;
+        private final ArrayList<String> touchedFiles = new ArrayList<>();
         
-        ExistenceRecord(String breifName, boolean existed, String where) {
+        ExistenceRecord(String breifName, boolean existed) {
             this.briefName = breifName;
             this.existed = existed;
-            this.touchedFiles.add(where);
         }
 
-        void touchFrom(String where) {
+        synchronized void touchFrom(String where) {
             for (int i = 0; i < touchedFiles.size(); i++) {
                 if (touchedFiles.get(i).equals(where)) {
                     return;
@@ -216,6 +654,13 @@ public class Core {
             }
             touchedFiles.add(where);
         }
+        
+        synchronized ArrayList<String> getTouchedFiles() {
+            ArrayList<String> out = new ArrayList<>(touchedFiles);
+            // workers touch a header in any order, keep the report stable
+            Collections.sort(out);
+            return out;
+        }
     }
     
 //    static final ArrayList<String> sSpecialHeaderFileList = new ArrayList<>();
@@ -233,38 +678,76 @@ public class Core {
 //        return false;
 //    }
     
-    static boolean isHeaderFileExisted(String from, String name, String fullName) {
-        if (sHeaderExistence.containsKey(fullName)) {
-            ExistenceRecord record = sHeaderExistence.get(fullName);
-            record.touchFrom(from);
-            return record.existed;
-        }
-        final String directoryPath = "/work/wifi2c++/cetc_os/to-cm/ReMo_V2";
-        File directory = new File(directoryPath);
-        if (!directory.exists() || !directory.isDirectory()) {
-            throw new RuntimeException("Invalid header path. directoryPath:" + directoryPath);
+    /**
+     * Root of the existing c++ headers, can be changed with "-headers <dir>".
+     */
+    static String sHeaderRoot = "/work/wifi2c++/cetc_os/to-cm/ReMo_V2";
+    
+    /**
+     * Where the translator keeps data between two runs, can be changed with "-cache <dir>".
+     */
+    static File sCacheDir = new File(System.getProperty("user.home"), ".java2cpp");
+    
+    private static volatile HeaderIndex sHeaderIndex;
+    
+    static HeaderIndex getHeaderIndex() {
+        HeaderIndex index = sHeaderIndex;
+        if (index == null) {
+            synchronized (Core.class) {
+                index = sHeaderIndex;
+                if (index == null) {
+                    File directory = new File(sHeaderRoot);
+                    if (!directory.exists() || !directory.isDirectory()) {
+                        throw new RuntimeException("Invalid header path. directoryPath:" + sHeaderRoot);
+                    }
+                    File cacheFile = new File(sCacheDir, "headers-"
+                            + Integer.toHexString(directory.getAbsolutePath().hashCode()) + ".idx");
+                    sHeaderIndex = index = HeaderIndex.obtain(directory, cacheFile);
+                }
+            }
         }
-        boolean existed = isHeaderFileExistedRecursively(directory, name);
-        sHeaderExistence.put(fullName, new ExistenceRecord(name, existed, from));
-        return existed;
+        return index;
     }
     
-    private static boolean isHeaderFileExistedRecursively(File directory, String name) {
-        File[] children = directory.listFiles();
-        ArrayList<File> directories = new ArrayList<>();
-        for (int i = 0; i < children.length; i++) {
-            File file = children[i];
-            if (file.isDirectory()) {
-                directories.add(file);
-            } else if (file.getName().equals(name)) {
-                return true;
+    /**
+     * Forgets the headers looked up so far, and the header index too if a header was
+     * added or removed since it was built. Called by the daemon before every job.
+     */
+    static void resetHeaderLookups() {
+        sHeaderExistence.clear();
+        synchronized (Core.class) {
+            HeaderIndex index = sHeaderIndex;
+            if (index != null && !index.isUpToDate()) {
+                sHeaderIndex = null;
             }
         }
-        for (int i = 0; i < directories.size(); i++) {
-            if (isHeaderFileExistedRecursively(directories.get(i), name)) {
-                return true;
+    }
+    
+    static boolean isHeaderFileExisted(String from, String name, String fullName) {
+        ExistenceRecord record = sHeaderExistence.get(fullName);
+        if (record == null) {
+            ClassIndex classIndex = sClassIndex;
+            // the header of an indexed class is written by this translation
+            boolean existed = getHeaderIndex().contains(name)
+                    || (classIndex != null && classIndex.containsHeader(fullName))
+                    || sGeneratedHeaders.contains(fullName);
+            ExistenceRecord racer = sHeaderExistence.putIfAbsent(fullName,
+                    record = new ExistenceRecord(name, existed));
+            if (racer != null) {
+                record = racer;
             }
         }
-        return false;
+        // A header missing when first looked up may have been written since by the waves,
+        // so a negative record never hides it. The record stays negative for the report,
+        // listing the files which did not find the header.
+        boolean existed = record.existed || sGeneratedHeaders.contains(fullName);
+        if (existed == record.existed) {
+            record.touchFrom(from);
+        }
+        ArrayList<BuildCache.HeaderLookup> lookups = TranslationContext.get().headerLookups;
+        if (lookups != null) {
+            lookups.add(new BuildCache.HeaderLookup(from, name, fullName, existed));
+        }
+        return existed;
     }
 }
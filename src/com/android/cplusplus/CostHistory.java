@@ -0,0 +1,227 @@
+package com.android.cplusplus;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import com.android.cplusplus.Core.TranslateTask;
+
+/**
+ * How long every source took to translate in the runs before, so the next run can start
+ * the slow ones first: a file started last which takes a second keeps one worker busy
+ * while the others have nothing left to do.
+ * <p>
+ * One history file exists per source root, it lives in the cache directory of the
+ * translator. A source with no history is estimated from its size, with the time per
+ * byte of the sources which have one. Only used from the thread driving a run.
+ */
+final class CostHistory {
+
+    private static final String MAGIC = "java2cpp-cost-history 1";
+
+    private final File mFile;
+    // absolute path of the source -> microseconds
+    private final HashMap<String, Long> mCosts = new HashMap<>();
+    private boolean mDirty;
+
+    private CostHistory(File file) {
+        mFile = file;
+    }
+
+    static CostHistory open(File cacheDir, String srcPath) {
+        String root = new File(srcPath).getAbsolutePath();
+        CostHistory history = new CostHistory(new File(cacheDir, "costs-"
+                + Integer.toHexString(root.hashCode()) + ".txt"));
+        history.load();
+        return history;
+    }
+
+    /**
+     * The indices of tasks, the one expected to take longest first. Tasks with the same
+     * estimate keep their order.
+     */
+    Integer[] sortLargestFirst(ArrayList<TranslateTask> tasks) {
+        final long[] estimates = estimate(tasks);
+        Integer[] order = new Integer[tasks.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer left, Integer right) {
+                long difference = estimates[right] - estimates[left];
+                return difference != 0 ? (difference > 0 ? 1 : -1) : left - right;
+            }
+        });
+        return order;
+    }
+
+    /**
+     * Expected microseconds of every task, never less than 1.
+     */
+    long[] estimate(ArrayList<TranslateTask> tasks) {
+        long knownCost = 0;
+        long knownLength = 0;
+        long[] lengths = new long[tasks.size()];
+        for (int i = 0; i < tasks.size(); i++) {
+            File file = tasks.get(i).file;
+            lengths[i] = file.length();
+            Long cost = mCosts.get(file.getAbsolutePath());
+            if (cost != null) {
+                knownCost += cost;
+                knownLength += lengths[i];
+            }
+        }
+        double perByte = knownLength > 0 ? (double) knownCost / knownLength : 1;
+        long[] estimates = new long[tasks.size()];
+        for (int i = 0; i < tasks.size(); i++) {
+            Long cost = mCosts.get(tasks.get(i).file.getAbsolutePath());
+            estimates[i] = Math.max(1, cost != null ? cost : (long) (lengths[i] * perByte));
+        }
+        return estimates;
+    }
+
+    /**
+     * Keeps the time of every task which was translated, half of the time before is kept
+     * too so a single slow run does not reorder everything.
+     */
+    void record(ArrayList<TranslateTask> tasks) {
+        for (int i = 0; i < tasks.size(); i++) {
+            TranslateTask task = tasks.get(i);
+            if (task.skipped || task.upToDate || task.error != null) {
+                continue;
+            }
+            String source = task.file.getAbsolutePath();
+            long micros = Math.max(1, (task.endNanos - task.startNanos) / 1000);
+            Long previous = mCosts.get(source);
+            mCosts.put(source, previous != null ? (previous + micros) / 2 : micros);
+            mDirty = true;
+        }
+    }
+
+    /**
+     * Prints how well the workers were used by a run which took wallNanos: the time
+     * spent translating, its share of what the workers could have done, the task
+     * percentiles and the tail, the time from the start of the last task to the end in
+     * which some worker is idle for sure.
+     */
+    static void printSchedule(ArrayList<TranslateTask> tasks, long startNanos, long wallNanos,
+            int workers) {
+        ArrayList<TranslateTask> run = new ArrayList<>();
+        long workNanos = 0;
+        long lastStartNanos = startNanos;
+        for (int i = 0; i < tasks.size(); i++) {
+            TranslateTask task = tasks.get(i);
+            if (task.skipped || task.endNanos == 0) {
+                continue;
+            }
+            run.add(task);
+            workNanos += task.endNanos - task.startNanos;
+            lastStartNanos = Math.max(lastStartNanos, task.startNanos);
+        }
+        if (run.isEmpty() || wallNanos <= 0) {
+            return;
+        }
+        Collections.sort(run, new Comparator<TranslateTask>() {
+            @Override
+            public int compare(TranslateTask left, TranslateTask right) {
+                long difference = (left.endNanos - left.startNanos)
+                        - (right.endNanos - right.startNanos);
+                return difference != 0 ? (difference > 0 ? 1 : -1) : 0;
+            }
+        });
+        TranslateTask slowest = run.get(run.size() - 1);
+        System.out.println("Schedule: " + run.size() + " files on " + workers + " workers, wall:"
+                + wallNanos / 1000000 + "ms, work:" + workNanos / 1000000 + "ms, utilization:"
+                + workNanos * 100 / (wallNanos * workers) + "%, ideal:"
+                + workNanos / workers / 1000000 + "ms, p50:" + percentile(run, 50) + "ms, p90:"
+                + percentile(run, 90) + "ms, p99:" + percentile(run, 99) + "ms, max:"
+                + (slowest.endNanos - slowest.startNanos) / 1000000 + "ms ("
+                + slowest.file.getName() + "), tail:"
+                + (startNanos + wallNanos - lastStartNanos) / 1000000 + "ms");
+    }
+
+    // of the tasks sorted by time
+    private static long percentile(ArrayList<TranslateTask> sorted, int percent) {
+        TranslateTask task = sorted.get(Math.min(sorted.size() - 1,
+                (sorted.size() * percent + 99) / 100 - 1));
+        return (task.endNanos - task.startNanos) / 1000000;
+    }
+
+    private void load() {
+        if (!mFile.isFile()) {
+            return;
+        }
+        BufferedReader in = null;
+        try {
+            in = new BufferedReader(new InputStreamReader(new FileInputStream(mFile),
+                    StandardCharsets.UTF_8));
+            if (!MAGIC.equals(in.readLine())) {
+                return;
+            }
+            String line;
+            while ((line = in.readLine()) != null) {
+                int split = line.indexOf('\t');
+                if (split > 0) {
+                    mCosts.put(line.substring(split + 1), Long.parseLong(line.substring(0, split)));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // without a history the sizes of the files are used
+            mCosts.clear();
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+    }
+
+    void save() {
+        if (!mDirty) {
+            return;
+        }
+        File parent = mFile.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            return;
+        }
+        File tmpFile = new File(mFile.getPath() + ".tmp");
+        PrintWriter out = null;
+        try {
+            out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(tmpFile),
+                    StandardCharsets.UTF_8));
+            out.println(MAGIC);
+            for (Entry<String, Long> entry : new TreeMap<>(mCosts).entrySet()) {
+                out.println(entry.getValue() + "\t" + entry.getKey());
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        } finally {
+            if (out != null) {
+                out.close();
+            }
+        }
+        if (mFile.exists()) {
+            mFile.delete();
+        }
+        if (tmpFile.renameTo(mFile)) {
+            mDirty = false;
+        }
+    }
+}
@@ -1,13 +1,19 @@
 package com.android.cplusplus;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -32,11 +38,42 @@ public class CppWriter {
         void addCppStatement(CppStatement statement, int order) {};
     };
     
-    private PrintStream mOut;
+    private PrintStream mLog = System.out;
+    // every output file is rendered here first, see writeCommonFile()
+    private final CodeBuffer mCode = new CodeBuffer(16 * 1024);
+    private final OutputBuffer mBuffer = new OutputBuffer();
+    // a translated body is printed here, see setStreaming()
+    private final CodeBuffer mBodyCode = new CodeBuffer(1024);
+    private boolean mHeaderOnly;
+    private boolean mStreaming;
 
     CppWriter() {
     }
     
+    void setLogStream(PrintStream log) {
+        mLog = log != null ? log : System.out;
+    }
+    
+    /**
+     * If headerOnly, only the .h files are written and no method body is translated. A
+     * body read lazily is only parsed if the method returns an object, the body decides
+     * whether that is a pointer or an sp<>. The headers then leave out the anonymous
+     * classes of the other bodies and the headers only a body needs.
+     */
+    void setHeaderOnly(boolean headerOnly) {
+        mHeaderOnly = headerOnly;
+    }
+    
+    /**
+     * If streaming, a body read lazily is only parsed when writeClass() gets to it and is
+     * printed right after its translation, its parsed statements are dropped before the
+     * next body is parsed. Only the text of the bodies of a class is held until its .cpp
+     * is written.
+     */
+    void setStreaming(boolean streaming) {
+        mStreaming = streaming;
+    }
+    
     static CppFunction getAsInterface(Clazz javaClass, boolean bpMode, String scope) {
         CppFunction asInterface = new CppFunction();
         asInterface.name = "asInterface";
@@ -268,8 +305,8 @@ public class CppWriter {
             }
         }
         
-        StringBuffer trasanctOp =
-                new StringBuffer("mRemote->transact(Stub::TRANSACTION_" + function.name + ", _data, ");
+        StringBuilder trasanctOp =
+                new StringBuilder("mRemote->transact(Stub::TRANSACTION_" + function.name + ", _data, ");
         trasanctOp.append(hasReply ? "&_reply, " : "nullptr, ");
         if (javaMethod.isOneway) {
             trasanctOp.append("IBinder::FLAG_ONEWAY);");
@@ -346,7 +383,7 @@ public class CppWriter {
             }
             
             // duty calls
-            StringBuffer buffer = new StringBuffer(space4);
+            StringBuilder buffer = new StringBuilder(space4);
             if (bpFunction.hasReturnType()) {
                 buffer.append(bpFunction.returnType.toString() + " _res = ");
             }
@@ -676,8 +713,8 @@ public class CppWriter {
                     if (afterPrefix.startsWith("annotation")) {
                         continue;
                     }
-                    StringBuffer buffer = new StringBuffer(reversedPrefix);
-                    StringBuffer includingBuffer = new StringBuffer();
+                    StringBuilder buffer = new StringBuilder(reversedPrefix);
+                    StringBuilder includingBuffer = new StringBuilder();
                     String tag = null;
                     do {
                         if (afterPrefix.startsWith("*")) {
@@ -702,6 +739,23 @@ public class CppWriter {
                         afterPrefix = afterPrefix.substring(nextIndex + 1);
                     } while (true);
                     
+                    ClassIndex index = Core.getClassIndex();
+                    ClassIndex.ClassInfo imported = index != null && tag != null
+                            ? index.get(importStr) : null;
+                    if (imported != null && imported.outer != null) {
+                        // a nested class is declared by the header of its top level class
+                        String topLevelPath = ClassIndex.getIncludePath(
+                                imported.getTopLevel().qualifiedName);
+                        if (topLevelPath != null) {
+                            file.addIncludingTag(tag);
+                            tag = topLevelPath.substring(topLevelPath.lastIndexOf('/') + 1);
+                            includingBuffer.setLength(0);
+                            // unless included already, by the top level class or another class in it
+                            if (!file.hasIncludingTag(tag)) {
+                                includingBuffer.append(topLevelPath);
+                            }
+                        }
+                    }
                     if (includingBuffer.length() > 0) {
                         String fullName = includingBuffer.toString();
                         boolean isExisted;
@@ -716,7 +770,7 @@ public class CppWriter {
                         } else {
                             file.includings.add("<" + fullName + ".h> // FIXME: this header is missing");
                         }
-                        file.includingTags.add(tag);
+                        file.addIncludingTag(tag);
                     }
                     
                     if (buffer.length() > 0) {
@@ -734,61 +788,14 @@ public class CppWriter {
         
         if (file instanceof CppFile) {
             String addedHFile = file.name.replace(".cpp", ".h");
-            file.includingTags.add(addedHFile.substring(0, addedHFile.length() - 2));
+            file.addIncludingTag(addedHFile.substring(0, addedHFile.length() - 2));
             file.includings.add("\"" + addedHFile + "\"");
         }
     }
     
     static class UnseenClassHelper {
         BaseFile file;
-        ArrayList<String> selfNames = new ArrayList<>();
-        
-        static final ArrayList<String> sJavaLangSet = new ArrayList<>();
-        static {
-            sJavaLangSet.add("Object");
-            sJavaLangSet.add("String");
-            sJavaLangSet.add("CharSequence");
-            sJavaLangSet.add("Runnable");
-            sJavaLangSet.add("Comparable");
-            sJavaLangSet.add("Math");
-            sJavaLangSet.add("Integer");
-            sJavaLangSet.add("Float");
-            sJavaLangSet.add("Charactor");
-            sJavaLangSet.add("Boolean");
-            sJavaLangSet.add("Long");
-            sJavaLangSet.add("Short");
-            sJavaLangSet.add("Double");
-            sJavaLangSet.add("Throwable");
-            sJavaLangSet.add("Array");
-            sJavaLangSet.add("Enum");
-            
-            sJavaLangSet.add("Class");
-            sJavaLangSet.add("ClassLoader");
-            sJavaLangSet.add("Thread");
-            
-            sJavaLangSet.add("StringBuffer");
-            sJavaLangSet.add("StringBuilder");
-            
-            sJavaLangSet.add("Exception");
-            sJavaLangSet.add("Runtimexception");
-            sJavaLangSet.add("NullPointerException");
-            sJavaLangSet.add("SecurityException");
-            sJavaLangSet.add("NumberFormatException");
-            sJavaLangSet.add("ClassNotFoundException");
-            sJavaLangSet.add("IllegalStateException");
-            sJavaLangSet.add("IllegalArgumentException");
-            sJavaLangSet.add("ClassNotFoundException");
-            sJavaLangSet.add("UnsupportedOperationException");
-        }
-        
-        static final ArrayList<String> sJavaIgnoredKey = new ArrayList<>();
-        static {
-            sJavaIgnoredKey.add("this");
-            sJavaIgnoredKey.add("super");
-            sJavaIgnoredKey.add("null");
-            sJavaIgnoredKey.add("void");
-            sJavaIgnoredKey.add("Void");
-        }
+        HashSet<String> selfNames = new HashSet<>();
         
         public UnseenClassHelper(BaseFile file, JavaFile javaFile) {
             this.file = file;
@@ -802,6 +809,11 @@ public class CppWriter {
             }
         }
         
+        public UnseenClassHelper(BaseFile file, Clazz javaClass) {
+            this.file = file;
+            scanSelfNames(javaClass);
+        }
+        
         private void scanSelfNames(Clazz outterClass) {
             if (outterClass == null) {
                 return;
@@ -838,17 +850,14 @@ public class CppWriter {
             if (selfNames.contains(name)) {
                 return false;
             }
-            if (sJavaIgnoredKey.contains(name)) {
+            TypeRegistry registry = TypeRegistry.get();
+            if (registry.isIgnoredKey(name)) {
                 return false;
             }
-            ArrayList<String> imports = file.includingTags;
-            for (int i = 0; i < imports.size(); i++) {
-                if (name.equals(imports.get(i))) {
-                    return false;
-                }
+            if (!file.addIncludingTag(name)) {
+                return false;
             }
-            imports.add(name);
-            boolean isJavaLangClass = sJavaLangSet.contains(name);
+            boolean isJavaLangClass = registry.isJavaLangClass(name);
             if (isJavaLangClass) {
                 file.includings.add("<lang/" + name + ".h>");
                 
@@ -875,7 +884,7 @@ public class CppWriter {
         CppParagraph hTopParagraph = addAndroidNamespace(hFile, javaFile);
         
         CppParagraph cppTopParagraph;
-        if (javaClass.isInterface) {
+        if (javaClass.isInterface || mHeaderOnly) {
             cppTopParagraph = sDummyParagraph;
         } else {
             BaseFile cppFile = new CppFile();
@@ -886,7 +895,9 @@ public class CppWriter {
             out.add(cppFile);
         }
         
-        UnseenClassHelper helper = new UnseenClassHelper(hFile, javaFile);
+        // a streamed file keeps none of its classes, see writeClass()
+        UnseenClassHelper helper = javaFile.primeClass != null ?
+                new UnseenClassHelper(hFile, javaFile) : new UnseenClassHelper(hFile, javaClass);
         
         processCommonJavaClassInner(javaClass, hTopParagraph, cppTopParagraph,
                 javaClass.name + "::", helper);
@@ -1198,6 +1209,11 @@ public class CppWriter {
                     hFunction.isOverride = javaMethod.isOverride;
                     hFunction.isSynchronized = javaMethod.isSynchronized;
                     hFunction.isNative = javaMethod.isNative;
+                    if (mHeaderOnly && javaMethod.isReturningObject() &&
+                            javaMethod.paragraph instanceof JavaCodeParagraph) {
+                        // the body tells whether the object is returned as a pointer or an sp<>
+                        ((JavaCodeParagraph) javaMethod.paragraph).getParsedCode();
+                    }
                     hFunction.returnType =
                             TypedValue.obtainCppTypedValue(javaMethod.returnType, !javaMethod.suggestIsSp);
                     hFunction.returnType.collectClassName(importHelper);
@@ -1315,7 +1331,7 @@ public class CppWriter {
                     functionPara.addCode(typeName + "* info = new " + typeName + "();");
                     functionPara.addCode("info->initFromParcel(in);");
                     functionPara.addCode("return info;");
-                    if (javaField.paragraph != null &&
+                    if (!mHeaderOnly && javaField.paragraph != null &&
                             javaField.paragraph.type == JavaParagraph.TYPE_ANONYMOUS_CLASS) {
                         ClassParagraph classParagraph = (ClassParagraph) javaField.paragraph;
                         ArrayList<JavaMethod> methodList = classParagraph.methods;
@@ -1326,7 +1342,7 @@ public class CppWriter {
                                     CppCodeParagraph cppCodeParagraph = (CppCodeParagraph) functionPara;
                                     JavaCodeParagraph javaCodeParagraph = (JavaCodeParagraph) method.paragraph;
                                     cppCodeParagraph.codeParagraph =
-                                            processJavaCodeParagraph2Cpp(javaCodeParagraph.innerCodeParagraph, helper);
+                                            processJavaCodeParagraph2Cpp(javaCodeParagraph.getParsedCode(), helper);
                                     break;
                                 }
                             }
@@ -1422,9 +1438,17 @@ public class CppWriter {
         for (int i = 0; i < javaCode.size(); i++) {
             to.addCode(processJavaCode2CppCode(javaCode.get(i)));
         }
-        if (to instanceof CppCodeParagraph) {
-            ((CppCodeParagraph) to).codeParagraph =
-                    processJavaCodeParagraph2Cpp(codeFrom.innerCodeParagraph, helper);
+        if (to instanceof CppCodeParagraph && !mHeaderOnly) {
+            CppCodeParagraph cppTo = (CppCodeParagraph) to;
+            cppTo.codeParagraph = processJavaCodeParagraph2Cpp(codeFrom.getParsedCode(), helper);
+            if (mStreaming && cppTo.codeParagraph != null) {
+                // keep the text only, the statements of one body are dropped before the next
+                mBodyCode.reset();
+                cppTo.codeParagraph.write(mBodyCode);
+                cppTo.printedCode = mBodyCode.toString();
+                cppTo.codeParagraph = null;
+                codeFrom.setParsedCode(null);
+            }
         }
     }
     
@@ -1455,13 +1479,64 @@ public class CppWriter {
     }
     
     public int write(JavaFile javaFile, String outPath) {
+        return write(javaFile, outPath, null);
+    }
+    
+    /**
+     * Same as {@link #write(JavaFile, String)}, the path of every file written to outPath
+     * is added to outputs if it is not null.
+     */
+    public int write(JavaFile javaFile, String outPath, ArrayList<String> outputs) {
         if (javaFile == null) {
             return 0;
         }
+        int previousPhase = Metrics.enter(Metrics.PHASE_WRITE);
+        try {
+            return writeJavaFile(javaFile, outPath, outputs);
+        } finally {
+            Metrics.exit(previousPhase);
+        }
+    }
+    
+    /**
+     * Translates and writes one top level class of javaFile, used when the file is
+     * streamed by {@link JavaReader#read(File, JavaReader.ClassListener)}. The other
+     * classes of the file are unknown here, the ones javaClass uses get included.
+     */
+    public int writeClass(JavaFile javaFile, Clazz javaClass, String outPath,
+            ArrayList<String> outputs) {
+        int previousPhase = Metrics.enter(Metrics.PHASE_WRITE);
+        try {
+            if (!mHeaderOnly && !mStreaming) {
+                javaFile.parseLazyCode();
+            }
+            ArrayList<BaseFile> outFiles = new ArrayList<>(2);
+            processCommonJavaClass(new File(javaFile.path).getParent() + File.separator,
+                    javaFile, javaClass, outFiles);
+            if (javaFile.lazyCodeParagraphs != null) {
+                // every body needed is parsed, don't hold the classes streamed so far
+                javaFile.lazyCodeParagraphs.clear();
+            }
+            for (int i = 0; i < outFiles.size(); i++) {
+                writeCommonFile(outFiles.get(i), outPath, outputs);
+            }
+            return outFiles.size();
+        } finally {
+            Metrics.exit(previousPhase);
+        }
+    }
+    
+    private int writeJavaFile(JavaFile javaFile, String outPath, ArrayList<String> outputs) {
+        if (!mHeaderOnly) {
+            javaFile.parseLazyCode();
+        }
         if (javaFile.isAidl) {
             if (javaFile.primeClass != null) {
-                writeCommonFile(processAidl2Ch(javaFile), outPath);
-                writeCommonFile(processAidl2Cpp(javaFile), outPath);
+                writeCommonFile(processAidl2Ch(javaFile), outPath, outputs);
+                if (mHeaderOnly) {
+                    return 1;
+                }
+                writeCommonFile(processAidl2Cpp(javaFile), outPath, outputs);
                 return 2;
             }
             return 0;
@@ -1472,72 +1547,146 @@ public class CppWriter {
                 if (outFiles[i] == null) {
                     continue;
                 }
-                writeCommonFile(outFiles[i], outPath);
+                writeCommonFile(outFiles[i], outPath, outputs);
                 sum++;
             }
             return sum;
         }
     }
 
-    private void writeCommonFile(BaseFile baseFile, String outPath) {
+    private void writeCommonFile(BaseFile baseFile, String outPath, ArrayList<String> outputs) {
         ArrayList<CppStatement> statementList = baseFile.cppStatements;
         if (statementList == null || statementList.size() == 0) {
             return;
         }
         
-        try {
-            if (!CONSOLE_OUTPUT) {
-                if (outPath != null) {
-                    System.out.println("...output file:" + baseFile.name);
-                    File outFile = new File(outPath + "/" + baseFile.name);
-//                    File outFile = new File("/work/wifi2c++/test/" + baseFile.name);
-                    if (outFile.exists()) {
-                        outFile.delete();
+        File outFile = null;
+        if (!CONSOLE_OUTPUT && outPath != null) {
+            outFile = new File(outPath + "/" + baseFile.name);
+        }
+        CodeBuffer code = mCode;
+        code.reset();
+        if (baseFile instanceof ChFile) {
+            code.line("#pragma once");
+            code.line();
+        }
+        if (baseFile.includings.size() > 0) {
+            for (int i = 0; i < baseFile.includings.size(); i++) {
+                code.startLine().append("#include ").append(baseFile.includings.get(i)).endLine();
+            }
+            code.line();
+        }
+        writeStatementList(statementList, null);
+        
+        if (outFile == null) {
+            try {
+                code.writeTo(mLog);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        } else {
+            mBuffer.reset();
+            try {
+                code.writeTo(mBuffer);
+            } catch (IOException e) {
+                throw new RuntimeException("Logic crash", e);
+            }
+            if (mBuffer.isContentOf(outFile)) {
+                mLog.println("...unchanged file:" + baseFile.name);
+            } else {
+                mLog.println("...output file:" + baseFile.name);
+                mBuffer.writeTo(outFile);
+            }
+            if (outputs != null) {
+                outputs.add(outFile.getAbsolutePath());
+            }
+        }
+    }
+    
+    /**
+     * Content of one output file. The file is only written if its content changes, so
+     * the c++ build does not see a new timestamp on a file that is still the same, and
+     * it is replaced in one step, so nobody sees it half written.
+     */
+    private static final class OutputBuffer extends ByteArrayOutputStream {
+        private final byte[] mFileBuffer = new byte[8192];
+        
+        OutputBuffer() {
+            super(16 * 1024);
+        }
+        
+        boolean isContentOf(File file) {
+            if (!file.isFile() || file.length() != count) {
+                return false;
+            }
+            FileInputStream in = null;
+            try {
+                in = new FileInputStream(file);
+                int offset = 0;
+                int read;
+                while ((read = in.read(mFileBuffer)) > 0) {
+                    if (offset + read > count) {
+                        return false;
                     }
-                    try {
-                        if (!outFile.createNewFile()) {
-                            throw new RuntimeException("Can not create file:" + outFile.getAbsolutePath());
+                    for (int i = 0; i < read; i++) {
+                        if (mFileBuffer[i] != buf[offset + i]) {
+                            return false;
                         }
+                    }
+                    offset += read;
+                }
+                return offset == count;
+            } catch (IOException e) {
+                return false;
+            } finally {
+                if (in != null) {
+                    try {
+                        in.close();
                     } catch (IOException e) {
                     }
-                    
-                    mOut = new PrintStream(new FileOutputStream(outFile), true);
                 }
             }
-            
-            if (baseFile instanceof ChFile) {
-                printf("#pragma once");
-                printf();
-            }
-            if (baseFile.includings.size() > 0) {
-                for (int i = 0; i < baseFile.includings.size(); i++) {
-                    printf("#include " + baseFile.includings.get(i));
+        }
+        
+        void writeTo(File file) {
+            File tmpFile = new File(file.getPath() + ".tmp");
+            FileOutputStream out = null;
+            try {
+                out = new FileOutputStream(tmpFile);
+                out.write(buf, 0, count);
+                out.close();
+                out = null;
+                try {
+                    Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+            } catch (IOException e) {
+                tmpFile.delete();
+                throw new RuntimeException("Can not create file:" + file.getAbsolutePath(), e);
+            } finally {
+                if (out != null) {
+                    try {
+                        out.close();
+                    } catch (IOException e) {
+                    }
                 }
-                printf();
-            }
-            writeStatementList("", statementList, null);
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-        } finally {
-            if (mOut != null) {
-                mOut.flush();
-                mOut.close();
-                mOut = null;
             }
         }
     }
     
-    private void writeStatementList(String prefix, ArrayList<CppStatement> statementList,
-            CppStatement parent) {
+    private void writeStatementList(ArrayList<CppStatement> statementList, CppStatement parent) {
+        CodeBuffer code = mCode;
         CppStatement lastStatement = null;
         int currentAccessLevel = CppStatement.ACCESS_LEVEL_DEFAULT;
         for (CppStatement statement : statementList) {
             if (lastStatement != null && lastStatement.type != statement.type) {
-                printf();
+                code.line();
             } else if (statement.type == CppStatement.TYPE_CLASS && statement.paragraph != null) {
-                printf();
+                code.line();
             } else if (statement.type == CppStatement.TYPE_FUNCTION) {
-                printf();
+                code.line();
             }
             boolean classTaken = false;
             if (parent != null && parent.type == CppStatement.TYPE_CLASS) {
@@ -1547,278 +1696,271 @@ public class CppWriter {
                     
                     switch (currentAccessLevel) {
                     case CppStatement.ACCESS_LEVEL_PRIVATE:
-                        printf(prefix + "private:");
+                        code.line("private:");
                         break;
                     case CppStatement.ACCESS_LEVEL_PROTECTED:
-                        printf(prefix + "protected:");
+                        code.line("protected:");
                         break;
                     case CppStatement.ACCESS_LEVEL_PUBLIC:
-                        printf(prefix + "public:");
+                        code.line("public:");
                         break;
                     case CppStatement.ACCESS_LEVEL_DEFAULT:
-                        printf(prefix + "default:// TODO ???");
+                        code.line("default:// TODO ???");
                         break;
                     }
                 }
             }
-            writeStatement(classTaken ? prefix + "  " : prefix, statement, parent);
+            if (classTaken) {
+                code.indent(2);
+                writeStatement(statement, parent);
+                code.unindent();
+            } else {
+                writeStatement(statement, parent);
+            }
             lastStatement = statement;
         }
     }
     
-    private void writeStatement(String prefix, CppStatement target, CppStatement parent) {
+    private void writeStatement(CppStatement target, CppStatement parent) {
+        CodeBuffer code = mCode;
         if (target.relatedComment != null) {
             for (int i = 0; i < target.relatedComment.size(); i++) {
-                printf(prefix + target.relatedComment.get(i));
+                code.line(target.relatedComment.get(i));
             }
         }
         
         CppParagraph paragraph;
-        StringBuffer buffer;
         switch (target.type) {
         case CppStatement.TYPE_NAMESPACE:
         case CppStatement.TYPE_NAMESPACE_USING:
             NameSpace nameSpace = (NameSpace) target;
             if (nameSpace.type == CppStatement.TYPE_NAMESPACE_USING) {
-                printf(prefix + "using " + nameSpace.name + ";");
+                code.startLine().append("using ").append(nameSpace.name).append(';').endLine();
             } else {
-                printf(prefix + "namespace " + nameSpace.name + " {");
+                code.startLine().append("namespace ").append(nameSpace.name).append(" {").endLine();
                 paragraph = nameSpace.paragraph;
                 if (paragraph != null && paragraph.cppStatements != null) {
-                    writeStatementList(prefix, paragraph.cppStatements, parent);
+                    writeStatementList(paragraph.cppStatements, parent);
                 }
-                printf(prefix + "}");
+                code.line("}");
             }
             break;
         case CppStatement.TYPE_CLASS:
         case CppStatement.TYPE_STRUCT:
             CppClass cppClass = (CppClass) target;
             
-            buffer = new StringBuffer(prefix + (cppClass.isFriend ? "friend " : ""));
-            buffer.append(target.type == CppStatement.TYPE_CLASS ? "class " : "struct ");
-            buffer.append(cppClass.name);
+            code.startLine();
+            if (cppClass.isFriend) {
+                code.append("friend ");
+            }
+            code.append(target.type == CppStatement.TYPE_CLASS ? "class " : "struct ");
+            code.append(cppClass.name);
             if (cppClass.extendedClasses != null) {
-                buffer.append(" : ");
+                code.append(" : ");
                 for (int i = 0; i < cppClass.extendedClasses.size(); i++) {
                     if (i > 0) {
-                        buffer.append("\n" + prefix + "    ");
+                        code.endLine();
+                        code.startLine().append("    ");
                     }
-                    buffer.append("public " + cppClass.extendedClasses.get(i));
+                    code.append("public ").append(cppClass.extendedClasses.get(i));
                     if (i < cppClass.extendedClasses.size() - 1) {
-                        buffer.append(",");
+                        code.append(',');
                     }
                 }
             }
             paragraph = cppClass.paragraph;
             if (paragraph != null) {
-                buffer.append(" {");
+                code.append(" {");
             } else {
-                buffer.append(";");
+                code.append(';');
             }
-            printf(buffer.toString());
+            code.endLine();
             if (paragraph != null && paragraph.cppStatements != null) {
-                writeStatementList(prefix + "  ", paragraph.cppStatements, cppClass);
-                printf(prefix + "};");
+                code.indent(2);
+                writeStatementList(paragraph.cppStatements, cppClass);
+                code.unindent();
+                code.line("};");
             }
             break;
         case CppStatement.TYPE_FIELD:
-            writeCppField(prefix, target, parent);
+            writeCppField(target, parent);
             break;
         case CppStatement.TYPE_FUNCTION:
-            writeCppFunction(prefix, target, parent);
+            writeCppFunction(target, parent);
             break;
         case CppStatement.TYPE_ENUM:
             CppEnumeration cppEnumeration = (CppEnumeration) target;
-            buffer = new StringBuffer();
+            code.startLine().append("enum");
             if (cppEnumeration.name != null) {
-                buffer.append(prefix + "enum " + cppEnumeration.name);
-            } else {
-                buffer.append(prefix + "enum");
+                code.append(' ').append(cppEnumeration.name);
             }
             if (cppEnumeration.paragraph != null && cppEnumeration.paragraph.cppCode != null) {
-                buffer.append(" {");
-                printf(buffer.toString());
+                code.append(" {").endLine();
+                code.indent(4);
                 for (int i = 0; i < cppEnumeration.paragraph.cppCode.size(); i++) {
-                    printf(prefix + "    " + cppEnumeration.paragraph.cppCode.get(i));
+                    code.line(cppEnumeration.paragraph.cppCode.get(i));
                 }
-                printf(prefix + "};");
+                code.unindent();
+                code.line("};");
             } else {
-                buffer.append(";");
-                printf(buffer.toString());
+                code.append(';').endLine();
             }
             break;
         case CppStatement.TYPE_DEFINE:
             break;
         case CppStatement.TYPE_DEFINE_APPLY:
             CppDefinition definition = (CppDefinition) target;
-            buffer = new StringBuffer(prefix);
-            buffer.append(definition.name + "(");
+            code.startLine().append(definition.name).append('(');
             ArrayList<String> arguments = definition.arguments;
             for (int i = 0; i < arguments.size(); i++) {
-                buffer.append(arguments.get(i));
+                code.append(arguments.get(i));
                 if (i < arguments.size() - 1) {
-                    buffer.append(", ");
+                    code.append(", ");
                 }
             }
-            buffer.append(");");
-            printf(buffer.toString());
+            code.append(");").endLine();
             break;
         default:
             throw new RuntimeException("Logic crash. type:" + target.type);
         }
     }
     
-    private void writeCppField(String prefix, CppStatement target, CppStatement parent) {
+    private void writeCppField(CppStatement target, CppStatement parent) {
         CppField cppField = (CppField) target;
-        StringBuffer buffer = new StringBuffer(prefix);
+        CodeBuffer code = mCode;
+        code.startLine();
         if (cppField.isStatic) {
-            buffer.append("static ");
+            code.append("static ");
         }
         if (cppField.isConst) {
-            buffer.append("const ");
+            code.append("const ");
         }
         
         String oldValue = cppField.value.value;
         cppField.value.value = null;
-        buffer.append(cppField.value.toString());
+        code.append(cppField.value.toString());
+        code.append(' ');
         if (cppField.scope != null) {
-            buffer.append(" " + cppField.scope + oldValue);
-        } else {
-            buffer.append(" " + oldValue);
+            code.append(cppField.scope);
         }
+        code.append(oldValue);
         cppField.value.value = oldValue;
         
         if (cppField.initedValue != null) {
-            buffer.append(" = " + cppField.initedValue + ";");
+            code.append(" = ").append(cppField.initedValue).append(';');
         } else if (cppField.paragraph != null && cppField.paragraph.cppCode != null) {
             ArrayList<String> cppCode = cppField.paragraph.cppCode;
             if (cppCode.size() == 1) {
-                buffer.append(" = {" + cppField.paragraph.cppCode.get(0) + "};");
+                code.append(" = {").append(cppCode.get(0)).append("};");
             } else if (cppCode.size() > 1) {
-                buffer.append(" = {\n");
-                for (int i = 0; i < cppField.paragraph.cppCode.size(); i++) {
-                    buffer.append(prefix + "    " + cppField.paragraph.cppCode.get(i) + "\n");
+                code.append(" = {").endLine();
+                for (int i = 0; i < cppCode.size(); i++) {
+                    code.startLine().append("    ").append(cppCode.get(i)).endLine();
                 }
-                buffer.append(prefix + "    };");
+                code.startLine().append("    };");
             } else {
-                buffer.append(";");
+                code.append(';');
             }
         } else {
-            buffer.append(";");
+            code.append(';');
         }
-        printf(buffer.toString());
+        code.endLine();
     }
 
-    private void writeCppFunction(String prefix, CppStatement target, CppStatement parent) {
+    private void writeCppFunction(CppStatement target, CppStatement parent) {
         CppFunction function = (CppFunction) target;
-        StringBuffer buffer = new StringBuffer(prefix);
+        CodeBuffer code = mCode;
+        code.startLine();
         if (function.isStatic) {
-            buffer.append("static ");
+            code.append("static ");
         }
         if (function.isInline) {
-            buffer.append("inline ");
+            code.append("inline ");
         }
         if (function.isVirtual) {
-            buffer.append("virtual ");
+            code.append("virtual ");
         }
         if (function.isSynchronized) {
-            buffer.append("/*synchronized*/ ");
+            code.append("/*synchronized*/ ");
         }
         if (function.isNative) {
-            buffer.append("/*native*/ ");
+            code.append("/*native*/ ");
         }
         if (!function.isConstructor && !function.isDestructor) {
-            buffer.append(function.returnType + " ");
+            code.append(function.returnType).append(' ');
         }
         if (function.scope != null) {
-            buffer.append(function.scope);
+            code.append(function.scope);
         }
-        buffer.append((function.isDestructor ? "~" : "") + function.name + "(");
+        if (function.isDestructor) {
+            code.append('~');
+        }
+        code.append(function.name).append('(');
         if (function.parameters != null) {
             for (int i = 0; i < function.parameters.size(); i++) {
-                buffer.append(function.parameters.get(i));
+                code.append(function.parameters.get(i));
                 if (i < function.parameters.size() - 1) {
-                    buffer.append(", ");
+                    code.append(", ");
                 }
             }
         }
-        buffer.append(")");
+        code.append(')');
         if (function.isConstructor) {
             boolean colonMet = false;
             if (function.parentNames != null) {
-                buffer.append("\n" + prefix + "   :   ");
+                code.endLine();
+                code.startLine().append("   :   ");
                 colonMet = true;
                 for (int i = 0; i < function.parentNames.size(); i++) {
                     String parentConstructorName = function.parentNames.get(i);
-                    buffer.append(parentConstructorName + "(");
+                    code.append(parentConstructorName).append('(');
                     ArrayList<String> parentParameters = function.parentParameterMap != null ?
                             function.parentParameterMap.get(parentConstructorName) : null;
                     if (parentParameters != null) {
                         for (int j = 0; j < parentParameters.size(); j++) {
-                            String parentPara = parentParameters.get(j);
-                            buffer.append(parentPara);
+                            code.append(parentParameters.get(j));
                             if (j < parentParameters.size() - 1) {
-                                buffer.append(", ");
+                                code.append(", ");
                             }
                         }
                     }
-                    buffer.append(")");
+                    code.append(')');
                     if (i < function.parentNames.size() - 1) {
-                        buffer.append(", ");
+                        code.append(", ");
                     }
                 }
             }
             if (function.initedMap != null) {
                 boolean firstIterate = true;
                 for (Entry<String, String> entry : function.initedMap.entrySet()) {
-                    String initedPara = entry.getKey();
-                    String initedValue = entry.getValue();
-                    buffer.append((firstIterate && !colonMet ? ":\n" : ",\n") + prefix +
-                            "    " + initedPara + "(" + initedValue + ")");
+                    code.append(firstIterate && !colonMet ? ':' : ',').endLine();
+                    code.startLine().append("    ").append(entry.getKey()).append('(')
+                            .append(entry.getValue()).append(')');
                     firstIterate = false;
                 }
             }
         } else {
             if (function.isConst) {
-                buffer.append(" const");
+                code.append(" const");
             }
             if (function.isPurelyVirtual) {
-                buffer.append(" = 0");
+                code.append(" = 0");
             }
             if (function.isOverride) {
-                buffer.append(" override");
+                code.append(" override");
             }
         }
         if (function.paragraph != null) {
-            buffer.append("\n" + prefix + "{");//\n" + prefix + "    \n" + prefix + "}"
-            printf(buffer.toString());
+            code.endLine();
+            code.line("{");
             if (function.paragraph.cppCode != null) {
-                writeCodeParagraph(prefix + "    ", function.paragraph);
+                code.indent(4);
+                function.paragraph.write(code);
+                code.unindent();
             }
-            printf(prefix + "}");
-        } else {
-            buffer.append(";");
-            printf(buffer.toString());
-        }
-    }
-    
-    private void writeCodeParagraph(String prefix, CppParagraph paragraph) {
-        paragraph.write(prefix, CONSOLE_OUTPUT ? System.out : mOut);
-    }
-    
-    private void printf() {
-        if (CONSOLE_OUTPUT) {
-            System.out.println();
-        } else {
-            mOut.println();
-        }
-    }
-    
-    private void printf(String line) {
-        if (CONSOLE_OUTPUT) {
-            System.out.println(line);
+            code.line("}");
         } else {
-            mOut.println(line);
+            code.append(';').endLine();
         }
     }
     
@@ -1827,10 +1969,26 @@ public class CppWriter {
         String name;
         ArrayList<String> includings = new ArrayList<>();
         ArrayList<String> includingTags = new ArrayList<>();
+        private final HashSet<String> includingTagSet = new HashSet<>();
         
         int usingHeaderIndex;
         ArrayList<CppStatement> cppStatements = new ArrayList<>();
         
+        /**
+         * Adds tag to includingTags, returns false if it was there already.
+         */
+        boolean addIncludingTag(String tag) {
+            if (!includingTagSet.add(tag)) {
+                return false;
+            }
+            includingTags.add(tag);
+            return true;
+        }
+        
+        boolean hasIncludingTag(String tag) {
+            return includingTagSet.contains(tag);
+        }
+        
         void addCustomHeaderIfNecessary(CppStatement statement) {
             cppStatements.add(usingHeaderIndex++, statement);
         }
@@ -1860,9 +2018,9 @@ public class CppWriter {
             addCppStatement(statement, statement.order);
         }
         
-        public void write(String prefix, PrintStream out) {
+        public void write(CodeBuffer out) {
             for (int i = 0; i < cppCode.size(); i++) {
-                out.println(prefix + cppCode.get(i));
+                out.line(cppCode.get(i));
             }
         }
 
@@ -1951,13 +2109,17 @@ public class CppWriter {
     
     static class CppCodeParagraph extends CppParagraph {
         CodeParagraph codeParagraph;
+        // the translated body printed without indentation, see CppWriter.setStreaming()
+        String printedCode;
         
         @Override
-        public void write(String prefix, PrintStream out) {
-            if (codeParagraph != null) {
-                codeParagraph.write(prefix, out);
+        public void write(CodeBuffer out) {
+            if (printedCode != null) {
+                out.lines(printedCode);
+            } else if (codeParagraph != null) {
+                codeParagraph.write(out);
             } else {
-                super.write(prefix, out);
+                super.write(out);
             }
         }
     }
@@ -2283,7 +2445,7 @@ public class CppWriter {
 //        FLATTENABLE
     }
     
-    static class TypedValue {
+    static class TypedValue implements ModelCache.Model {
         String oldName;
         String name;
         VAL_CATE type;
@@ -2306,11 +2468,47 @@ public class CppWriter {
         
         ArrayList<TypedValue> templateTypes;
         
+        // Resolved types by java type, one map per pointer mode. The values are never
+        // handed out, every caller gets its own copy to set value, isConst and so on.
+        // Their template types are shared by all copies and must not be changed.
+        private static final int RESOLVED_TYPE_LIMIT = 4096;
+        private static final ConcurrentHashMap<String, TypedValue> sResolvedTypes =
+                new ConcurrentHashMap<>();
+        private static final ConcurrentHashMap<String, TypedValue> sResolvedPointerTypes =
+                new ConcurrentHashMap<>();
+        
         static TypedValue obtainCppTypedValue(String javaType) {
             return obtainCppTypedValue(javaType, false);
         }
         
         static TypedValue obtainCppTypedValue(String javaType, boolean pointer) {
+            int previousPhase = Metrics.enter(Metrics.PHASE_TYPE_MAPPING);
+            try {
+                ConcurrentHashMap<String, TypedValue> resolvedTypes = pointer
+                        ? sResolvedPointerTypes : sResolvedTypes;
+                TypedValue resolved = resolvedTypes.get(javaType);
+                if (resolved == null) {
+                    resolved = resolveCppTypedValue(javaType, pointer);
+                    // a run only meets a few hundred types, the limit is just a guard
+                    if (resolvedTypes.size() < RESOLVED_TYPE_LIMIT) {
+                        resolvedTypes.putIfAbsent(javaType, resolved);
+                    }
+                }
+                return resolved.duplicate();
+            } finally {
+                Metrics.exit(previousPhase);
+            }
+        }
+        
+        /**
+         * Drops every resolved type, needed once the TypeRegistry changed.
+         */
+        static void clearResolvedTypes() {
+            sResolvedTypes.clear();
+            sResolvedPointerTypes.clear();
+        }
+        
+        private static TypedValue resolveCppTypedValue(String javaType, boolean pointer) {
 //            String suffix = "";
 //            while (javaType.endsWith("[]")) {
 //                javaType = javaType.substring(0, javaType.length() - 2);
@@ -2398,6 +2596,10 @@ public class CppWriter {
             return tv;
         }
         
+        // for ModelCache
+        TypedValue() {
+        }
+        
         TypedValue(String name) {
             this(name, name, VAL_CATE.VAL);
         }
@@ -2420,6 +2622,23 @@ public class CppWriter {
             this.type = type;
         }
         
+        private TypedValue duplicate() {
+            TypedValue out = new TypedValue(oldName, name, type);
+            out.value = value;
+            out.isSp = isSp;
+            out.isString = isString;
+            out.isConst = isConst;
+            out.isDataContainer = isDataContainer;
+            out.isArray = isArray;
+            out.isIn = isIn;
+            out.isOut = isOut;
+            out.isVoidable = isVoidable;
+            out.defaultValue = defaultValue;
+            out.resolvedParcelSolution = resolvedParcelSolution;
+            out.templateTypes = templateTypes;
+            return out;
+        }
+        
         void collectClassName(UnseenClassHelper helper) {
             if (isArray) {
                 helper.addClass(oldName);
@@ -2447,7 +2666,7 @@ public class CppWriter {
         
         @Override
         public String toString() {
-            StringBuffer temp = new StringBuffer();
+            StringBuilder temp = new StringBuilder();
             if (isConst) {
                 temp.append("const ");
             }
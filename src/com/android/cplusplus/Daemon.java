@@ -0,0 +1,138 @@
+package com.android.cplusplus;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Keeps one translator running for many translations, started with "-daemon". The
+ * workers with their parsers, the header index, the build caches of the output roots,
+ * the registered types and the models read from the sources all stay loaded and the JIT keeps its code,
+ * so a job only costs the files it translates.
+ * <p>
+ * Jobs are read from stdin, one line each, the fields separated by tabs:
+ * <pre>
+ * translate [-force] [-header-only] &lt;srcPath&gt; &lt;dstPath&gt;
+ * ping
+ * quit
+ * </pre>
+ * Every line gets one answer line on stdout, "ok &lt;job&gt; ms=.. files=.. generated=..
+ * errors=.. upToDate=..", "error &lt;job&gt; &lt;message&gt;", "pong" or "bye". The log of the
+ * translations, which goes to stdout otherwise, goes to stderr. With "-metrics" the report
+ * is written again after every job and only holds the files of that job.
+ */
+final class Daemon {
+
+    private final BufferedReader mIn;
+    private final PrintStream mOut;
+    // output root -> its build cache, loaded by the first job writing there
+    private final HashMap<String, BuildCache> mBuildCaches = new HashMap<>();
+    private int mJobCount;
+
+    Daemon(InputStream in, PrintStream out) {
+        mIn = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        mOut = out;
+    }
+
+    void run() {
+        ForkJoinPool pool = new ForkJoinPool(Core.sWorkerCount);
+        Core.sWorkerPool = pool;
+        if (Core.sUseModelCache) {
+            Core.getModelCache().setMemoryLimit(ModelCache.MEMORY_LIMIT);
+        }
+        try {
+            String line;
+            while ((line = mIn.readLine()) != null) {
+                if (line.trim().length() == 0) {
+                    continue;
+                }
+                String[] fields = line.split("\t");
+                String command = fields[0].trim();
+                if ("quit".equals(command)) {
+                    break;
+                } else if ("ping".equals(command)) {
+                    mOut.println("pong");
+                } else if ("translate".equals(command)) {
+                    translate(fields);
+                } else {
+                    mOut.println("error 0 unknown command:" + command);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            Core.sWorkerPool = null;
+            pool.shutdown();
+        }
+        mOut.println("bye");
+    }
+
+    private void translate(String[] fields) {
+        int job = ++mJobCount;
+        boolean force = Core.sForceTranslation;
+        boolean headerOnly = Core.sHeaderOnly;
+        String srcPath = null;
+        String dstPath = null;
+        for (int i = 1; i < fields.length; i++) {
+            if ("-force".equals(fields[i])) {
+                Core.sForceTranslation = true;
+            } else if ("-header-only".equals(fields[i])) {
+                Core.sHeaderOnly = true;
+            } else if (srcPath == null) {
+                srcPath = fields[i];
+            } else if (dstPath == null) {
+                dstPath = fields[i];
+            } else {
+                srcPath = null;
+                break;
+            }
+        }
+        long startNanos = System.nanoTime();
+        try {
+            if (srcPath == null || dstPath == null) {
+                mOut.println("error " + job + " expects translate [options] <srcPath> <dstPath>");
+                return;
+            }
+            System.out.println("Job " + job + " start:" + srcPath + " -> " + dstPath);
+            Core.resetHeaderLookups();
+            if (Core.sUseClassIndex) {
+                Core.buildClassIndex(srcPath);
+            }
+            int[] out = Core.processDirectory(srcPath, dstPath, getBuildCache(dstPath), new int[4]);
+            Core.printMissingHeadersIfNecessary(dstPath + "/MissingHeader.txt");
+            if (Core.sMetricsFile != null) {
+                Metrics.writeReport(Core.sMetricsFile);
+                Metrics.reset();
+            }
+            long millis = (System.nanoTime() - startNanos) / 1000000;
+            System.out.println("Job " + job + " done, cost:" + millis + "ms");
+            mOut.println("ok " + job + " ms=" + millis + " files=" + out[0] + " generated="
+                    + out[1] + " errors=" + out[2] + " upToDate=" + out[3]);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            mOut.println("error " + job + " " + String.valueOf(e.getMessage()).replace('\n', ' '));
+        } finally {
+            Core.sForceTranslation = force;
+            Core.sHeaderOnly = headerOnly;
+        }
+    }
+
+    private BuildCache getBuildCache(String dstPath) {
+        if (Core.DEBUG_MODE) {
+            return null;
+        }
+        String root = new File(dstPath).getAbsolutePath();
+        BuildCache cache = mBuildCaches.get(root);
+        if (cache == null) {
+            cache = BuildCache.open(Core.sCacheDir, root);
+            mBuildCaches.put(root, cache);
+        }
+        return cache;
+    }
+}
@@ -0,0 +1,326 @@
+package com.android.cplusplus;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Which sources import which, so the watch mode can translate the importers of a
+ * changed source again and the wave scheduler can translate a source after the ones it
+ * depends on. Only the package and import statements and the declaration of the first
+ * class are looked at, a source is never read as a whole.
+ * <p>
+ * A source is imported by the files naming it, a class nested in it or a static member
+ * of it, and by the files importing every class of its package with ".*". The sources of
+ * its own package use it without any import, they count only if asked for. A source
+ * depends on the sources it imports and on the ones declaring the classes its first
+ * class extends or implements.
+ */
+final class DependencyGraph {
+
+    private static class Source {
+        final String qualifiedName;
+        final String packageName;
+        final ArrayList<String> imports;
+        final ArrayList<String> supers;
+
+        Source(String qualifiedName, String packageName, ArrayList<String> imports,
+                ArrayList<String> supers) {
+            this.qualifiedName = qualifiedName;
+            this.packageName = packageName;
+            this.imports = imports;
+            this.supers = supers;
+        }
+    }
+
+    private final HashMap<File, Source> mSources = new HashMap<>();
+    // imported name -> the files importing it, wildcards end with ".*"
+    private final TreeMap<String, HashSet<File>> mImporters = new TreeMap<>();
+    // qualified name of the class a source is named after -> the source
+    private final HashMap<String, File> mFiles = new HashMap<>();
+
+    /**
+     * Reads the imports of file again, call it for every file which showed up or changed.
+     */
+    void update(File file) {
+        put(file, read(file));
+    }
+
+    /**
+     * Reads files on the workers of pool and adds them in their order.
+     */
+    void updateAll(ArrayList<File> files, ForkJoinPool pool) {
+        ArrayList<Future<Source>> results = new ArrayList<>(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            final File file = files.get(i);
+            results.add(pool.submit(new Callable<Source>() {
+                @Override
+                public Source call() {
+                    return read(file);
+                }
+            }));
+        }
+        for (int i = 0; i < files.size(); i++) {
+            try {
+                put(files.get(i), results.get(i).get());
+            } catch (InterruptedException | ExecutionException e) {
+                throw new RuntimeException("Logic crash", e);
+            }
+        }
+    }
+
+    private static Source read(File file) {
+        String fileName = file.getName();
+        int dotIndex = fileName.lastIndexOf('.');
+        String simpleName = dotIndex > 0 ? fileName.substring(0, dotIndex) : fileName;
+        ArrayList<String> imports = new ArrayList<>();
+        ArrayList<String> supers = new ArrayList<>();
+        String packageName;
+        try {
+            packageName = readHeader(file, imports, supers);
+        } catch (IOException e) {
+            return null;
+        }
+        String qualifiedName = packageName.length() > 0 ? packageName + "." + simpleName
+                : simpleName;
+        return new Source(qualifiedName, packageName, imports, supers);
+    }
+
+    private void put(File file, Source source) {
+        remove(file);
+        if (source == null) {
+            return;
+        }
+        mSources.put(file, source);
+        mFiles.put(source.qualifiedName, file);
+        ArrayList<String> imports = source.imports;
+        for (int i = 0; i < imports.size(); i++) {
+            HashSet<File> importers = mImporters.get(imports.get(i));
+            if (importers == null) {
+                importers = new HashSet<>();
+                mImporters.put(imports.get(i), importers);
+            }
+            importers.add(file);
+        }
+    }
+
+    void remove(File file) {
+        Source source = mSources.remove(file);
+        if (source == null) {
+            return;
+        }
+        if (file.equals(mFiles.get(source.qualifiedName))) {
+            mFiles.remove(source.qualifiedName);
+        }
+        for (int i = 0; i < source.imports.size(); i++) {
+            HashSet<File> importers = mImporters.get(source.imports.get(i));
+            if (importers != null) {
+                importers.remove(file);
+                if (importers.isEmpty()) {
+                    mImporters.remove(source.imports.get(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * The files importing file, as it was when last updated, file itself left out. With
+     * samePackage the other files of its package are taken as importing it too.
+     */
+    TreeSet<File> getImporters(File file, boolean samePackage) {
+        TreeSet<File> out = new TreeSet<>();
+        Source source = mSources.get(file);
+        if (source == null) {
+            return out;
+        }
+        String name = source.qualifiedName;
+        addImporters(mImporters.get(name), out);
+        // nested classes and static members, "name.*" included
+        for (Entry<String, HashSet<File>> entry
+                : mImporters.subMap(name + ".", name + ".\uffff").entrySet()) {
+            addImporters(entry.getValue(), out);
+        }
+        if (source.packageName.length() > 0) {
+            addImporters(mImporters.get(source.packageName + ".*"), out);
+        }
+        if (samePackage) {
+            for (Entry<File, Source> entry : mSources.entrySet()) {
+                if (entry.getValue().packageName.equals(source.packageName)) {
+                    out.add(entry.getKey());
+                }
+            }
+        }
+        out.remove(file);
+        return out;
+    }
+
+    /**
+     * The files file imports or whose class its first class extends or implements, file
+     * itself left out.
+     */
+    TreeSet<File> getDependencies(File file) {
+        TreeSet<File> out = new TreeSet<>();
+        Source source = mSources.get(file);
+        if (source == null) {
+            return out;
+        }
+        for (int i = 0; i < source.imports.size(); i++) {
+            String name = source.imports.get(i);
+            if (name.endsWith(".*")) {
+                String packageName = name.substring(0, name.length() - 2);
+                for (Entry<File, Source> entry : mSources.entrySet()) {
+                    if (entry.getValue().packageName.equals(packageName)) {
+                        out.add(entry.getKey());
+                    }
+                }
+                // or all the classes nested in one
+                name = packageName;
+            }
+            // a class nested in a source or a static member of it
+            while (name.length() > 0) {
+                File imported = mFiles.get(name);
+                if (imported != null) {
+                    out.add(imported);
+                    break;
+                }
+                int dotIndex = name.lastIndexOf('.');
+                name = dotIndex > 0 ? name.substring(0, dotIndex) : "";
+            }
+        }
+        for (int i = 0; i < source.supers.size(); i++) {
+            File declaring = findSuper(source, source.supers.get(i));
+            if (declaring != null) {
+                out.add(declaring);
+            }
+        }
+        out.remove(file);
+        return out;
+    }
+
+    /**
+     * The qualified name of the class file is named after, null if file is unknown.
+     */
+    String getQualifiedName(File file) {
+        Source source = mSources.get(file);
+        return source != null ? source.qualifiedName : null;
+    }
+
+    int size() {
+        return mSources.size();
+    }
+
+    // an imported class, one of the same package or one named by its qualified name
+    private File findSuper(Source source, String name) {
+        int dotIndex = name.indexOf('.');
+        String first = dotIndex > 0 ? name.substring(0, dotIndex) : name;
+        for (int i = 0; i < source.imports.size(); i++) {
+            if (source.imports.get(i).endsWith("." + first)) {
+                return mFiles.get(source.imports.get(i));
+            }
+        }
+        File file = mFiles.get(source.packageName.length() > 0
+                ? source.packageName + "." + first : first);
+        return file != null ? file : mFiles.get(name);
+    }
+
+    private static void addImporters(HashSet<File> importers, TreeSet<File> out) {
+        if (importers != null) {
+            out.addAll(importers);
+        }
+    }
+
+    /**
+     * Collects the imports of file and the supertypes of its first class and returns its
+     * package, "" for the default one. Stops at the first '{', the statements in front of
+     * it are split at ';' with the comments left out.
+     */
+    private static String readHeader(File file, ArrayList<String> imports,
+            ArrayList<String> supers) throws IOException {
+        String packageName = "";
+        Reader in = new BufferedReader(new InputStreamReader(new FileInputStream(file),
+                StandardCharsets.UTF_8));
+        try {
+            StringBuilder statement = new StringBuilder();
+            int previous = -1;
+            boolean lineComment = false;
+            boolean blockComment = false;
+            int c;
+            while ((c = in.read()) >= 0 && (c != '{' || lineComment || blockComment)) {
+                if (lineComment) {
+                    lineComment = c != '\n';
+                } else if (blockComment) {
+                    blockComment = !(previous == '*' && c == '/');
+                    c = blockComment ? c : -1;
+                } else if (previous == '/' && (c == '/' || c == '*')) {
+                    statement.setLength(statement.length() - 1);
+                    lineComment = c == '/';
+                    blockComment = c == '*';
+                    c = -1;
+                } else if (c == ';') {
+                    String text = statement.toString().trim();
+                    statement.setLength(0);
+                    if (text.startsWith("package ")) {
+                        packageName = text.substring(8).trim();
+                    } else if (text.startsWith("import ")) {
+                        String name = text.substring(7).trim();
+                        if (name.startsWith("static ")) {
+                            // the member, or the ".*" of all members, is left out
+                            name = name.substring(7).trim();
+                            int dotIndex = name.lastIndexOf('.');
+                            name = dotIndex > 0 ? name.substring(0, dotIndex) : name;
+                        }
+                        imports.add(name.replaceAll("\\s", ""));
+                    }
+                } else {
+                    statement.append((char) c);
+                }
+                previous = c;
+            }
+            readSupers(statement.toString(), supers);
+        } finally {
+            in.close();
+        }
+        return packageName;
+    }
+
+    /**
+     * Collects the names following "extends" and "implements" in the declaration of a
+     * class, type arguments left out.
+     */
+    private static void readSupers(String declaration, ArrayList<String> supers) {
+        StringBuilder text = new StringBuilder();
+        int depth = 0;
+        for (int i = 0; i < declaration.length(); i++) {
+            char c = declaration.charAt(i);
+            if (c == '<') {
+                depth++;
+            } else if (c == '>') {
+                depth--;
+            } else if (depth == 0) {
+                text.append(c == ',' ? ' ' : c);
+            }
+        }
+        boolean collecting = false;
+        for (String word : text.toString().trim().split("\\s+")) {
+            if ("extends".equals(word) || "implements".equals(word)) {
+                collecting = true;
+            } else if (collecting && word.length() > 0) {
+                supers.add(word);
+            }
+        }
+    }
+}
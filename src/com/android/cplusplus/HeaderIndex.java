@@ -0,0 +1,199 @@
+package com.android.cplusplus;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map.Entry;
+
+/**
+ * Name to path map of every file below a header root. It is built with a single
+ * walk of the tree, so looking up a header no longer lists any directory.
+ * <p>
+ * The index can be saved next to the other caches of the translator. Adding, removing
+ * or renaming a file changes the modification time of its directory, so a saved
+ * index is used again only while every indexed directory, the root included, still
+ * has the modification time it had when the index was built.
+ */
+final class HeaderIndex {
+
+    private static final String MAGIC = "java2cpp-header-index 1";
+
+    private final String mRoot;
+    // file name -> path relative to the root, the first one found wins
+    private final HashMap<String, String> mPathByName = new HashMap<>();
+    // relative path and last modified time of every directory, the root is ""
+    private final ArrayList<String> mDirectories = new ArrayList<>();
+    private final ArrayList<Long> mDirectoryModified = new ArrayList<>();
+
+    private HeaderIndex(String root) {
+        mRoot = root;
+    }
+
+    boolean contains(String name) {
+        return mPathByName.containsKey(name);
+    }
+
+    String getPath(String name) {
+        String relativePath = mPathByName.get(name);
+        return relativePath != null ? mRoot + "/" + relativePath : null;
+    }
+
+    int size() {
+        return mPathByName.size();
+    }
+
+    /**
+     * Loads the index saved in cacheFile if it still matches the tree, otherwise walks
+     * the tree and saves the fresh index to cacheFile. cacheFile may be null.
+     */
+    static HeaderIndex obtain(File root, File cacheFile) {
+        String rootPath = root.getAbsolutePath();
+        if (cacheFile != null && cacheFile.isFile()) {
+            HeaderIndex index = load(rootPath, cacheFile);
+            if (index != null && index.isUpToDate()) {
+                return index;
+            }
+        }
+        HeaderIndex index = build(rootPath);
+        if (cacheFile != null) {
+            index.save(cacheFile);
+        }
+        return index;
+    }
+
+    static HeaderIndex build(String rootPath) {
+        final HeaderIndex index = new HeaderIndex(rootPath);
+        final Path root = new File(rootPath).toPath();
+        try {
+            Files.walkFileTree(root, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE,
+                    new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    index.mDirectories.add(relativize(root, dir));
+                    index.mDirectoryModified.add(attrs.lastModifiedTime().toMillis());
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (!attrs.isDirectory()) {
+                        String name = file.getFileName().toString();
+                        if (!index.mPathByName.containsKey(name)) {
+                            index.mPathByName.put(name, relativize(root, file));
+                        }
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    // unreadable entries and symbolic link loops are just left out
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return index;
+    }
+
+    private static String relativize(Path root, Path path) {
+        return root.relativize(path).toString().replace(File.separatorChar, '/');
+    }
+
+    boolean isUpToDate() {
+        for (int i = 0; i < mDirectories.size(); i++) {
+            String relativePath = mDirectories.get(i);
+            File directory = relativePath.length() == 0 ? new File(mRoot)
+                    : new File(mRoot, relativePath);
+            if (directory.lastModified() != mDirectoryModified.get(i)) {
+                return false;
+            }
+        }
+        return mDirectories.size() > 0;
+    }
+
+    private static HeaderIndex load(String rootPath, File cacheFile) {
+        BufferedReader in = null;
+        try {
+            in = new BufferedReader(new InputStreamReader(new FileInputStream(cacheFile),
+                    StandardCharsets.UTF_8));
+            if (!MAGIC.equals(in.readLine()) || !rootPath.equals(in.readLine())) {
+                return null;
+            }
+            HeaderIndex index = new HeaderIndex(rootPath);
+            String line;
+            while ((line = in.readLine()) != null) {
+                int split = line.indexOf('\t', 2);
+                if (line.length() < 2 || split < 0) {
+                    return null;
+                }
+                if (line.charAt(0) == 'D') {
+                    index.mDirectoryModified.add(Long.parseLong(line.substring(2, split)));
+                    index.mDirectories.add(line.substring(split + 1));
+                } else if (line.charAt(0) == 'F') {
+                    index.mPathByName.put(line.substring(2, split), line.substring(split + 1));
+                } else {
+                    return null;
+                }
+            }
+            return index;
+        } catch (IOException | NumberFormatException e) {
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+    }
+
+    private void save(File cacheFile) {
+        File parent = cacheFile.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            return;
+        }
+        File tmpFile = new File(cacheFile.getPath() + ".tmp");
+        PrintWriter out = null;
+        try {
+            out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(tmpFile),
+                    StandardCharsets.UTF_8));
+            out.println(MAGIC);
+            out.println(mRoot);
+            for (int i = 0; i < mDirectories.size(); i++) {
+                out.println("D " + mDirectoryModified.get(i) + "\t" + mDirectories.get(i));
+            }
+            for (Entry<String, String> entry : mPathByName.entrySet()) {
+                out.println("F " + entry.getKey() + "\t" + entry.getValue());
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        } finally {
+            if (out != null) {
+                out.close();
+            }
+        }
+        if (cacheFile.exists()) {
+            cacheFile.delete();
+        }
+        tmpFile.renameTo(cacheFile);
+    }
+}
@@ -9,6 +9,7 @@ import com.android.cplusplus.CppWriter.TypedValue;
 import com.android.cplusplus.CppWriter.UnseenClassHelper;
 import com.android.cplusplus.CppWriter.VAL_CATE;
 import com.android.cplusplus.JavaReader.ClassParagraph;
+import com.android.cplusplus.JavaReader.Clazz;
 import com.android.cplusplus.JavaReader.JavaField;
 import com.android.cplusplus.JavaReader.JavaMethod;
 import com.android.cplusplus.JavaReader.JavaParagraph;
@@ -30,7 +31,7 @@ public class JavaCodeReader {
     JavaCodeReader() {
     }
     
-    static class JavaArgs {
+    static class JavaArgs implements ModelCache.Model {
         String type;
         String templateStr;
         String name;
@@ -87,7 +88,7 @@ public class JavaCodeReader {
         
         @Override
         public String toString() {
-            StringBuffer buffer = new StringBuffer();
+            StringBuilder buffer = new StringBuilder();
             if (!cppTranslationProcessed && isFinal) {
                 buffer.append("final ");
             }
@@ -97,7 +98,7 @@ public class JavaCodeReader {
             } else {
                 typeStr = type;
             }
-            buffer.append(typeStr + " " + name);
+            buffer.append(typeStr).append(' ').append(name);
             
             return buffer.toString();
         }
@@ -130,58 +131,102 @@ public class JavaCodeReader {
     }
 
     public void start(JavaParagraph javaParagraph) {
-        if (mStack.pick() != null) {
-            throw new RuntimeException("top is exist:" + mStack.pick());
-        }
-        mLastLineBuffer = null;
-        JavaStatement statement = javaParagraph.owner;
-        switch (statement.type) {
-        case JavaStatement.TYPE_METHOD:
-        case JavaStatement.TYPE_CODE_BLOCK:
-            break;
-        default:
-            throw new RuntimeException("Invalid statement:" + statement);
-        }
-        RootParagraph root = new RootParagraph(statement);
-        CodeParagraph codeParagraph = new CodeParagraph(root);
-        if (statement.type == JavaStatement.TYPE_METHOD) {
-            JavaReader.JavaMethod method = (JavaReader.JavaMethod) statement;
-            if (method.parameters != null) {
-                for (int i = 0; i < method.parameters.size(); i++) {
-                    String parameter = method.parameters.get(i);
-                    codeParagraph.addVariable(JavaArgs.obtainJavaArgs(parameter.trim(), true));
-                }
-            }
-        }
-        codeParagraph.checkSelfBranceSuppressed = true;
-        mStack.push(codeParagraph);
+        int previousPhase = Metrics.enter(Metrics.PHASE_CODE_PARSE);
+        try {
+            if (mStack.pick() != null) {
+                throw new RuntimeException("top is exist:" + mStack.pick());
+            }
+            mLastLineBuffer = null;
+            JavaStatement statement = javaParagraph.owner;
+            switch (statement.type) {
+            case JavaStatement.TYPE_METHOD:
+            case JavaStatement.TYPE_CODE_BLOCK:
+                break;
+            default:
+                throw new RuntimeException("Invalid statement:" + statement);
+            }
+            RootParagraph root = new RootParagraph(statement);
+            CodeParagraph codeParagraph = new CodeParagraph(root);
+            if (statement.type == JavaStatement.TYPE_METHOD) {
+                JavaReader.JavaMethod method = (JavaReader.JavaMethod) statement;
+                if (method.parameters != null) {
+                    for (int i = 0; i < method.parameters.size(); i++) {
+                        String parameter = method.parameters.get(i);
+                        codeParagraph.addVariable(JavaArgs.obtainJavaArgs(parameter.trim(), true));
+                    }
+                }
+            }
+            codeParagraph.checkSelfBranceSuppressed = true;
+            mStack.push(codeParagraph);
+        } finally {
+            Metrics.exit(previousPhase);
+        }
     }
     
     public CodeParagraph finish() {
-        int counter = 0;
-        ICodeProcessor current = mStack.pick();
-        ICodeProcessor lastOne = null;
-        while (current != null) {
-            lastOne = current;
-            if (mLastLineBuffer != null && mLastLineBuffer.length() > 0) {
-                mLastLineBuffer = mStack.process(mLastLineBuffer);
+        int previousPhase = Metrics.enter(Metrics.PHASE_CODE_PARSE);
+        try {
+            int counter = 0;
+            ICodeProcessor current = mStack.pick();
+            ICodeProcessor lastOne = null;
+            while (current != null) {
+                lastOne = current;
+                if (mLastLineBuffer != null && mLastLineBuffer.length() > 0) {
+                    mLastLineBuffer = mStack.process(mLastLineBuffer);
                 
-                if (current != mStack.pick()) {
-                    counter = 0;
-                } else {
-                    counter++;
-                    // every target has 2 more chances to handle unfinished code
-                    if (counter >= 2) {
-                        mStack.pop();
+                    if (current != mStack.pick()) {
                         counter = 0;
+                    } else {
+                        counter++;
+                        // every target has 2 more chances to handle unfinished code
+                        if (counter >= 2) {
+                            mStack.pop();
+                            counter = 0;
+                        }
                     }
+                } else {
+                    mStack.pop();
                 }
+                current = mStack.pick();
+            }
+            return (CodeParagraph) lastOne;
+        } finally {
+            Metrics.exit(previousPhase);
+        }
+    }
+    
+    /**
+     * Parses the code lines of a body read lazily by JavaReader in one go. Returns null
+     * if the parser gives up on them, the way the reader itself does outside debug mode.
+     */
+    static CodeParagraph parse(JavaParagraph javaParagraph, ArrayList<String> codeLines) {
+        JavaCodeReader codeReader = new JavaCodeReader();
+        codeReader.start(javaParagraph);
+        boolean aborted = false;
+        for (int i = 0; i < codeLines.size() && !aborted; i++) {
+            if (Core.DEBUG_MODE) {
+                codeReader.processCodeLine(codeLines.get(i));
             } else {
-                mStack.pop();
+                try {
+                    codeReader.processCodeLine(codeLines.get(i));
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    aborted = true;
+                }
+            }
+        }
+        CodeParagraph parsedParagraph = null;
+        if (Core.DEBUG_MODE) {
+            parsedParagraph = codeReader.finish();
+        } else {
+            try {
+                parsedParagraph = codeReader.finish();
+            } catch (Exception e) {
+                e.printStackTrace();
+                aborted = true;
             }
-            current = mStack.pick();
         }
-        return (CodeParagraph) lastOne;
+        return aborted ? null : parsedParagraph;
     }
     
     interface ICodeProcessor {
@@ -314,24 +359,34 @@ public class JavaCodeReader {
     }
     
     public void processCodeLine(String code) {
-        if (mLastLineBuffer != null) {
-            code = mLastLineBuffer + " " + code;
+        int previousPhase = Metrics.enter(Metrics.PHASE_CODE_PARSE);
+        try {
+            if (mLastLineBuffer != null) {
+                code = mLastLineBuffer + " " + code;
+            }
+            mLastLineBuffer = mStack.process(code);
+        } finally {
+            Metrics.exit(previousPhase);
         }
-        mLastLineBuffer = mStack.process(code);
     }
     
     public static void printAndClearCodeParserRecord() {
-        if (CodeParser.sProcessingCount != 0) {
-            System.out.println("Total code statement processing count:" + CodeParser.sProcessingCount);
-            int averageCount = CodeParser.sTotalRecursiveDepth / CodeParser.sProcessingCount;
-            System.out.println("Average code statement recursive depth:" + averageCount);
-            System.out.println("Maximum code statement recursive depth:" + CodeParser.sMaximumRecursiveDepth);
+        printAndClearCodeParserRecord(System.out);
+    }
+    
+    public static void printAndClearCodeParserRecord(PrintStream out) {
+        TranslationContext context = TranslationContext.get();
+        if (context.codeProcessingCount != 0) {
+            out.println("Total code statement processing count:" + context.codeProcessingCount);
+            int averageCount = context.codeTotalRecursiveDepth / context.codeProcessingCount;
+            out.println("Average code statement recursive depth:" + averageCount);
+            out.println("Maximum code statement recursive depth:" + context.codeMaximumRecursiveDepth);
         } else {
         }
         
-        CodeParser.sProcessingCount = 0;
-        CodeParser.sMaximumRecursiveDepth = 0;
-        CodeParser.sTotalRecursiveDepth = 0;
+        context.codeProcessingCount = 0;
+        context.codeMaximumRecursiveDepth = 0;
+        context.codeTotalRecursiveDepth = 0;
     }
     
     static class CodeParser {
@@ -339,44 +394,39 @@ public class JavaCodeReader {
         CodeParagraph paragraph;
         int[] tmp = new int[2];
         
-        static int sProcessingCount;
-        static int sTotalRecursiveDepth;
-        static int sMaximumRecursiveDepth;
-        
-        static CodeParser sPool;
-        static int sPoolSize;
-        
         CodeParser next;
         
         static CodeStatement parseCode(CodeParagraph paragraph, String code) {
             if (code == null || isEmptyOrSpace(code, 0, code.length())) {
                 return null;
             }
-            CodeParser parser = CodeParser.obtain(paragraph, code);
+            TranslationContext context = TranslationContext.get();
+            CodeParser parser = CodeParser.obtain(context, paragraph, code);
             try {
-                sProcessingCount++;
+                context.codeProcessingCount++;
                 return parser.process();
             } /*catch (Exception e) {
                 e.printStackTrace();
                 return null;
             }*/ finally {
-                if (sMaximumRecursiveDepth < parser.recursiveDepth) {
-                    sMaximumRecursiveDepth = parser.recursiveDepth;
+                if (context.codeMaximumRecursiveDepth < parser.recursiveDepth) {
+                    context.codeMaximumRecursiveDepth = parser.recursiveDepth;
                 }
-                sTotalRecursiveDepth += parser.recursiveDepth;
-                parser.recycle();
+                context.codeTotalRecursiveDepth += parser.recursiveDepth;
+                Metrics.recordStatement(context, parser.recursiveDepth);
+                parser.recycle(context);
             }
         }
 
-        static CodeParser obtain(CodeParagraph paragraph, String code) {
-            if (sPool == null) {
+        static CodeParser obtain(TranslationContext context, CodeParagraph paragraph, String code) {
+            if (context.codeParserPool == null) {
                 return new CodeParser(paragraph, code);
             }
-            CodeParser out = sPool;
+            CodeParser out = context.codeParserPool;
             out.setCode(code);
             out.paragraph = paragraph;
-            sPool = out.next;
-            sPoolSize--;
+            context.codeParserPool = out.next;
+            context.codeParserPoolSize--;
             return out;
         }
         
@@ -385,22 +435,28 @@ public class JavaCodeReader {
             this.paragraph = paragraph;
         }
         
-        void recycle() {
+        void recycle(TranslationContext context) {
             code = null;
             paragraph = null;
+            // opIndex and pendingStatement are kept for the next statement
+            if (pendingLength > 0) {
+                Arrays.fill(pendingStatement, 0, pendingLength, null);
+            }
             pendingLength = 0;
             codeLineIndex = 0;
             resolvedStatement = null;
-            opIndex = null;
+            operators.clear();
             recursiveDepth = 0;
-            if (pendingStatement != null) {
-                Arrays.fill(pendingStatement, null);
+            // left over by a statement which failed
+            if (frameCount > 0) {
+                Arrays.fill(framePrevious, 0, frameCount, null);
+                frameCount = 0;
             }
             
-            if (sPoolSize < 5) {
-                next = sPool;
-                sPool = this;
-                sPoolSize++;
+            if (context.codeParserPoolSize < 5) {
+                next = context.codeParserPool;
+                context.codeParserPool = this;
+                context.codeParserPoolSize++;
             }
         }
         
@@ -408,21 +464,37 @@ public class JavaCodeReader {
             this.code = code;
         }
         
-        int[] opIndex;
+        // grow only, only the first code.length() entries belong to the current code
+        int[] opIndex = new int[64];
+        // indexes of the '<' which may open a template, the last one on top
+        private int[] lesserStack = new int[8];
+        // the unresolved operators of opIndex, see OperatorIndex
+        final OperatorIndex operators = new OperatorIndex();
         CodeStatement[] pendingStatement;
         CodeStatement resolvedStatement;
         int pendingLength;
         int recursiveDepth;
         int codeLineIndex;
         
+        private static final int STAGE_FIND = 0;
+        private static final int STAGE_LEFT = 1;
+        private static final int STAGE_RIGHT = 2;
+        
+        // the ranges processNextStatement() is resolving, grow only
+        private int[] frameStart = new int[16];
+        private int[] frameEnd = new int[16];
+        private int[] framePolicy = new int[16];
+        private int[] frameStage = new int[16];
+        private int[] frameOperator = new int[16];
+        private int[] frameOperatorType = new int[16];
+        private CodeStatement[] framePrevious = new CodeStatement[16];
+        private int frameCount;
+        
         void addPendingStatement(CodeStatement  statement) {
-            int currentLength = pendingStatement != null ? pendingStatement.length : 0;
-            if (currentLength <= pendingLength) {
-                CodeStatement[] oldArray = pendingStatement;
-                pendingStatement = new CodeStatement[currentLength + 4];
-                if (oldArray != null) {
-                    System.arraycopy(oldArray, 0, pendingStatement, 0, oldArray.length);
-                }
+            if (pendingStatement == null) {
+                pendingStatement = new CodeStatement[8];
+            } else if (pendingStatement.length <= pendingLength) {
+                pendingStatement = Arrays.copyOf(pendingStatement, pendingStatement.length * 2);
             }
             pendingStatement[pendingLength++] = statement;
         }
@@ -455,6 +527,7 @@ public class JavaCodeReader {
         CodeStatement process() {
             if (resolvedStatement == null) {
                 prepareStatementProcessing();
+                operators.build(opIndex, code.length());
                 codeLineIndex = paragraph.appendCodeLine();
                 resolvedStatement = processNextStatement(0, code.length(),
                         RESOLVE_POLICY_COMMON);
@@ -462,190 +535,255 @@ public class JavaCodeReader {
             return resolvedStatement;
         }
         
+        /**
+         * Resolves the statement of code between start and end. Every operator is found in
+         * the range as it is left at that time, its operands are resolved before it, left
+         * first, and every statement runs onCreate() once its operands did. The ranges
+         * waiting for their operands are kept on a stack of frames instead of the java
+         * stack, so a long chain does not nest one call per operator.
+         */
         CodeStatement processNextStatement(int start, int end, int policy) {
             if (start >= end) {
                 return null;
             }
-            CodeStatement statement;
-            boolean resolveSuccess;
-            do {
-                resolveSuccess = true;
-                
-                statement = processNextStatementInner(start, end, policy);
-                
-                if (statement != null && policy == RESOLVE_POLICY_COMMON) {
-                    int resolvedStart = statement.startIndex;
-                    int resolvedEnd = statement.endIndex;
-                    
-                    boolean pendingResolve;
-                    if (resolvedStart == start && resolvedEnd == end) {
-                        pendingResolve = false;
-                    } else if (resolvedStart >= start && resolvedEnd <= end) {
-                        pendingResolve = true;
+            int bottom = frameCount;
+            pushFrame(start, end, policy);
+            // the statement of the frame just done, handed to the frame below
+            CodeStatement statement = null;
+            while (true) {
+                int frame = frameCount - 1;
+                int stage = frameStage[frame];
+                if (stage == STAGE_FIND) {
+                    recursiveDepth++;
+                    if (!findOperator(frame)) {
+                        statement = resolveOperand(frame);
                     } else {
-                        throw new RuntimeException("Logic crash. start:" + start + " end:" + end +
-                                " resolvedStart:" + resolvedStart + " resolvedEnd:" + resolvedEnd + " code:" + code);
-                    }
-                    markAsResolved(statement, resolvedStart, resolvedEnd, pendingResolve);
-                    
-                    boolean bracketPair = false;
-                    switch (statement.type) {
-                    case TYPE_OP_RIGHT_BRACKET:
-                    case TYPE_OP_RIGHT_BRACKET_I:
-                    case TYPE_OP_RIGHT_BRACKET_II:
-                        // left bracket find us, abort
-                        bracketPair = true;
-                        break;
-                    }
-                    if (!bracketPair) {
-                        for (int i = start; i < end; i++) {
-                            if (opIndex[i] != RESOLVED && opIndex[i] != SPACE) {
-                                resolveSuccess = false;
-                                break;
-                            }
+                        frameStage[frame] = STAGE_LEFT;
+                        if (pushOperand(frameStart[frame], frameOperator[frame],
+                                sOpMap[frameOperatorType[frame]].leftPolicy, RESOLVE_POLICY_R2LASAP)) {
+                            continue;
                         }
+                        // no left operand
+                        statement = null;
+                        stage = STAGE_LEFT;
                     }
                 }
-
-            } while (!resolveSuccess);
-            return statement;
-        }
-        
-        CodeStatement processNextStatementInner(int start, int end, int policy) {
-            recursiveDepth++;
-            int topPrioOp = Integer.MAX_VALUE;
-            int index = -1;
-            switch (policy) {
-            case RESOLVE_POLICY_COMMON:
-                for (int i = start; i < end; i++) {
-                    int flag = opIndex[i];
-                    if (flag > UNRESOLVE && flag < RESOLVED) {
-                        boolean matchMostRight = false;
-                        switch (topPrioOp) {
-                          case TYPE_OP_LEFT_BRACKET:
-                          case TYPE_OP_LEFT_BRACKET_I:
-                          case TYPE_OP_LEFT_BRACKET_II:
-                              matchMostRight = true;
-                              break;
-                          }
-                        if (flag < topPrioOp || (matchMostRight && flag == topPrioOp)) {
-                            topPrioOp = flag;
-                            index = i;
-                        }
+                if (stage == STAGE_LEFT) {
+                    framePrevious[frame] = statement;
+                    frameStage[frame] = STAGE_RIGHT;
+                    Op opInfo = sOpMap[frameOperatorType[frame]];
+                    if (pushOperand(frameOperator[frame] + opInfo.op.length, frameEnd[frame],
+                            opInfo.rightPolicy, RESOLVE_POLICY_L2RASAP)) {
+                        continue;
                     }
+                    // no right operand
+                    statement = null;
+                    stage = STAGE_RIGHT;
                 }
-                break;
-            case RESOLVE_POLICY_L2RASAP:
-                for (int i = start; i < opIndex.length; i++) {
-                    int flag = opIndex[i];
-                    if (flag > UNRESOLVE && flag < RESOLVED) {
-                        end = i;
-                        break;
-                    }
+                if (stage == STAGE_RIGHT) {
+                    statement = createOperator(frame, framePrevious[frame], statement);
                 }
-                break;
-            case RESOLVE_POLICY_R2LASAP:
-                for (int i = end - 1; i >= 0; i--) {
-                    int flag = opIndex[i];
-                    if (flag > UNRESOLVE && flag < RESOLVED) {
-                        start = i + 1;
-                        break;
-                    }
+                
+                if (!checkResolved(frame, statement)) {
+                    // the rest of the range is resolved again, around what is pending now
+                    frameStage[frame] = STAGE_FIND;
+                    framePrevious[frame] = null;
+                    continue;
                 }
-                break;
-            }
-            if (topPrioOp == Integer.MAX_VALUE) {
-                // resolve failed
-                if (end > start && start >= 0 && !isEmptyOrSpace(code, start, end)) {
-                    int noSpaceIndex;
-                    if (policy == RESOLVE_POLICY_L2RASAP || policy == RESOLVE_POLICY_COMMON) {
-                        noSpaceIndex = start;
-                        while (opIndex[noSpaceIndex] == SPACE) {
-                            noSpaceIndex++;
-                        }
-                    } else /*if (index == RESOLVE_POLICY_R2LASAP)*/ {
-                        noSpaceIndex = end - 1;
-                        while (opIndex[noSpaceIndex] == SPACE) {
-                            noSpaceIndex--;
-                        }
-                    }
-                    CodeStatement statement;
-                    if (opIndex[noSpaceIndex] == RESOLVED) {
-                        throw new RuntimeException("Logic crash. start:" + start + " end:" + end + " noSpaceIndex:" + noSpaceIndex);
-                    } else if (opIndex[noSpaceIndex] >= PENDING_RESOLVE) {
-                        statement = getPendingStatementAt(opIndex[noSpaceIndex]);
-//                        if (opIndex[end] != opIndex[start]) {
-//                            throw new RuntimeException("Logic crash. start:" + start + "end:" + end);
-//                        }
-                    } else /*if (opIndex[noSpaceIndex] == UNRESOLVE)*/ {
-                        statement = Expression.obtainExpression(code, start, end);
-                        statement.index = codeLineIndex;
-                        statement.parentParagraph = paragraph;
-                        statement.startIndex = start;
-                        statement.endIndex = end;
-                        statement.onCreate(paragraph);
-                    }
+                framePrevious[frame] = null;
+                frameCount--;
+                if (frameCount == bottom) {
                     return statement;
                 }
-                return null;
             }
+        }
+        
+        private void pushFrame(int start, int end, int policy) {
+            if (frameCount == frameStart.length) {
+                int length = frameCount * 2;
+                frameStart = Arrays.copyOf(frameStart, length);
+                frameEnd = Arrays.copyOf(frameEnd, length);
+                framePolicy = Arrays.copyOf(framePolicy, length);
+                frameStage = Arrays.copyOf(frameStage, length);
+                frameOperator = Arrays.copyOf(frameOperator, length);
+                frameOperatorType = Arrays.copyOf(frameOperatorType, length);
+                framePrevious = Arrays.copyOf(framePrevious, length);
+            }
+            frameStart[frameCount] = start;
+            frameEnd[frameCount] = end;
+            framePolicy[frameCount] = policy;
+            frameStage[frameCount] = STAGE_FIND;
+            frameCount++;
+        }
+        
+        /**
+         * Pushes the frame of an operand between start and end, false if the operator
+         * takes none there. operandPolicy 2 resolves the whole range, 1 only the part next
+         * to the operator, with sidePolicy.
+         */
+        private boolean pushOperand(int start, int end, int operandPolicy, int sidePolicy) {
+            if (start >= end || (operandPolicy != 1 && operandPolicy != 2)) {
+                return false;
+            }
+            pushFrame(start, end, operandPolicy == 2 ? RESOLVE_POLICY_COMMON : sidePolicy);
+            return true;
+        }
+        
+        /**
+         * Marks the statement a common frame resolved, false if the rest of its range
+         * needs another round.
+         */
+        private boolean checkResolved(int frame, CodeStatement statement) {
+            if (statement == null || framePolicy[frame] != RESOLVE_POLICY_COMMON) {
+                return true;
+            }
+            int start = frameStart[frame];
+            int end = frameEnd[frame];
+            int resolvedStart = statement.startIndex;
+            int resolvedEnd = statement.endIndex;
             
-            final Op opInfo = sOpMap[topPrioOp];
-            if (opInfo != null) {
-                final int opLength = opInfo.op.length;
-                
-                CodeStatement previous = null;
-                if (opInfo.leftPolicy == 2) {
-                    previous = processNextStatement(start, index, RESOLVE_POLICY_COMMON);
-                } else if (opInfo.leftPolicy == 1) {
-                    previous = processNextStatement(start, index, RESOLVE_POLICY_R2LASAP);
+            boolean pendingResolve;
+            if (resolvedStart == start && resolvedEnd == end) {
+                pendingResolve = false;
+            } else if (resolvedStart >= start && resolvedEnd <= end) {
+                pendingResolve = true;
+            } else {
+                throw new RuntimeException("Logic crash. start:" + start + " end:" + end +
+                        " resolvedStart:" + resolvedStart + " resolvedEnd:" + resolvedEnd + " code:" + code);
+            }
+            markAsResolved(statement, resolvedStart, resolvedEnd, pendingResolve);
+            
+            switch (statement.type) {
+            case TYPE_OP_RIGHT_BRACKET:
+            case TYPE_OP_RIGHT_BRACKET_I:
+            case TYPE_OP_RIGHT_BRACKET_II:
+                // left bracket find us, abort
+                return true;
+            }
+            if (!pendingResolve) {
+                return true;
+            }
+            // a whole range is all resolved now, a pending statement leaves its
+            // mark in the range, only an empty one needs a look
+            if (resolvedEnd > resolvedStart) {
+                return false;
+            }
+            for (int i = start; i < end; i++) {
+                if (opIndex[i] != RESOLVED && opIndex[i] != SPACE) {
+                    return false;
                 }
-                
-                CodeStatement next = null;
-                if (opInfo.rightPolicy == 2) {
-                    next = processNextStatement(index + opLength, end, RESOLVE_POLICY_COMMON);
-                } else if (opInfo.rightPolicy == 1) {
-                    next = processNextStatement(index + opLength, end, RESOLVE_POLICY_L2RASAP);
+            }
+            return true;
+        }
+        
+        /**
+         * Looks for the operator of a frame, the lowest one of a common frame, and
+         * keeps it in the frame. The frames of the other policies never take one.
+         */
+        private boolean findOperator(int frame) {
+            if (framePolicy[frame] != RESOLVE_POLICY_COMMON) {
+                return false;
+            }
+            // the lowest operator, the most right one of left brackets
+            int index = operators.findLowest(frameStart[frame], frameEnd[frame]);
+            if (index < 0) {
+                return false;
+            }
+            if (sOpMap[opIndex[index]] == null) {
+                throw new RuntimeException("Logic crash. topOp:" + opIndex[index]);
+            }
+            frameOperator[frame] = index;
+            frameOperatorType[frame] = opIndex[index];
+            return true;
+        }
+        
+        /**
+         * The statement of a frame holding no operator: what is pending there already or
+         * a new expression, null if the range is empty.
+         */
+        private CodeStatement resolveOperand(int frame) {
+            int start = frameStart[frame];
+            int end = frameEnd[frame];
+            int policy = framePolicy[frame];
+            if (policy == RESOLVE_POLICY_L2RASAP) {
+                int first = operators.findFirst(start);
+                if (first >= 0) {
+                    end = first;
                 }
-                
-                Operator op = Operator.obtainOperator(topPrioOp, previous, next);
-                op.index = codeLineIndex;
-                op.prev = previous;
-                op.next = next;
-                op.parentParagraph = paragraph;
-                if (previous != null) {
-                    op.startIndex = previous.startIndex;
-                } else {
-                    int includeSpaceStart = index;
-                    while (includeSpaceStart > start && opIndex[includeSpaceStart - 1] == SPACE) {
-                        includeSpaceStart--;
-                    }
-                    op.startIndex = includeSpaceStart;
+            } else if (policy == RESOLVE_POLICY_R2LASAP) {
+                int last = operators.findLast(end);
+                if (last >= 0) {
+                    start = last + 1;
                 }
-                if (next != null) {
-                    op.endIndex = next.endIndex;
-                } else {
-                    int includeSpaceEnd = index + opLength;
-                    while (includeSpaceEnd < end && opIndex[includeSpaceEnd] == SPACE) {
-                        includeSpaceEnd++;
-                    }
-                    op.endIndex = includeSpaceEnd;
+            }
+            if (end <= start || start < 0 || isEmptyOrSpace(code, start, end)) {
+                return null;
+            }
+            int noSpaceIndex;
+            if (policy == RESOLVE_POLICY_L2RASAP || policy == RESOLVE_POLICY_COMMON) {
+                noSpaceIndex = start;
+                while (opIndex[noSpaceIndex] == SPACE) {
+                    noSpaceIndex++;
                 }
-                op.onCreate(paragraph);
-                
-                return op;
+            } else /*if (index == RESOLVE_POLICY_R2LASAP)*/ {
+                noSpaceIndex = end - 1;
+                while (opIndex[noSpaceIndex] == SPACE) {
+                    noSpaceIndex--;
+                }
+            }
+            CodeStatement statement;
+            if (opIndex[noSpaceIndex] == RESOLVED) {
+                throw new RuntimeException("Logic crash. start:" + start + " end:" + end + " noSpaceIndex:" + noSpaceIndex);
+            } else if (opIndex[noSpaceIndex] >= PENDING_RESOLVE) {
+                statement = getPendingStatementAt(opIndex[noSpaceIndex]);
+            } else /*if (opIndex[noSpaceIndex] == UNRESOLVE)*/ {
+                statement = Expression.obtainExpression(code, start, end);
+                statement.index = codeLineIndex;
+                statement.parentParagraph = paragraph;
+                statement.startIndex = start;
+                statement.endIndex = end;
+                statement.onCreate(paragraph);
             }
-            throw new RuntimeException("Logic crash. topOp:" + topPrioOp);
+            return statement;
         }
         
-        void markAsResolved(CodeStatement statement, int start, int end, boolean pending) {
-            for (int i = start; i < end; i++) {
-                if (!pending) {
-                    opIndex[i] = RESOLVED;
-                } else {
-                    int pendingIndex = pendingLength;
-                    opIndex[i] = PENDING_RESOLVE + pendingIndex;
+        private CodeStatement createOperator(int frame, CodeStatement previous, CodeStatement next) {
+            int topPrioOp = frameOperatorType[frame];
+            int index = frameOperator[frame];
+            int start = frameStart[frame];
+            int end = frameEnd[frame];
+            final int opLength = sOpMap[topPrioOp].op.length;
+            Operator op = Operator.obtainOperator(topPrioOp, previous, next);
+            op.index = codeLineIndex;
+            op.prev = previous;
+            op.next = next;
+            op.parentParagraph = paragraph;
+            if (previous != null) {
+                op.startIndex = previous.startIndex;
+            } else {
+                int includeSpaceStart = index;
+                while (includeSpaceStart > start && opIndex[includeSpaceStart - 1] == SPACE) {
+                    includeSpaceStart--;
                 }
+                op.startIndex = includeSpaceStart;
+            }
+            if (next != null) {
+                op.endIndex = next.endIndex;
+            } else {
+                int includeSpaceEnd = index + opLength;
+                while (includeSpaceEnd < end && opIndex[includeSpaceEnd] == SPACE) {
+                    includeSpaceEnd++;
+                }
+                op.endIndex = includeSpaceEnd;
+            }
+            op.onCreate(paragraph);
+            return op;
+        }
+        
+        void markAsResolved(CodeStatement statement, int start, int end, boolean pending) {
+            if (start < end) {
+                Arrays.fill(opIndex, start, end, pending ? PENDING_RESOLVE + pendingLength : RESOLVED);
+                operators.remove(start, end);
             }
             if (pending) {
                 addPendingStatement(statement);
@@ -654,15 +792,17 @@ public class JavaCodeReader {
         
         void prepareStatementProcessing() {
             int length = code.length();
-            opIndex = new int[length];
-            Arrays.fill(opIndex, UNRESOLVE);
+            if (opIndex.length < length) {
+                opIndex = new int[Math.max(length, opIndex.length * 2)];
+            }
+            Arrays.fill(opIndex, 0, length, UNRESOLVE);
             
             boolean quotationMet = false;
             boolean singleQuoteMet = false;
             boolean lastIsSlash = false;
             int lastLeftMidBracketIndex = -1;
             int skipNext = 0;
-            ArrayList<Integer> bracketIndexStack = null;
+            int lesserCount = 0;
 //            int lastAngleBracketIndex = -1;
             for (int i = 0; i < length; i++) {
                 if (skipNext > 0) {
@@ -685,10 +825,14 @@ public class JavaCodeReader {
                     continue;
                 }
                 boolean matchFound = false;
-                for (int j = 0; j < sOpMap.length; j++) {
+                int[] candidates = character < sOpDispatch.length ? sOpDispatch[character] : null;
+                int candidateCount = candidates != null ? candidates.length : 0;
+                for (int c = 0; c < candidateCount; c++) {
+                    int j = candidates[c];
                     char[] op = sOpMap[j].op;
                     boolean matchSuccess = true;
-                    for (int k = 0; k < op.length; k++) {
+                    // the first character is known to match
+                    for (int k = 1; k < op.length; k++) {
                         if (i + k >= length) {
                             matchSuccess = false;
                             break;
@@ -720,10 +864,10 @@ public class JavaCodeReader {
                     }
 //                    matchSuccess = true;
                     if (j == TYPE_OP_LESSER) {
-                        if (bracketIndexStack == null) {
-                            bracketIndexStack = new ArrayList<>();
+                        if (lesserCount == lesserStack.length) {
+                            lesserStack = Arrays.copyOf(lesserStack, lesserCount * 2);
                         }
-                        bracketIndexStack.add(0, i);
+                        lesserStack[lesserCount++] = i;
 //                        lastAngleBracketIndex = i;
                     } else if (j == TYPE_OP_INSTANCEOF) {
                         boolean yesitis = false;
@@ -743,11 +887,10 @@ public class JavaCodeReader {
                         if (i + 1 < length && Character.isDigit(code.charAt(i + 1))) {
                             opIndex[i] = UNRESOLVE;
                         }
-                    } else if (j == TYPE_OP_MORE && bracketIndexStack != null &&
-                            bracketIndexStack.size() > 0) {
+                    } else if (j == TYPE_OP_MORE && lesserCount > 0) {
                         // check to see if it is a template statement
                         boolean yesItis = true;
-                        int topIndex = bracketIndexStack.get(0);
+                        int topIndex = lesserStack[lesserCount - 1];
                         for (int k = topIndex + 1; k < i; k++) {
                             int flag = opIndex[k];
                             if (flag == TYPE_OP_COMMA || flag == TYPE_OP_QUES_MARK/*
@@ -766,7 +909,7 @@ public class JavaCodeReader {
                             }
 //                            matchSuccess = false;
                         }
-                        bracketIndexStack.remove(0);
+                        lesserCount--;
                     } else if (j == TYPE_OP_RIGHT_BRACKET_I && lastLeftMidBracketIndex >= 0) {
                         boolean isOp = false;
                         for (int k = i + 1; k < length; k++) {
@@ -812,6 +955,187 @@ public class JavaCodeReader {
         static final int RESOLVE_POLICY_NONE = 0;
     }
     
+    /**
+     * Segment tree over the operators of a code line which are not resolved yet, so
+     * that the lowest one of a range or the nearest one of an index is found without
+     * scanning the line. Every resolved range is removed once, a statement of n
+     * characters costs O(n log n) instead of a scan of its range for every operator.
+     */
+    static final class OperatorIndex {
+        private static final int NONE = Integer.MAX_VALUE;
+        
+        private int size;
+        // lowest operator of every node, NONE if there is none, and where it is first
+        // and last found
+        private int[] lowest = new int[0];
+        private int[] lowestFirst = new int[0];
+        private int[] lowestLast = new int[0];
+        
+        void build(int[] opIndex, int length) {
+            size = length;
+            int nodeCount = 1;
+            while (nodeCount < size) {
+                nodeCount <<= 1;
+            }
+            nodeCount <<= 1;
+            if (lowest.length < nodeCount) {
+                lowest = new int[nodeCount];
+                lowestFirst = new int[nodeCount];
+                lowestLast = new int[nodeCount];
+            }
+            if (size > 0) {
+                build(1, 0, size, opIndex);
+            }
+        }
+        
+        void clear() {
+            size = 0;
+        }
+        
+        private void build(int node, int from, int to, int[] opIndex) {
+            if (to - from == 1) {
+                int flag = opIndex[from];
+                lowest[node] = flag > CodeParser.UNRESOLVE && flag < CodeParser.RESOLVED ? flag : NONE;
+                lowestFirst[node] = from;
+                lowestLast[node] = from;
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            build(node * 2, from, middle, opIndex);
+            build(node * 2 + 1, middle, to, opIndex);
+            pull(node);
+        }
+        
+        private void pull(int node) {
+            int left = node * 2;
+            int right = left + 1;
+            if (lowest[left] < lowest[right]) {
+                lowest[node] = lowest[left];
+                lowestFirst[node] = lowestFirst[left];
+                lowestLast[node] = lowestLast[left];
+            } else if (lowest[left] > lowest[right]) {
+                lowest[node] = lowest[right];
+                lowestFirst[node] = lowestFirst[right];
+                lowestLast[node] = lowestLast[right];
+            } else {
+                lowest[node] = lowest[left];
+                lowestFirst[node] = lowestFirst[left];
+                lowestLast[node] = lowestLast[right];
+            }
+        }
+        
+        /**
+         * Drops the operators of [start, end), they are resolved.
+         */
+        void remove(int start, int end) {
+            if (start < size && end > 0) {
+                remove(1, 0, size, Math.max(start, 0), Math.min(end, size));
+            }
+        }
+        
+        private void remove(int node, int from, int to, int start, int end) {
+            // nothing below a node without operators is looked at again
+            if (lowest[node] == NONE || end <= from || to <= start) {
+                return;
+            }
+            if (start <= from && to <= end) {
+                lowest[node] = NONE;
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            remove(node * 2, from, middle, start, end);
+            remove(node * 2 + 1, middle, to, start, end);
+            pull(node);
+        }
+        
+        /**
+         * Index of the lowest operator of [start, end), the last one if it is a left
+         * bracket and the first one otherwise, -1 if there is no operator.
+         */
+        int findLowest(int start, int end) {
+            start = Math.max(start, 0);
+            end = Math.min(end, size);
+            if (start >= end) {
+                return -1;
+            }
+            foundLowest = NONE;
+            findLowest(1, 0, size, start, end);
+            if (foundLowest == NONE) {
+                return -1;
+            }
+            switch (foundLowest) {
+            case TYPE_OP_LEFT_BRACKET:
+            case TYPE_OP_LEFT_BRACKET_I:
+            case TYPE_OP_LEFT_BRACKET_II:
+                return foundLast;
+            default:
+                return foundFirst;
+            }
+        }
+        
+        private int foundLowest;
+        private int foundFirst;
+        private int foundLast;
+        
+        // nodes are visited from left to right
+        private void findLowest(int node, int from, int to, int start, int end) {
+            if (lowest[node] == NONE || lowest[node] > foundLowest || end <= from || to <= start) {
+                return;
+            }
+            if (start <= from && to <= end) {
+                if (lowest[node] < foundLowest) {
+                    foundLowest = lowest[node];
+                    foundFirst = lowestFirst[node];
+                }
+                foundLast = lowestLast[node];
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            findLowest(node * 2, from, middle, start, end);
+            findLowest(node * 2 + 1, middle, to, start, end);
+        }
+        
+        /**
+         * Index of the first operator at or after start, -1 if there is none.
+         */
+        int findFirst(int start) {
+            start = Math.max(start, 0);
+            return start < size ? findFirst(1, 0, size, start) : -1;
+        }
+        
+        private int findFirst(int node, int from, int to, int start) {
+            if (lowest[node] == NONE || to <= start) {
+                return -1;
+            }
+            if (to - from == 1) {
+                return from;
+            }
+            int middle = (from + to) >>> 1;
+            int found = findFirst(node * 2, from, middle, start);
+            return found >= 0 ? found : findFirst(node * 2 + 1, middle, to, start);
+        }
+        
+        /**
+         * Index of the last operator before end, -1 if there is none.
+         */
+        int findLast(int end) {
+            end = Math.min(end, size);
+            return end > 0 ? findLast(1, 0, size, end) : -1;
+        }
+        
+        private int findLast(int node, int from, int to, int end) {
+            if (lowest[node] == NONE || from >= end) {
+                return -1;
+            }
+            if (to - from == 1) {
+                return from;
+            }
+            int middle = (from + to) >>> 1;
+            int found = findLast(node * 2 + 1, middle, to, end);
+            return found >= 0 ? found : findLast(node * 2, from, middle, end);
+        }
+    }
+    
     static class Op {
         char[] op;
         int leftPolicy;
@@ -861,6 +1185,21 @@ public class JavaCodeReader {
                 Op.obtain(2, 2, '%')};
     }
     
+    /**
+     * Indexes of sOpMap grouped by the first character of the operator, in sOpMap
+     * order, so only the operators starting with the current character are tried.
+     */
+    static final int[][] sOpDispatch = new int[128][];
+    static {
+        for (int j = 0; j < sOpMap.length; j++) {
+            char first = sOpMap[j].op[0];
+            int[] candidates = sOpDispatch[first];
+            candidates = candidates == null ? new int[1] : Arrays.copyOf(candidates, candidates.length + 1);
+            candidates[candidates.length - 1] = j;
+            sOpDispatch[first] = candidates;
+        }
+    }
+    
     static final int TYPE_STATEMENT_DUMMY = -6;
     static final int TYPE_STATEMENT_PARAGRAPH_WRAPPER = -5;
     
@@ -920,7 +1259,7 @@ public class JavaCodeReader {
     static final int TYPE_KEY_BREAK = 11;
     static final int TYPE_KEY_THROW = 12;
     
-    private static class CodeStatement {
+    private static class CodeStatement implements ModelCache.Model {
         static final int CPP_TYPE_THIS = -2;
         static final int CPP_TYPE_POINTER = -1;
         
@@ -943,6 +1282,12 @@ public class JavaCodeReader {
         int endIndex;
         //
         
+        /**
+         * Only for ModelCache, which sets every field of the statement it loads.
+         */
+        CodeStatement() {
+        }
+        
         CodeStatement(int type) {
             this.type = type;
         }
@@ -950,8 +1295,33 @@ public class JavaCodeReader {
         void onCreate(CodeParagraph paragraph) {
         }
         
-        void write(String prefix, PrintStream out) {
-            out.println(prefix + this.toString() + ";");
+        void write(CodeBuffer out) {
+            out.startLine();
+            print(out);
+            out.append(';').endLine();
+        }
+        
+        /**
+         * Appends the code of this statement to out, a statement made of others prints
+         * them straight into the same buffer instead of concatenating their strings.
+         */
+        void print(CodeBuffer out) {
+            out.append(toString());
+        }
+        
+        // toString() of a statement which implements print()
+        final String printToString() {
+            CodeBuffer buffer = new CodeBuffer();
+            print(buffer);
+            return buffer.toString();
+        }
+        
+        static void print(CodeStatement statement, CodeBuffer out) {
+            if (statement != null) {
+                statement.print(out);
+            } else {
+                out.append("null");
+            }
         }
         
         void dispatchTranslation(UnseenClassHelper helper) {
@@ -1019,47 +1389,58 @@ public class JavaCodeReader {
             return operator;
         }
 
+        // for ModelCache
+        Operator() {
+        }
+        
         Operator(int type) {
             super(type);
         }
         
         @Override
-        public String toString() {
+        public final String toString() {
+            return printToString();
+        }
+        
+        @Override
+        void print(CodeBuffer out) {
             Op opInfo = sOpMap[type];
-            StringBuffer buffer = new StringBuffer();
             if (prev != null) {
                 if (plusValueFlag == VALUEOF_PLUS_LEFT) {
-                    buffer.append("String::valueOf(" + prev.toString() + ")");
+                    out.append("String::valueOf(");
+                    prev.print(out);
+                    out.append(')');
                 } else {
-                    buffer.append(prev.toString());
+                    prev.print(out);
                 }
             }
             if (refEqualTranslated) {
-                buffer.append(".size() > 0");
-                return buffer.toString();
+                out.append(".size() > 0");
+                return;
             }
             boolean leftSpace = prev != null && opInfo.leftPolicy == 2;
             if (leftSpace) {
-                buffer.append(" ");
+                out.append(' ');
             }
-            if (!onPrintOp(buffer)) {
-                buffer.append(opInfo.op);
+            if (!onPrintOp(out)) {
+                out.append(opInfo.op);
             }
             boolean rightSpace = next != null && opInfo.rightPolicy == 2;
             if (rightSpace) {
-                buffer.append(" ");
+                out.append(' ');
             }
             if (next != null) {
                 if (plusValueFlag == VALUEOF_PLUS_RIGHT) {
-                    buffer.append("String::valueOf(" + next.toString() + ")");
+                    out.append("String::valueOf(");
+                    next.print(out);
+                    out.append(')');
                 } else {
-                    buffer.append(next.toString());
+                    next.print(out);
                 }
             }
-            return buffer.toString();
         }
         
-        boolean onPrintOp(StringBuffer buffer) {
+        boolean onPrintOp(CodeBuffer out) {
             return false;
         }
         
@@ -1116,6 +1497,10 @@ public class JavaCodeReader {
         
         String dummyCode;
 
+        // for ModelCache
+        DummyStatement() {
+        }
+        
         DummyStatement(String dummyCode) {
             super(TYPE_STATEMENT_DUMMY);
             this.dummyCode = dummyCode;
@@ -1131,14 +1516,18 @@ public class JavaCodeReader {
         
         CodeParagraph paragraph;
 
+        // for ModelCache
+        CodeParagraphWrapper() {
+        }
+        
         CodeParagraphWrapper(CodeParagraph paragraph) {
             super(TYPE_STATEMENT_PARAGRAPH_WRAPPER);
             this.paragraph = paragraph;
         }
         
         @Override
-        void write(String prefix, PrintStream out) {
-            paragraph.write(prefix, out);
+        void write(CodeBuffer out) {
+            paragraph.write(out);
         }
         
         @Override
@@ -1188,6 +1577,10 @@ public class JavaCodeReader {
             return spaceInside ? new Declaration(trimedStr) : new Expression(trimedStr, false);
         }
         
+        // for ModelCache
+        Expression() {
+        }
+        
         Expression(String expression, boolean isConstruction) {
             super(TYPE_STATEMENT_EXPRESSION);
             this.expression = expression;
@@ -1213,32 +1606,41 @@ public class JavaCodeReader {
         
         @Override
         public String toString() {
-            if (cppTranslationProcessed && isNull) {
+            if (!cppTranslationProcessed) {
+                return expression;
+            } else if (isNull) {
                 return "nullptr";
+            } else if (!isAppendGetRefBySpVariable && !isOutterPrinted()) {
+                return expression;
+            }
+            return printToString();
+        }
+        
+        @Override
+        void print(CodeBuffer out) {
+            if (!cppTranslationProcessed) {
+                out.append(expression);
+            } else if (isNull) {
+                out.append("nullptr");
             } else {
-                if (cppTranslationProcessed) {
-                    String output;
-                    if (!outterWarningSuppressed) {
-                        JavaArgs args = resolveVariableIfNeeded();
-                        if (args != null && args.isOutter) {
-                            output = "/* outter-> */" + expression;
-                        } else {
-                            output = expression;
-                        }
-                    } else {
-                        output = expression;
-                    }
-                    if (isAppendGetRefBySpVariable) {
-                        return output + ".get()";
-                    } else {
-                        return output;
-                    }
-                } else {
-                    return expression;
+                if (isOutterPrinted()) {
+                    out.append("/* outter-> */");
+                }
+                out.append(expression);
+                if (isAppendGetRefBySpVariable) {
+                    out.append(".get()");
                 }
             }
         }
         
+        private boolean isOutterPrinted() {
+            if (outterWarningSuppressed) {
+                return false;
+            }
+            JavaArgs args = resolveVariableIfNeeded();
+            return args != null && args.isOutter;
+        }
+        
         JavaArgs resolveVariableIfNeeded() {
             if (!variableResolved) {
                 if (isVariable() && !isNull) {
@@ -1308,6 +1710,10 @@ public class JavaCodeReader {
         
         JavaArgs args;
         
+        // for ModelCache
+        Declaration() {
+        }
+        
         Declaration(String expression) {
             super(expression, false);
             type = TYPE_STATEMENT_DECLARATION;
@@ -1326,6 +1732,11 @@ public class JavaCodeReader {
             return args.toString();
         }
         
+        @Override
+        void print(CodeBuffer out) {
+            out.append(args.toString());
+        }
+        
         @Override
         boolean isVariable() {
             return true;
@@ -1359,11 +1770,14 @@ public class JavaCodeReader {
         }
         
         @Override
-        public String toString() {
+        void print(CodeBuffer out) {
             if (assignSuppressed) {
-                return suffix != null ? prev.toString() + suffix : prev.toString();
+                prev.print(out);
+                if (suffix != null) {
+                    out.append(suffix);
+                }
             } else {
-                return super.toString();
+                super.print(out);
             }
         }
         
@@ -1391,7 +1805,7 @@ public class JavaCodeReader {
                             Array array = (Array) next;
                             if (array.isConstruction) {
                                 assignSuppressed = true;
-                                StringBuffer buffer = new StringBuffer();
+                                StringBuilder buffer = new StringBuilder();
                                 if (array.subStatements != null && array.subStatements.size() > 0) {
                                     CodeStatement statement = array.subStatements.get(0);
                                     if (statement != null) {
@@ -1450,7 +1864,7 @@ public class JavaCodeReader {
                         } else if (next.type == TYPE_STATEMENT_ARRAY) {
                             Array array = (Array) next;
                             if (array.isConstruction) {
-                                StringBuffer buffer = new StringBuffer();
+                                StringBuilder buffer = new StringBuilder();
                                 if (array.subStatements != null && array.subStatements.size() > 0) {
                                     CodeStatement statement = array.subStatements.get(0);
                                     if (statement != null) {
@@ -1497,6 +1911,10 @@ public class JavaCodeReader {
         
         ArrayList<CodeStatement> subStatements;
 
+        // for ModelCache
+        Bracket() {
+        }
+        
         Bracket(int type) {
             super(type);
         }
@@ -1542,24 +1960,20 @@ public class JavaCodeReader {
         }
         
         @Override
-        public String toString() {
-//            String previousStr = prev != null ? prev.toString() : "";
+        void print(CodeBuffer out) {
             char leftBracket = sOpMap[getBracketIndex()].op[0];
             char rightBracket = sOpMap[getBracketIndex() + 1].op[0];
-            if (subStatements == null || subStatements.size() == 0) {
-                return /*previousStr +*/ leftBracket + "" + rightBracket;
-            }
-            StringBuffer buffer = new StringBuffer(/*previousStr*/);
-            buffer.append(leftBracket);
-            int length = subStatements.size();
-            for (int i = 0; i < length; i++) {
-                buffer.append(subStatements.get(i).toString());
-                if (i < length - 1) {
-                    buffer.append(", ");
+            out.append(leftBracket);
+            if (subStatements != null) {
+                int length = subStatements.size();
+                for (int i = 0; i < length; i++) {
+                    print(subStatements.get(i), out);
+                    if (i < length - 1) {
+                        out.append(", ");
+                    }
                 }
             }
-            buffer.append(rightBracket);
-            return buffer.toString();
+            out.append(rightBracket);
         }
         
         @Override
@@ -1576,6 +1990,10 @@ public class JavaCodeReader {
         CodeStatement castedTarget;
         boolean cppTraslationProcessed;
 
+        // for ModelCache
+        CastOp() {
+        }
+        
         CastOp(int type) {
             super(type);
         }
@@ -1588,13 +2006,21 @@ public class JavaCodeReader {
         }
         
         @Override
-        public String toString() {
+        void print(CodeBuffer out) {
             if (cppTraslationProcessed) {
                 CodeStatement first = subStatements != null ? subStatements.get(0) : null;
-                String castedType = first != null ? first.toString() : "nullType";
-                return "static_cast<" + castedType + ">(" + castedTarget.toString() + ")";
+                out.append("static_cast<");
+                if (first != null) {
+                    first.print(out);
+                } else {
+                    out.append("nullType");
+                }
+                out.append(">(");
+                castedTarget.print(out);
+                out.append(')');
             } else {
-                return super.toString() + castedTarget.toString();
+                super.print(out);
+                castedTarget.print(out);
             }
         }
         
@@ -1617,6 +2043,10 @@ public class JavaCodeReader {
         boolean newRemoved;
         boolean spAppendCheckSuppressed;
 
+        // for ModelCache
+        Method() {
+        }
+        
         Method(Expression expression) {
             super(TYPE_STATEMENT_METHOD);
             this.expression = expression;
@@ -1635,8 +2065,9 @@ public class JavaCodeReader {
         }
         
         @Override
-        public String toString() {
-            return expression + super.toString();
+        void print(CodeBuffer out) {
+            print(expression, out);
+            super.print(out);
         }
         
         @Override
@@ -1684,6 +2115,10 @@ public class JavaCodeReader {
         
         ArrayList<Bracket> additionalBrackets;
 
+        // for ModelCache
+        Array() {
+        }
+        
         Array(Expression expression) {
             super(expression, TYPE_STATEMENT_ARRAY);
         }
@@ -1709,14 +2144,13 @@ public class JavaCodeReader {
         }
         
         @Override
-        public String toString() {
-            String out = super.toString();
+        void print(CodeBuffer out) {
+            super.print(out);
             if (additionalBrackets != null && additionalBrackets.size() > 0) {
                 for (int i = 0; i < additionalBrackets.size(); i++) {
-                    out += additionalBrackets.get(i).toString();
+                    additionalBrackets.get(i).print(out);
                 }
             }
-            return out;
         }
         
         @Override
@@ -1798,15 +2232,15 @@ public class JavaCodeReader {
         }
         
         @Override
-        boolean onPrintOp(StringBuffer buffer) {
+        boolean onPrintOp(CodeBuffer out) {
             if (!leftValTypeResolved) {
                 return false;
             }
             if (leftValType < CPP_TYPE_NONE) {
-                buffer.append("->");
+                out.append("->");
                 return true;
             } else if (leftValType == CPP_TYPE_NONE) {
-                buffer.append("::");
+                out.append("::");
                 return true;
             } else {
                 return false;
@@ -1834,12 +2268,43 @@ public class JavaCodeReader {
                         return parentParagraph.resolveFieldIsDataSet(exp.getName());
                     }
                 } else {
+                    int type = resolveIndexedMemberType();
+                    if (type != CPP_TYPE_NONE) {
+                        return type;
+                    }
                     return prev != null ? prev.resolveCppValType() : CodeStatement.CPP_TYPE_POINTER;
                 }
             }
             return next != null ? next.resolveCppValType() : null;
         }
         
+        /**
+         * Type of the member invoked on a variable of an indexed class, CPP_TYPE_NONE if
+         * there is no class index or it does not know the member.
+         */
+        int resolveIndexedMemberType() {
+            if (subject.type != TYPE_STATEMENT_EXPRESSION || Core.getClassIndex() == null) {
+                return CPP_TYPE_NONE;
+            }
+            Expression exp = (Expression) subject;
+            JavaArgs args = exp.isVariable() ? exp.resolveVariableIfNeeded() : null;
+            if (args == null || args.type == null || args.isArray) {
+                return CPP_TYPE_NONE;
+            }
+            String memberType = null;
+            if (next.type == TYPE_STATEMENT_METHOD) {
+                Method method = (Method) next;
+                int argsCount = method.subStatements != null ? method.subStatements.size() : 0;
+                memberType = parentParagraph.findIndexedMemberType(args.type,
+                        method.expression.getName(), argsCount);
+            } else if (next.type == TYPE_STATEMENT_EXPRESSION) {
+                memberType = parentParagraph.findIndexedMemberType(args.type,
+                        ((Expression) next).getName(), -1);
+            }
+            return memberType != null ? RootParagraph.resolveCppTypeByJavaType(memberType)
+                    : CPP_TYPE_NONE;
+        }
+        
         boolean isCurrentClass() {
             if (subject == null) {
                 return true;
@@ -1888,10 +2353,12 @@ public class JavaCodeReader {
         }
         
         @Override
-        public String toString() {
+        void print(CodeBuffer out) {
             if (instanceofReplacedOp > INSTANCEOF_NONE) {
                 if (instanceofReplacedOp == INSTANCEOF_OBJ_TYPE) {
-                    return "objIsType(" + prev + ", " + next + ")";
+                    out.append("objIsType(");
+                    print(prev, out);
+                    out.append(", ");
                 } else {
                     boolean appendSpGet = false;
                     if (prev != null && prev.type == TYPE_STATEMENT_EXPRESSION) {
@@ -1900,10 +2367,15 @@ public class JavaCodeReader {
                             appendSpGet = true;
                         }
                     }
-                    return "ptrIsType(" + prev + (appendSpGet ? ".get(), " : ", ") + next + ")";
+                    out.append("ptrIsType(");
+                    print(prev, out);
+                    out.append(appendSpGet ? ".get(), " : ", ");
                 }
+                print(next, out);
+                out.append(')');
+                return;
             }
-            return super.toString();
+            super.print(out);
         }
         
         @Override
@@ -1920,10 +2392,14 @@ public class JavaCodeReader {
         }
     }
     
-    private static abstract class Keyword extends CodeStatement implements ICodeProcessor {
+    static abstract class Keyword extends CodeStatement implements ICodeProcessor {
         
         ICodeProcessor previous;
         
+        // for ModelCache
+        Keyword() {
+        }
+        
         Keyword(int type, CodeParagraph parent) {
             super(type);
             this.parentParagraph = parent;
@@ -1968,9 +2444,6 @@ public class JavaCodeReader {
             String statementCode;
             String prefix;
             
-            static KeywordProcessHelper sPool;
-            static int sPoolSize;
-            
             KeywordProcessHelper next;
             
             private KeywordProcessHelper(String code) {
@@ -1982,13 +2455,14 @@ public class JavaCodeReader {
             }
             
             static KeywordProcessHelper obtain(String code) {
-                if (sPool == null) {
+                TranslationContext context = TranslationContext.get();
+                if (context.keywordHelperPool == null) {
                     return new KeywordProcessHelper(code);
                 }
-                KeywordProcessHelper out = sPool;
+                KeywordProcessHelper out = context.keywordHelperPool;
                 out.setCode(code);
-                sPool = out.next;
-                sPoolSize--;
+                context.keywordHelperPool = out.next;
+                context.keywordHelperPoolSize--;
                 return out;
             }
             
@@ -1997,10 +2471,11 @@ public class JavaCodeReader {
                 statementCode = prefix = null;
                 currentIndex = 0;
                 
-                if (sPoolSize < 5) {
-                    next = sPool;
-                    sPool = this;
-                    sPoolSize++;
+                TranslationContext context = TranslationContext.get();
+                if (context.keywordHelperPoolSize < 5) {
+                    next = context.keywordHelperPool;
+                    context.keywordHelperPool = this;
+                    context.keywordHelperPoolSize++;
                 }
             }
             
@@ -2223,8 +2698,10 @@ public class JavaCodeReader {
         }
         
         @Override
-        void write(String prefix, PrintStream out) {
-            out.println(prefix + this.toString());
+        void write(CodeBuffer out) {
+            out.startLine();
+            print(out);
+            out.endLine();
         }
     }
     
@@ -2244,6 +2721,10 @@ public class JavaCodeReader {
         private boolean elseifResolving;
         CodeParagraph elseParagraph;
         
+        // for ModelCache
+        If() {
+        }
+        
         If(CodeParagraph parent) {
             super(TYPE_KEY_IF, parent);
         }
@@ -2319,22 +2800,26 @@ public class JavaCodeReader {
         }
         
         @Override
-        void write(String prefix, PrintStream out) {
-            out.println(prefix + "if (" + ifStatement.toString() + ") {");
-            ifParagraph.write(prefix, out);
+        void write(CodeBuffer out) {
+            out.startLine().append("if (");
+            ifStatement.print(out);
+            out.append(") {").endLine();
+            ifParagraph.write(out);
             if (elseifParagraphList != null) {
                 for (int i = 0; i < elseifParagraphList.size(); i++) {
                     CodeStatement statement = elseifStatmentList.get(i);
                     CodeParagraph paragraph = elseifParagraphList.get(i);
-                    out.println(prefix + "} else if (" + statement.toString() + ") {");
-                    paragraph.write(prefix, out);
+                    out.startLine().append("} else if (");
+                    statement.print(out);
+                    out.append(") {").endLine();
+                    paragraph.write(out);
                 }
             }
             if (elseParagraph != null) {
-                out.println(prefix + "} else {");
-                elseParagraph.write(prefix, out);
+                out.line("} else {");
+                elseParagraph.write(out);
             }
-            out.println(prefix + "}");
+            out.line("}");
         }
         
         @Override
@@ -2379,6 +2864,10 @@ public class JavaCodeReader {
         
         CodeParagraph paragraph;
         
+        // for ModelCache
+        For() {
+        }
+        
         For(CodeParagraph parent) {
             super(TYPE_KEY_FOR, parent);
         }
@@ -2422,38 +2911,48 @@ public class JavaCodeReader {
         }
         
         @Override
-        void write(String prefix, PrintStream out) {
-            out.println(prefix + toString() + " {");
-            paragraph.write(prefix, out);
-            out.println(prefix + "}");
+        void write(CodeBuffer out) {
+            out.startLine();
+            print(out);
+            out.append(" {").endLine();
+            paragraph.write(out);
+            out.line("}");
         }
         
         @Override
         public String toString() {
-            String anchorPrefix = anchor != null ? anchor + ":" : "";
+            return printToString();
+        }
+        
+        @Override
+        void print(CodeBuffer out) {
+            if (anchor != null) {
+                out.append(anchor).append(':');
+            }
             if (isIterated) {
                 if (autoCppIteratedMode) {
-                    return anchorPrefix + "for (auto& " + iteratedEleName + " : " + itratedOp.next.toString() + ")";
+                    out.append("for (auto& ").append(iteratedEleName).append(" : ");
+                    itratedOp.next.print(out);
                 } else {
-                    return anchorPrefix + "for (" + itratedOp.toString() + ")";
+                    out.append("for (");
+                    itratedOp.print(out);
                 }
             } else {
-                StringBuffer buffer = new StringBuffer(anchorPrefix + "for (");
+                out.append("for (");
                 for (int i = 0; i < commonStatmentList.length; i++) {
                     CodeStatement statement = commonStatmentList[i];
                     if (statement != null) {
                         if (i > 0) {
-                            buffer.append(" ");
+                            out.append(' ');
                         }
-                        buffer.append(statement.toString());
+                        statement.print(out);
                     }
                     if (i < commonStatmentList.length - 1) {
-                        buffer.append(";");
+                        out.append(';');
                     }
                 }
-                buffer.append(")");
-                return buffer.toString();
             }
+            out.append(')');
         }
         
         @Override
@@ -2501,6 +3000,10 @@ public class JavaCodeReader {
         CodeParagraph paragraph;
         CodeStatement statement;
         
+        // for ModelCache
+        Dowhile() {
+        }
+        
         Dowhile(CodeParagraph parent) {
             super(TYPE_KEY_DO_WHILE, parent);
         }
@@ -2531,11 +3034,16 @@ public class JavaCodeReader {
         }
         
         @Override
-        void write(String prefix, PrintStream out) {
-            String anchorPrefix = anchor != null ? anchor + ":" : "";
-            out.println(prefix + anchorPrefix + "do {");
-            paragraph.write(prefix, out);
-            out.println(prefix + "} while (" + statement.toString() + ");");
+        void write(CodeBuffer out) {
+            out.startLine();
+            if (anchor != null) {
+                out.append(anchor).append(':');
+            }
+            out.append("do {").endLine();
+            paragraph.write(out);
+            out.startLine().append("} while (");
+            statement.print(out);
+            out.append(");").endLine();
         }
         
         @Override
@@ -2559,6 +3067,10 @@ public class JavaCodeReader {
         CodeParagraph paragraph;
         CodeStatement statement;
         
+        // for ModelCache
+        While() {
+        }
+        
         While(CodeParagraph parent) {
             super(TYPE_KEY_WHILE, parent);
         }
@@ -2585,11 +3097,16 @@ public class JavaCodeReader {
         }
         
         @Override
-        void write(String prefix, PrintStream out) {
-            String anchorPrefix = anchor != null ? anchor + ":" : "";
-            out.println(prefix + anchorPrefix + "while (" + statement.toString() + ") {");
-            paragraph.write(prefix, out);
-            out.println(prefix + "}");
+        void write(CodeBuffer out) {
+            out.startLine();
+            if (anchor != null) {
+                out.append(anchor).append(':');
+            }
+            out.append("while (");
+            statement.print(out);
+            out.append(") {").endLine();
+            paragraph.write(out);
+            out.line("}");
         }
         
         @Override
@@ -2612,6 +3129,10 @@ public class JavaCodeReader {
         CodeParagraph paragraph;
         CodeStatement statement;
 
+        // for ModelCache
+        SwitchCase() {
+        }
+        
         SwitchCase(CodeParagraph parent) {
             super(TYPE_KEY_SWITCH, parent);
         }
@@ -2633,10 +3154,12 @@ public class JavaCodeReader {
         }
         
         @Override
-        void write(String prefix, PrintStream out) {
-            out.println(prefix + "switch (" + statement.toString() + ") {");
-            paragraph.write(prefix, out);
-            out.println(prefix + "}");
+        void write(CodeBuffer out) {
+            out.startLine().append("switch (");
+            statement.print(out);
+            out.append(") {").endLine();
+            paragraph.write(out);
+            out.line("}");
         }
         
         @Override
@@ -2667,6 +3190,10 @@ public class JavaCodeReader {
         private boolean finallyResolved;
         CodeParagraph finallyParagraph;
         
+        // for ModelCache
+        TryCatch() {
+        }
+        
         TryCatch(CodeParagraph parent) {
             super(TYPE_KEY_TRY_CATCH, parent);
         }
@@ -2724,28 +3251,30 @@ public class JavaCodeReader {
         }
         
         @Override
-        void write(String prefix, PrintStream out) {
+        void write(CodeBuffer out) {
             if (cppTranslationProcessed && finallyParagraph != null) {
-                out.println(prefix + "defer {");
-                finallyParagraph.write(prefix, out);
-                out.println(prefix + "};");
-                out.println();
+                out.line("defer {");
+                finallyParagraph.write(out);
+                out.line("};");
+                out.line();
             }
-            out.println(prefix + "try {");
-            tryParagraph.write(prefix, out);
+            out.line("try {");
+            tryParagraph.write(out);
             if (catchParagraphList != null) {
                 for (int i = 0; i < catchParagraphList.size(); i++) {
                     CodeStatement statement = catchStatementList.get(i);
                     CodeParagraph paragraph = catchParagraphList.get(i);
-                    out.println(prefix + "} catch (" + statement.toString() + ") {");
-                    paragraph.write(prefix, out);
+                    out.startLine().append("} catch (");
+                    statement.print(out);
+                    out.append(") {").endLine();
+                    paragraph.write(out);
                 }
             }
             if (!cppTranslationProcessed && finallyParagraph != null) {
-                out.println(prefix + "} finally {");
-                finallyParagraph.write(prefix, out);
+                out.line("} finally {");
+                finallyParagraph.write(out);
             }
-            out.println(prefix + "}");
+            out.line("}");
         }
         
         @Override
@@ -2779,6 +3308,10 @@ public class JavaCodeReader {
         boolean keywordResolved;
         String keyword;
 
+        // for ModelCache
+        ControllerKey() {
+        }
+        
         ControllerKey(int type, CodeParagraph paragraph) {
             super(type, paragraph);
             keyword = sKeyWord[type];
@@ -2820,18 +3353,25 @@ public class JavaCodeReader {
         }
         
         @Override
-        void write(String prefix, PrintStream out) {
-            out.println(prefix + this.toString());
+        void write(CodeBuffer out) {
+            out.startLine();
+            print(out);
+            out.endLine();
         }
         
         @Override
         public String toString() {
-            char sigil = type == TYPE_KEY_CASE || type == TYPE_KEY_DEFAULT ? ':' : ';';
+            return printToString();
+        }
+        
+        @Override
+        void print(CodeBuffer out) {
+            out.append(keyword);
             if (statement != null) {
-                return keyword + " " + statement.toString() + sigil;
-            } else {
-                return keyword + sigil;
+                out.append(' ');
+                statement.print(out);
             }
+            out.append(type == TYPE_KEY_CASE || type == TYPE_KEY_DEFAULT ? ':' : ';');
         }
         
         @Override
@@ -2874,6 +3414,10 @@ public class JavaCodeReader {
         CodeStatement statement;
         CodeParagraph paragraph;
         
+        // for ModelCache
+        Synchronized() {
+        }
+        
         public Synchronized(CodeParagraph paragraph) {
             super(TYPE_KEY_SYNC, paragraph);
         }
@@ -2895,10 +3439,12 @@ public class JavaCodeReader {
         }
         
         @Override
-        void write(String prefix, PrintStream out) {
-            out.println(prefix + "synchronized (" + statement.toString() + ") {");
-            paragraph.write(prefix, out);
-            out.println(prefix + "}");
+        void write(CodeBuffer out) {
+            out.startLine().append("synchronized (");
+            statement.print(out);
+            out.append(") {").endLine();
+            paragraph.write(out);
+            out.line("}");
         }
         
         @Override
@@ -2922,8 +3468,12 @@ public class JavaCodeReader {
         HashMap<String, JavaArgs> argsCache = new HashMap<>();
         JavaStatement context;
         CodeParagraph child;
-        UnseenClassHelper helper;
+        transient UnseenClassHelper helper;
 
+        // for ModelCache
+        RootParagraph() {
+        }
+        
         public RootParagraph(JavaStatement statement) {
             super(null);
             this.context = statement;
@@ -2944,7 +3494,7 @@ public class JavaCodeReader {
             boolean currentStatic = !wholeSearch && context.isStatic;
             JavaStatement current = context.parentStatement;
             JavaField result = null;
-            anchor:while (current != null && result == null) {
+            while (current != null && result == null) {
                 JavaParagraph javaParagraph = current.paragraph;
                 if (javaParagraph == null || 
                         (javaParagraph.type != JavaParagraph.TYPE_ANONYMOUS_CLASS && 
@@ -2955,25 +3505,9 @@ public class JavaCodeReader {
                 }
                 
                 ClassParagraph paragraph = (ClassParagraph) javaParagraph;
-                ArrayList<JavaField> staticFields = paragraph.staticFields;
-                if (staticFields != null) {
-                    for (int i = 0; i < staticFields.size(); i++) {
-                        JavaField field = staticFields.get(i);
-                        if (field.name.equals(name)) {
-                            result = field;
-                            break anchor;
-                        }
-                    }
-                }
-                ArrayList<JavaField> fields = paragraph.fields;
-                if (fields != null && !currentStatic) {
-                    for (int i = 0; i < fields.size(); i++) {
-                        JavaField field = fields.get(i);
-                        if (field.name.equals(name)) {
-                            result = field;
-                            break anchor;
-                        }
-                    }
+                result = paragraph.findStaticField(name);
+                if (result == null && !currentStatic) {
+                    result = paragraph.findField(name);
                 }
                 currentStatic = !wholeSearch && current.isStatic;
                 current = current.parentStatement;
@@ -3030,28 +3564,39 @@ public class JavaCodeReader {
                 }
                 
                 ClassParagraph paragraph = (ClassParagraph) javaParagraph;
-                ArrayList<JavaMethod> staticJavaMethods = paragraph.staticMethods;
-                int staticCount = staticJavaMethods != null ? staticJavaMethods.size() : 0;
-                ArrayList<JavaMethod> javaMethods = checkNoStatic ? paragraph.methods : null;
-                int count = javaMethods != null ? javaMethods.size() : 0;
-                if (staticCount > 0 || count > 0) {
-                    for (int i = 0; i < staticCount + count; i++) {
-                        JavaMethod javaMethod = i < count ? javaMethods.get(i) : staticJavaMethods.get(i - count);
-                        if (javaMethod.name.equals(name)) {
-                            int methodArgCount = javaMethod.parameters != null ? javaMethod.parameters.size() : 0;
-                            if (methodArgCount == argsCount) {
-                                return resolveCppTypeByJavaType(javaMethod.returnType);
-                            }
-                        }
-                    }
+                JavaMethod javaMethod = checkNoStatic ? findMethodByArgsCount(
+                        paragraph.findMethods(name), argsCount) : null;
+                if (javaMethod == null) {
+                    javaMethod = findMethodByArgsCount(paragraph.findStaticMethods(name), argsCount);
+                }
+                if (javaMethod != null) {
+                    return resolveCppTypeByJavaType(javaMethod.returnType);
                 }
                 
 //                checkNoStatic = !current.isStatic;
                 current = current.parentStatement;
             }
+            String inheritedType = findInheritedMemberType(name, argsCount);
+            if (inheritedType != null) {
+                return resolveCppTypeByJavaType(inheritedType);
+            }
             return CodeStatement.CPP_TYPE_NONE;
         }
         
+        private static JavaMethod findMethodByArgsCount(ArrayList<JavaMethod> sameName,
+                int argsCount) {
+            if (sameName != null) {
+                for (int i = 0; i < sameName.size(); i++) {
+                    JavaMethod javaMethod = sameName.get(i);
+                    int methodArgCount = javaMethod.parameters != null ? javaMethod.parameters.size() : 0;
+                    if (methodArgCount == argsCount) {
+                        return javaMethod;
+                    }
+                }
+            }
+            return null;
+        }
+        
         @Override
         int resolveFieldIsDataSet(String name) {
             JavaStatement current = context.parentStatement;
@@ -3067,24 +3612,75 @@ public class JavaCodeReader {
                 }
                 
                 ClassParagraph paragraph = (ClassParagraph) javaParagraph;
-                ArrayList<JavaField> staticJavaFields = paragraph.staticFields;
-                int staticCount = staticJavaFields != null ? staticJavaFields.size() : 0;
-                ArrayList<JavaField> javaFields = checkNoStatic ? paragraph.fields : null;
-                int count = javaFields != null ? javaFields.size() : 0;
-                if (staticCount > 0 || count > 0) {
-                    for (int i = 0; i < staticCount + count; i++) {
-                        JavaField javaField = i < count ? javaFields.get(i) : staticJavaFields.get(i - count);
-                        if (javaField.name.equals(name)) {
-                            return resolveCppTypeByJavaType(javaField.feildType);
-                        }
-                    }
+                JavaField javaField = checkNoStatic ? paragraph.findField(name) : null;
+                if (javaField == null) {
+                    javaField = paragraph.findStaticField(name);
+                }
+                if (javaField != null) {
+                    return resolveCppTypeByJavaType(javaField.feildType);
                 }
 //                checkNoStatic = !current.isStatic;
                 current = current.parentStatement;
             }
+            String inheritedType = findInheritedMemberType(name, -1);
+            if (inheritedType != null) {
+                return resolveCppTypeByJavaType(inheritedType);
+            }
             return CodeStatement.CPP_TYPE_NONE;
         }
         
+        /**
+         * Type of a member the classes around the context inherit, looked up in the class
+         * index. A method if argsCount is not negative, a field otherwise.
+         */
+        private String findInheritedMemberType(String name, int argsCount) {
+            ClassIndex index = Core.getClassIndex();
+            if (index == null) {
+                return null;
+            }
+            for (JavaStatement current = context.parentStatement; current != null;
+                    current = current.parentStatement) {
+                ClassIndex.ClassInfo info = getIndexedClass(index, current);
+                if (info != null) {
+                    String type = argsCount >= 0 ? index.findReturnType(info, name, argsCount)
+                            : index.findFieldType(info, name);
+                    if (type != null) {
+                        return type;
+                    }
+                }
+            }
+            return null;
+        }
+        
+        @Override
+        String findIndexedMemberType(String className, String name, int argsCount) {
+            ClassIndex index = Core.getClassIndex();
+            if (index == null) {
+                return null;
+            }
+            ClassIndex.ClassInfo from = null;
+            for (JavaStatement current = context.parentStatement; current != null && from == null;
+                    current = current.parentStatement) {
+                from = getIndexedClass(index, current);
+            }
+            ClassIndex.ClassInfo info = index.resolve(from, className);
+            if (info == null) {
+                return null;
+            }
+            return argsCount >= 0 ? index.findReturnType(info, name, argsCount)
+                    : index.findFieldType(info, name);
+        }
+        
+        // anonymous classes are not indexed
+        private static ClassIndex.ClassInfo getIndexedClass(ClassIndex index,
+                JavaStatement statement) {
+            if (statement.type != JavaStatement.TYPE_CLASS || statement.paragraph == null
+                    || statement.paragraph.type != JavaParagraph.TYPE_CLASS) {
+                return null;
+            }
+            return index.get(ClassIndex.getQualifiedName((Clazz) statement));
+        }
+        
         @Override
         boolean checkClsNameIsCurrentContext(String currentClsName) {
             JavaStatement current = context.parentStatement;
@@ -3098,8 +3694,8 @@ public class JavaCodeReader {
         }
         
         @Override
-        public void write(String prefix, PrintStream out) {
-            child.write(prefix, out);
+        public void write(CodeBuffer out) {
+            child.write(out);
         }
         
         @Override
@@ -3113,7 +3709,7 @@ public class JavaCodeReader {
         }
     }
     
-    public static class CodeParagraph implements ICodeProcessor {
+    public static class CodeParagraph implements ICodeProcessor, ModelCache.Model {
         ArrayList<JavaArgs> argsList;
         
         final ArrayList<CodeStatement> statements = new ArrayList<>();
@@ -3125,12 +3721,19 @@ public class JavaCodeReader {
         boolean brancePrintSuppressed;
         boolean autoPopAtNextRound;
         String anchor;
-        ProcessHelper processHelper;
-        ParagraphFinishedCallback callback;
+        // only used while the paragraph is parsed
+        transient ProcessHelper processHelper;
+        transient ParagraphFinishedCallback callback;
         CodeParagraph parentParagraph;
         String tabSpace;
         int codeLine;
         
+        /**
+         * Only for ModelCache, which sets every field of the paragraph it loads.
+         */
+        CodeParagraph() {
+        }
+        
         public CodeParagraph(CodeParagraph parent) {
             assignParent(parent);
             brancePrintSuppressed = true;
@@ -3218,26 +3821,25 @@ public class JavaCodeReader {
             
             ProcessHelper next;
             
-            static ProcessHelper sPool;
-            static int sPoolSize;
-            
             static ProcessHelper obtain() {
-                if (sPool == null) {
+                TranslationContext context = TranslationContext.get();
+                if (context.processHelperPool == null) {
                     return new ProcessHelper();
                 }
-                ProcessHelper out = sPool;
-                sPool = out.next;
-                sPoolSize--;
+                ProcessHelper out = context.processHelperPool;
+                context.processHelperPool = out.next;
+                context.processHelperPoolSize--;
                 return out;
             }
             
             void recycle() {
                 swapCode(null);
                 
-                if (sPoolSize < 5) {
-                    next = sPool;
-                    sPool = this;
-                    sPoolSize++;
+                TranslationContext context = TranslationContext.get();
+                if (context.processHelperPoolSize < 5) {
+                    next = context.processHelperPool;
+                    context.processHelperPool = this;
+                    context.processHelperPoolSize++;
                 }
             }
             
@@ -3575,28 +4177,30 @@ public class JavaCodeReader {
             }
         }
         
-        public void write(String prefix, PrintStream out) {
+        public void write(CodeBuffer out) {
             if (!brancePrintSuppressed) {
-                out.println(prefix + "{");
+                out.line("{");
             }
             for (int i = 0; i < statements.size(); i++) {
                 if (dummyMap != null) {
                     ArrayList<DummyStatement> dummyCodeLines = dummyMap.get(i);
                     if (dummyCodeLines != null) {
                         for (int j = 0; j < dummyCodeLines.size(); j++) {
-                            writeStatement(dummyCodeLines.get(j), prefix, out);
+                            writeStatement(dummyCodeLines.get(j), out);
                         }
                     }
                 }
-                writeStatement(statements.get(i), prefix, out);
+                writeStatement(statements.get(i), out);
             }
             if (!brancePrintSuppressed) {
-                out.println(prefix + "}");
+                out.line("}");
             }
         }
         
-        protected void writeStatement(CodeStatement statement, String prefix, PrintStream out) {
-            statement.write(prefix + tabSpace, out);
+        protected void writeStatement(CodeStatement statement, CodeBuffer out) {
+            out.indent(tabSpace.length());
+            statement.write(out);
+            out.unindent();
         }
         
         void reportUnseenClass(String name) {
@@ -3631,6 +4235,17 @@ public class JavaCodeReader {
             return CodeStatement.CPP_TYPE_NONE;
         }
         
+        /**
+         * Type of the member name of the class className as seen from here, a method if
+         * argsCount is not negative, a field otherwise. Null unless the class index knows it.
+         */
+        String findIndexedMemberType(String className, String name, int argsCount) {
+            if (parentParagraph != null) {
+                return parentParagraph.findIndexedMemberType(className, name, argsCount);
+            }
+            return null;
+        }
+        
         boolean checkClsNameIsCurrentContext(String currentClsName) {
             if (parentParagraph != null) {
                 return parentParagraph.checkClsNameIsCurrentContext(currentClsName);
@@ -3641,18 +4256,21 @@ public class JavaCodeReader {
     
     private static class SwitchCaseParagraph extends CodeParagraph {
 
+        // for ModelCache
+        SwitchCaseParagraph() {
+        }
+        
         public SwitchCaseParagraph(CodeParagraph parent) {
             super(parent);
         }
         
         @Override
-        protected void writeStatement(CodeStatement statement, String prefix,
-                PrintStream out) {
+        protected void writeStatement(CodeStatement statement, CodeBuffer out) {
             if (statement instanceof Keyword && 
                     (statement.type == TYPE_KEY_CASE || statement.type == TYPE_KEY_DEFAULT)) {
-                statement.write(prefix, out);
+                statement.write(out);
             } else {
-                statement.write(prefix + tabSpace, out);
+                super.writeStatement(statement, out);
             }
         }
     }
@@ -3663,6 +4281,10 @@ public class JavaCodeReader {
         ArrayList<String> anonymousStrBuffer = new ArrayList<>();
         int currentScannedIndex;
 
+        // for ModelCache
+        AnonymousParagraph() {
+        }
+        
         public AnonymousParagraph(CodeParagraph parent) {
             super(parent);
         }
@@ -1,10 +1,10 @@
 package com.android.cplusplus;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.Map.Entry;
@@ -23,157 +23,202 @@ public final class JavaReader implements CodeLineReader {
     
     private static final boolean PROGRESSING_DEBUG = true;
     
-    private static final Pattern sBrance_L = Pattern.compile("[{]");
-    private static final Pattern sBrance_R = Pattern.compile("[}]");
-    private static final Pattern sSemicolon = Pattern.compile("[;]");
-//    private static final Pattern sComma = Pattern.compile("[,]");
-    
-    private static final Pattern sDashPatternL = Pattern.compile("[/][*]");
-    private static final Pattern sDashPatternR = Pattern.compile("[*][/]");
-    private static final Pattern sDashPatternC = Pattern.compile("[/][/]");
-    private static final Pattern sAnnoPattern =
-            Pattern.compile("@\\w+\\.\\w+\\s*|@\\w+\\s*");
-    
     private boolean mCommentNotCompleted;
     private ArrayList<String> mPendingComment = new ArrayList<>();
     private int mAnnotationAnchor;
     
     private int mLine;
     private boolean mIsAIDLMode;
+    private boolean mLazyCodeParsing;
+    private boolean mDeclaringCodeParsing;
+    private ArrayList<JavaCodeParagraph> mLazyCodeParagraphs;
     private long mLastProgressingPrintMillis;
     private boolean mDidProgressingDebug;
-    private BufferedReader mReader;
+    private final SourceBuffer mSource = new SourceBuffer();
     private JavaCodeReader mJavaCodeReader = new JavaCodeReader();
+    private PrintStream mLog = System.out;
+    
+    /**
+     * Receives the top level classes of a java file one by one while it is read, see
+     * {@link JavaReader#read(File, ClassListener)}.
+     */
+    interface ClassListener {
+        void onClassRead(JavaFile javaFile, Clazz clazz);
+    }
     
+    /**
+     * Finds the braces, semicolons and annotations of a code line with a single scan of
+     * its characters. A hit which sits behind an odd number of quotes (either '"' or
+     * '\'') and in front of at least one more quote is inside a literal and skipped.
+     */
     static class LineParser {
         
-        static Pattern sQuoPattern = Pattern.compile("\"|\'");
-        
-        static LineParser sPool;
-        static int sPoolSize;
+        private static final int HIT_LEFT_BRANCE = 0;
+        private static final int HIT_RIGHT_BRANCE = 1;
+        private static final int HIT_SEMICOLON = 2;
+        private static final int HIT_ANNOTATION = 3;
         
         String line;
-        Matcher branceLM;
-        Matcher branceRM;
-        Matcher semicolonM;
-//        Matcher commaM;
-        Matcher atM;
-        
         LineParser next;
-        int[] quotationArray;
+        
+        // every hit of the line in order: its kind, index and the count of quotes before it
+        private byte[] hitKinds = new byte[16];
+        private int[] hitIndexes = new int[16];
+        private int[] hitQuotes = new int[16];
+        private int hitCount;
+        private int quoteCount;
+        private final int[] cursors = new int[4];
 
         static LineParser obtain(String line) {
-            if (sPool == null) {
+            TranslationContext context = TranslationContext.get();
+            if (context.lineParserPool == null) {
                 return new LineParser(line);
             }
-            LineParser out = sPool;
+            LineParser out = context.lineParserPool;
             out.line = line;
-            out.initQuotation();
-            sPool = out.next;
-            sPoolSize--;
+            out.scan();
+            context.lineParserPool = out.next;
+            context.lineParserPoolSize--;
             return out;
         }
         
         private LineParser(String line) {
             this.line = line;
-            initQuotation();
-        }
-        
-        private void initQuotation() {
-            Matcher quoMm = sQuoPattern.matcher(line);
-            int index = 0;
-            while (quoMm.find()) {
-                if (quotationArray == null || index >= quotationArray.length) {
-                    int[] src = quotationArray;
-                    int capacity = src == null ? 2 : (src.length + 2);
-                    quotationArray = new int[capacity];
-                    if (src != null) {
-                        System.arraycopy(src, 0, quotationArray, 0, src.length);
+            scan();
+        }
+        
+        private void scan() {
+            final String line = this.line;
+            final int length = line.length();
+            hitCount = 0;
+            quoteCount = 0;
+            cursors[0] = cursors[1] = cursors[2] = cursors[3] = 0;
+            for (int i = 0; i < length; i++) {
+                switch (line.charAt(i)) {
+                case '"':
+                case '\'':
+                    quoteCount++;
+                    break;
+                case '{':
+                    addHit(HIT_LEFT_BRANCE, i);
+                    break;
+                case '}':
+                    addHit(HIT_RIGHT_BRANCE, i);
+                    break;
+                case ';':
+                    addHit(HIT_SEMICOLON, i);
+                    break;
+                case '@':
+                    if (i + 1 < length && isWordChar(line.charAt(i + 1))) {
+                        addHit(HIT_ANNOTATION, i);
                     }
+                    break;
+                default:
+                    break;
                 }
-                quotationArray[index] = quoMm.start();
-                index++;
             }
-            if (quotationArray != null) {
-                for (int i = index; i < quotationArray.length; i++) {
-                    quotationArray[i] = -1;
-                }
+        }
+        
+        private void addHit(int kind, int index) {
+            if (hitCount == hitIndexes.length) {
+                int capacity = hitCount * 2;
+                hitKinds = Arrays.copyOf(hitKinds, capacity);
+                hitIndexes = Arrays.copyOf(hitIndexes, capacity);
+                hitQuotes = Arrays.copyOf(hitQuotes, capacity);
             }
+            hitKinds[hitCount] = (byte) kind;
+            hitIndexes[hitCount] = index;
+            hitQuotes[hitCount] = quoteCount;
+            hitCount++;
         }
 
         void recycle() {
-            branceLM = branceRM = /*commaM =*/ semicolonM = atM = null;
             line = null;
-            quotationArray = null;
             
-            if (sPoolSize < 5) {
-                next = sPool;
-                sPool = this;
-                sPoolSize++;
+            TranslationContext context = TranslationContext.get();
+            if (context.lineParserPoolSize < 5) {
+                next = context.lineParserPool;
+                context.lineParserPool = this;
+                context.lineParserPoolSize++;
             }
         }
         
-//        int nextComma() {
-//            if (commaM == null) {
-//                commaM = sComma.matcher(line);
-//            }
-//            return findNext(commaM);
-//        }
-        
         int nextSemicolon() {
-            if (semicolonM == null) {
-                semicolonM = sSemicolon.matcher(line);
-            }
-            return findNext(semicolonM);
+            return findNext(HIT_SEMICOLON);
         }
         
         int nextLeftBrance() {
-            if (branceLM == null) {
-                branceLM = sBrance_L.matcher(line);
-            }
-            return findNext(branceLM);
+            return findNext(HIT_LEFT_BRANCE);
         }
         
         int nextRightBrance() {
-            if (branceRM == null) {
-                branceRM = sBrance_R.matcher(line);
-            }
-            return findNext(branceRM);
+            return findNext(HIT_RIGHT_BRANCE);
         }
         
         int nextAnnotation() {
-            if (atM == null) {
-                atM = sAnnoPattern.matcher(line);
-            }
-            return findNext(atM);
-        }
-        
-        int findNext(Matcher matcher) {
-            outter:while (matcher.find()) {
-                int index = matcher.start();
-                if (quotationArray != null) {
-                    for (int i = 0; i < quotationArray.length - 1; i++) {
-                        if (quotationArray[i] != -1 && quotationArray[i] < index &&
-                                quotationArray[i + 1] > index) {
-                            /*
-                             *  ""...""...X...""
-                             *  the count of '"' before X must be an even number
-                             */
-                            if (i % 2 == 0) {
-                                continue outter;
-                            }
-                        }
-                    }
+            return findNext(HIT_ANNOTATION);
+        }
+        
+        private int findNext(int kind) {
+            for (int i = cursors[kind]; i < hitCount; i++) {
+                if (hitKinds[i] != kind) {
+                    continue;
+                }
+                cursors[kind] = i + 1;
+                /*
+                 *  ""...""...X...""
+                 *  the count of '"' before X must be an even number
+                 */
+                int quotes = hitQuotes[i];
+                if ((quotes & 1) == 0 || quotes == quoteCount) {
+                    return hitIndexes[i];
                 }
-                return index;
             }
+            cursors[kind] = hitCount;
+            return -1;
+        }
+    }
+    
+    static boolean isWordChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+    
+    private static boolean isSpaceChar(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+    
+    /**
+     * Returns the end of the annotation "@name", "@name.name" and the spaces behind it
+     * starting at start, or -1 if there is no annotation at start.
+     */
+    private static int matchAnnotation(String line, int start) {
+        final int length = line.length();
+        int i = start + 1;
+        while (i < length && isWordChar(line.charAt(i))) {
+            i++;
+        }
+        if (i == start + 1) {
             return -1;
         }
+        if (i + 1 < length && line.charAt(i) == '.' && isWordChar(line.charAt(i + 1))) {
+            i += 2;
+            while (i < length && isWordChar(line.charAt(i))) {
+                i++;
+            }
+        }
+        while (i < length && isSpaceChar(line.charAt(i))) {
+            i++;
+        }
+        return i;
     }
     
     JavaReader() {
     }
     
+    void setLogStream(PrintStream log) {
+        mLog = log != null ? log : System.out;
+    }
+    
     @Override
     public String nextLine() {
         return nextLine(true, false);
@@ -181,44 +226,45 @@ public final class JavaReader implements CodeLineReader {
     
     @Override
     public String nextLine(boolean trim, boolean collectCommentLine) {
-        String tempString = null;
-        try {
-            while ((tempString = mReader.readLine()) != null) {
-                mLine++;
-                
-                if (PROGRESSING_DEBUG) {
-                    long currentMillis = System.currentTimeMillis();
-                    if (currentMillis - mLastProgressingPrintMillis > 250) {
-                        mLastProgressingPrintMillis = currentMillis;
-                        mDidProgressingDebug |= true;
-                        System.out.print(" *");
-                    }
-                }
-                
-                if (trim) {
-                    tempString = tempString.trim();
+        while (mSource.nextLine()) {
+            mLine++;
+            
+            if (PROGRESSING_DEBUG) {
+                long currentMillis = System.currentTimeMillis();
+                if (currentMillis - mLastProgressingPrintMillis > 250) {
+                    mLastProgressingPrintMillis = currentMillis;
+                    mDidProgressingDebug |= true;
+                    mLog.print(" *");
                 }
-                if (tempString.length() == 0) {
+            }
+            
+            if (trim) {
+                mSource.trimLine();
+                // purgeComment() drops it anyway, don't build the String
+                if (!collectCommentLine && mSource.lineStartsWith("//")) {
                     continue;
                 }
-                String codeLine = null;
-                codeLine = purgeComment(tempString);
+            }
+            if (mSource.isLineEmpty()) {
+                continue;
+            }
+            String tempString = mSource.getLine();
+            String codeLine = null;
+            codeLine = purgeComment(tempString);
+            if (codeLine.length() == 0) {
+                if (collectCommentLine) {
+                    mPendingComment.add(tempString);
+                }
+                continue;
+            }
+            if (!mCommentNotCompleted) {
+                codeLine = purgeAnnotation(codeLine);
                 if (codeLine.length() == 0) {
-                    if (collectCommentLine) {
-                        mPendingComment.add(tempString);
-                    }
                     continue;
                 }
-                if (!mCommentNotCompleted) {
-                    codeLine = purgeAnnotation(codeLine);
-                    if (codeLine.length() == 0) {
-                        continue;
-                    }
-                }
-                return codeLine;
             }
-        } catch (IOException e) {
-            e.printStackTrace();
+            Metrics.recordCodeLine(codeLine.length());
+            return codeLine;
         }
         return "#_#";
     }
@@ -239,27 +285,76 @@ public final class JavaReader implements CodeLineReader {
     }
     
     public JavaFile read(File file) {
+        return read(file, null);
+    }
+    
+    /**
+     * If lazy, the bodies of methods and code blocks are only split into code lines while
+     * reading, the statement parse runs on the first call of
+     * {@link JavaCodeParagraph#getParsedCode()} or {@link JavaFile#parseLazyCode()}. For
+     * passes which only need declarations.
+     */
+    void setLazyCodeParsing(boolean lazy) {
+        mLazyCodeParsing = lazy;
+    }
+    
+    /**
+     * If set while lazy, the bodies which change the declarations of their class are still
+     * parsed as soon as they are read, against the members declared above them like an
+     * eager read: the bodies of methods returning an object, which can make the return an
+     * sp<>, and the bodies declaring an anonymous class.
+     */
+    void setDeclaringCodeParsing(boolean parse) {
+        mDeclaringCodeParsing = parse;
+    }
+    
+    // a brace right behind ")" opens an anonymous class for the code parser unless a
+    // keyword opened it, this may find a few more than the code parser does
+    private static final Pattern sAnonymousBrancePattern = Pattern.compile("\\)\\s*\\{");
+    private static final Pattern sKeywordBrancePattern = Pattern.compile(
+            "^(\\}\\s*)?(else\\s+)?(if|for|while|switch|catch|synchronized)\\b");
+    
+    private static boolean isDeclaringCode(JavaStatement statement, ArrayList<String> codeLines) {
+        if (statement.type == JavaStatement.TYPE_METHOD
+                && ((JavaMethod) statement).isReturningObject()) {
+            return true;
+        }
+        for (int i = 0; i < codeLines.size(); i++) {
+            String line = codeLines.get(i).trim();
+            String opening = null;
+            if (line.indexOf(')') >= 0 && sAnonymousBrancePattern.matcher(line).find()) {
+                opening = line;
+            } else if (line.startsWith("{") && i > 0 && codeLines.get(i - 1).trim().endsWith(")")) {
+                opening = codeLines.get(i - 1).trim();
+            }
+            if (opening != null && !sKeywordBrancePattern.matcher(opening).find()) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Same as {@link #read(File)}, but if listener is not null every top level class of a
+     * java file goes to it as soon as it is parsed and is not kept by the returned
+     * JavaFile, so only one class of the file is in memory at a time. A class itself, with
+     * everything nested in it, is held as a whole, the bodies read lazily only as their
+     * lines until the listener parses them. Aidl files are always read as a whole.
+     */
+    public JavaFile read(File file, ClassListener listener) {
         String fileName = file.getName();
         
         if (!fileName.endsWith(".java") && !fileName.endsWith(".aidl")) {
             return null;
         }
-        mLine = 0;
-        mCommentNotCompleted = false;
-        mPendingComment.clear();
-        mAnnotationAnchor = 0;
-        mIsAIDLMode = fileName.endsWith(".aidl");
-        mDidProgressingDebug = false;
-        mLastProgressingPrintMillis = System.currentTimeMillis() + 251;
-        
-        try {
-            mReader = new BufferedReader(new FileReader(file));
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        int previousPhase = Metrics.enter(Metrics.PHASE_READ);
+        open(file);
+        Metrics.enter(Metrics.PHASE_CLASS_PARSE);
         JavaFile javaFile = new JavaFile();
         javaFile.path = file.getAbsolutePath();
         javaFile.isAidl = mIsAIDLMode;
+        mLazyCodeParagraphs = mLazyCodeParsing ? new ArrayList<JavaCodeParagraph>() : null;
+        javaFile.lazyCodeParagraphs = mLazyCodeParagraphs;
         
         String line = null;
         do {
@@ -302,6 +397,10 @@ public final class JavaReader implements CodeLineReader {
                 break;
             }
             clazz.packageName = javaFile.packageName;
+            if (listener != null && !mIsAIDLMode) {
+                listener.onClassRead(javaFile, clazz);
+                continue;
+            }
             if (clazz.accessLevel == JavaStatement.LEVEL_PUBLIC) {
                 javaFile.primeClass = clazz;
             } else {
@@ -317,22 +416,62 @@ public final class JavaReader implements CodeLineReader {
             javaFile.otherClass.remove(0);
         }
         
-        if (mReader != null) {
-            try {
-                mReader.close();
-                mReader = null;
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        }
+        close();
+        Metrics.exit(previousPhase);
         
         if (mDidProgressingDebug) {
-            System.out.println();
+            mLog.println();
         }
         
         return javaFile;
     }
     
+    /**
+     * Runs only the line level work of {@link #read(File)} over file: comments and
+     * annotations are purged and every code line goes through a LineParser, no
+     * statement is built. Returns the number of code lines, used by Benchmark.
+     */
+    int scanLines(File file) {
+        open(file);
+        int count = 0;
+        String line;
+        while (!"#_#".equals(line = nextLine(true, true))) {
+            LineParser lineParser = LineParser.obtain(line);
+            lineParser.nextSemicolon();
+            lineParser.nextLeftBrance();
+            lineParser.nextRightBrance();
+            lineParser.recycle();
+            mPendingComment.clear();
+            count++;
+        }
+        close();
+        return count;
+    }
+    
+    private void open(File file) {
+        close();
+        mLine = 0;
+        mCommentNotCompleted = false;
+        mPendingComment.clear();
+        mAnnotationAnchor = 0;
+        mIsAIDLMode = file.getName().endsWith(".aidl");
+        mDidProgressingDebug = false;
+        mLastProgressingPrintMillis = System.currentTimeMillis() + 251;
+        // A worker reuses its reader for many files, don't let a file which failed
+        // half way through a code paragraph break the next one.
+        mJavaCodeReader = new JavaCodeReader();
+        
+        try {
+            mSource.load(file);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+    
+    private void close() {
+        mSource.clear();
+    }
+    
     public JavaFile read(String filePath) {
         if (filePath == null) {
             return null;
@@ -565,6 +704,11 @@ public final class JavaReader implements CodeLineReader {
             boolean doCodeProcessing = current.type == JavaStatement.TYPE_METHOD || 
                     current.type == JavaStatement.TYPE_CODE_BLOCK;
             boolean doTrim = doCodeProcessing;
+            ArrayList<String> unparsedCode = null;
+            if (doCodeProcessing && mLazyCodeParagraphs != null) {
+                unparsedCode = new ArrayList<>();
+                doCodeProcessing = false;
+            }
             
             boolean firstTime = true;
             Pattern firstCharPa = Pattern.compile("\\w");
@@ -628,7 +772,9 @@ public final class JavaReader implements CodeLineReader {
                     }
                 }
                 if (currentLine.length() > 0) {
-                    if (doCodeProcessing && !codeProcessingAborted) {
+                    if (unparsedCode != null) {
+                        unparsedCode.add(currentLine);
+                    } else if (doCodeProcessing && !codeProcessingAborted) {
                         if (Core.DEBUG_MODE) {
                             mJavaCodeReader.processCodeLine(currentLine);
                         } else {
@@ -645,7 +791,14 @@ public final class JavaReader implements CodeLineReader {
                 }
             } while (branceAnchor > 0);
             
-            if (doCodeProcessing) {
+            if (unparsedCode != null) {
+                ((JavaCodeParagraph) paragraph).unparsedCode = unparsedCode;
+                if (mDeclaringCodeParsing && isDeclaringCode(current, unparsedCode)) {
+                    ((JavaCodeParagraph) paragraph).getParsedCode();
+                } else {
+                    mLazyCodeParagraphs.add((JavaCodeParagraph) paragraph);
+                }
+            } else if (doCodeProcessing) {
                 JavaCodeReader.CodeParagraph parsedParagraph = null;
                 if (Core.DEBUG_MODE) {
                     parsedParagraph = mJavaCodeReader.finish();
@@ -1093,14 +1246,15 @@ public final class JavaReader implements CodeLineReader {
     }
 
     private String purgeComment(final String line) {
-        Matcher commentMatcherL = sDashPatternL.matcher(line);
-        Matcher commentMatcherR = sDashPatternR.matcher(line);
-        Matcher commentMatcherC = sDashPatternC.matcher(line);
-        StringBuffer sb = null;
+        // where to look for the next "/*" and "*/", -1 once there is no more "*/"
+        int nextDashL = 0;
+        int nextDashR = 0;
+        StringBuilder sb = null;
         int start = 0;
         int end = line.length();
-        if (commentMatcherC.find()) {
-            end = commentMatcherC.start();
+        int dashC = line.indexOf("//");
+        if (dashC >= 0) {
+            end = dashC;
         }
         if (end == 0) {
             return "";
@@ -1111,8 +1265,8 @@ public final class JavaReader implements CodeLineReader {
         int lDashEnd;
         boolean dashStartFound = false;
         boolean dashEndFound = false;
-        outter: while (commentMatcherL.find()) {
-            lDashStart = commentMatcherL.start();
+        outter: while ((lDashStart = line.indexOf("/*", nextDashL)) >= 0) {
+            nextDashL = lDashStart + 2;
             if (lDashStart >= end) {
                 break;
             }
@@ -1125,8 +1279,13 @@ public final class JavaReader implements CodeLineReader {
             clipEnd = lDashStart;
             lDashEnd = lDashStart;
             
-            inner: while (commentMatcherR.find()) {
-                int tempDashEnd = commentMatcherR.end();
+            inner: while (nextDashR >= 0) {
+                int rDashStart = line.indexOf("*/", nextDashR);
+                if (rDashStart < 0) {
+                    nextDashR = -1;
+                    break inner;
+                }
+                int tempDashEnd = nextDashR = rDashStart + 2;
                 
                 if (tempDashEnd > lDashStart) {
                     if (mCommentNotCompleted) {
@@ -1146,9 +1305,9 @@ public final class JavaReader implements CodeLineReader {
             
             if (clipEnd > clipStart && !mCommentNotCompleted) {
                 if (sb == null) {
-                    sb = new StringBuffer();
+                    sb = new StringBuilder();
                 }
-                sb.append(line.substring(clipStart, clipEnd));
+                sb.append(line, clipStart, clipEnd);
             }
             
             clipStart = lDashEnd;
@@ -1157,8 +1316,9 @@ public final class JavaReader implements CodeLineReader {
         if (!dashStartFound) {
             // dash start '/*' missing...
             if (mCommentNotCompleted) {
-                while (commentMatcherR.find()) {
-                    start = commentMatcherR.end();
+                int rDashStart;
+                while (nextDashR >= 0 && (rDashStart = line.indexOf("*/", nextDashR)) >= 0) {
+                    start = nextDashR = rDashStart + 2;
                     mCommentNotCompleted = false;
                 }
             }
@@ -1167,9 +1327,9 @@ public final class JavaReader implements CodeLineReader {
             }
         } else if (dashEndFound) {
             if (sb == null) {
-                sb = new StringBuffer();
+                sb = new StringBuilder();
             }
-            sb.append(line.substring(clipStart, end));
+            sb.append(line, clipStart, end);
             mCommentNotCompleted = false;
         } else {
             end = clipEnd;
@@ -1203,24 +1363,29 @@ public final class JavaReader implements CodeLineReader {
         if (!line.contains("@")) {
             return line;
         }
-        Matcher annoMatcher = sAnnoPattern.matcher(line);
         int clipStart = 0;
         int clipEnd = line.length();
-        StringBuffer buffer = null;
-        while (annoMatcher.find()) {
-            int annoStart = annoMatcher.start();
-            int annoEnd = annoMatcher.end();
-            String currentMatch = annoMatcher.group();
-            if ("@interface ".equals(currentMatch)) {
+        StringBuilder buffer = null;
+        int annoStart;
+        int nextAnno = 0;
+        while ((annoStart = line.indexOf('@', nextAnno)) >= 0) {
+            int annoEnd = matchAnnotation(line, annoStart);
+            if (annoEnd < 0) {
+                nextAnno = annoStart + 1;
                 continue;
-            } else if ("@Override".equals(currentMatch)) {
+            }
+            nextAnno = annoEnd;
+            int matchLength = annoEnd - annoStart;
+            if (matchLength == 11 && line.startsWith("@interface ", annoStart)) {
+                continue;
+            } else if (matchLength == 9 && line.startsWith("@Override", annoStart)) {
                 continue;
             }
             if (annoStart > clipStart) {
                 if (buffer == null) {
-                    buffer = new StringBuffer();
+                    buffer = new StringBuilder();
                 }
-                buffer.append(line.substring(clipStart, annoStart));
+                buffer.append(line, clipStart, annoStart);
             }
             
             if (mAnnotationAnchor == 0 && annoEnd < line.length()) {
@@ -1251,12 +1416,12 @@ public final class JavaReader implements CodeLineReader {
         if (buffer == null) {
             return line.substring(clipStart, clipEnd);
         } else {
-            buffer.append(line.substring(clipStart, clipEnd));
+            buffer.append(line, clipStart, clipEnd);
             return buffer.toString();
         }
     }
     
-    static class JavaParagraph {
+    static class JavaParagraph implements ModelCache.Model {
         
         static final int TYPE_CLASS = 0;
         static final int TYPE_STATIC = 1;
@@ -1307,6 +1472,48 @@ public final class JavaReader implements CodeLineReader {
         }
     }
 
+    /**
+     * Name index over one statement list of a ClassParagraph. The lists only ever grow at
+     * their end, no matter who adds to them, so a lookup first indexes the statements
+     * added since the previous one. What a lookup sees is exactly what a scan of the
+     * list would see at that moment, statements declared further down included only
+     * once they are read. The index is not saved with the model, it is built again.
+     */
+    static final class SymbolTable<T extends JavaStatement> implements ModelCache.Model {
+        private transient HashMap<String, ArrayList<T>> mByName;
+        private transient ArrayList<T> mIndexedList;
+        private transient int mIndexedCount;
+        
+        /**
+         * Returns the statements of list named name in list order, or null.
+         */
+        ArrayList<T> find(ArrayList<T> list, String name) {
+            if (list == null) {
+                return null;
+            }
+            if (list != mIndexedList || list.size() < mIndexedCount) {
+                mByName = new HashMap<>();
+                mIndexedList = list;
+                mIndexedCount = 0;
+            }
+            while (mIndexedCount < list.size()) {
+                T statement = list.get(mIndexedCount++);
+                ArrayList<T> sameName = mByName.get(statement.name);
+                if (sameName == null) {
+                    sameName = new ArrayList<>(1);
+                    mByName.put(statement.name, sameName);
+                }
+                sameName.add(statement);
+            }
+            return mByName.get(name);
+        }
+        
+        T findFirst(ArrayList<T> list, String name) {
+            ArrayList<T> found = find(list, name);
+            return found != null ? found.get(0) : null;
+        }
+    }
+
     static class ClassParagraph extends JavaParagraph {
         ArrayList<JavaField> staticFields;
         ArrayList<JavaField> fields;
@@ -1323,6 +1530,28 @@ public final class JavaReader implements CodeLineReader {
         
         ArrayList<Enumeration> enumerations;
         
+        // identifier lookups of the code parser, shared by every method of the class
+        private final SymbolTable<JavaField> staticFieldTable = new SymbolTable<>();
+        private final SymbolTable<JavaField> fieldTable = new SymbolTable<>();
+        private final SymbolTable<JavaMethod> staticMethodTable = new SymbolTable<>();
+        private final SymbolTable<JavaMethod> methodTable = new SymbolTable<>();
+        
+        JavaField findStaticField(String name) {
+            return staticFieldTable.findFirst(staticFields, name);
+        }
+        
+        JavaField findField(String name) {
+            return fieldTable.findFirst(fields, name);
+        }
+        
+        ArrayList<JavaMethod> findStaticMethods(String name) {
+            return staticMethodTable.find(staticMethods, name);
+        }
+        
+        ArrayList<JavaMethod> findMethods(String name) {
+            return methodTable.find(methods, name);
+        }
+        
         @Override
         void addStatement(JavaStatement statement) {
             if (statement != null) {
@@ -1450,6 +1679,8 @@ public final class JavaReader implements CodeLineReader {
         ArrayList<String> codeByOrder;
         HashMap<Integer, JavaParagraph> paragraphByLine;
         JavaCodeReader.CodeParagraph innerCodeParagraph;
+        // code lines of a body read lazily, see JavaReader.setLazyCodeParsing()
+        ArrayList<String> unparsedCode;
         
         void addStatement(JavaStatement statement) {
             // illegal call
@@ -1458,6 +1689,18 @@ public final class JavaReader implements CodeLineReader {
         public void setParsedCode(JavaCodeReader.CodeParagraph parsedParagraph) {
             innerCodeParagraph = parsedParagraph;
         }
+        
+        /**
+         * The parsed body, which is parsed right now if it was read lazily.
+         */
+        JavaCodeReader.CodeParagraph getParsedCode() {
+            if (unparsedCode != null) {
+                ArrayList<String> codeLines = unparsedCode;
+                unparsedCode = null;
+                innerCodeParagraph = JavaCodeReader.parse(this, codeLines);
+            }
+            return innerCodeParagraph;
+        }
 
         void addCode(int line, String code) {
             if (codeByLine == null) {
@@ -1493,7 +1736,7 @@ public final class JavaReader implements CodeLineReader {
         }
     }
 
-    static class JavaStatement {
+    static class JavaStatement implements ModelCache.Model {
         
         static final int TYPE_CLASS = 0;
         static final int TYPE_FIELD = 1;
@@ -1643,37 +1886,8 @@ public final class JavaReader implements CodeLineReader {
             return false;
         }
         
-        static final ArrayList<String> sSetObjList = new ArrayList<>();
-        static {
-            sSetObjList.add("ArrayList");
-            sSetObjList.add("LinkedList");
-            sSetObjList.add("List");
-            
-            sSetObjList.add("HashMap");
-            sSetObjList.add("ArrayMap");
-            sSetObjList.add("HashTable");
-            sSetObjList.add("Map");
-            
-            sSetObjList.add("HashSet");
-            sSetObjList.add("Set");
-            
-            sSetObjList.add("Collection");
-            
-            sSetObjList.add("SparseArray");
-            sSetObjList.add("ArrayMap");
-            
-            sSetObjList.add("Parcel");
-            sSetObjList.add("StringBuffer");
-            sSetObjList.add("StringBuilder");
-        }
-        
         static boolean isDataStructureClass(String type) {
-            if (type.contains("<")) {
-                int index = type.indexOf("<");
-                String strBefore = type.substring(0, index);
-                return sSetObjList.contains(strBefore);
-            }
-            return sSetObjList.contains(type);
+            return TypeRegistry.get().isContainerClass(type);
         }
         
         boolean isAtomType;
@@ -1746,6 +1960,15 @@ public final class JavaReader implements CodeLineReader {
             type = TYPE_METHOD;
         }
         
+        /**
+         * Whether the return may come out a pointer or an sp<>, see suggestIsSp.
+         */
+        boolean isReturningObject() {
+            return returnType != null && !"void".equals(returnType) && !returnType.endsWith("[]")
+                    && !JavaField.isAtomType(returnType) && !"String".equals(returnType)
+                    && !JavaField.isDataStructureClass(returnType);
+        }
+        
         @Override
         public String toString() {
             StringBuffer buffer = new StringBuffer("Method [");
@@ -1812,7 +2035,7 @@ public final class JavaReader implements CodeLineReader {
         }
     }
 
-    public static class JavaFile {
+    public static class JavaFile implements ModelCache.Model {
         String path;
         String packageName;
         ArrayList<Boolean> isImportStatic;
@@ -1824,6 +2047,23 @@ public final class JavaReader implements CodeLineReader {
         Clazz primeClass;
         ArrayList<Clazz> otherClass;// maybe null
         
+        // bodies read lazily, in the order they were read, null if the file was not
+        ArrayList<JavaCodeParagraph> lazyCodeParagraphs;
+        
+        /**
+         * Parses every body which was read lazily and not parsed yet, in the order an
+         * eager read would have parsed them. The writer needs all of them before it
+         * translates a class, since parsing a body can add anonymous classes to it.
+         */
+        void parseLazyCode() {
+            if (lazyCodeParagraphs != null) {
+                for (int i = 0; i < lazyCodeParagraphs.size(); i++) {
+                    lazyCodeParagraphs.get(i).getParsedCode();
+                }
+                lazyCodeParagraphs.clear();
+            }
+        }
+        
         @Override
         public String toString() {
             StringBuffer fileBuffer = new StringBuffer((isAidl ? "AIDL file [" : "JavaFile [") +
@@ -0,0 +1,376 @@
+package com.android.cplusplus;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Locale;
+
+/**
+ * Time and allocation of every translation phase per file, plus histograms of the
+ * statement recursive depth and of the code line length, written as a JSON or CSV
+ * report at the end of a run, or after every job of the daemon and the watcher. Turned
+ * on with "-metrics <file>".
+ * <p>
+ * A worker switches its file record from phase to phase, so the time and bytes of a
+ * nested phase, the code parse inside the class parse for example, are only charged
+ * to the nested one. While metrics are off every hook is a check of sEnabled.
+ */
+final class Metrics {
+
+    static final int PHASE_READ = 0;
+    static final int PHASE_CLASS_PARSE = 1;
+    static final int PHASE_CODE_PARSE = 2;
+    static final int PHASE_TYPE_MAPPING = 3;
+    static final int PHASE_WRITE = 4;
+    static final int PHASE_COUNT = 5;
+
+    private static final String[] PHASE_NAMES = {
+        "read", "classParse", "codeParse", "typeMapping", "write"
+    };
+
+    static boolean sEnabled;
+
+    private static final ThreadMXBean sThreadBean = ManagementFactory.getThreadMXBean();
+
+    private static final ArrayList<FileRecord> sRecords = new ArrayList<>();
+    private static final Histogram sStatementDepth = new Histogram(1, 64);
+    private static final Histogram sLineLength = new Histogram(10, 30);
+
+    static class Histogram {
+        final int bucketWidth;
+        final long[] counts;
+        long count;
+        long sum;
+        int max;
+
+        Histogram(int bucketWidth, int bucketCount) {
+            this.bucketWidth = bucketWidth;
+            this.counts = new long[bucketCount];
+        }
+
+        void add(int value) {
+            // the last bucket takes everything beyond the others
+            counts[Math.min(value / bucketWidth, counts.length - 1)]++;
+            count++;
+            sum += value;
+            max = Math.max(max, value);
+        }
+
+        synchronized void merge(Histogram other) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += other.counts[i];
+            }
+            count += other.count;
+            sum += other.sum;
+            max = Math.max(max, other.max);
+        }
+
+        synchronized void clear() {
+            Arrays.fill(counts, 0);
+            count = 0;
+            sum = 0;
+            max = 0;
+        }
+    }
+
+    static class FileRecord {
+        final String path;
+        final long[] nanos = new long[PHASE_COUNT];
+        final long[] bytes = new long[PHASE_COUNT];
+        boolean failed;
+        int codeLines;
+        int statements;
+
+        private Histogram statementDepth = new Histogram(1, 64);
+        private Histogram lineLength = new Histogram(10, 30);
+        private int phase = -1;
+        private long phaseStartNanos;
+        private long phaseStartBytes;
+
+        FileRecord(String path) {
+            this.path = path;
+        }
+
+        long getTotalNanos() {
+            long total = 0;
+            for (int i = 0; i < PHASE_COUNT; i++) {
+                total += nanos[i];
+            }
+            return total;
+        }
+
+        int switchTo(int newPhase) {
+            int previous = phase;
+            if (newPhase == previous) {
+                return previous;
+            }
+            long now = System.nanoTime();
+            long allocated = getAllocatedBytes();
+            if (previous >= 0) {
+                nanos[previous] += now - phaseStartNanos;
+                bytes[previous] += allocated - phaseStartBytes;
+            }
+            phase = newPhase;
+            phaseStartNanos = now;
+            phaseStartBytes = allocated;
+            return previous;
+        }
+    }
+
+    private Metrics() {
+    }
+
+    /**
+     * Bytes allocated by the current thread so far, -1 if the VM can not tell.
+     */
+    static long getAllocatedBytes() {
+        if (sThreadBean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) sThreadBean;
+            if (bean.isThreadAllocatedMemorySupported()) {
+                return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Starts recording file on the calling worker, does nothing while metrics are off.
+     */
+    static void begin(File file) {
+        if (sEnabled) {
+            TranslationContext.get().metrics = new FileRecord(file.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Switches the file being recorded on the calling worker to phase and returns the
+     * phase to hand to {@link #exit(int)} afterwards.
+     */
+    static int enter(int phase) {
+        if (!sEnabled) {
+            return -1;
+        }
+        FileRecord record = TranslationContext.get().metrics;
+        return record != null ? record.switchTo(phase) : -1;
+    }
+
+    static void exit(int previousPhase) {
+        if (sEnabled) {
+            FileRecord record = TranslationContext.get().metrics;
+            if (record != null) {
+                record.switchTo(previousPhase);
+            }
+        }
+    }
+
+    static void recordCodeLine(int length) {
+        if (sEnabled) {
+            FileRecord record = TranslationContext.get().metrics;
+            if (record != null) {
+                record.codeLines++;
+                record.lineLength.add(length);
+            }
+        }
+    }
+
+    static void recordStatement(TranslationContext context, int recursiveDepth) {
+        if (sEnabled && context.metrics != null) {
+            context.metrics.statements++;
+            context.metrics.statementDepth.add(recursiveDepth);
+        }
+    }
+
+    /**
+     * Stops recording on the calling worker and keeps the record for the report.
+     */
+    static void end(boolean failed) {
+        if (!sEnabled) {
+            return;
+        }
+        TranslationContext context = TranslationContext.get();
+        FileRecord record = context.metrics;
+        if (record == null) {
+            return;
+        }
+        context.metrics = null;
+        record.switchTo(-1);
+        record.failed = failed;
+        sStatementDepth.merge(record.statementDepth);
+        sLineLength.merge(record.lineLength);
+        record.statementDepth = null;
+        record.lineLength = null;
+        synchronized (sRecords) {
+            sRecords.add(record);
+        }
+    }
+
+    /**
+     * Forgets every record and histogram, so a process running many jobs reports each
+     * of them on its own instead of keeping all files it ever translated.
+     */
+    static void reset() {
+        synchronized (sRecords) {
+            sRecords.clear();
+        }
+        sStatementDepth.clear();
+        sLineLength.clear();
+    }
+
+    /**
+     * Writes every record, the slowest file first. A path ending with ".csv" gets one
+     * line per file, any other path gets a JSON report which also holds the phase
+     * totals and the histograms.
+     */
+    static void writeReport(File file) {
+        ArrayList<FileRecord> records;
+        synchronized (sRecords) {
+            records = new ArrayList<>(sRecords);
+        }
+        Collections.sort(records, new Comparator<FileRecord>() {
+            @Override
+            public int compare(FileRecord lhs, FileRecord rhs) {
+                long left = lhs.getTotalNanos();
+                long right = rhs.getTotalNanos();
+                if (left != right) {
+                    return left > right ? -1 : 1;
+                }
+                return lhs.path.compareTo(rhs.path);
+            }
+        });
+        PrintWriter out = null;
+        try {
+            out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file),
+                    StandardCharsets.UTF_8));
+            if (file.getName().endsWith(".csv")) {
+                writeCsv(out, records);
+            } else {
+                writeJson(out, records);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            if (out != null) {
+                out.close();
+            }
+        }
+    }
+
+    private static void writeCsv(PrintWriter out, ArrayList<FileRecord> records) {
+        StringBuilder line = new StringBuilder("path,failed,totalMs,codeLines,statements");
+        for (int i = 0; i < PHASE_COUNT; i++) {
+            line.append(',').append(PHASE_NAMES[i]).append("Ms");
+        }
+        for (int i = 0; i < PHASE_COUNT; i++) {
+            line.append(',').append(PHASE_NAMES[i]).append("Bytes");
+        }
+        out.println(line);
+        for (int i = 0; i < records.size(); i++) {
+            FileRecord record = records.get(i);
+            line.setLength(0);
+            line.append('"').append(record.path.replace("\"", "\"\"")).append('"');
+            line.append(',').append(record.failed);
+            line.append(',').append(toMillis(record.getTotalNanos()));
+            line.append(',').append(record.codeLines);
+            line.append(',').append(record.statements);
+            for (int j = 0; j < PHASE_COUNT; j++) {
+                line.append(',').append(toMillis(record.nanos[j]));
+            }
+            for (int j = 0; j < PHASE_COUNT; j++) {
+                line.append(',').append(record.bytes[j]);
+            }
+            out.println(line);
+        }
+    }
+
+    private static void writeJson(PrintWriter out, ArrayList<FileRecord> records) {
+        long[] totalNanos = new long[PHASE_COUNT];
+        long[] totalBytes = new long[PHASE_COUNT];
+        int failed = 0;
+        for (int i = 0; i < records.size(); i++) {
+            FileRecord record = records.get(i);
+            for (int j = 0; j < PHASE_COUNT; j++) {
+                totalNanos[j] += record.nanos[j];
+                totalBytes[j] += record.bytes[j];
+            }
+            if (record.failed) {
+                failed++;
+            }
+        }
+        out.println("{");
+        out.println("  \"files\": " + records.size() + ",");
+        out.println("  \"failed\": " + failed + ",");
+        out.println("  \"phases\": {");
+        for (int i = 0; i < PHASE_COUNT; i++) {
+            out.println("    \"" + PHASE_NAMES[i] + "\": {\"ms\": " + toMillis(totalNanos[i])
+                    + ", \"bytes\": " + totalBytes[i] + "}" + (i < PHASE_COUNT - 1 ? "," : ""));
+        }
+        out.println("  },");
+        out.println("  \"statementDepth\": " + toJson(sStatementDepth) + ",");
+        out.println("  \"lineLength\": " + toJson(sLineLength) + ",");
+        out.println("  \"fileRecords\": [");
+        for (int i = 0; i < records.size(); i++) {
+            FileRecord record = records.get(i);
+            StringBuilder line = new StringBuilder("    {\"path\": \"");
+            escape(record.path, line);
+            line.append("\", \"failed\": ").append(record.failed);
+            line.append(", \"totalMs\": ").append(toMillis(record.getTotalNanos()));
+            line.append(", \"codeLines\": ").append(record.codeLines);
+            line.append(", \"statements\": ").append(record.statements);
+            for (int j = 0; j < PHASE_COUNT; j++) {
+                line.append(", \"").append(PHASE_NAMES[j]).append("Ms\": ")
+                        .append(toMillis(record.nanos[j]));
+            }
+            for (int j = 0; j < PHASE_COUNT; j++) {
+                line.append(", \"").append(PHASE_NAMES[j]).append("Bytes\": ")
+                        .append(record.bytes[j]);
+            }
+            line.append(i < records.size() - 1 ? "}," : "}");
+            out.println(line);
+        }
+        out.println("  ]");
+        out.println("}");
+    }
+
+    private static String toJson(Histogram histogram) {
+        synchronized (histogram) {
+            StringBuilder builder = new StringBuilder("{\"bucketWidth\": ");
+            builder.append(histogram.bucketWidth);
+            builder.append(", \"count\": ").append(histogram.count);
+            builder.append(", \"max\": ").append(histogram.max);
+            builder.append(", \"mean\": ").append(histogram.count > 0
+                    ? (double) histogram.sum / histogram.count : 0);
+            builder.append(", \"counts\": [");
+            for (int i = 0; i < histogram.counts.length; i++) {
+                builder.append(i > 0 ? ", " : "").append(histogram.counts[i]);
+            }
+            builder.append("]}");
+            return builder.toString();
+        }
+    }
+
+    private static void escape(String value, StringBuilder out) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < ' ') {
+                out.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+            } else {
+                out.append(c);
+            }
+        }
+    }
+
+    private static String toMillis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1000000.0);
+    }
+}
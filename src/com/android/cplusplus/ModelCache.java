@@ -0,0 +1,616 @@
+package com.android.cplusplus;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.android.cplusplus.JavaReader.JavaFile;
+
+/**
+ * Keeps the JavaFile read from every source file, so that a run after a change of the
+ * writer loads the models instead of parsing the sources again. Turned on with
+ * "-models".
+ * <p>
+ * A model is keyed by the content of its source, MODEL_VERSION, the lazy code parsing
+ * and the types added to the TypeRegistry, but not by the translator version: a
+ * writer change keeps every model. The model classes implement Model and their
+ * non transient fields are saved, in a binary form much faster to load than
+ * java serialization. Every class is saved with the names and types of its fields, a
+ * model saved by a reader whose classes changed since is read again. One file exists
+ * per source, all methods may be called from any worker. The daemon and the watcher keep
+ * the recently used models in memory too, see setMemoryLimit().
+ */
+final class ModelCache {
+
+    /**
+     * Marks a class of the model. It needs a constructor without arguments which leaves
+     * everything to the fields loaded, the format is versioned by MODEL_VERSION and the
+     * field layouts, not by java serialization.
+     */
+    interface Model {
+    }
+
+    private static final String MAGIC = "java2cpp-model 1";
+
+    /**
+     * Bump it whenever a change of the reader changes the model it builds but not the
+     * fields of its classes.
+     */
+    static final int MODEL_VERSION = 2;
+
+    private static final int TAG_NULL = 0;
+    private static final int TAG_REFERENCE = 1;
+    private static final int TAG_STRING = 2;
+    private static final int TAG_OBJECT = 3;
+    private static final int TAG_LIST = 4;
+    private static final int TAG_MAP = 5;
+    private static final int TAG_ARRAY = 6;
+    private static final int TAG_ENUM = 7;
+    private static final int TAG_INTEGER = 8;
+    private static final int TAG_BOOLEAN = 9;
+
+    private static final String MODEL_PACKAGE = ModelCache.class.getPackage().getName();
+
+    private static final ConcurrentHashMap<Class<?>, Layout> sLayouts = new ConcurrentHashMap<>();
+
+    /**
+     * What the daemon and the watcher keep of the saved models in memory.
+     */
+    static final long MEMORY_LIMIT = 64L << 20;
+
+    private final File mDirectory;
+    // absolute path of the source -> its saved model, the least recently used first,
+    // guarded by itself
+    private final LinkedHashMap<String, byte[]> mMemory = new LinkedHashMap<>(16, 0.75f, true);
+    private long mMemoryBytes;
+    private long mMemoryLimit;
+
+    ModelCache(File cacheDir) {
+        mDirectory = new File(cacheDir, "models");
+    }
+
+    /**
+     * Keeps up to bytes of the saved models in memory, so a process translating the
+     * same sources again does not read them from disk. The writer changes the model it
+     * gets, so what is kept is the saved form and every load still decodes it.
+     */
+    void setMemoryLimit(long bytes) {
+        synchronized (mMemory) {
+            mMemoryLimit = bytes;
+            trimMemory();
+        }
+    }
+
+    static String hash(File source, boolean lazy) {
+        return BuildCache.hash(source, "model:" + MODEL_VERSION + ":" + (lazy ? "lazy:" : "")
+                + TypeRegistry.get().getExtraTypes());
+    }
+
+    /**
+     * Returns the model saved for source under hash, null if there is none or it can
+     * not be used.
+     */
+    JavaFile load(File source, String hash) {
+        if (hash == null) {
+            return null;
+        }
+        String path = source.getAbsolutePath();
+        try {
+            byte[] bytes;
+            synchronized (mMemory) {
+                bytes = mMemory.get(path);
+            }
+            if (bytes == null) {
+                File file = getFile(source);
+                if (!file.isFile()) {
+                    return null;
+                }
+                bytes = readFully(file);
+                keepInMemory(path, bytes);
+            }
+            ModelInput in = new ModelInput(bytes);
+            if (!MAGIC.equals(in.readString()) || !source.getAbsolutePath().equals(in.readString())
+                    || !hash.equals(in.readString())) {
+                return null;
+            }
+            return (JavaFile) in.readValue();
+        } catch (IOException | RuntimeException e) {
+            // a stale or broken model only costs a read of the source
+            return null;
+        }
+    }
+
+    /**
+     * Saves javaFile as the model of source, must be called before the writer touches it.
+     */
+    void save(File source, String hash, JavaFile javaFile) {
+        if (hash == null || (!mDirectory.exists() && !mDirectory.mkdirs() && !mDirectory.exists())) {
+            return;
+        }
+        ModelOutput out = new ModelOutput();
+        try {
+            out.writeString(MAGIC);
+            out.writeString(source.getAbsolutePath());
+            out.writeString(hash);
+            out.writeValue(javaFile);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        keepInMemory(source.getAbsolutePath(), Arrays.copyOf(out.mBuffer, out.mCount));
+        File file = getFile(source);
+        File tmpFile = new File(file.getPath() + ".tmp");
+        OutputStream stream = null;
+        try {
+            stream = new FileOutputStream(tmpFile);
+            stream.write(out.mBuffer, 0, out.mCount);
+        } catch (IOException e) {
+            e.printStackTrace();
+            tmpFile.delete();
+            return;
+        } finally {
+            if (stream != null) {
+                try {
+                    stream.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+        if (file.exists()) {
+            file.delete();
+        }
+        tmpFile.renameTo(file);
+    }
+
+    private void keepInMemory(String path, byte[] bytes) {
+        synchronized (mMemory) {
+            byte[] previous = mMemory.remove(path);
+            if (previous != null) {
+                mMemoryBytes -= previous.length;
+            }
+            if (bytes.length <= mMemoryLimit) {
+                mMemory.put(path, bytes);
+                mMemoryBytes += bytes.length;
+                trimMemory();
+            }
+        }
+    }
+
+    // guarded by mMemory
+    private void trimMemory() {
+        Iterator<byte[]> iterator = mMemory.values().iterator();
+        while (mMemoryBytes > mMemoryLimit && iterator.hasNext()) {
+            mMemoryBytes -= iterator.next().length;
+            iterator.remove();
+        }
+    }
+
+    private File getFile(File source) {
+        return new File(mDirectory, Integer.toHexString(source.getAbsolutePath().hashCode())
+                + ".model");
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] bytes = new byte[(int) file.length()];
+            int count = 0;
+            int read;
+            while (count < bytes.length && (read = in.read(bytes, count, bytes.length - count)) > 0) {
+                count += read;
+            }
+            if (count != bytes.length) {
+                throw new IOException("Truncated model:" + file);
+            }
+            return bytes;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static Layout getLayout(Class<?> type) throws IOException {
+        Layout layout = sLayouts.get(type);
+        if (layout == null) {
+            if (!Model.class.isAssignableFrom(type)
+                    || !type.getName().startsWith(MODEL_PACKAGE)) {
+                throw new IOException("Not a model class:" + type.getName());
+            }
+            layout = new Layout(type);
+            Layout previous = sLayouts.putIfAbsent(type, layout);
+            if (previous != null) {
+                layout = previous;
+            }
+        }
+        return layout;
+    }
+
+    /**
+     * The saved fields of a model class, those of its super classes first.
+     */
+    private static final class Layout {
+        final Class<?> type;
+        final Field[] fields;
+        final String signature;
+        private final Constructor<?> mConstructor;
+
+        Layout(Class<?> type) throws IOException {
+            this.type = type;
+            ArrayList<Class<?>> hierarchy = new ArrayList<>();
+            for (Class<?> clazz = type; clazz != Object.class; clazz = clazz.getSuperclass()) {
+                hierarchy.add(0, clazz);
+            }
+            ArrayList<Field> fields = new ArrayList<>();
+            StringBuilder signature = new StringBuilder();
+            for (int i = 0; i < hierarchy.size(); i++) {
+                Field[] declaredFields = hierarchy.get(i).getDeclaredFields();
+                // the order of getDeclaredFields() is not specified
+                Arrays.sort(declaredFields, new Comparator<Field>() {
+                    @Override
+                    public int compare(Field lhs, Field rhs) {
+                        return lhs.getName().compareTo(rhs.getName());
+                    }
+                });
+                for (Field field : declaredFields) {
+                    int modifiers = field.getModifiers();
+                    if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)) {
+                        continue;
+                    }
+                    field.setAccessible(true);
+                    fields.add(field);
+                    signature.append(field.getName()).append(' ')
+                            .append(field.getType().getName()).append(';');
+                }
+            }
+            this.fields = fields.toArray(new Field[fields.size()]);
+            this.signature = signature.toString();
+            try {
+                mConstructor = type.getDeclaredConstructor();
+                mConstructor.setAccessible(true);
+            } catch (NoSuchMethodException e) {
+                throw new IOException("Can not instantiate:" + type.getName(), e);
+            }
+        }
+
+        Object newInstance() throws IOException {
+            try {
+                return mConstructor.newInstance();
+            } catch (ReflectiveOperationException e) {
+                throw new IOException("Can not instantiate:" + type.getName(), e);
+            }
+        }
+    }
+
+    private static final class ModelOutput {
+        byte[] mBuffer = new byte[8192];
+        int mCount;
+        // every object written so far, a second occurrence is written as a reference
+        private final IdentityHashMap<Object, Integer> mHandles = new IdentityHashMap<>();
+        private final HashMap<Class<?>, Integer> mClasses = new HashMap<>();
+        private final HashMap<String, Integer> mStrings = new HashMap<>();
+
+        void writeValue(Object value) throws IOException {
+            if (value == null) {
+                writeByte(TAG_NULL);
+                return;
+            }
+            if (value instanceof Integer) {
+                writeByte(TAG_INTEGER);
+                writeInt((Integer) value);
+                return;
+            }
+            if (value instanceof Boolean) {
+                writeByte(TAG_BOOLEAN);
+                writeByte((Boolean) value ? 1 : 0);
+                return;
+            }
+            if (value instanceof String) {
+                // equal strings are saved once and loaded as one
+                String string = (String) value;
+                Integer index = mStrings.get(string);
+                writeByte(TAG_STRING);
+                if (index != null) {
+                    writeInt(index);
+                } else {
+                    writeInt(mStrings.size());
+                    mStrings.put(string, mStrings.size());
+                    writeString(string);
+                }
+                return;
+            }
+            if (value instanceof Enum) {
+                Enum<?> enumValue = (Enum<?>) value;
+                writeByte(TAG_ENUM);
+                writeClass(enumValue.getDeclaringClass(), false);
+                writeInt(enumValue.ordinal());
+                return;
+            }
+            Integer handle = mHandles.get(value);
+            if (handle != null) {
+                writeByte(TAG_REFERENCE);
+                writeInt(handle);
+                return;
+            }
+            mHandles.put(value, mHandles.size());
+            Class<?> type = value.getClass();
+            if (type == ArrayList.class) {
+                ArrayList<?> list = (ArrayList<?>) value;
+                writeByte(TAG_LIST);
+                writeInt(list.size());
+                for (int i = 0; i < list.size(); i++) {
+                    writeValue(list.get(i));
+                }
+            } else if (type == HashMap.class) {
+                HashMap<?, ?> map = (HashMap<?, ?>) value;
+                writeByte(TAG_MAP);
+                writeInt(map.size());
+                // put back in the same order they end up iterated in the same order
+                for (Entry<?, ?> entry : map.entrySet()) {
+                    writeValue(entry.getKey());
+                    writeValue(entry.getValue());
+                }
+            } else if (type.isArray() && !type.getComponentType().isPrimitive()) {
+                Object[] array = (Object[]) value;
+                writeByte(TAG_ARRAY);
+                writeClass(type.getComponentType(), false);
+                writeInt(array.length);
+                for (int i = 0; i < array.length; i++) {
+                    writeValue(array[i]);
+                }
+            } else {
+                Layout layout = getLayout(type);
+                writeByte(TAG_OBJECT);
+                writeClass(type, true);
+                writeFields(value, layout);
+            }
+        }
+
+        private void writeFields(Object value, Layout layout) throws IOException {
+            try {
+                for (Field field : layout.fields) {
+                    Class<?> fieldType = field.getType();
+                    if (!fieldType.isPrimitive()) {
+                        writeValue(field.get(value));
+                    } else if (fieldType == boolean.class) {
+                        writeByte(field.getBoolean(value) ? 1 : 0);
+                    } else if (fieldType == int.class) {
+                        writeInt(field.getInt(value));
+                    } else if (fieldType == long.class) {
+                        writeLong(field.getLong(value));
+                    } else if (fieldType == char.class) {
+                        writeInt(field.getChar(value));
+                    } else if (fieldType == short.class || fieldType == byte.class) {
+                        writeInt(field.getInt(value));
+                    } else {
+                        writeLong(Double.doubleToRawLongBits(field.getDouble(value)));
+                    }
+                }
+            } catch (IllegalAccessException e) {
+                throw new IOException("Can not save:" + layout.type.getName(), e);
+            }
+        }
+
+        // a class is written by name once, then by its index
+        private void writeClass(Class<?> type, boolean withSignature) throws IOException {
+            Integer index = mClasses.get(type);
+            if (index != null) {
+                writeInt(index);
+                return;
+            }
+            index = mClasses.size();
+            mClasses.put(type, index);
+            writeInt(index);
+            writeString(type.getName());
+            if (withSignature) {
+                writeString(getLayout(type).signature);
+            }
+        }
+
+        void writeString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeInt(bytes.length);
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, mBuffer, mCount, bytes.length);
+            mCount += bytes.length;
+        }
+
+        void writeByte(int value) {
+            ensureCapacity(1);
+            mBuffer[mCount++] = (byte) value;
+        }
+
+        // seven bits per byte, small values are the common ones
+        void writeInt(int value) {
+            writeLong(value & 0xffffffffL);
+        }
+
+        void writeLong(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7fL) != 0) {
+                mBuffer[mCount++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            mBuffer[mCount++] = (byte) value;
+        }
+
+        private void ensureCapacity(int extra) {
+            if (mCount + extra > mBuffer.length) {
+                mBuffer = Arrays.copyOf(mBuffer, Math.max(mBuffer.length * 2, mCount + extra));
+            }
+        }
+    }
+
+    private static final class ModelInput {
+        private final byte[] mBuffer;
+        private int mPosition;
+        private final ArrayList<Object> mHandles = new ArrayList<>();
+        private final ArrayList<Class<?>> mClasses = new ArrayList<>();
+        private final ArrayList<String> mStrings = new ArrayList<>();
+
+        ModelInput(byte[] buffer) {
+            mBuffer = buffer;
+        }
+
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        Object readValue() throws IOException {
+            int tag = readByte();
+            switch (tag) {
+            case TAG_NULL:
+                return null;
+            case TAG_INTEGER:
+                return readInt();
+            case TAG_BOOLEAN:
+                return readByte() != 0;
+            case TAG_ENUM: {
+                Object[] constants = readClass(false).getEnumConstants();
+                return constants[readInt()];
+            }
+            case TAG_REFERENCE:
+                return mHandles.get(readInt());
+            case TAG_STRING: {
+                int index = readInt();
+                if (index < mStrings.size()) {
+                    return mStrings.get(index);
+                }
+                String value = readString();
+                mStrings.add(value);
+                return value;
+            }
+            case TAG_LIST: {
+                int size = readInt();
+                ArrayList list = new ArrayList(size);
+                mHandles.add(list);
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue());
+                }
+                return list;
+            }
+            case TAG_MAP: {
+                int size = readInt();
+                HashMap map = new HashMap();
+                mHandles.add(map);
+                for (int i = 0; i < size; i++) {
+                    Object key = readValue();
+                    map.put(key, readValue());
+                }
+                return map;
+            }
+            case TAG_ARRAY: {
+                Class<?> componentType = readClass(false);
+                Object[] array = (Object[]) Array.newInstance(componentType, readInt());
+                mHandles.add(array);
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = readValue();
+                }
+                return array;
+            }
+            case TAG_OBJECT: {
+                Layout layout = getLayout(readClass(true));
+                Object value = layout.newInstance();
+                // added before the fields are read, they may point back to it
+                mHandles.add(value);
+                readFields(value, layout);
+                return value;
+            }
+            default:
+                throw new IOException("Unknown tag:" + tag);
+            }
+        }
+
+        private void readFields(Object value, Layout layout) throws IOException {
+            try {
+                for (Field field : layout.fields) {
+                    Class<?> fieldType = field.getType();
+                    if (!fieldType.isPrimitive()) {
+                        field.set(value, readValue());
+                    } else if (fieldType == boolean.class) {
+                        field.setBoolean(value, readByte() != 0);
+                    } else if (fieldType == int.class) {
+                        field.setInt(value, readInt());
+                    } else if (fieldType == long.class) {
+                        field.setLong(value, readLong());
+                    } else if (fieldType == char.class) {
+                        field.setChar(value, (char) readInt());
+                    } else if (fieldType == short.class) {
+                        field.setShort(value, (short) readInt());
+                    } else if (fieldType == byte.class) {
+                        field.setByte(value, (byte) readInt());
+                    } else if (fieldType == float.class) {
+                        field.setFloat(value, (float) Double.longBitsToDouble(readLong()));
+                    } else {
+                        field.setDouble(value, Double.longBitsToDouble(readLong()));
+                    }
+                }
+            } catch (IllegalAccessException | IllegalArgumentException e) {
+                throw new IOException("Can not load:" + layout.type.getName(), e);
+            }
+        }
+
+        private Class<?> readClass(boolean withSignature) throws IOException {
+            int index = readInt();
+            if (index < mClasses.size()) {
+                return mClasses.get(index);
+            }
+            Class<?> type;
+            try {
+                type = Class.forName(readString(), false, ModelCache.class.getClassLoader());
+            } catch (ClassNotFoundException e) {
+                throw new IOException("Stale model", e);
+            }
+            if (withSignature && !getLayout(type).signature.equals(readString())) {
+                throw new IOException("Stale model of:" + type.getName());
+            }
+            mClasses.add(type);
+            return type;
+        }
+
+        String readString() throws IOException {
+            int length = readInt();
+            if (length < 0 || mPosition + length > mBuffer.length) {
+                throw new IOException("Broken model");
+            }
+            String value = new String(mBuffer, mPosition, length, StandardCharsets.UTF_8);
+            mPosition += length;
+            return value;
+        }
+
+        int readByte() throws IOException {
+            if (mPosition >= mBuffer.length) {
+                throw new IOException("Broken model");
+            }
+            return mBuffer[mPosition++] & 0xff;
+        }
+
+        int readInt() throws IOException {
+            return (int) readLong();
+        }
+
+        long readLong() throws IOException {
+            long value = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = readByte();
+                value |= (long) (b & 0x7f) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package com.android.cplusplus;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Checks the output of the translator, so a change of the reader or the writer can be
+ * proven not to change what comes out.
+ * <p>
+ * Usage: OutputCheck [-headers dir] headers &lt;srcDir&gt;
+ * <br>
+ * or: OutputCheck [-headers dir] [-update] expected &lt;srcDir&gt; &lt;expectedDir&gt;
+ * <br>
+ * "headers" translates srcDir once fully and once with "-header-only" and compares the
+ * .h files, which have to declare the same. Include lines and the using lines coming
+ * with them may differ, the header only translation leaves out the ones only the bodies
+ * need. A file the full translation fails on is skipped.
+ * <br>
+ * "expected" translates srcDir fully and compares every output file with the one of the
+ * same path below expectedDir, benchmark/expected holds the outputs of benchmark/corpus.
+ * MissingHeader.txt depends on the headers found and is left out. With "-update" the
+ * outputs replace the content of expectedDir instead, after a change of the output was
+ * checked to be wanted.
+ * <br>
+ * Every difference is printed, the exit status is 1 if there is one. Needs
+ * Core.DEBUG_MODE off, nothing is written to files otherwise.
+ */
+public class OutputCheck {
+
+    private static final PrintStream sNullStream = new PrintStream(new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    });
+
+    private static final String MISSING_HEADER_FILE = "MissingHeader.txt";
+
+    public static void main(String[] args) {
+        String mode = null;
+        boolean update = false;
+        ArrayList<String> paths = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if ("-headers".equals(args[i]) && i + 1 < args.length) {
+                Core.sHeaderRoot = args[++i];
+            } else if ("-update".equals(args[i])) {
+                update = true;
+            } else if (mode == null) {
+                mode = args[i];
+            } else {
+                paths.add(args[i]);
+            }
+        }
+        boolean headers = "headers".equals(mode) && paths.size() == 1 && !update;
+        boolean expected = "expected".equals(mode) && paths.size() == 2;
+        if (!headers && !expected) {
+            System.out.println("Usage: OutputCheck [-headers dir] headers <srcDir>");
+            System.out.println("   or: OutputCheck [-headers dir] [-update] expected <srcDir> <expectedDir>");
+            return;
+        }
+        if (Core.DEBUG_MODE) {
+            System.out.println("Turn Core.DEBUG_MODE off, nothing is written in debug mode");
+            return;
+        }
+
+        File scratchDir;
+        try {
+            scratchDir = Files.createTempDirectory("java2cpp-check").toFile();
+        } catch (IOException e) {
+            throw new RuntimeException("Can not create temporary directory", e);
+        }
+        int differences;
+        try {
+            if (!new File(Core.sHeaderRoot).isDirectory()) {
+                // nothing to look up, every header is reported as missing
+                File headerRoot = new File(scratchDir, "headers");
+                headerRoot.mkdirs();
+                Core.sHeaderRoot = headerRoot.getAbsolutePath();
+            }
+            // no build cache, no cost history of the real cache directory
+            Core.sCacheDir = new File(scratchDir, "cache");
+            File full = new File(scratchDir, "full");
+            translate(paths.get(0), full, false);
+            if (headers) {
+                File headerOnly = new File(scratchDir, "header-only");
+                translate(paths.get(0), headerOnly, true);
+                differences = compareHeaders(full, headerOnly, "");
+            } else if (update) {
+                File expectedDir = new File(paths.get(1));
+                deleteTree(expectedDir);
+                int count = copyOutputs(full, expectedDir);
+                System.out.println(count + " expected outputs written to " + expectedDir);
+                return;
+            } else {
+                differences = compareOutputs(full, new File(paths.get(1)), "");
+            }
+        } finally {
+            deleteTree(scratchDir);
+        }
+        if (headers) {
+            System.out.println(differences == 0 ? "Headers match"
+                    : differences + " headers differ");
+        } else {
+            System.out.println(differences == 0 ? "Outputs match"
+                    : differences + " outputs differ");
+        }
+        if (differences > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static void translate(String srcPath, File dstDir, boolean headerOnly) {
+        boolean previous = Core.sHeaderOnly;
+        PrintStream out = System.out;
+        PrintStream err = System.err;
+        Core.sHeaderOnly = headerOnly;
+        // the log and the errors of every file are not of interest here
+        System.setOut(sNullStream);
+        System.setErr(sNullStream);
+        try {
+            dstDir.mkdirs();
+            Core.processDirectory(srcPath, dstDir.getAbsolutePath(), null, new int[4]);
+        } finally {
+            System.setOut(out);
+            System.setErr(err);
+            Core.sHeaderOnly = previous;
+        }
+    }
+
+    /**
+     * Compares every .h below full with the one of the same path below headerOnly, returns
+     * the number of headers which differ or are missing in one of them.
+     */
+    private static int compareHeaders(File full, File headerOnly, String path) {
+        int differences = 0;
+        String[] names = listNames(full, headerOnly);
+        for (String name : names) {
+            File fullFile = new File(full, name);
+            File headerOnlyFile = new File(headerOnly, name);
+            if (fullFile.isDirectory() || headerOnlyFile.isDirectory()) {
+                differences += compareHeaders(fullFile, headerOnlyFile, path + name + "/");
+                continue;
+            }
+            if (!name.endsWith(".h")) {
+                continue;
+            }
+            if (!fullFile.isFile()) {
+                // the full translation failed, nothing to compare with
+                System.out.println("skipped, only in header only: " + path + name);
+                continue;
+            }
+            if (!headerOnlyFile.isFile()) {
+                System.out.println("only in full: " + path + name);
+                differences++;
+                continue;
+            }
+            List<String> fullLines = readDeclarations(fullFile);
+            List<String> headerOnlyLines = readDeclarations(headerOnlyFile);
+            int line = firstDifference(fullLines, headerOnlyLines);
+            if (line >= 0) {
+                System.out.println("differs: " + path + name);
+                System.out.println("  full:        " + (line < fullLines.size()
+                        ? fullLines.get(line).trim() : "<end>"));
+                System.out.println("  header only: " + (line < headerOnlyLines.size()
+                        ? headerOnlyLines.get(line).trim() : "<end>"));
+                differences++;
+            }
+        }
+        return differences;
+    }
+
+    /**
+     * Compares every output file below actual with the one of the same path below expected,
+     * returns the number of files which differ or are missing in one of them.
+     */
+    private static int compareOutputs(File actual, File expected, String path) {
+        int differences = 0;
+        String[] names = listNames(actual, expected);
+        for (String name : names) {
+            File actualFile = new File(actual, name);
+            File expectedFile = new File(expected, name);
+            if (actualFile.isDirectory() || expectedFile.isDirectory()) {
+                differences += compareOutputs(actualFile, expectedFile, path + name + "/");
+                continue;
+            }
+            if (path.length() == 0 && MISSING_HEADER_FILE.equals(name)) {
+                continue;
+            }
+            if (!actualFile.isFile()) {
+                System.out.println("not written: " + path + name);
+                differences++;
+                continue;
+            }
+            if (!expectedFile.isFile()) {
+                System.out.println("not expected: " + path + name);
+                differences++;
+                continue;
+            }
+            List<String> actualLines = readLines(actualFile);
+            List<String> expectedLines = readLines(expectedFile);
+            int line = firstDifference(expectedLines, actualLines);
+            if (line >= 0) {
+                System.out.println("differs: " + path + name + ":" + (line + 1));
+                System.out.println("  expected: " + (line < expectedLines.size()
+                        ? expectedLines.get(line).trim() : "<end>"));
+                System.out.println("  actual:   " + (line < actualLines.size()
+                        ? actualLines.get(line).trim() : "<end>"));
+                differences++;
+            }
+        }
+        return differences;
+    }
+
+    // copies every output file but the missing header list, returns the number copied
+    private static int copyOutputs(File from, File to) {
+        int count = 0;
+        String[] names = from.list();
+        if (names == null) {
+            return 0;
+        }
+        to.mkdirs();
+        for (String name : names) {
+            File fromFile = new File(from, name);
+            if (fromFile.isDirectory()) {
+                count += copyOutputs(fromFile, new File(to, name));
+            } else if (!MISSING_HEADER_FILE.equals(name)) {
+                try {
+                    Files.copy(fromFile.toPath(), new File(to, name).toPath());
+                } catch (IOException e) {
+                    throw new RuntimeException("Can not copy:" + fromFile, e);
+                }
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // the names of both directories, sorted
+    private static String[] listNames(File left, File right) {
+        ArrayList<String> names = new ArrayList<>();
+        String[] leftNames = left.list();
+        if (leftNames != null) {
+            names.addAll(Arrays.asList(leftNames));
+        }
+        String[] rightNames = right.list();
+        if (rightNames != null) {
+            for (String name : rightNames) {
+                if (!names.contains(name)) {
+                    names.add(name);
+                }
+            }
+        }
+        String[] out = names.toArray(new String[names.size()]);
+        Arrays.sort(out);
+        return out;
+    }
+
+    private static List<String> readLines(File file) {
+        try {
+            return Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new RuntimeException("Can not read:" + file, e);
+        }
+    }
+
+    private static List<String> readDeclarations(File header) {
+        List<String> lines = readLines(header);
+        ArrayList<String> out = new ArrayList<>(lines.size());
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            if (line.startsWith("#include") || line.startsWith("using ")
+                    || line.trim().length() == 0) {
+                continue;
+            }
+            out.add(line);
+        }
+        return out;
+    }
+
+    // -1 if both are the same
+    private static int firstDifference(List<String> left, List<String> right) {
+        int count = Math.min(left.size(), right.size());
+        for (int i = 0; i < count; i++) {
+            if (!left.get(i).equals(right.get(i))) {
+                return i;
+            }
+        }
+        return left.size() != right.size() ? count : -1;
+    }
+
+    private static void deleteTree(File target) {
+        File[] children = target.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteTree(child);
+            }
+        }
+        target.delete();
+    }
+}
@@ -0,0 +1,143 @@
+package com.android.cplusplus;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The decoded content of one source file and a cursor over its lines.
+ * <p>
+ * A file is decoded as UTF-8 in one go into a char array which is kept for the next
+ * file, large files are memory mapped instead of being copied into a byte array first.
+ * A line is only a pair of offsets until {@link #getLine()} is called, so trimming it
+ * and skipping blank or comment lines does not create any String.
+ */
+final class SourceBuffer {
+
+    // below this size reading into a reused buffer is cheaper than setting up a mapping
+    private static final int MAP_THRESHOLD = 64 * 1024;
+
+    private final CharsetDecoder mDecoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private ByteBuffer mBytes = ByteBuffer.allocate(16 * 1024);
+    private char[] mChars = new char[16 * 1024];
+    private int mLength;
+    private int mPosition;
+    private int mLineStart;
+    private int mLineEnd;
+
+    void load(File file) throws IOException {
+        clear();
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File too large:" + file);
+            }
+            ByteBuffer bytes;
+            if (size >= MAP_THRESHOLD) {
+                bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } else {
+                if (mBytes.capacity() < size) {
+                    mBytes = ByteBuffer.allocate((int) size);
+                }
+                mBytes.clear();
+                mBytes.limit((int) size);
+                while (mBytes.hasRemaining() && channel.read(mBytes) >= 0) {
+                }
+                mBytes.flip();
+                bytes = mBytes;
+            }
+            decode(bytes);
+        } finally {
+            in.close();
+        }
+    }
+
+    private void decode(ByteBuffer bytes) throws IOException {
+        int capacity = (int) Math.ceil(bytes.remaining() * (double) mDecoder.maxCharsPerByte());
+        if (mChars.length < capacity) {
+            mChars = new char[capacity];
+        }
+        CharBuffer out = CharBuffer.wrap(mChars);
+        mDecoder.reset();
+        CoderResult result = mDecoder.decode(bytes, out, true);
+        if (result.isUnderflow()) {
+            result = mDecoder.flush(out);
+        }
+        if (!result.isUnderflow()) {
+            result.throwException();
+        }
+        mLength = out.position();
+    }
+
+    void clear() {
+        mLength = 0;
+        mPosition = 0;
+        mLineStart = 0;
+        mLineEnd = 0;
+    }
+
+    /**
+     * Moves to the next line, the same lines BufferedReader.readLine() would return.
+     * Returns false at the end of the file.
+     */
+    boolean nextLine() {
+        if (mPosition >= mLength) {
+            return false;
+        }
+        final char[] chars = mChars;
+        int i = mPosition;
+        while (i < mLength && chars[i] != '\n' && chars[i] != '\r') {
+            i++;
+        }
+        mLineStart = mPosition;
+        mLineEnd = i;
+        if (i + 1 < mLength && chars[i] == '\r' && chars[i + 1] == '\n') {
+            i++;
+        }
+        mPosition = i + 1;
+        return true;
+    }
+
+    /**
+     * Drops the leading and trailing white space of the current line, like String.trim().
+     */
+    void trimLine() {
+        while (mLineStart < mLineEnd && mChars[mLineStart] <= ' ') {
+            mLineStart++;
+        }
+        while (mLineEnd > mLineStart && mChars[mLineEnd - 1] <= ' ') {
+            mLineEnd--;
+        }
+    }
+
+    boolean isLineEmpty() {
+        return mLineStart == mLineEnd;
+    }
+
+    boolean lineStartsWith(String prefix) {
+        if (mLineEnd - mLineStart < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (mChars[mLineStart + i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    String getLine() {
+        return new String(mChars, mLineStart, mLineEnd - mLineStart);
+    }
+}
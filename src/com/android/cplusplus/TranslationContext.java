@@ -0,0 +1,62 @@
+package com.android.cplusplus;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+
+import com.android.cplusplus.JavaCodeReader.CodeParagraph.ProcessHelper;
+import com.android.cplusplus.JavaCodeReader.CodeParser;
+import com.android.cplusplus.JavaCodeReader.Keyword.KeywordProcessHelper;
+import com.android.cplusplus.JavaReader.LineParser;
+
+/**
+ * Holds everything one translation thread owns. Every worker of the parallel
+ * driver gets its own context, so a reader, a writer, the parser pools or the
+ * parser counters are never shared between two files that are translated at
+ * the same time.
+ */
+final class TranslationContext {
+
+    private static final ThreadLocal<TranslationContext> sContext =
+            new ThreadLocal<TranslationContext>() {
+        @Override
+        protected TranslationContext initialValue() {
+            return new TranslationContext();
+        }
+    };
+
+    final JavaReader reader = new JavaReader();
+    final CppWriter writer = new CppWriter();
+
+    // recycled objects, see obtain() and recycle() of each class
+    LineParser lineParserPool;
+    int lineParserPoolSize;
+    CodeParser codeParserPool;
+    int codeParserPoolSize;
+    KeywordProcessHelper keywordHelperPool;
+    int keywordHelperPoolSize;
+    ProcessHelper processHelperPool;
+    int processHelperPoolSize;
+
+    // headers looked up by the file being translated, kept by the build cache
+    ArrayList<BuildCache.HeaderLookup> headerLookups;
+
+    // the file being recorded while metrics are on, see Metrics
+    Metrics.FileRecord metrics;
+    
+    // code statement statistics, see JavaCodeReader.printAndClearCodeParserRecord()
+    int codeProcessingCount;
+    int codeTotalRecursiveDepth;
+    int codeMaximumRecursiveDepth;
+
+    private TranslationContext() {
+    }
+
+    static TranslationContext get() {
+        return sContext.get();
+    }
+
+    void setLogStream(PrintStream log) {
+        reader.setLogStream(log);
+        writer.setLogStream(log);
+    }
+}
@@ -0,0 +1,188 @@
+package com.android.cplusplus;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * The type names the writer classifies on its own: java.lang classes included from
+ * &lt;lang/...&gt;, java.util like containers translated by value and keywords that
+ * never need a header. Every set is hashed once and never changed, a registry is
+ * only ever replaced as a whole.
+ * <p>
+ * Framework types can be added with "-types &lt;file&gt;". Each line of the file holds
+ * a kind, one of "lang", "container" or "ignore", and a class name, "#" starts a
+ * comment.
+ */
+final class TypeRegistry {
+
+    private static final String[] DEFAULT_JAVA_LANG_CLASSES = {
+        "Object", "String", "CharSequence", "Runnable", "Comparable", "Math",
+        "Integer", "Float", "Charactor", "Boolean", "Long", "Short", "Double",
+        "Throwable", "Array", "Enum",
+        "Class", "ClassLoader", "Thread",
+        "StringBuffer", "StringBuilder",
+        "Exception", "Runtimexception", "NullPointerException", "SecurityException",
+        "NumberFormatException", "ClassNotFoundException", "IllegalStateException",
+        "IllegalArgumentException", "UnsupportedOperationException",
+    };
+
+    private static final String[] DEFAULT_CONTAINER_CLASSES = {
+        "ArrayList", "LinkedList", "List",
+        "HashMap", "ArrayMap", "HashTable", "Map",
+        "HashSet", "Set",
+        "Collection",
+        "SparseArray",
+        "Parcel", "StringBuffer", "StringBuilder",
+    };
+
+    private static final String[] DEFAULT_IGNORED_KEYS = {
+        "this", "super", "null", "void", "Void",
+    };
+
+    private static volatile TypeRegistry sRegistry = new TypeRegistry(
+            Arrays.asList(DEFAULT_JAVA_LANG_CLASSES),
+            Arrays.asList(DEFAULT_CONTAINER_CLASSES),
+            Arrays.asList(DEFAULT_IGNORED_KEYS), "");
+
+    private final NameSet mJavaLangClasses;
+    private final NameSet mContainerClasses;
+    private final NameSet mIgnoredKeys;
+    // the loaded lines, kind and name each, empty for the built in registry
+    private final String mExtraTypes;
+
+    private TypeRegistry(Collection<String> javaLangClasses, Collection<String> containerClasses,
+            Collection<String> ignoredKeys, String extraTypes) {
+        mExtraTypes = extraTypes;
+        mJavaLangClasses = new NameSet(javaLangClasses);
+        mContainerClasses = new NameSet(containerClasses);
+        mIgnoredKeys = new NameSet(ignoredKeys);
+    }
+
+    static TypeRegistry get() {
+        return sRegistry;
+    }
+
+    /**
+     * The types added by {@link #load(File)}, part of the build cache key since they
+     * change the generated code.
+     */
+    String getExtraTypes() {
+        return mExtraTypes;
+    }
+
+    boolean isJavaLangClass(String name) {
+        return mJavaLangClasses.contains(name);
+    }
+
+    boolean isIgnoredKey(String name) {
+        return mIgnoredKeys.contains(name);
+    }
+
+    /**
+     * Whether type, with or without its template arguments, is a container class.
+     */
+    boolean isContainerClass(String type) {
+        int index = type.indexOf('<');
+        return mContainerClasses.contains(type, index >= 0 ? index : type.length());
+    }
+
+    /**
+     * Adds the types listed in file to the built in ones. Must be called before any
+     * file is translated, the resolved types cached by the writer are dropped.
+     */
+    static void load(File file) throws IOException {
+        ArrayList<String> javaLangClasses = new ArrayList<>(Arrays.asList(DEFAULT_JAVA_LANG_CLASSES));
+        ArrayList<String> containerClasses = new ArrayList<>(Arrays.asList(DEFAULT_CONTAINER_CLASSES));
+        ArrayList<String> ignoredKeys = new ArrayList<>(Arrays.asList(DEFAULT_IGNORED_KEYS));
+        StringBuilder extraTypes = new StringBuilder();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), StandardCharsets.UTF_8));
+        try {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                int commentIndex = line.indexOf('#');
+                if (commentIndex >= 0) {
+                    line = line.substring(0, commentIndex);
+                }
+                line = line.trim();
+                if (line.length() == 0) {
+                    continue;
+                }
+                String[] parts = line.split("\\s+");
+                if (parts.length != 2) {
+                    throw new IOException(file + ":" + lineNumber + " expects <kind> <name>:" + line);
+                }
+                if ("lang".equals(parts[0])) {
+                    javaLangClasses.add(parts[1]);
+                } else if ("container".equals(parts[0])) {
+                    containerClasses.add(parts[1]);
+                } else if ("ignore".equals(parts[0])) {
+                    ignoredKeys.add(parts[1]);
+                } else {
+                    throw new IOException(file + ":" + lineNumber + " unknown kind:" + parts[0]);
+                }
+                extraTypes.append(parts[0]).append(' ').append(parts[1]).append('\n');
+            }
+        } finally {
+            reader.close();
+        }
+        sRegistry = new TypeRegistry(javaLangClasses, containerClasses, ignoredKeys,
+                extraTypes.toString());
+        CppWriter.TypedValue.clearResolvedTypes();
+    }
+
+    /**
+     * Open addressing string set which can also look up a prefix of a string, so the
+     * name in front of template arguments is found without cutting it out.
+     */
+    private static final class NameSet {
+        private final String[] mSlots;
+
+        NameSet(Collection<String> names) {
+            int capacity = 8;
+            while (capacity < names.size() * 2) {
+                capacity <<= 1;
+            }
+            mSlots = new String[capacity];
+            for (String name : names) {
+                int slot = indexOf(name, name.length(), name.hashCode());
+                mSlots[slot] = name;
+            }
+        }
+
+        boolean contains(String name) {
+            return mSlots[indexOf(name, name.length(), name.hashCode())] != null;
+        }
+
+        boolean contains(String name, int length) {
+            int hash = 0;
+            for (int i = 0; i < length; i++) {
+                hash = 31 * hash + name.charAt(i);
+            }
+            return mSlots[indexOf(name, length, hash)] != null;
+        }
+
+        // slot holding the first length chars of name, or the empty slot ending its probe
+        private int indexOf(String name, int length, int hash) {
+            int mask = mSlots.length - 1;
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            while (true) {
+                String candidate = mSlots[slot];
+                if (candidate == null || (candidate.length() == length
+                        && name.startsWith(candidate))) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.android.cplusplus;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Translates a source directory once and then watches it, started with "-watch". A
+ * saved source is translated again together with the sources importing it, see
+ * DependencyGraph, and with "-index" the other sources of its package too. The outputs
+ * of a deleted source are deleted. The workers, the build cache and the header index are
+ * kept between two translations like the daemon does.
+ * <p>
+ * Saves coming in a burst, a whole checkout or an editor writing a file twice, are
+ * collected until no event came for DEBOUNCE_MILLIS and then translated at once.
+ */
+final class Watcher {
+
+    private static final long DEBOUNCE_MILLIS = 100;
+
+    private final File mSrcRoot;
+    private final String mDstPath;
+    private final DependencyGraph mGraph = new DependencyGraph();
+    private final HashMap<WatchKey, Path> mDirectories = new HashMap<>();
+    private WatchService mService;
+    private BuildCache mCache;
+    // events were lost, the whole directory has to be looked at again
+    private boolean mOverflow;
+
+    Watcher(File srcRoot, String dstPath) {
+        mSrcRoot = srcRoot;
+        mDstPath = dstPath;
+    }
+
+    void run() {
+        if (!mSrcRoot.isDirectory()) {
+            throw new RuntimeException("Can only watch a directory:" + mSrcRoot);
+        }
+        ForkJoinPool pool = new ForkJoinPool(Core.sWorkerCount);
+        Core.sWorkerPool = pool;
+        if (Core.sUseModelCache) {
+            Core.getModelCache().setMemoryLimit(ModelCache.MEMORY_LIMIT);
+        }
+        try {
+            mService = FileSystems.getDefault().newWatchService();
+            // registered first, so nothing saved during the first translation is missed
+            register(mSrcRoot.toPath(), null);
+            mCache = Core.DEBUG_MODE ? null : BuildCache.open(Core.sCacheDir, mDstPath);
+
+            long startMillis = System.currentTimeMillis();
+            System.out.println("Watch start:" + mSrcRoot + ", " + mGraph.size() + " sources");
+            if (Core.sUseClassIndex) {
+                Core.buildClassIndex(mSrcRoot.getPath());
+            }
+            int[] out = Core.processDirectory(mSrcRoot.getPath(), mDstPath, mCache, new int[4]);
+            Core.printMissingHeadersIfNecessary(mDstPath + "/MissingHeader.txt");
+            printDone(startMillis, out);
+
+            while (true) {
+                TreeSet<File> changed = new TreeSet<>();
+                TreeSet<File> deleted = new TreeSet<>();
+                WatchKey key = mService.take();
+                do {
+                    collectEvents(key, changed, deleted);
+                    key = mService.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+                } while (key != null);
+                translate(changed, deleted);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            Core.sWorkerPool = null;
+            pool.shutdown();
+            if (mService != null) {
+                try {
+                    mService.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+    }
+
+    private void translate(TreeSet<File> changed, TreeSet<File> deleted) {
+        long startMillis = System.currentTimeMillis();
+        int[] out = new int[4];
+        boolean force = Core.sForceTranslation;
+        try {
+            Core.resetHeaderLookups();
+            if (mOverflow) {
+                mOverflow = false;
+                System.out.println("Watch: events lost, looking at every source");
+                register(mSrcRoot.toPath(), null);
+                if (Core.sUseClassIndex) {
+                    Core.buildClassIndex(mSrcRoot.getPath());
+                }
+                Core.processDirectory(mSrcRoot.getPath(), mDstPath, mCache, out);
+                printDone(startMillis, out);
+                return;
+            }
+            ClassIndex index = Core.getClassIndex();
+            // the class index resolves the classes of the same package without imports
+            boolean samePackage = index != null;
+            TreeSet<File> files = new TreeSet<>();
+            for (File file : deleted) {
+                files.addAll(mGraph.getImporters(file, samePackage));
+                mGraph.remove(file);
+                if (mCache != null) {
+                    deleteOutputs(mCache.remove(file));
+                }
+                if (index != null) {
+                    index.remove(file);
+                }
+            }
+            for (File file : changed) {
+                // the importers of the old package and of the new one
+                files.addAll(mGraph.getImporters(file, samePackage));
+                mGraph.update(file);
+                files.addAll(mGraph.getImporters(file, samePackage));
+                if (index != null) {
+                    index.update(file);
+                }
+            }
+            files.addAll(changed);
+            files.removeAll(deleted);
+            if (files.isEmpty()) {
+                return;
+            }
+            System.out.println("Watch: " + changed.size() + " changed, " + deleted.size()
+                    + " deleted, " + files.size() + " to translate");
+            // the importers did not change, the build cache would keep their outputs
+            Core.sForceTranslation = true;
+            Core.processFiles(mSrcRoot, files, mDstPath, mCache, out);
+            printDone(startMillis, out);
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+        } finally {
+            Core.sForceTranslation = force;
+        }
+    }
+
+    private void collectEvents(WatchKey key, TreeSet<File> changed, TreeSet<File> deleted)
+            throws IOException {
+        Path directory = mDirectories.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            WatchEvent.Kind<?> kind = event.kind();
+            if (kind == StandardWatchEventKinds.OVERFLOW) {
+                mOverflow = true;
+                continue;
+            }
+            if (directory == null) {
+                continue;
+            }
+            Path path = directory.resolve((Path) event.context());
+            File file = path.toFile();
+            if (kind == StandardWatchEventKinds.ENTRY_CREATE && file.isDirectory()) {
+                register(path, changed);
+            } else if (isSource(file)) {
+                if (kind == StandardWatchEventKinds.ENTRY_DELETE) {
+                    changed.remove(file);
+                    deleted.add(file);
+                } else {
+                    deleted.remove(file);
+                    changed.add(file);
+                }
+            }
+        }
+        if (!key.reset()) {
+            mDirectories.remove(key);
+        }
+    }
+
+    /**
+     * Watches directory and every directory below it. The sources found go to found,
+     * or straight into the dependency graph if found is null.
+     */
+    private void register(Path directory, final TreeSet<File> found) throws IOException {
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+                    throws IOException {
+                WatchKey key = dir.register(mService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+                mDirectories.put(key, dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path path, BasicFileAttributes attrs) {
+                File file = path.toFile();
+                if (isSource(file)) {
+                    if (found != null) {
+                        found.add(file);
+                    } else {
+                        mGraph.update(file);
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static void deleteOutputs(BuildCache.Record record) {
+        if (record == null) {
+            return;
+        }
+        for (int i = 0; i < record.outputs.size(); i++) {
+            File output = new File(record.outputs.get(i));
+            if (output.exists() && !output.delete()) {
+                System.out.println("Watch: can not delete " + output);
+            }
+        }
+    }
+
+    private static boolean isSource(File file) {
+        String name = file.getName();
+        return name.endsWith(".java") || name.endsWith(".aidl");
+    }
+
+    private static void printDone(long startMillis, int[] out) {
+        System.out.println("Watch: done, cost:" + (System.currentTimeMillis() - startMillis)
+                + "ms. " + out[0] + " files processed, " + out[1] + " files generated, "
+                + out[2] + " errors occurs, " + out[3] + " files up to date.");
+        if (Core.sMetricsFile != null) {
+            // the report of the last translation only
+            Metrics.writeReport(Core.sMetricsFile);
+            Metrics.reset();
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package com.android.cplusplus;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+
+import com.android.cplusplus.Core.TranslateTask;
+
+/**
+ * Translates a source only after the sources it depends on, see DependencyGraph, set by
+ * "-waves". The sources are grouped into waves: the first holds the ones depending on
+ * no other, every following one the sources whose dependencies are all in the waves
+ * before. Sources importing each other are one unit and go into the same wave.
+ * <p>
+ * There is no barrier between two waves. A unit starts as soon as its own dependencies
+ * are done, and of the units ready the one with the most work depending on it goes
+ * first, so the long chains do not end up running alone at the end. The work of a unit
+ * is what the CostHistory expects its files to take.
+ * <p>
+ * A header written for a unit counts as existing for the units translated after it,
+ * see Core.isHeaderFileExisted(). The units in a cycle do not see each other's headers,
+ * which keeps the output the same whatever order the workers pick.
+ */
+final class WaveScheduler {
+
+    private static class Unit {
+        final int id;
+        final ArrayList<Integer> tasks = new ArrayList<>(1);
+        final ArrayList<Unit> dependents = new ArrayList<>();
+        int pendingDependencies;
+        int remainingTasks;
+        int wave;
+        // cost of this unit and of the longest chain of units depending on it
+        long criticalPath;
+        long cost;
+
+        Unit(int id) {
+            this.id = id;
+        }
+    }
+
+    private final ArrayList<TranslateTask> mTasks;
+    private final DependencyGraph mGraph = new DependencyGraph();
+    private final ArrayList<Unit> mUnits = new ArrayList<>();
+    private Unit[] mUnitOfTask;
+    private int mWaveCount;
+    private int mWidestWave;
+
+    // guarded by this
+    private final PriorityQueue<Unit> mReady = new PriorityQueue<>(11, new Comparator<Unit>() {
+        @Override
+        public int compare(Unit left, Unit right) {
+            if (left.criticalPath != right.criticalPath) {
+                return left.criticalPath > right.criticalPath ? -1 : 1;
+            }
+            return left.id - right.id;
+        }
+    });
+    private boolean[] mDone;
+    private int mRunning;
+    private RuntimeException mFailure;
+
+    /**
+     * costs holds the expected time of every task, see CostHistory, the sizes of the
+     * files are used if it is null.
+     */
+    WaveScheduler(ArrayList<TranslateTask> tasks, long[] costs, ForkJoinPool pool) {
+        mTasks = tasks;
+        ArrayList<File> files = new ArrayList<>(tasks.size());
+        for (int i = 0; i < tasks.size(); i++) {
+            files.add(tasks.get(i).file);
+        }
+        mGraph.updateAll(files, pool);
+        buildUnits(costs);
+    }
+
+    int getWaveCount() {
+        return mWaveCount;
+    }
+
+    int getWidestWave() {
+        return mWidestWave;
+    }
+
+    /**
+     * Runs every task on pool, never more than workers at once unless a unit has more
+     * tasks. The tasks are reported in their order while the others go on.
+     */
+    void run(ForkJoinPool pool, int workers, int[] out) {
+        mDone = new boolean[mTasks.size()];
+        synchronized (this) {
+            for (int i = 0; i < mUnits.size(); i++) {
+                Unit unit = mUnits.get(i);
+                unit.remainingTasks = unit.tasks.size();
+                if (unit.pendingDependencies == 0) {
+                    mReady.add(unit);
+                }
+            }
+        }
+        int reported = 0;
+        while (reported < mTasks.size()) {
+            synchronized (this) {
+                while (mFailure == null && !mReady.isEmpty() && mRunning < workers) {
+                    start(pool, mReady.poll());
+                }
+                while (mFailure == null && !mDone[reported]) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException("Logic crash", e);
+                    }
+                    if (!mReady.isEmpty() && mRunning < workers) {
+                        break;
+                    }
+                }
+                if (mFailure != null) {
+                    throw mFailure;
+                }
+            }
+            while (reported < mTasks.size() && isDone(reported)) {
+                mTasks.get(reported++).report(out);
+            }
+        }
+    }
+
+    private synchronized boolean isDone(int task) {
+        return mDone[task];
+    }
+
+    private void start(ForkJoinPool pool, final Unit unit) {
+        for (int i = 0; i < unit.tasks.size(); i++) {
+            final int task = unit.tasks.get(i);
+            mRunning++;
+            pool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    RuntimeException failure = null;
+                    try {
+                        mTasks.get(task).call();
+                    } catch (RuntimeException e) {
+                        failure = e;
+                    }
+                    finish(unit, task, failure);
+                }
+            });
+        }
+    }
+
+    private synchronized void finish(Unit unit, int task, RuntimeException failure) {
+        mRunning--;
+        mDone[task] = true;
+        if (failure != null && mFailure == null) {
+            mFailure = failure;
+        }
+        if (--unit.remainingTasks == 0) {
+            // published only now, see the class comment
+            for (int i = 0; i < unit.tasks.size(); i++) {
+                publishHeader(mTasks.get(unit.tasks.get(i)));
+            }
+            for (int i = 0; i < unit.dependents.size(); i++) {
+                Unit dependent = unit.dependents.get(i);
+                if (--dependent.pendingDependencies == 0) {
+                    mReady.add(dependent);
+                }
+            }
+        }
+        notifyAll();
+    }
+
+    private void publishHeader(TranslateTask task) {
+        if (task.skipped || task.error != null || (!task.upToDate && task.generated == 0)) {
+            return;
+        }
+        String qualifiedName = mGraph.getQualifiedName(task.file);
+        String includePath = qualifiedName != null ? ClassIndex.getIncludePath(qualifiedName)
+                : null;
+        if (includePath != null) {
+            Core.sGeneratedHeaders.add(includePath);
+        }
+    }
+
+    /**
+     * Groups the tasks into units, the strongly connected parts of the dependency graph,
+     * and gives every unit its wave and critical path.
+     */
+    private void buildUnits(long[] costs) {
+        int count = mTasks.size();
+        HashMap<File, Integer> taskOfFile = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            taskOfFile.put(mTasks.get(i).file, i);
+        }
+        ArrayList<ArrayList<Integer>> dependencies = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ArrayList<Integer> found = new ArrayList<>();
+            TreeSet<File> files = mGraph.getDependencies(mTasks.get(i).file);
+            for (File file : files) {
+                Integer task = taskOfFile.get(file);
+                if (task != null) {
+                    found.add(task);
+                }
+            }
+            dependencies.add(found);
+        }
+
+        // Tarjan, the units come out with their dependencies first
+        mUnitOfTask = new Unit[count];
+        int[] order = new int[count];
+        int[] lowLink = new int[count];
+        boolean[] onStack = new boolean[count];
+        int[] stack = new int[count];
+        int[] stackSize = new int[1];
+        int[] visited = new int[1];
+        for (int i = 0; i < count; i++) {
+            if (order[i] == 0) {
+                connect(i, dependencies, order, lowLink, onStack, stack, stackSize, visited);
+            }
+        }
+
+        for (int i = 0; i < mUnits.size(); i++) {
+            Unit unit = mUnits.get(i);
+            TreeSet<Integer> dependencyIds = new TreeSet<>();
+            for (int j = 0; j < unit.tasks.size(); j++) {
+                int task = unit.tasks.get(j);
+                unit.cost += costs != null ? costs[task]
+                        : Math.max(1, mTasks.get(task).file.length());
+                ArrayList<Integer> found = dependencies.get(task);
+                for (int k = 0; k < found.size(); k++) {
+                    Unit dependency = mUnitOfTask[found.get(k)];
+                    if (dependency != unit && dependencyIds.add(dependency.id)) {
+                        dependency.dependents.add(unit);
+                        unit.pendingDependencies++;
+                        unit.wave = Math.max(unit.wave, dependency.wave + 1);
+                    }
+                }
+            }
+        }
+        int[] waveWidths = new int[mUnits.size() + 1];
+        for (int i = mUnits.size() - 1; i >= 0; i--) {
+            Unit unit = mUnits.get(i);
+            long longest = 0;
+            for (int j = 0; j < unit.dependents.size(); j++) {
+                longest = Math.max(longest, unit.dependents.get(j).criticalPath);
+            }
+            unit.criticalPath = unit.cost + longest;
+            waveWidths[unit.wave] += unit.tasks.size();
+            mWaveCount = Math.max(mWaveCount, unit.wave + 1);
+        }
+        for (int i = 0; i < mWaveCount; i++) {
+            mWidestWave = Math.max(mWidestWave, waveWidths[i]);
+        }
+    }
+
+    private void connect(int task, ArrayList<ArrayList<Integer>> dependencies, int[] order,
+            int[] lowLink, boolean[] onStack, int[] stack, int[] stackSize, int[] visited) {
+        order[task] = lowLink[task] = ++visited[0];
+        stack[stackSize[0]++] = task;
+        onStack[task] = true;
+        ArrayList<Integer> found = dependencies.get(task);
+        for (int i = 0; i < found.size(); i++) {
+            int dependency = found.get(i);
+            if (order[dependency] == 0) {
+                connect(dependency, dependencies, order, lowLink, onStack, stack, stackSize,
+                        visited);
+                lowLink[task] = Math.min(lowLink[task], lowLink[dependency]);
+            } else if (onStack[dependency]) {
+                lowLink[task] = Math.min(lowLink[task], order[dependency]);
+            }
+        }
+        if (lowLink[task] == order[task]) {
+            Unit unit = new Unit(mUnits.size());
+            int member;
+            do {
+                member = stack[--stackSize[0]];
+                onStack[member] = false;
+                unit.tasks.add(member);
+                mUnitOfTask[member] = unit;
+            } while (member != task);
+            mUnits.add(unit);
+        }
+    }
+}